@@ -0,0 +1,265 @@
+import benchmarks.Workloads;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The code paths measured by the benchmarks in the benchmarks package, written against the
+ * application classes. Each factory method is called once per JMH trial.
+ */
+public class TradeWorkloads {
+    private static final String COUNTERPARTY_PREFIX = "BENCH-";
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Coal", "Electricity", "Solar Power" };
+
+    public static Workloads.HotPaths hotPaths() throws SQLException {
+        return new HotPaths();
+    }
+
+    public static Workloads.Recording recording() {
+        LatencyRecorder recorder = new LatencyRecorder("benchmark");
+        return () -> {
+            recorder.record(System.nanoTime(), 1);
+            return recorder;
+        };
+    }
+
+    public static Workloads.Rendering rendering() throws IOException {
+        return new Rendering();
+    }
+
+    public static Workloads.Repository repository(String store, int size) throws Exception {
+        switch (store) {
+            case "journal":
+                Path directory = Files.createTempDirectory("trade-benchmark");
+                JournalTradeStore journal = new JournalTradeStore(directory, false, 0);
+                journal.addTrades(generateTrades(size), TradeRepository.DEFAULT_BATCH_SIZE);
+                return new Repository(journal, () -> {
+                    journal.close();
+                    deleteQuietly(directory);
+                });
+            case "h2":
+                ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:trades-" + size + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+                        PoolConfig.fromSystemProperties());
+                try (Connection connection = pool.getConnection()) {
+                    TradeLoadGenerator.createSchema(connection);
+                }
+                TradeDAO dao = new TradeDAO(pool);
+                dao.addTrades(generateTrades(size), TradeRepository.DEFAULT_BATCH_SIZE);
+                return new Repository(dao, () -> {
+                    try (Connection connection = pool.getConnection();
+                         Statement statement = connection.createStatement()) {
+                        statement.execute("SHUTDOWN");
+                    }
+                    pool.close();
+                });
+            default:
+                throw new IllegalArgumentException("Unknown store: " + store);
+        }
+    }
+
+    private static final class HotPaths implements Workloads.HotPaths {
+        private final String[] dates = { "2024-01-15", "2024-02-30", "2023-12-31", "15/01/2024" };
+        private final String[] numbers = { "1000", "75.50", " 3.25 ", "45000.125" };
+        private final Trade trade = new Trade(42, "2024-01-15", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+        private final Connection connection;
+        private final ResultSet row;
+
+        HotPaths() throws SQLException {
+            // One row of a real driver's result set, read again on every call
+            connection = DriverManager.getConnection("jdbc:h2:mem:row;MODE=MSSQLServer");
+            TradeLoadGenerator.createSchema(connection);
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Trades "
+                    + "(TradeDate, Counterparty, Commodity, Volume, Price, TradeType) VALUES (?, ?, ?, ?, ?, ?)")) {
+                bind(ps, trade);
+                ps.executeUpdate();
+            }
+            row = connection.createStatement().executeQuery("SELECT * FROM Trades");
+            row.next();
+        }
+
+        @Override
+        public boolean isValidDate(int i) {
+            return InputValidator.isValidDate(dates[i & 3]);
+        }
+
+        @Override
+        public double parseDouble(int i) {
+            return InputValidator.parseDouble(numbers[i & 3]);
+        }
+
+        @Override
+        public String formatTrade() {
+            return trade.toString();
+        }
+
+        @Override
+        public String validationError(int i) {
+            return TradeService.validationError(dates[i & 1], "ABC Energy Corp", "Crude Oil", 1000, 75.5,
+                    (i & 1) == 0 ? "BUY" : "SELL");
+        }
+
+        @Override
+        public Object mapRow() throws SQLException {
+            return TradeDAO.mapResultSetToTrade(row);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    /**
+     * Both paths write to a real file, so each flush is a write call as it would be on a
+     * console or pipe; the file is truncated every 64K rows to keep it small.
+     */
+    private static final class Rendering implements Workloads.Rendering {
+        private final Trade[] trades;
+        private final Path file;
+        private final FileOutputStream raw;
+        private final PrintStream console;
+        private final TradeTableRenderer renderer;
+
+        Rendering() throws IOException {
+            trades = generateTrades(1024).toArray(new Trade[0]);
+            for (int i = 0; i < trades.length; i++) {
+                trades[i].setTradeId(1_000_000 + i);
+            }
+            file = Files.createTempFile("trade-render", ".txt");
+            raw = new FileOutputStream(file.toFile(), true);
+            console = new PrintStream(new BufferedOutputStream(raw, 128), true);
+            renderer = new TradeTableRenderer(new BufferedWriter(new OutputStreamWriter(console),
+                    TradeTableRenderer.BUFFER_SIZE));
+        }
+
+        @Override
+        public Object println(int i) throws IOException {
+            console.println(trades[i & 1023]);
+            truncateEvery(i);
+            return console;
+        }
+
+        @Override
+        public Object render(int i) throws IOException {
+            renderer.handle(trades[i & 1023]);
+            truncateEvery(i);
+            return renderer;
+        }
+
+        private void truncateEvery(int i) throws IOException {
+            if ((i & 0xFFFF) == 0) {
+                raw.getChannel().truncate(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            renderer.finish();
+            console.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static final class Repository implements Workloads.Repository {
+        private final TradeRepository repository;
+        private final AutoCloseable cleanup;
+        private final int[] ids;
+        private final TradeQuery dateRange = TradeQuery.builder().tradeDateBetween("2024-01-12", "2024-01-14").build();
+        private final TradeQuery topByPrice = TradeQuery.builder().commodity("Solar", TradeQuery.Match.PREFIX)
+                .sortBy(TradeQuery.SortField.PRICE, true).limit(100).build();
+        private final Trade template = new Trade("2024-03-01", COUNTERPARTY_PREFIX + "ADD", "Coal", 100, 45, "BUY");
+
+        Repository(TradeRepository repository, AutoCloseable cleanup) throws SQLException {
+            this.repository = repository;
+            this.cleanup = cleanup;
+            // The seeded rows have the lowest IDs; look them up in a scattered order
+            List<Trade> seeded = repository.getTradesPage(0, 10_000);
+            ids = new int[seeded.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = seeded.get((int) ((i * 2654435761L) % ids.length)).getTradeId();
+            }
+        }
+
+        @Override
+        public Object getTradeById(int i) throws SQLException {
+            return repository.getTradeById(ids[i % ids.length]);
+        }
+
+        @Override
+        public Object searchByCommodity() throws SQLException {
+            return repository.searchTrades("Commodity", "Solar");
+        }
+
+        @Override
+        public Object searchByCounterparty() throws SQLException {
+            return repository.searchTrades("Counterparty", "-7");
+        }
+
+        @Override
+        public Object findByDateRange() throws SQLException {
+            return repository.findTrades(dateRange);
+        }
+
+        @Override
+        public Object findTopByPrice() throws SQLException {
+            return repository.findTrades(topByPrice);
+        }
+
+        @Override
+        public Object addTrade() throws SQLException {
+            Trade trade = new Trade(template.getTradeDate(), template.getCounterparty(), template.getCommodity(),
+                    template.getVolume(), template.getPrice(), template.getTradeType());
+            repository.addTrade(trade);
+            return trade;
+        }
+
+        @Override
+        public void close() throws Exception {
+            cleanup.close();
+        }
+    }
+
+    private static List<Trade> generateTrades(int count) {
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(new Trade("2024-01-" + (10 + i % 20), COUNTERPARTY_PREFIX + (i % 50),
+                    COMMODITIES[i % COMMODITIES.length], 100 + i % 900, 10 + (i % 1000) / 10.0,
+                    i % 2 == 0 ? "BUY" : "SELL"));
+        }
+        return trades;
+    }
+
+    private static void bind(PreparedStatement ps, Trade trade) throws SQLException {
+        ps.setDate(1, Date.valueOf(trade.getTradeDate()));
+        ps.setString(2, trade.getCounterparty());
+        ps.setString(3, trade.getCommodity());
+        ps.setDouble(4, trade.getVolume());
+        ps.setDouble(5, trade.getPrice());
+        ps.setString(6, trade.getTradeType());
+    }
+
+    private static void deleteQuietly(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validation, formatting and row mapping. The inputs rotate through valid and invalid
+ * values so no single branch is measured on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmark {
+    private Workloads.HotPaths paths;
+    private int i;
+
+    @Setup
+    public void setUp() throws Exception {
+        paths = Workloads.hotPaths();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        paths.close();
+    }
+
+    @Benchmark
+    public boolean isValidDate() {
+        return paths.isValidDate(i++);
+    }
+
+    @Benchmark
+    public double parseDouble() {
+        return paths.parseDouble(i++);
+    }
+
+    @Benchmark
+    public String tradeToString() {
+        return paths.formatTrade();
+    }
+
+    @Benchmark
+    public String validationError() {
+        return paths.validationError(i++);
+    }
+
+    @Benchmark
+    public Object mapResultSetToTrade() throws Exception {
+        return paths.mapRow();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-call cost of LatencyRecorder.record, including its System.nanoTime call, with one
+ * recorder shared by all benchmark threads as the repository and service recorders are.
+ * Compare the single-threaded and all-threads scores to see what contention adds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyRecorderBenchmark {
+    private Workloads.Recording recording;
+
+    @Setup
+    public void setUp() throws Exception {
+        recording = Workloads.recording();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object recordOneThread() {
+        return recording.record();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object recordAllThreads() {
+        return recording.record();
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One listed row through the old path, println of Trade.toString on an autoflushing stream
+ * like System.out, and through TradeTableRenderer on the same stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderingBenchmark {
+    private Workloads.Rendering rendering;
+    private int i;
+
+    @Setup
+    public void setUp() throws Exception {
+        rendering = Workloads.rendering();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        rendering.close();
+    }
+
+    @Benchmark
+    public Object println() throws Exception {
+        return rendering.println(i++);
+    }
+
+    @Benchmark
+    public Object tableRenderer() throws Exception {
+        return rendering.render(i++);
+    }
+}
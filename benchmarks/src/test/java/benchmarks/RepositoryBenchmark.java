@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and searches on a store seeded with {@code size} trades: a temporary journal
+ * store, or TradeDAO on an in-memory H2 database in MSSQLServer mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+    @Param({ "journal", "h2" })
+    private String store;
+
+    @Param({ "1000", "100000" })
+    private int size;
+
+    private Workloads.Repository repository;
+    private int i;
+
+    @Setup
+    public void setUp() throws Exception {
+        repository = Workloads.repository(store, size);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Benchmark
+    public Object getTradeById() throws Exception {
+        return repository.getTradeById(i++);
+    }
+
+    @Benchmark
+    public Object searchByCommodity() throws Exception {
+        return repository.searchByCommodity();
+    }
+
+    @Benchmark
+    public Object searchByCounterparty() throws Exception {
+        return repository.searchByCounterparty();
+    }
+
+    @Benchmark
+    public Object findByDateRange() throws Exception {
+        return repository.findByDateRange();
+    }
+
+    @Benchmark
+    public Object findTopByPrice() throws Exception {
+        return repository.findTopByPrice();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+/**
+ * The measured code paths, as seen from the benchmarks. The application lives in the unnamed
+ * package, which a named package cannot import, while JMH only accepts benchmarks in a named
+ * package; the paths are therefore written against the application in TradeWorkloads and
+ * looked up here once, during setup.
+ */
+public final class Workloads {
+
+    /** Validation, formatting and row mapping, none of which touch a store. */
+    public interface HotPaths {
+        boolean isValidDate(int i);
+        double parseDouble(int i);
+        String formatTrade();
+        String validationError(int i);
+        Object mapRow() throws Exception;
+        void close() throws Exception;
+    }
+
+    /** One LatencyRecorder, shared by every thread that records into it. */
+    public interface Recording {
+        Object record();
+    }
+
+    /** Listing one row to an autoflushing console stream, before and after TradeTableRenderer. */
+    public interface Rendering {
+        Object println(int i) throws Exception;
+        Object render(int i) throws Exception;
+        void close() throws Exception;
+    }
+
+    /** A TradeRepository seeded with a number of trades. */
+    public interface Repository {
+        Object getTradeById(int i) throws Exception;
+        Object searchByCommodity() throws Exception;
+        Object searchByCounterparty() throws Exception;
+        Object findByDateRange() throws Exception;
+        Object findTopByPrice() throws Exception;
+        Object addTrade() throws Exception;
+        void close() throws Exception;
+    }
+
+    private Workloads() {}
+
+    public static HotPaths hotPaths() throws Exception {
+        return (HotPaths) create("hotPaths", new Class<?>[0]);
+    }
+
+    public static Recording recording() throws Exception {
+        return (Recording) create("recording", new Class<?>[0]);
+    }
+
+    public static Rendering rendering() throws Exception {
+        return (Rendering) create("rendering", new Class<?>[0]);
+    }
+
+    // store is "journal" for a temporary JournalTradeStore or "h2" for TradeDAO on H2 in MSSQLServer mode
+    public static Repository repository(String store, int size) throws Exception {
+        return (Repository) create("repository", new Class<?>[] { String.class, int.class }, store, size);
+    }
+
+    private static Object create(String factory, Class<?>[] parameterTypes, Object... args) throws Exception {
+        return Class.forName("TradeWorkloads").getMethod(factory, parameterTypes).invoke(null, args);
+    }
+}
@@ -0,0 +1,42 @@
+@echo off
+rem Windows version of appcds.sh: builds an AppCDS archive from a training run, then starts the app with it.
+rem   scripts\appcds.cmd train [java options]
+rem   scripts\appcds.cmd run [java options]
+setlocal
+cd /d "%~dp0.."
+
+set OUT=out
+set JAR=%OUT%\trading-app.jar
+set ARCHIVE=%OUT%\trading-app.jsa
+set CLASSPATH=%JAR%;lib\*
+
+set MODE=%1
+if "%MODE%"=="" goto usage
+shift
+set OPTIONS=
+:collect
+if "%~1"=="" goto dispatch
+set OPTIONS=%OPTIONS% %1
+shift
+goto collect
+
+:dispatch
+if /i "%MODE%"=="train" goto train
+if /i "%MODE%"=="run" goto run
+goto usage
+
+:train
+if exist "%OUT%\classes" rmdir /s /q "%OUT%\classes"
+javac -encoding UTF-8 -cp "lib\*" -d "%OUT%\classes" src\*.java || exit /b 1
+jar cf "%JAR%" -C "%OUT%\classes" . || exit /b 1
+java -XX:ArchiveClassesAtExit=%ARCHIVE% -Djava.library.path=lib -Dtrading.fastStart=true -Dtrading.startup.report=true %OPTIONS% -cp "%CLASSPATH%" TradeApp < scripts\cds-training.txt
+echo Wrote %ARCHIVE%
+exit /b 0
+
+:run
+java -XX:SharedArchiveFile=%ARCHIVE% -Djava.library.path=lib -Dtrading.fastStart=true %OPTIONS% -cp "%CLASSPATH%" TradeApp
+exit /b %ERRORLEVEL%
+
+:usage
+echo Usage: %~nx0 train^|run [java options]
+exit /b 2
@@ -0,0 +1,37 @@
+#!/usr/bin/env bash
+# Builds an AppCDS archive from a training run of the console app, then starts the app with it.
+# Class data for every class the training run loaded is mapped in at startup instead of being
+# parsed and verified again. Rerun "train" after changing the code or the JDK.
+#
+#   scripts/appcds.sh train [java options]   e.g. scripts/appcds.sh train -Dtrading.store=journal
+#   scripts/appcds.sh run [java options]
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+OUT=out
+JAR="$OUT/trading-app.jar"
+ARCHIVE="$OUT/trading-app.jsa"
+# CDS only archives classes loaded from JAR files, and the run classpath must match the training one
+CLASSPATH="$JAR:lib/*"
+
+case "${1:-}" in
+    train)
+        shift
+        rm -rf "$OUT/classes"
+        javac -encoding UTF-8 -cp "lib/*" -d "$OUT/classes" src/*.java
+        jar cf "$JAR" -C "$OUT/classes" .
+        # Walks the read-only menu paths once, so their classes are loaded before the archive is written
+        java -XX:ArchiveClassesAtExit="$ARCHIVE" -Djava.library.path=lib -Dtrading.fastStart=true \
+            -Dtrading.startup.report=true "$@" -cp "$CLASSPATH" TradeApp < scripts/cds-training.txt
+        echo "Wrote $ARCHIVE"
+        ;;
+    run)
+        shift
+        exec java -XX:SharedArchiveFile="$ARCHIVE" -Djava.library.path=lib -Dtrading.fastStart=true \
+            "$@" -cp "$CLASSPATH" TradeApp
+        ;;
+    *)
+        echo "Usage: $0 train|run [java options]" >&2
+        exit 2
+        ;;
+esac
@@ -34,6 +34,7 @@ CREATE TABLE trades (
     volume DECIMAL(10,2) NOT NULL,
     price DECIMAL(10,2) NOT NULL,
     trade_type NVARCHAR(10) NOT NULL,
+    version INT NOT NULL CONSTRAINT DF_trades_version DEFAULT 1, -- bumped on every update for optimistic locking
     CONSTRAINT PK_trades PRIMARY KEY (trade_id),
     CONSTRAINT CHK_trade_type CHECK (trade_type IN ('BUY','SELL')),
     CONSTRAINT CHK_volume CHECK (volume > 0),
@@ -42,10 +43,15 @@ CREATE TABLE trades (
 PRINT 'Trades table created successfully.';
 GO
 
+-- Existing databases can add the version column in place instead:
+-- ALTER TABLE trades ADD version INT NOT NULL CONSTRAINT DF_trades_version DEFAULT 1;
+
 -- Create indexes for better performance
 CREATE INDEX IX_trades_counterparty ON trades(counterparty);
 CREATE INDEX IX_trades_commodity ON trades(commodity);
-CREATE INDEX IX_trades_trade_date ON trades(trade_date);
+-- Date ranges are the most common filter; INCLUDE makes them pure seeks with no key lookups
+CREATE INDEX IX_trades_trade_date ON trades(trade_date)
+    INCLUDE (counterparty, commodity, volume, price, trade_type, version);
 PRINT 'Indexes created successfully.';
 GO
 
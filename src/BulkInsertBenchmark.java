@@ -0,0 +1,76 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the per-row addTrade path with batched addTrades on the configured database.
+ * Usage: java BulkInsertBenchmark [tradeCount] [chunkSize...]
+ * Rows are written under a BENCH- counterparty prefix and removed afterwards.
+ */
+public class BulkInsertBenchmark {
+    private static final String COUNTERPARTY_PREFIX = "BENCH-";
+
+    public static void main(String[] args) {
+        int tradeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int[] chunkSizes = { 100, 1000, 5000 };
+        if (args.length > 1) {
+            chunkSizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                chunkSizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        try {
+            DatabaseConnection dbConnection = DatabaseConnection.getInstance();
+            TradeDAO tradeDAO = new TradeDAO(dbConnection.getDataSource());
+
+            System.out.println("Bulk insert benchmark: " + tradeCount + " trades");
+            System.out.println("-".repeat(60));
+
+            long start = System.nanoTime();
+            for (Trade trade : generateTrades(tradeCount)) {
+                tradeDAO.addTrade(trade);
+            }
+            report("per-row addTrade", tradeCount, System.nanoTime() - start);
+            cleanUp(dbConnection);
+
+            for (int chunkSize : chunkSizes) {
+                List<Trade> trades = generateTrades(tradeCount);
+                start = System.nanoTime();
+                BulkInsertResult result = tradeDAO.addTrades(trades, chunkSize);
+                report("addTrades chunk=" + chunkSize, result.getInsertedCount(), System.nanoTime() - start);
+                cleanUp(dbConnection);
+            }
+
+            dbConnection.closeConnection();
+        } catch (SQLException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
+    }
+
+    private static List<Trade> generateTrades(int count) {
+        String[] commodities = { "Crude Oil", "Natural Gas", "Coal", "Electricity", "Solar Power" };
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(new Trade("2024-01-" + (10 + i % 20), COUNTERPARTY_PREFIX + (i % 50),
+                    commodities[i % commodities.length], 100 + i % 900, 10 + (i % 1000) / 10.0,
+                    i % 2 == 0 ? "BUY" : "SELL"));
+        }
+        return trades;
+    }
+
+    private static void report(String label, int rows, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-24s %8d rows in %8.3fs  -> %10.0f trades/s%n", label, rows, seconds, rows / seconds);
+    }
+
+    private static void cleanUp(DatabaseConnection dbConnection) throws SQLException {
+        try (Connection connection = dbConnection.getConnection();
+             PreparedStatement ps = connection.prepareStatement("DELETE FROM Trades WHERE Counterparty LIKE ?")) {
+            ps.setString(1, COUNTERPARTY_PREFIX + "%");
+            ps.executeUpdate();
+        }
+    }
+}
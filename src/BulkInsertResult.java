@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk load: how many trades were committed and which rows were rejected.
+ * Row indexes refer to the position of the trade in the caller's input.
+ */
+public class BulkInsertResult {
+    private int insertedCount;
+    private int chunkCount;
+    private final List<Failure> failures = new ArrayList<>();
+
+    public int getInsertedCount() { return insertedCount; }
+    public int getChunkCount() { return chunkCount; }
+    public int getFailedCount() { return failures.size(); }
+    public List<Failure> getFailures() { return Collections.unmodifiableList(failures); }
+
+    public boolean isFullySuccessful() {
+        return failures.isEmpty();
+    }
+
+    void addInserted(int count) { insertedCount += count; }
+    void addChunk() { chunkCount++; }
+    void addChunks(int count) { chunkCount += count; }
+
+    void addFailure(int index, Trade trade, String reason) {
+        failures.add(new Failure(index, trade, reason));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Inserted:%d | Failed:%d | Chunks:%d", insertedCount, failures.size(), chunkCount);
+    }
+
+    public static class Failure {
+        private final int index;
+        private final Trade trade;
+        private final String reason;
+
+        Failure(int index, Trade trade, String reason) {
+            this.index = index;
+            this.trade = trade;
+            this.reason = reason;
+        }
+
+        public int getIndex() { return index; }
+        public Trade getTrade() { return trade; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "Row " + index + ": " + reason;
+        }
+    }
+}
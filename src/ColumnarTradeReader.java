@@ -0,0 +1,257 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads files written by {@link ColumnarTradeWriter}, one row group at a time.
+ *
+ * {@link #nextGroup()} decodes the next group into primitive column arrays that the
+ * accessors read without allocating, which is the fast path for jobs that aggregate over
+ * the file. {@link #forEachTrade(TradeHandler)} builds a Trade per row for everything else.
+ * Only one group is held in memory at a time.
+ */
+public class ColumnarTradeReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer group = ByteBuffer.allocate(0);
+
+    private final List<String> dictionary = new ArrayList<>();
+    private int[] tradeIds = new int[0];
+    private int[] epochDays = new int[0];
+    private int[] counterparties = new int[0];
+    private int[] commodities = new int[0];
+    private boolean[] sells = new boolean[0];
+    private double[] volumes = new double[0];
+    private double[] prices = new double[0];
+    private int[] versions = new int[0];
+    private int rowCount;
+    private long rowsRead;
+    private boolean finished;
+
+    public ColumnarTradeReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            readFully(8);
+            byte[] magic = new byte[4];
+            header.get(magic);
+            if (!Arrays.equals(magic, ColumnarTradeWriter.MAGIC)) {
+                throw new IOException(file + " is not a columnar trade file");
+            }
+            int version = header.getInt();
+            if (version != ColumnarTradeWriter.FORMAT_VERSION) {
+                throw new IOException("Unsupported columnar format version " + version);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the next row group. Returns false at the end of the file, after checking the
+     * row count in the trailer.
+     */
+    public boolean nextGroup() throws IOException {
+        if (finished) {
+            return false;
+        }
+        readFully(4);
+        int groupBytes = header.getInt();
+        if (groupBytes == 0) {
+            readFully(8);
+            long totalRows = header.getLong();
+            if (totalRows != rowsRead) {
+                throw new IOException("Trailer expects " + totalRows + " rows but " + rowsRead + " were read");
+            }
+            finished = true;
+            rowCount = 0;
+            return false;
+        }
+        if (groupBytes < 4) {
+            throw new IOException("Corrupt row group length " + groupBytes);
+        }
+        if (group.capacity() < groupBytes) {
+            group = ByteBuffer.allocate(groupBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        group.clear().limit(groupBytes);
+        while (group.hasRemaining()) {
+            if (channel.read(group) < 0) {
+                throw new EOFException("Truncated row group");
+            }
+        }
+        group.flip();
+        decodeGroup();
+        rowsRead += rowCount;
+        return true;
+    }
+
+    private void decodeGroup() throws IOException {
+        rowCount = group.getInt();
+        if (tradeIds.length < rowCount) {
+            tradeIds = new int[rowCount];
+            epochDays = new int[rowCount];
+            counterparties = new int[rowCount];
+            commodities = new int[rowCount];
+            sells = new boolean[rowCount];
+            volumes = new double[rowCount];
+            prices = new double[rowCount];
+            versions = new int[rowCount];
+        }
+        long newEntries = getVarint(group);
+        for (long i = 0; i < newEntries; i++) {
+            int length = (int) getVarint(group);
+            dictionary.add(new String(group.array(), group.position(), length, StandardCharsets.UTF_8));
+            group.position(group.position() + length);
+        }
+
+        decodeInts(tradeIds, ColumnarTradeWriter.ENCODING_DELTA_VARINT);
+        decodeInts(epochDays, ColumnarTradeWriter.ENCODING_DELTA_VARINT);
+        decodeInts(counterparties, ColumnarTradeWriter.ENCODING_VARINT);
+        decodeInts(commodities, ColumnarTradeWriter.ENCODING_VARINT);
+        int end = beginColumn(ColumnarTradeWriter.ENCODING_BITMAP);
+        for (int start = 0; start < rowCount; start += 8) {
+            int bits = group.get();
+            for (int i = start; i < Math.min(start + 8, rowCount); i++) {
+                sells[i] = (bits & (1 << (i - start))) != 0;
+            }
+        }
+        endColumn(end);
+        decodeDecimals(volumes);
+        decodeDecimals(prices);
+        decodeInts(versions, ColumnarTradeWriter.ENCODING_VARINT);
+        for (int i = 0; i < rowCount; i++) {
+            if (counterparties[i] >= dictionary.size() || commodities[i] >= dictionary.size()) {
+                throw new IOException("Dictionary ID out of range in row " + (rowsRead + i));
+            }
+        }
+    }
+
+    private void decodeInts(int[] values, byte expectedEncoding) throws IOException {
+        int end = beginColumn(expectedEncoding);
+        if (expectedEncoding == ColumnarTradeWriter.ENCODING_DELTA_VARINT) {
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                previous += unzigzag(getVarint(group));
+                values[i] = (int) previous;
+            }
+        } else {
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = (int) getVarint(group);
+            }
+        }
+        endColumn(end);
+    }
+
+    private void decodeDecimals(double[] values) throws IOException {
+        byte encoding = group.get(group.position());
+        int end = beginColumn(encoding);
+        if (encoding == ColumnarTradeWriter.ENCODING_CENTS_VARINT) {
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = unzigzag(getVarint(group)) / 100.0;
+            }
+        } else if (encoding == ColumnarTradeWriter.ENCODING_PLAIN_DOUBLE) {
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = group.getDouble();
+            }
+        } else {
+            throw new IOException("Unknown decimal encoding " + encoding);
+        }
+        endColumn(end);
+    }
+
+    // Reads a column header and returns where the column must end
+    private int beginColumn(byte expectedEncoding) throws IOException {
+        byte encoding = group.get();
+        if (encoding != expectedEncoding) {
+            throw new IOException("Expected column encoding " + expectedEncoding + " but found " + encoding);
+        }
+        int length = group.getInt();
+        return group.position() + length;
+    }
+
+    private void endColumn(int end) throws IOException {
+        if (group.position() != end) {
+            throw new IOException("Column length mismatch in row group ending at row " + (rowsRead + rowCount));
+        }
+    }
+
+    // Streams every remaining row as a Trade; returns the number of trades handed over
+    public long forEachTrade(TradeHandler handler) throws IOException, SQLException {
+        long visited = 0;
+        while (nextGroup()) {
+            for (int i = 0; i < rowCount; i++) {
+                visited++;
+                if (!handler.handle(getTrade(i))) {
+                    return visited;
+                }
+            }
+        }
+        return visited;
+    }
+
+    public int getRowCount() { return rowCount; }
+    public long getRowsRead() { return rowsRead; }
+
+    public int getTradeId(int row) { return tradeIds[checkRow(row)]; }
+    public int getEpochDay(int row) { return epochDays[checkRow(row)]; }
+    public String getCounterparty(int row) { return dictionary.get(counterparties[checkRow(row)]); }
+    public String getCommodity(int row) { return dictionary.get(commodities[checkRow(row)]); }
+    public boolean isSell(int row) { return sells[checkRow(row)]; }
+    public double getVolume(int row) { return volumes[checkRow(row)]; }
+    public double getPrice(int row) { return prices[checkRow(row)]; }
+    public int getVersion(int row) { return versions[checkRow(row)]; }
+
+    public Trade getTrade(int row) {
+        Trade trade = new Trade(getTradeId(row), getEpochDay(row), getCounterparty(row), getCommodity(row),
+                FixedPoint.toUnits(getVolume(row)), FixedPoint.toUnits(getPrice(row)), isSell(row) ? "SELL" : "BUY");
+        trade.setVersion(getVersion(row));
+        return trade;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        return row;
+    }
+
+    private void readFully(int bytes) throws IOException {
+        header.clear().limit(bytes);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new EOFException("Unexpected end of columnar trade file");
+            }
+        }
+        header.flip();
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
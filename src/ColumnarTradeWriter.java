@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes trades in a compact columnar binary format, read back by {@link ColumnarTradeReader}.
+ *
+ * <pre>
+ *   file      = "TRDC" int:formatVersion rowGroup* int:0 long:totalRows
+ *   rowGroup  = int:groupBytes int:rowCount dictionary column{8}
+ *   dictionary= varint:newEntries (varint:length utf8Bytes)*
+ *   column    = byte:encoding int:length bytes
+ * </pre>
+ *
+ * Rows are buffered in primitive arrays and written a row group at a time. The columns are
+ * TradeID and TradeDate (epoch day) as zigzag varint deltas, Counterparty and Commodity as
+ * varint IDs into a dictionary that each row group extends with the strings it first uses,
+ * TradeType as a bitmap, Volume and Price as zigzag varint cents when every value in the
+ * group is a whole number of cents (raw doubles otherwise), and Version as varints. Memory
+ * is fixed by the row group size plus the dictionary of distinct strings. All integers are
+ * little-endian.
+ */
+public class ColumnarTradeWriter extends TradeWriter {
+    static final byte[] MAGIC = { 'T', 'R', 'D', 'C' };
+    static final int FORMAT_VERSION = 1;
+    static final int COLUMN_COUNT = 8;
+    static final int DEFAULT_GROUP_ROWS = 1 << 16;
+
+    static final byte ENCODING_DELTA_VARINT = 1;
+    static final byte ENCODING_VARINT = 2;
+    static final byte ENCODING_BITMAP = 3;
+    static final byte ENCODING_CENTS_VARINT = 4;
+    static final byte ENCODING_PLAIN_DOUBLE = 5;
+
+    private final int groupRows;
+    private final int[] tradeIds;
+    private final int[] epochDays;
+    private final int[] counterparties;
+    private final int[] commodities;
+    private final boolean[] sells;
+    private final double[] volumes;
+    private final double[] prices;
+    private final int[] versions;
+    private int rows;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<byte[]> newEntries = new ArrayList<>();
+    // One scratch buffer per column, each sized for a full group of worst-case values
+    private final ByteBuffer[] columns = new ByteBuffer[COLUMN_COUNT];
+    private final byte[] encodings = new byte[COLUMN_COUNT];
+
+    public ColumnarTradeWriter(Path file) throws IOException {
+        this(file, DEFAULT_GROUP_ROWS);
+    }
+
+    public ColumnarTradeWriter(Path file, int groupRows) throws IOException {
+        super(file, DEFAULT_BUFFER_SIZE);
+        if (groupRows < 1) {
+            throw new IllegalArgumentException("Row group size must be positive: " + groupRows);
+        }
+        this.groupRows = groupRows;
+        this.tradeIds = new int[groupRows];
+        this.epochDays = new int[groupRows];
+        this.counterparties = new int[groupRows];
+        this.commodities = new int[groupRows];
+        this.sells = new boolean[groupRows];
+        this.volumes = new double[groupRows];
+        this.prices = new double[groupRows];
+        this.versions = new int[groupRows];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column] = ByteBuffer.allocate(groupRows * 10 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.put(MAGIC).putInt(FORMAT_VERSION);
+    }
+
+    @Override
+    protected void encode(Trade trade) throws IOException {
+        tradeIds[rows] = trade.getTradeId();
+        epochDays[rows] = trade.getTradeEpochDay();
+        counterparties[rows] = dictionaryId(trade.getCounterparty());
+        commodities[rows] = dictionaryId(trade.getCommodity());
+        sells[rows] = "SELL".equalsIgnoreCase(trade.getTradeType());
+        volumes[rows] = trade.getVolume();
+        prices[rows] = trade.getPrice();
+        versions[rows] = trade.getVersion();
+        if (++rows == groupRows) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (rows > 0) {
+            writeGroup();
+        }
+        ensure(12);
+        buffer.putInt(0).putLong(getRowCount());
+    }
+
+    private void writeGroup() throws IOException {
+        for (ByteBuffer column : columns) {
+            column.clear();
+        }
+        encodings[0] = ENCODING_DELTA_VARINT;
+        encodeDeltas(tradeIds, columns[0]);
+        encodings[1] = ENCODING_DELTA_VARINT;
+        encodeDeltas(epochDays, columns[1]);
+        encodings[2] = ENCODING_VARINT;
+        encodeVarints(counterparties, columns[2]);
+        encodings[3] = ENCODING_VARINT;
+        encodeVarints(commodities, columns[3]);
+        encodings[4] = ENCODING_BITMAP;
+        encodeBitmap(columns[4]);
+        encodings[5] = encodeDecimals(volumes, columns[5]);
+        encodings[6] = encodeDecimals(prices, columns[6]);
+        encodings[7] = ENCODING_VARINT;
+        encodeVarints(versions, columns[7]);
+
+        ByteBuffer entries = ByteBuffer.allocate(5 + newEntries.stream().mapToInt(e -> e.length + 5).sum());
+        putVarint(entries, newEntries.size());
+        for (byte[] entry : newEntries) {
+            putVarint(entries, entry.length);
+            entries.put(entry);
+        }
+        entries.flip();
+        newEntries.clear();
+
+        int groupBytes = 4 + entries.remaining();
+        for (ByteBuffer column : columns) {
+            groupBytes += 5 + column.position();
+        }
+        ensure(8);
+        buffer.putInt(groupBytes).putInt(rows);
+        put(entries);
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            ensure(5);
+            buffer.put(encodings[column]).putInt(columns[column].position());
+            columns[column].flip();
+            put(columns[column]);
+        }
+        rows = 0;
+    }
+
+    private void encodeDeltas(int[] values, ByteBuffer out) {
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            putVarint(out, zigzag(values[i] - previous));
+            previous = values[i];
+        }
+    }
+
+    private void encodeVarints(int[] values, ByteBuffer out) {
+        for (int i = 0; i < rows; i++) {
+            putVarint(out, values[i] & 0xFFFFFFFFL);
+        }
+    }
+
+    private void encodeBitmap(ByteBuffer out) {
+        for (int start = 0; start < rows; start += 8) {
+            int bits = 0;
+            for (int i = start; i < Math.min(start + 8, rows); i++) {
+                if (sells[i]) {
+                    bits |= 1 << (i - start);
+                }
+            }
+            out.put((byte) bits);
+        }
+    }
+
+    // Cents when every value in the group is exactly representable that way, else raw doubles
+    private byte encodeDecimals(double[] values, ByteBuffer out) {
+        for (int i = 0; i < rows; i++) {
+            double value = values[i];
+            if (!(Math.abs(value) < 1e13) || Math.round(value * 100) / 100.0 != value) {
+                for (int j = 0; j < rows; j++) {
+                    out.putDouble(values[j]);
+                }
+                return ENCODING_PLAIN_DOUBLE;
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            putVarint(out, zigzag(Math.round(values[i] * 100)));
+        }
+        return ENCODING_CENTS_VARINT;
+    }
+
+    private int dictionaryId(String value) {
+        Integer id = dictionary.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(value, id);
+            newEntries.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,318 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Bounded JDBC connection pool exposed as a {@link DataSource}.
+ *
+ * Idle connections sit in a lock-free deque and a semaphore caps the number of
+ * connections that can be borrowed at once, so the borrow/return fast path is a
+ * CAS on the semaphore plus a poll/push on the deque. Closing a borrowed
+ * connection returns it to the pool.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private final String url;
+    private final PoolConfig config;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Metrics
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder retiredCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public ConnectionPool(String url, PoolConfig config) throws SQLException {
+        if (config.getMinSize() < 0 || config.getMaxSize() < 1 || config.getMinSize() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: " + config);
+        }
+        this.url = url;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        try {
+            for (int i = 0; i < config.getMinSize(); i++) {
+                idle.offerLast(open());
+            }
+        } catch (SQLException | RuntimeException e) {
+            // The caller never gets a pool to close, so the connections opened so far would leak
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                retire(pooled);
+            }
+            throw e;
+        }
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getHousekeepingIntervalMs();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire() && !permits.tryAcquire(config.getConnectionTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLTimeoutException("Timed out after " + config.getConnectionTimeoutMs()
+                        + "ms waiting for a connection (" + getActiveConnections() + " active)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            // Most recently returned first: it is the one least likely to need validation
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                retire(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            borrowed.add(pooled);
+            borrowCount.increment();
+            return pooled.lease(config.getLeakDetectionThresholdMs() > 0 && config.isLeakStackTraces());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            Connection physical = pooled.getPhysical();
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            pooled.markReturned();
+            if (closed || isExpired(pooled) || totalConnections.get() > config.getMaxSize()) {
+                retire(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            retire(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        totalConnections.incrementAndGet();
+        createdCount.increment();
+        StatementCache statementCache = config.getStatementCacheSize() > 0
+                ? new StatementCache(physical, config.getStatementCacheSize(), statementHits, statementMisses)
+                : null;
+        return new PooledConnection(this, physical, statementCache);
+    }
+
+    private void retire(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        retiredCount.increment();
+        pooled.closePhysical();
+    }
+
+    private boolean isExpired(PooledConnection pooled) {
+        return System.currentTimeMillis() - pooled.getCreatedAt() > config.getMaxLifetimeMs();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (isExpired(pooled)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooled.getLastReturnedAt() < config.getValidationIdleMs()) {
+            return true;
+        }
+        try {
+            return pooled.getPhysical().isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanos.add(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // retry until we either win or someone recorded a longer wait
+        }
+    }
+
+    private void housekeep() {
+        try {
+            // Retire idle connections that have passed their max lifetime or fail validation
+            for (PooledConnection pooled : idle) {
+                if (!isUsable(pooled) && idle.remove(pooled)) {
+                    retire(pooled);
+                }
+            }
+
+            // Top the pool back up to its minimum size
+            while (!closed && totalConnections.get() < config.getMinSize()) {
+                idle.offerLast(open());
+            }
+
+            long threshold = config.getLeakDetectionThresholdMs();
+            if (threshold > 0) {
+                long now = System.currentTimeMillis();
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.isLeakReported() && now - pooled.getBorrowedAt() > threshold) {
+                        pooled.setLeakReported(true);
+                        leakCount.increment();
+                        reportLeak(pooled, now);
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            // An exception escaping a scheduled task cancels it, and housekeeping would silently stop
+            System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    // Without a recorded borrow site, the borrower's current stack usually shows what is holding on
+    private void reportLeak(PooledConnection pooled, long now) {
+        Thread borrower = pooled.getBorrower();
+        System.err.println("Possible connection leak: connection held for " + (now - pooled.getBorrowedAt())
+                + "ms by thread " + (borrower == null ? "?" : borrower.getName()));
+        Throwable site = pooled.getBorrowSite();
+        if (site != null) {
+            site.printStackTrace();
+        } else if (borrower != null) {
+            for (StackTraceElement element : borrower.getStackTrace()) {
+                System.err.println("\tat " + element);
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            retire(pooled);
+        }
+        // Borrowed connections are retired as they are returned
+    }
+
+    // Metrics
+    public int getActiveConnections() { return borrowed.size(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getTotalConnections() { return totalConnections.get(); }
+    public int getPendingThreads() { return permits.getQueueLength(); }
+    public long getBorrowCount() { return borrowCount.sum(); }
+    public long getTimeoutCount() { return timeoutCount.sum(); }
+    public long getCreatedCount() { return createdCount.sum(); }
+    public long getRetiredCount() { return retiredCount.sum(); }
+    public long getLeakCount() { return leakCount.sum(); }
+    public double getMaxWaitMillis() { return maxWaitNanos.get() / 1_000_000.0; }
+    public long getStatementCacheHits() { return statementHits.sum(); }
+    public long getStatementCacheMisses() { return statementMisses.sum(); }
+
+    public double getStatementCacheHitRatio() {
+        long hits = statementHits.sum();
+        long lookups = hits + statementMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum();
+        return borrows == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / borrows;
+    }
+
+    public PoolConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[active=%d idle=%d total=%d pending=%d borrows=%d avgWait=%.3fms maxWait=%.3fms timeouts=%d leaks=%d stmtHitRatio=%.2f]",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), getPendingThreads(),
+                getBorrowCount(), getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount(), getLeakCount(),
+                getStatementCacheHitRatio());
+    }
+
+    // DataSource plumbing
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured URL credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return null; }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {}
+
+    @Override
+    public void setLoginTimeout(int seconds) {}
+
+    @Override
+    public int getLoginTimeout() { return (int) (config.getConnectionTimeoutMs() / 1000); }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises the pool against whatever -Dtrading.db.url points at. An embedded
+ * database works, e.g. -Dtrading.db.url=jdbc:h2:mem:trades -Dtrading.db.driver=org.h2.Driver
+ */
+public class ConnectionPoolTest {
+    private static final String URL = System.getProperty("trading.db.url",
+        "jdbc:sqlserver://localhost:1433;databaseName=EnergyTradingDB;encrypt=false;integratedSecurity=true;");
+
+    public static void main(String[] args) {
+        System.out.println("Testing Connection Pool...");
+        System.out.println("================================");
+
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(1);
+        config.setMaxSize(4);
+        config.setConnectionTimeoutMs(500);
+        config.setLeakDetectionThresholdMs(0);
+
+        try (ConnectionPool pool = new ConnectionPool(URL, config)) {
+            // 1. Borrow and return
+            System.out.println("1. Testing borrow/return...");
+            Connection first = pool.getConnection();
+            check(pool.getActiveConnections() == 1, "one active connection after borrow");
+            first.close();
+            check(pool.getActiveConnections() == 0, "no active connections after return");
+            check(first.isClosed(), "returned lease reports closed");
+            try {
+                first.createStatement();
+                check(false, "returned lease rejects further use");
+            } catch (SQLException expected) {
+                System.out.println(" Returned lease rejects further use");
+            }
+
+            // 2. Pool never exceeds max size and times out when exhausted
+            System.out.println("\n2. Testing max size and borrow timeout...");
+            List<Connection> held = new ArrayList<>();
+            for (int i = 0; i < config.getMaxSize(); i++) {
+                held.add(pool.getConnection());
+            }
+            check(pool.getTotalConnections() == config.getMaxSize(), "pool grew to max size");
+            try {
+                pool.getConnection().close();
+                check(false, "borrow beyond max size times out");
+            } catch (SQLTimeoutException expected) {
+                System.out.println(" Borrow beyond max size timed out");
+            }
+            for (Connection connection : held) {
+                connection.close();
+            }
+
+            // A lease closed from two threads at once goes back to the pool once
+            for (int i = 0; i < 200; i++) {
+                Connection connection = pool.getConnection();
+                Thread closer = new Thread(() -> {
+                    try {
+                        connection.close();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                closer.start();
+                connection.close();
+                closer.join();
+            }
+            check(pool.getActiveConnections() == 0 && pool.getTotalConnections() <= config.getMaxSize(),
+                    "racing closes return a lease once");
+            for (int i = 0; i < config.getMaxSize(); i++) {
+                held.set(i, pool.getConnection());
+            }
+            try {
+                pool.getConnection().close();
+                check(false, "no extra permit was released by a racing close");
+            } catch (SQLTimeoutException expected) {
+                System.out.println(" No extra permit was released by a racing close");
+            }
+            for (Connection connection : held) {
+                connection.close();
+            }
+
+            // 3. Concurrent queries share the pool
+            System.out.println("\n3. Testing concurrent queries...");
+            int threads = 16;
+            int queriesPerThread = 50;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    int ok = 0;
+                    for (int q = 0; q < queriesPerThread; q++) {
+                        try (Connection connection = pool.getConnection();
+                             Statement st = connection.createStatement();
+                             ResultSet rs = st.executeQuery("SELECT 1")) {
+                            if (rs.next() && rs.getInt(1) == 1) {
+                                ok++;
+                            }
+                        }
+                    }
+                    return ok;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            check(total == threads * queriesPerThread, "all concurrent queries succeeded");
+            check(pool.getTotalConnections() <= config.getMaxSize(), "pool stayed within max size");
+            System.out.println("   " + pool);
+
+            // 4. Prepared statements are reused across borrows of the same connection
+            System.out.println("\n4. Testing statement cache...");
+            long hitsBefore = pool.getStatementCacheHits();
+            for (int i = 0; i < 10; i++) {
+                try (Connection connection = pool.getConnection();
+                     PreparedStatement ps = connection.prepareStatement("SELECT ?")) {
+                    ps.setInt(1, i);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        check(rs.next() && rs.getInt(1) == i, "cached statement returns row " + i);
+                    }
+                }
+            }
+            check(pool.getStatementCacheHits() > hitsBefore, "repeated SQL was served from the cache");
+            System.out.println("   " + pool);
+        } catch (Exception e) {
+            System.err.println(" Connection pool test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        try {
+            // 5. Leak detection, with and without borrow-site stack traces
+            System.out.println("\n5. Testing leak detection...");
+            check(!leakReport(false).contains("Connection borrowed here"), "no borrow site recorded by default");
+            String report = leakReport(true);
+            check(report.contains("Possible connection leak") && report.contains("Connection borrowed here")
+                    && report.contains("ConnectionPoolTest.leakReport"), "opt-in borrow site points at the borrower");
+
+            // 6. Max lifetime
+            System.out.println("\n6. Testing max lifetime...");
+            PoolConfig lifetimeConfig = quickConfig();
+            lifetimeConfig.setMaxLifetimeMs(200);
+            try (ConnectionPool pool = new ConnectionPool(URL, lifetimeConfig)) {
+                Connection physical;
+                try (Connection connection = pool.getConnection()) {
+                    physical = connection.unwrap(Connection.class);
+                }
+                Thread.sleep(300);
+                check(pool.getRetiredCount() == 1 && physical.isClosed(),
+                        "housekeeping retires an idle connection past its lifetime");
+                check(pool.getTotalConnections() == 1, "and tops the pool back up to its minimum");
+
+                Connection held = pool.getConnection();
+                Connection heldPhysical = held.unwrap(Connection.class);
+                Thread.sleep(300);
+                check(!heldPhysical.isClosed(), "a borrowed connection is not retired under its borrower");
+                held.close();
+                check(heldPhysical.isClosed() && pool.getIdleConnections() == 0, "it is retired when returned");
+            }
+
+            // 7. Idle validation
+            System.out.println("\n7. Testing idle validation...");
+            PoolConfig validationConfig = quickConfig();
+            validationConfig.setMinSize(0);
+            validationConfig.setValidationIdleMs(0);
+            validationConfig.setHousekeepingIntervalMs(60_000);
+            try (ConnectionPool pool = new ConnectionPool(URL, validationConfig)) {
+                Connection physical;
+                try (Connection connection = pool.getConnection()) {
+                    physical = connection.unwrap(Connection.class);
+                }
+                // Broken while idle, as a connection dropped by the server would be
+                physical.close();
+                check(pool.getIdleConnections() == 1, "broken connection is still in the idle list");
+                try (Connection connection = pool.getConnection();
+                     Statement st = connection.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT 1")) {
+                    check(rs.next() && pool.getRetiredCount() == 1 && pool.getCreatedCount() == 2,
+                            "borrow validates it, retires it and hands out a new connection");
+                }
+            }
+            validationConfig.setHousekeepingIntervalMs(50);
+            try (ConnectionPool pool = new ConnectionPool(URL, validationConfig)) {
+                Connection physical;
+                try (Connection connection = pool.getConnection()) {
+                    physical = connection.unwrap(Connection.class);
+                }
+                physical.close();
+                Thread.sleep(300);
+                check(pool.getIdleConnections() == 0 && pool.getRetiredCount() == 1,
+                        "housekeeping retires a broken idle connection without a borrow");
+            }
+
+            // 8. A failure while opening the minimum size
+            System.out.println("\n8. Testing a failed minimum fill...");
+            FailingDriver driver = new FailingDriver(2);
+            DriverManager.registerDriver(driver);
+            try {
+                PoolConfig fillConfig = quickConfig();
+                fillConfig.setMinSize(4);
+                fillConfig.setMaxSize(4);
+                try {
+                    new ConnectionPool(FailingDriver.PREFIX + URL, fillConfig).close();
+                    check(false, "pool creation fails when the driver does");
+                } catch (SQLException expected) {
+                    System.out.println(" Pool creation failed with the driver");
+                }
+                check(driver.opened.size() == 2, "two connections were opened before the failure");
+                for (Connection physical : driver.opened) {
+                    check(physical.isClosed(), "connection opened before the failure was closed");
+                }
+            } finally {
+                DriverManager.deregisterDriver(driver);
+            }
+
+            System.out.println("\n All tests passed! Connection pool is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Connection pool test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Short timings so the housekeeper runs many times within a test
+    private static PoolConfig quickConfig() {
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(1);
+        config.setMaxSize(2);
+        config.setConnectionTimeoutMs(500);
+        config.setHousekeepingIntervalMs(50);
+        config.setLeakDetectionThresholdMs(0);
+        return config;
+    }
+
+    // Holds a connection past the leak threshold and returns what the pool printed
+    private static String leakReport(boolean stackTraces) throws Exception {
+        PoolConfig config = quickConfig();
+        config.setLeakDetectionThresholdMs(100);
+        config.setLeakStackTraces(stackTraces);
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try (ConnectionPool pool = new ConnectionPool(URL, config)) {
+            System.setErr(new PrintStream(captured, true));
+            Connection connection = pool.getConnection();
+            Thread.sleep(400);
+            connection.close();
+            check(pool.getLeakCount() == 1, "a long-held connection is reported once (stack traces "
+                    + (stackTraces ? "on)" : "off)"));
+        } finally {
+            System.setErr(originalErr);
+        }
+        String report = captured.toString();
+        check(report.contains("by thread " + Thread.currentThread().getName()), "report names the borrowing thread");
+        return report;
+    }
+
+    // Opens real connections to the URL after its prefix until the limit, then fails like a refused login
+    private static class FailingDriver implements Driver {
+        static final String PREFIX = "jdbc:failing:";
+        final List<Connection> opened = new ArrayList<>();
+        private final int limit;
+
+        FailingDriver(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            if (opened.size() == limit) {
+                throw new SQLException("Connection refused after " + limit);
+            }
+            Connection connection = DriverManager.getConnection(url.substring(PREFIX.length()));
+            opened.add(connection);
+            return connection;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() { return 1; }
+
+        @Override
+        public int getMinorVersion() { return 0; }
+
+        @Override
+        public boolean jdbcCompliant() { return false; }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes trades as UTF-8 CSV with the columns
+ * TradeID,TradeDate,Counterparty,Commodity,Volume,Price,TradeType,Version.
+ *
+ * Numbers are written digit by digit and each distinct counterparty or commodity is
+ * encoded (and quoted if it contains a comma, quote or line break) only once, so a row
+ * costs no allocation. Volumes and prices that are whole cents are written with two
+ * decimals; anything else falls back to Double.toString, so every value reads back exactly.
+ */
+public class CsvTradeWriter extends TradeWriter {
+    static final String HEADER = "TradeID,TradeDate,Counterparty,Commodity,Volume,Price,TradeType,Version\n";
+
+    // Longest row that is not dominated by its strings: numbers, separators, date and type
+    private static final int MAX_FIXED_ROW_BYTES = 128;
+    private static final int MAX_CACHED_STRINGS = 1 << 16;
+    private static final byte[] BUY = "BUY".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SELL = "SELL".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, byte[]> encodedStrings = new HashMap<>();
+
+    public CsvTradeWriter(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTradeWriter(Path file, int bufferSize) throws IOException {
+        super(file, bufferSize);
+        buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    protected void encode(Trade trade) throws IOException {
+        byte[] counterparty = encoded(trade.getCounterparty());
+        byte[] commodity = encoded(trade.getCommodity());
+        ensure(MAX_FIXED_ROW_BYTES + counterparty.length + commodity.length);
+
+        putLong(trade.getTradeId());
+        buffer.put((byte) ',');
+        String date = trade.getTradeDate();
+        for (int i = 0; i < date.length(); i++) {
+            buffer.put((byte) date.charAt(i));
+        }
+        buffer.put((byte) ',').put(counterparty).put((byte) ',').put(commodity).put((byte) ',');
+        putDecimal(trade.getVolumeUnits());
+        buffer.put((byte) ',');
+        putDecimal(trade.getPriceUnits());
+        buffer.put((byte) ',').put("SELL".equalsIgnoreCase(trade.getTradeType()) ? SELL : BUY).put((byte) ',');
+        putLong(trade.getVersion());
+        buffer.put((byte) '\n');
+    }
+
+    private byte[] encoded(String value) {
+        byte[] bytes = encodedStrings.get(value);
+        if (bytes == null) {
+            bytes = quote(value).getBytes(StandardCharsets.UTF_8);
+            // Bounded so a column of unique values cannot grow the cache without limit
+            if (encodedStrings.size() < MAX_CACHED_STRINGS) {
+                encodedStrings.put(value, bytes);
+            }
+        }
+        return bytes;
+    }
+
+    static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    // Fixed-point hundredths, written exactly with two decimal places
+    private void putDecimal(long units) {
+        if (units < 0) {
+            buffer.put((byte) '-');
+            units = -units;
+        }
+        putLong(units / FixedPoint.SCALE);
+        long fraction = units % FixedPoint.SCALE;
+        buffer.put((byte) '.').put((byte) ('0' + fraction / 10)).put((byte) ('0' + fraction % 10));
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        // Digits are produced backwards, then reversed in place
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+    }
+}
@@ -1,35 +1,57 @@
+import javax.sql.DataSource;
 import java.sql.*;
 
 public class DatabaseConnection {
-    private static DatabaseConnection instance;
-    private Connection connection;
-    private static final String URL = 
-        "jdbc:sqlserver://localhost:1433;databaseName=EnergyTradingDB;encrypt=false;integratedSecurity=true;"; 
-    
+    private static volatile DatabaseConnection instance;
+    private final ConnectionPool pool;
+    private static final String DEFAULT_URL =
+        "jdbc:sqlserver://localhost:1433;databaseName=EnergyTradingDB;encrypt=false;integratedSecurity=true;";
+    private static final String DEFAULT_DRIVER = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+
+    // -Dtrading.db.url / -Dtrading.db.driver point the app at another database, e.g. an embedded one for tests
+    private static final String URL = System.getProperty("trading.db.url", DEFAULT_URL);
+    private static final String DRIVER = System.getProperty("trading.db.driver", DEFAULT_DRIVER);
+
     private DatabaseConnection() throws SQLException {
         try {
-            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-            System.out.println("JDBC Driver loaded successfully");
-            this.connection = DriverManager.getConnection(URL);
+            if (!DRIVER.isEmpty()) {
+                Class.forName(DRIVER);
+                System.out.println("JDBC Driver loaded successfully");
+            }
+            this.pool = new ConnectionPool(URL, PoolConfig.fromSystemProperties());
         } catch (ClassNotFoundException e) {
             throw new SQLException("JDBC Driver not found", e);
         }
     }
-    
-    public static synchronized DatabaseConnection getInstance() throws SQLException {
-        if (instance == null || instance.getConnection().isClosed()) {
-            instance = new DatabaseConnection();
+
+    public static DatabaseConnection getInstance() throws SQLException {
+        DatabaseConnection current = instance;
+        if (current == null || current.pool.isClosed()) {
+            synchronized (DatabaseConnection.class) {
+                current = instance;
+                if (current == null || current.pool.isClosed()) {
+                    current = new DatabaseConnection();
+                    instance = current;
+                }
+            }
         }
-        return instance;
+        return current;
+    }
+
+    public DataSource getDataSource() {
+        return pool;
     }
-    
-    public Connection getConnection() {
-        return connection;
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    // Borrows a connection from the pool; closing it returns it to the pool
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
     }
-    
+
     public void closeConnection() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            connection.close();
-        }
+        pool.close();
     }
 }
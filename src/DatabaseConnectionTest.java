@@ -38,7 +38,9 @@ public class DatabaseConnectionTest {
                 }
             }
             
-            // Close connection
+            // Return the connection and shut the pool down
+            connection.close();
+            System.out.println("\n4. Pool state: " + dbConnection.getPool());
             dbConnection.closeConnection();
             System.out.println("\n All tests passed! Database connection is working properly.");
             
@@ -0,0 +1,120 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Stands in for a repository that is still being opened on a background thread, so the
+ * application can show its menu before the database connection is up. Every call waits
+ * for the opening to finish and then goes to the real repository. If opening failed, every
+ * call throws that failure.
+ */
+public class DeferredTradeRepository implements TradeRepository {
+    private final CompletableFuture<TradeRepository> opening;
+
+    public DeferredTradeRepository(CompletableFuture<TradeRepository> opening) {
+        this.opening = opening;
+    }
+
+    // Waits for the repository to open
+    public TradeRepository await() throws SQLException {
+        try {
+            return opening.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new SQLException("Could not open the trade store: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the trade store", e);
+        }
+    }
+
+    // The opened repository, waiting if it is still opening; null if opening failed
+    public TradeRepository getIfOpened() {
+        try {
+            return await();
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    public boolean isOpen() {
+        return opening.isDone() && !opening.isCompletedExceptionally();
+    }
+
+    @Override
+    public boolean addTrade(Trade trade) throws SQLException {
+        return await().addTrade(trade);
+    }
+
+    @Override
+    public BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        return await().addTrades(trades, chunkSize);
+    }
+
+    @Override
+    public List<Trade> getAllTrades() throws SQLException {
+        return await().getAllTrades();
+    }
+
+    @Override
+    public int countTrades() throws SQLException {
+        return await().countTrades();
+    }
+
+    @Override
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException {
+        return await().getTradesPage(afterTradeId, pageSize);
+    }
+
+    @Override
+    public int forEachTrade(TradeHandler handler, int pageSize) throws SQLException {
+        return await().forEachTrade(handler, pageSize);
+    }
+
+    @Override
+    public int scanTrades(TradeHandler handler) throws SQLException {
+        return await().scanTrades(handler);
+    }
+
+    @Override
+    public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
+        return await().updateTrade(tradeId, newPrice, newVolume);
+    }
+
+    @Override
+    public boolean deleteTrade(int tradeId) throws SQLException {
+        return await().deleteTrade(tradeId);
+    }
+
+    @Override
+    public TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException {
+        return await().updateTradeIfVersion(tradeId, expectedVersion, newPrice, newVolume);
+    }
+
+    @Override
+    public Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException {
+        return await().deleteTradeIfVersion(tradeId, expectedVersion);
+    }
+
+    @Override
+    public List<Trade> searchTrades(String searchColumn, String searchValue) throws SQLException {
+        return await().searchTrades(searchColumn, searchValue);
+    }
+
+    @Override
+    public List<Trade> findTrades(TradeQuery query) throws SQLException {
+        return await().findTrades(query);
+    }
+
+    @Override
+    public Trade getTradeById(int tradeId) throws SQLException {
+        return await().getTradeById(tradeId);
+    }
+
+    @Override
+    public List<Trade> getTradesByIds(int[] tradeIds) throws SQLException {
+        return await().getTradesByIds(tradeIds);
+    }
+}
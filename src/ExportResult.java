@@ -0,0 +1,32 @@
+/**
+ * Outcome of a trade export.
+ */
+public class ExportResult {
+    private final TradeExporter.Format format;
+    private final long rowCount;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    public ExportResult(TradeExporter.Format format, long rowCount, long bytesWritten, long elapsedNanos) {
+        this.format = format;
+        this.rowCount = rowCount;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public TradeExporter.Format getFormat() { return format; }
+    public long getRowCount() { return rowCount; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getTradesPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s | Trades:%d | %.1f MB (%.1f bytes/trade) in %.2fs (%.0f trades/s)",
+                format, rowCount, bytesWritten / 1e6, rowCount == 0 ? 0 : (double) bytesWritten / rowCount,
+                elapsedNanos / 1e9, getTradesPerSecond());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Fixed-point money and quantities: a long counting hundredths, the scale of the
+ * DECIMAL(10,2) Volume and Price columns. Sums and differences are exact and cost the same
+ * as primitive math, with no BigDecimal per operation. Values become doubles only at the
+ * edges, for display and for callers that still pass doubles.
+ */
+public final class FixedPoint {
+    public static final int SCALE = 100;
+    // Largest value a DECIMAL(10,2) column holds, 99,999,999.99
+    public static final long MAX_DECIMAL_UNITS = 9_999_999_999L;
+
+    private FixedPoint() {}
+
+    // Nearest number of hundredths; any 2-decimal value converts exactly
+    public static long toUnits(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long units) {
+        return units / (double) SCALE;
+    }
+
+    /**
+     * Product of two fixed-point values, such as volume x price, rounded half away from zero
+     * to hundredths like SQL Server. Throws ArithmeticException only if the result itself
+     * does not fit in a long.
+     */
+    public static long multiply(long a, long b) {
+        long product = a * b;
+        if (Math.multiplyHigh(a, b) == (product >> 63)) {
+            return divideRounded(product);
+        }
+        // a * b / SCALE == (a / SCALE) * b + (a % SCALE) * b / SCALE, and both terms share a's sign
+        return Math.addExact(Math.multiplyExact(a / SCALE, b), divideRounded(Math.multiplyExact(a % SCALE, b)));
+    }
+
+    private static long divideRounded(long value) {
+        long quotient = value / SCALE;
+        long remainder = value % SCALE;
+        if (remainder >= SCALE / 2) {
+            quotient++;
+        } else if (remainder <= -SCALE / 2) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    public static boolean fitsDecimal(long units) {
+        return Math.abs(units) <= MAX_DECIMAL_UNITS;
+    }
+
+    // Plain decimal text with two places, e.g. 1234.50 or -0.05
+    public static String format(long units) {
+        return append(new StringBuilder(24), units).toString();
+    }
+
+    public static StringBuilder append(StringBuilder text, long units) {
+        if (units < 0) {
+            text.append('-');
+        }
+        long whole = Math.abs(units / SCALE);
+        long fraction = Math.abs(units % SCALE);
+        return text.append(whole).append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Outcome of a blotter file import. Rejected rows are written to the rejects file rather
+ * than kept here, since a large file can have many of them.
+ */
+public class IngestResult {
+    private long linesRead;
+    private long insertedCount;
+    private long rejectedCount;
+    private int segmentCount;
+    private long bytesRead;
+    private long elapsedNanos;
+
+    public long getLinesRead() { return linesRead; }
+    public long getInsertedCount() { return insertedCount; }
+    public long getRejectedCount() { return rejectedCount; }
+    public int getSegmentCount() { return segmentCount; }
+    public long getBytesRead() { return bytesRead; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getTradesPerSecond() {
+        return elapsedNanos == 0 ? 0 : insertedCount * 1e9 / elapsedNanos;
+    }
+
+    synchronized void add(long lines, long inserted, long rejected) {
+        linesRead += lines;
+        insertedCount += inserted;
+        rejectedCount += rejected;
+    }
+
+    void setSegmentCount(int segmentCount) { this.segmentCount = segmentCount; }
+    void setBytesRead(long bytesRead) { this.bytesRead = bytesRead; }
+    void setElapsedNanos(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("Lines:%d | Inserted:%d | Rejected:%d | Segments:%d | %.1f MB in %.2fs (%.0f trades/s)",
+                linesRead, insertedCount, rejectedCount, segmentCount, bytesRead / 1e6, elapsedNanos / 1e9,
+                getTradesPerSecond());
+    }
+}
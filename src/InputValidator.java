@@ -1,13 +1,12 @@
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.Scanner;
 
 public class InputValidator {
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-    
-    static {
-        DATE_FORMAT.setLenient(false);
-    }
+    // Immutable and thread-safe, unlike SimpleDateFormat; STRICT rejects dates such as 2024-02-30
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("uuuu-MM-dd").withResolverStyle(ResolverStyle.STRICT);
     
     public static int getValidInteger(Scanner scanner, String prompt) {
         while (true) {
@@ -24,7 +23,7 @@ public class InputValidator {
         while (true) {
             try {
                 System.out.print(prompt);
-                double value = Double.parseDouble(scanner.nextLine().trim());
+                double value = parseDouble(scanner.nextLine());
                 if (value <= 0) {
                     System.out.println("Value must be positive. Please try again.");
                     continue;
@@ -47,19 +46,79 @@ public class InputValidator {
         }
     }
     
+    // Optional prompts return null when the user just presses Enter
+    public static String getOptionalString(Scanner scanner, String prompt) {
+        System.out.print(prompt);
+        String input = scanner.nextLine().trim();
+        return input.isEmpty() ? null : input;
+    }
+    
+    public static String getOptionalDate(Scanner scanner, String prompt) {
+        while (true) {
+            String input = getOptionalString(scanner, prompt);
+            if (input == null || isValidDate(input)) {
+                return input;
+            }
+            System.out.println("Invalid date format. Please use YYYY-MM-DD format.");
+        }
+    }
+    
+    public static Double getOptionalDouble(Scanner scanner, String prompt) {
+        while (true) {
+            String input = getOptionalString(scanner, prompt);
+            if (input == null) {
+                return null;
+            }
+            try {
+                double value = parseDouble(input);
+                if (value < 0) {
+                    System.out.println("Value cannot be negative. Please try again.");
+                    continue;
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format. Please enter a valid decimal number.");
+            }
+        }
+    }
+    
     public static String getValidDate(Scanner scanner, String prompt) {
         while (true) {
             System.out.print(prompt);
             String input = scanner.nextLine().trim();
-            try {
-                DATE_FORMAT.parse(input);
+            if (isValidDate(input)) {
                 return input;
-            } catch (ParseException e) {
-                System.out.println("Invalid date format. Please use YYYY-MM-DD format.");
             }
+            System.out.println("Invalid date format. Please use YYYY-MM-DD format.");
         }
     }
     
+    public static boolean isValidDate(String input) {
+        try {
+            DATE_FORMAT.parse(input);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+    
+    // Same calendar rule as isValidDate, for callers that have already split out the fields
+    public static boolean isValidDate(int year, int month, int day) {
+        if (year < 1 || year > 9999 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        int daysInMonth = switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+        return day <= daysInMonth;
+    }
+    
+    public static double parseDouble(String input) {
+        return Double.parseDouble(input.trim());
+    }
+    
     public static String getValidTradeType(Scanner scanner, String prompt) {
         while (true) {
             System.out.print(prompt);
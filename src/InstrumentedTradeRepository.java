@@ -0,0 +1,232 @@
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Records latency, errors and rows for every call to the wrapped repository, under
+ * {@code repository.<method>} in {@link TradeMetrics}. Works for TradeDAO and the journal
+ * store alike.
+ */
+public class InstrumentedTradeRepository implements TradeRepository {
+    private static final LatencyRecorder ADD_TRADE = TradeMetrics.recorder("repository.addTrade");
+    private static final LatencyRecorder ADD_TRADES = TradeMetrics.recorder("repository.addTrades");
+    private static final LatencyRecorder GET_ALL = TradeMetrics.recorder("repository.getAllTrades");
+    private static final LatencyRecorder COUNT = TradeMetrics.recorder("repository.countTrades");
+    private static final LatencyRecorder GET_PAGE = TradeMetrics.recorder("repository.getTradesPage");
+    private static final LatencyRecorder FOR_EACH = TradeMetrics.recorder("repository.forEachTrade");
+    private static final LatencyRecorder SCAN = TradeMetrics.recorder("repository.scanTrades");
+    private static final LatencyRecorder UPDATE = TradeMetrics.recorder("repository.updateTrade");
+    private static final LatencyRecorder DELETE = TradeMetrics.recorder("repository.deleteTrade");
+    private static final LatencyRecorder UPDATE_IF_VERSION = TradeMetrics.recorder("repository.updateTradeIfVersion");
+    private static final LatencyRecorder DELETE_IF_VERSION = TradeMetrics.recorder("repository.deleteTradeIfVersion");
+    private static final LatencyRecorder SEARCH = TradeMetrics.recorder("repository.searchTrades");
+    private static final LatencyRecorder FIND = TradeMetrics.recorder("repository.findTrades");
+    private static final LatencyRecorder GET_BY_ID = TradeMetrics.recorder("repository.getTradeById");
+    private static final LatencyRecorder GET_BY_IDS = TradeMetrics.recorder("repository.getTradesByIds");
+
+    private final TradeRepository delegate;
+
+    public InstrumentedTradeRepository(TradeRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    public TradeRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean addTrade(Trade trade) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            boolean added = delegate.addTrade(trade);
+            rows = added ? 1 : 0;
+            return added;
+        } finally {
+            ADD_TRADE.record(start, rows);
+        }
+    }
+
+    @Override
+    public BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            BulkInsertResult result = delegate.addTrades(trades, chunkSize);
+            rows = result.getInsertedCount();
+            return result;
+        } finally {
+            ADD_TRADES.record(start, rows);
+        }
+    }
+
+    @Override
+    public List<Trade> getAllTrades() throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = delegate.getAllTrades();
+            rows = trades.size();
+            return trades;
+        } finally {
+            GET_ALL.record(start, rows);
+        }
+    }
+
+    @Override
+    public int countTrades() throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            int count = delegate.countTrades();
+            rows = 1;
+            return count;
+        } finally {
+            COUNT.record(start, rows);
+        }
+    }
+
+    @Override
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = delegate.getTradesPage(afterTradeId, pageSize);
+            rows = trades.size();
+            return trades;
+        } finally {
+            GET_PAGE.record(start, rows);
+        }
+    }
+
+    // Timed as one call, including the time spent in the handler
+    @Override
+    public int forEachTrade(TradeHandler handler, int pageSize) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            int count = delegate.forEachTrade(handler, pageSize);
+            rows = count;
+            return count;
+        } finally {
+            FOR_EACH.record(start, rows);
+        }
+    }
+
+    @Override
+    public int scanTrades(TradeHandler handler) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            int count = delegate.scanTrades(handler);
+            rows = count;
+            return count;
+        } finally {
+            SCAN.record(start, rows);
+        }
+    }
+
+    @Override
+    public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            boolean updated = delegate.updateTrade(tradeId, newPrice, newVolume);
+            rows = updated ? 1 : 0;
+            return updated;
+        } finally {
+            UPDATE.record(start, rows);
+        }
+    }
+
+    @Override
+    public boolean deleteTrade(int tradeId) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            boolean deleted = delegate.deleteTrade(tradeId);
+            rows = deleted ? 1 : 0;
+            return deleted;
+        } finally {
+            DELETE.record(start, rows);
+        }
+    }
+
+    @Override
+    public TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            TradeUpdate update = delegate.updateTradeIfVersion(tradeId, expectedVersion, newPrice, newVolume);
+            rows = update == null ? 0 : 1;
+            return update;
+        } finally {
+            UPDATE_IF_VERSION.record(start, rows);
+        }
+    }
+
+    @Override
+    public Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade deleted = delegate.deleteTradeIfVersion(tradeId, expectedVersion);
+            rows = deleted == null ? 0 : 1;
+            return deleted;
+        } finally {
+            DELETE_IF_VERSION.record(start, rows);
+        }
+    }
+
+    @Override
+    public List<Trade> searchTrades(String searchColumn, String searchValue) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = delegate.searchTrades(searchColumn, searchValue);
+            rows = trades.size();
+            return trades;
+        } finally {
+            SEARCH.record(start, rows);
+        }
+    }
+
+    @Override
+    public List<Trade> findTrades(TradeQuery query) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = delegate.findTrades(query);
+            rows = trades.size();
+            return trades;
+        } finally {
+            FIND.record(start, rows);
+        }
+    }
+
+    @Override
+    public Trade getTradeById(int tradeId) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade trade = delegate.getTradeById(tradeId);
+            rows = trade == null ? 0 : 1;
+            return trade;
+        } finally {
+            GET_BY_ID.record(start, rows);
+        }
+    }
+
+    @Override
+    public List<Trade> getTradesByIds(int[] tradeIds) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = delegate.getTradesByIds(tradeIds);
+            rows = trades.size();
+            return trades;
+        } finally {
+            GET_BY_IDS.record(start, rows);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing int-to-int hash map with linear probing. Keys must be non-zero
+ * (trade IDs start at 1); 0 marks an empty slot.
+ */
+public class IntIntMap {
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private final int missingValue;
+
+    public IntIntMap(int missingValue) {
+        this(16, missingValue);
+    }
+
+    public IntIntMap(int expectedSize, int missingValue) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.missingValue = missingValue;
+    }
+
+    public int get(int key) {
+        if (key == EMPTY) {
+            return missingValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public void put(int key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    public int remove(int key) {
+        if (key == EMPTY) {
+            return missingValue;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return missingValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot];
+        keys[slot] = EMPTY;
+        size--;
+
+        // Re-insert the rest of the probe run so lookups never stop early at the hole
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int key2 = keys[next];
+            int value2 = values[next];
+            keys[next] = EMPTY;
+            size--;
+            put(key2, value2);
+        }
+        return removed;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            if (keys[slot] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Keys in no particular order
+    public int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
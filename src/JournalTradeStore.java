@@ -0,0 +1,665 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local trade store backed by a memory-mapped, append-only journal of fixed-width records.
+ *
+ * Every insert, update and delete appends one 40-byte record; updates append a new version
+ * of the trade and deletes append a tombstone. Counterparty and commodity strings are stored
+ * once in a side dictionary file and referenced by int ID. On startup the journal is replayed
+ * into an ID-to-record index; reads then go straight to the mapped buffer. Superseded records
+ * are reclaimed by an in-place compaction that runs periodically once they outnumber live ones.
+ *
+ * Record layout (little-endian):
+ * <pre>
+ *  0 status (0 = end of journal, 1 = live, 2 = tombstone)   1 trade type (0 = BUY, 1 = SELL)
+ *  4 trade ID      8 trade date (epoch day)   12 counterparty ID   16 commodity ID
+ * 20 version      24 volume (double)          32 price (double)
+ * </pre>
+ * The status byte is written last, so a record torn by a crash reads as the end of the journal.
+ */
+public class JournalTradeStore implements TradeRepository, AutoCloseable {
+    static final int RECORD_SIZE = 40;
+    private static final int MAGIC = 0x54524A31;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final long INITIAL_MAP_SIZE = 16L << 20;
+    private static final int MIN_DEAD_FOR_COMPACTION = 1024;
+
+    private static final byte STATUS_END = 0;
+    private static final byte STATUS_LIVE = 1;
+    private static final byte STATUS_TOMBSTONE = 2;
+
+    private static final int OFFSET_TYPE = 1;
+    private static final int OFFSET_ID = 4;
+    private static final int OFFSET_DATE = 8;
+    private static final int OFFSET_COUNTERPARTY = 12;
+    private static final int OFFSET_COMMODITY = 16;
+    // Journals written before versioning have 0 here, which is treated as a valid version
+    private static final int OFFSET_VERSION = 20;
+    private static final int OFFSET_VOLUME = 24;
+    private static final int OFFSET_PRICE = 32;
+
+    private final Path journalPath;
+    private final Path dictionaryPath;
+    private final boolean syncWrites;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService compactor;
+
+    private FileChannel journalChannel;
+    private MappedByteBuffer journal;
+    private FileChannel dictionaryChannel;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private final IntIntMap index = new IntIntMap(1024, -1);
+    private final IntList liveIds = new IntList(1024);
+    private int recordCount;
+    private int deadRecords;
+    private int nextTradeId = 1;
+
+    public JournalTradeStore(Path directory) throws SQLException {
+        this(directory, Boolean.getBoolean("trading.journal.sync"),
+                Long.getLong("trading.journal.compactIntervalMs", 60_000));
+    }
+
+    /**
+     * @param syncWrites         force each write to disk before returning
+     * @param compactIntervalMs  how often to check whether compaction is worthwhile (0 = never)
+     */
+    public JournalTradeStore(Path directory, boolean syncWrites, long compactIntervalMs) throws SQLException {
+        this.journalPath = directory.resolve("trades.journal");
+        this.dictionaryPath = directory.resolve("trades.dict");
+        this.syncWrites = syncWrites;
+
+        try {
+            Files.createDirectories(directory);
+            openDictionary();
+            openJournal();
+        } catch (IOException e) {
+            throw new SQLException("Cannot open trade journal in " + directory, e);
+        }
+        replay();
+
+        if (compactIntervalMs > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactIfWorthwhile, compactIntervalMs, compactIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    @Override
+    public boolean addTrade(Trade trade) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            append(trade);
+            sync();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        BulkInsertResult result = new BulkInsertResult();
+        lock.writeLock().lock();
+        try {
+            int row = 0;
+            int inChunk = 0;
+            for (Trade trade : trades) {
+                try {
+                    append(trade);
+                    result.addInserted(1);
+                } catch (IllegalArgumentException e) {
+                    result.addFailure(row, trade, e.getMessage());
+                }
+                row++;
+                if (++inChunk == chunkSize) {
+                    result.addChunk();
+                    sync();
+                    inChunk = 0;
+                }
+            }
+            if (inChunk > 0) {
+                result.addChunk();
+                sync();
+            }
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Trade> getAllTrades() throws SQLException {
+        return getTradesPage(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int countTrades() {
+        lock.readLock().lock();
+        try {
+            return liveIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) {
+        lock.readLock().lock();
+        try {
+            int from = liveIds.upperBound(afterTradeId);
+            int to = (int) Math.min(liveIds.size(), (long) from + pageSize);
+            List<Trade> trades = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                trades.add(decode(index.get(liveIds.get(i))));
+            }
+            return trades;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int record = index.get(tradeId);
+            if (record < 0) {
+                return false;
+            }
+            appendUpdate(record, tradeId, newPrice, newVolume);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int record = index.get(tradeId);
+            if (record < 0 || journal.getInt(positionOf(record) + OFFSET_VERSION) != expectedVersion) {
+                return null;
+            }
+            Trade before = decode(record);
+            return new TradeUpdate(before, decode(appendUpdate(record, tradeId, newPrice, newVolume)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends the next version of the trade at record and returns the new record number
+    private int appendUpdate(int record, int tradeId, double newPrice, double newVolume) throws SQLException {
+        int position = positionOf(record);
+        int target = beginRecord();
+        journal.put(target + OFFSET_TYPE, journal.get(position + OFFSET_TYPE));
+        journal.putInt(target + OFFSET_ID, tradeId);
+        journal.putInt(target + OFFSET_DATE, journal.getInt(position + OFFSET_DATE));
+        journal.putInt(target + OFFSET_COUNTERPARTY, journal.getInt(position + OFFSET_COUNTERPARTY));
+        journal.putInt(target + OFFSET_COMMODITY, journal.getInt(position + OFFSET_COMMODITY));
+        journal.putInt(target + OFFSET_VERSION, journal.getInt(position + OFFSET_VERSION) + 1);
+        // Rounded to hundredths like an insert, so filters see what readers see
+        journal.putDouble(target + OFFSET_VOLUME, FixedPoint.toDouble(FixedPoint.toUnits(newVolume)));
+        journal.putDouble(target + OFFSET_PRICE, FixedPoint.toDouble(FixedPoint.toUnits(newPrice)));
+        int newRecord = commitRecord(target, STATUS_LIVE);
+        index.put(tradeId, newRecord);
+        deadRecords++;
+        sync();
+        return newRecord;
+    }
+
+    @Override
+    public boolean deleteTrade(int tradeId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (index.get(tradeId) < 0) {
+                return false;
+            }
+            appendTombstone(tradeId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int record = index.get(tradeId);
+            if (record < 0 || journal.getInt(positionOf(record) + OFFSET_VERSION) != expectedVersion) {
+                return null;
+            }
+            Trade deleted = decode(record);
+            appendTombstone(tradeId);
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void appendTombstone(int tradeId) throws SQLException {
+        int target = beginRecord();
+        journal.putInt(target + OFFSET_ID, tradeId);
+        commitRecord(target, STATUS_TOMBSTONE);
+        index.remove(tradeId);
+        liveIds.removeSorted(tradeId);
+        // Both the last version and the tombstone itself are now garbage
+        deadRecords += 2;
+        sync();
+    }
+
+    @Override
+    public List<Trade> searchTrades(String searchColumn, String searchValue) {
+        int offset;
+        if (searchColumn.equals("Counterparty")) {
+            offset = OFFSET_COUNTERPARTY;
+        } else if (searchColumn.equals("Commodity")) {
+            offset = OFFSET_COMMODITY;
+        } else {
+            throw new IllegalArgumentException("Unsupported search column: " + searchColumn);
+        }
+        String term = searchValue.toLowerCase(Locale.ROOT);
+
+        lock.readLock().lock();
+        try {
+            // Match each distinct string once, then compare dictionary IDs record by record
+            boolean[] matches = new boolean[dictionary.size()];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = dictionary.get(i).toLowerCase(Locale.ROOT).contains(term);
+            }
+            List<Trade> trades = new ArrayList<>();
+            for (int i = 0; i < liveIds.size(); i++) {
+                int position = positionOf(index.get(liveIds.get(i)));
+                if (matches[journal.getInt(position + offset)]) {
+                    trades.add(decodeAt(position));
+                }
+            }
+            return trades;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters on the raw records: text criteria are resolved once per dictionary string and
+     * dates compared as epoch days, so only matching trades are decoded. Records are visited
+     * in TradeID order (backwards for a descending TradeID sort), so such queries stop at
+     * their limit; other sorts with a limit keep only the best rows in a bounded heap.
+     */
+    @Override
+    public List<Trade> findTrades(TradeQuery query) {
+        int fromDay = query.getFromEpochDay();
+        int toDay = query.getToEpochDay();
+        int limit = query.getLimit();
+        boolean idOrder = query.getSortField() == TradeQuery.SortField.TRADE_ID;
+        boolean backwards = idOrder && query.isDescending();
+        // Head of the heap is the worst row kept so far
+        PriorityQueue<Trade> top = !idOrder && limit > 0
+                ? new PriorityQueue<>(limit + 1, query.comparator().reversed())
+                : null;
+
+        List<Trade> trades = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            boolean[] commodities = new boolean[dictionary.size()];
+            boolean[] counterparties = new boolean[dictionary.size()];
+            for (int i = 0; i < commodities.length; i++) {
+                commodities[i] = query.matchesCommodity(dictionary.get(i));
+                counterparties[i] = query.matchesCounterparty(dictionary.get(i));
+            }
+            int count = liveIds.size();
+            for (int n = 0; n < count; n++) {
+                int position = positionOf(index.get(liveIds.get(backwards ? count - 1 - n : n)));
+                int day = journal.getInt(position + OFFSET_DATE);
+                if (day < fromDay || day > toDay
+                        || !commodities[journal.getInt(position + OFFSET_COMMODITY)]
+                        || !counterparties[journal.getInt(position + OFFSET_COUNTERPARTY)]
+                        || !query.matchesTradeType(journal.get(position + OFFSET_TYPE) == 1 ? "SELL" : "BUY")
+                        || !query.matchesVolume(journal.getDouble(position + OFFSET_VOLUME))
+                        || !query.matchesPrice(journal.getDouble(position + OFFSET_PRICE))) {
+                    continue;
+                }
+                if (top != null) {
+                    top.add(decodeAt(position));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                    continue;
+                }
+                trades.add(decodeAt(position));
+                if (idOrder && trades.size() == limit) {
+                    return trades;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (top != null) {
+            trades.addAll(top);
+        }
+        if (!idOrder) {
+            trades.sort(query.comparator());
+        }
+        return trades;
+    }
+
+    @Override
+    public Trade getTradeById(int tradeId) {
+        lock.readLock().lock();
+        try {
+            int record = index.get(tradeId);
+            return record < 0 ? null : decode(record);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Trade> getTradesByIds(int[] tradeIds) {
+        int[] sorted = tradeIds.clone();
+        Arrays.sort(sorted);
+        List<Trade> trades = new ArrayList<>(sorted.length);
+        lock.readLock().lock();
+        try {
+            for (int tradeId : sorted) {
+                int record = index.get(tradeId);
+                if (record >= 0) {
+                    trades.add(decode(record));
+                }
+            }
+            return trades;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the journal in place, keeping only the current version of each live trade.
+     * Records only ever move towards the start of the file, so a crash part-way through
+     * leaves at worst duplicate copies of live records, which replay resolves.
+     */
+    public void compact() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int write = 0;
+            byte[] record = new byte[RECORD_SIZE];
+            for (int read = 0; read < recordCount; read++) {
+                int position = positionOf(read);
+                if (journal.get(position) != STATUS_LIVE) {
+                    continue;
+                }
+                int tradeId = journal.getInt(position + OFFSET_ID);
+                if (index.get(tradeId) != read) {
+                    continue;
+                }
+                if (write != read) {
+                    journal.get(position, record);
+                    journal.put(positionOf(write), record);
+                    index.put(tradeId, write);
+                }
+                write++;
+            }
+            for (int i = write; i < recordCount; i++) {
+                journal.put(positionOf(i), STATUS_END);
+            }
+            recordCount = write;
+            deadRecords = 0;
+            journal.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfWorthwhile() {
+        try {
+            boolean worthwhile;
+            lock.readLock().lock();
+            try {
+                worthwhile = deadRecords >= MIN_DEAD_FOR_COMPACTION && deadRecords > liveIds.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (worthwhile) {
+                compact();
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Journal compaction failed: " + e.getMessage());
+        }
+    }
+
+    public int getRecordCount() { return recordCount; }
+    public int getDeadRecordCount() { return deadRecords; }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            journal.force();
+            journalChannel.close();
+            dictionaryChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing trade journal: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(Trade trade) throws SQLException {
+        int epochDay = trade.getTradeEpochDay();
+        if (epochDay == TradeDates.NO_DATE) {
+            throw new IllegalArgumentException("Trade has no trade date");
+        }
+        int counterpartyId = dictionaryId(trade.getCounterparty());
+        int commodityId = dictionaryId(trade.getCommodity());
+        int tradeId = nextTradeId++;
+
+        int target = beginRecord();
+        journal.put(target + OFFSET_TYPE, (byte) ("SELL".equalsIgnoreCase(trade.getTradeType()) ? 1 : 0));
+        journal.putInt(target + OFFSET_ID, tradeId);
+        journal.putInt(target + OFFSET_DATE, epochDay);
+        journal.putInt(target + OFFSET_COUNTERPARTY, counterpartyId);
+        journal.putInt(target + OFFSET_COMMODITY, commodityId);
+        journal.putInt(target + OFFSET_VERSION, 1);
+        journal.putDouble(target + OFFSET_VOLUME, trade.getVolume());
+        journal.putDouble(target + OFFSET_PRICE, trade.getPrice());
+        index.put(tradeId, commitRecord(target, STATUS_LIVE));
+        liveIds.addSorted(tradeId);
+        // The header remembers the next ID so deleted IDs are never reused after compaction
+        journal.putInt(8, nextTradeId);
+        trade.setTradeId(tradeId);
+        trade.setVersion(1);
+    }
+
+    // Returns the buffer position of the next record slot, growing the mapping if needed
+    private int beginRecord() throws SQLException {
+        long end = HEADER_SIZE + (long) (recordCount + 1) * RECORD_SIZE;
+        if (end > journal.capacity()) {
+            long newSize = Math.min((long) journal.capacity() * 2, Integer.MAX_VALUE);
+            if (end > newSize) {
+                throw new SQLException("Trade journal is full (" + recordCount + " records); compact it first");
+            }
+            try {
+                journal.force();
+                journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+                journal.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new SQLException("Cannot grow trade journal", e);
+            }
+        }
+        return positionOf(recordCount);
+    }
+
+    private int commitRecord(int position, byte status) {
+        journal.put(position, status);
+        return recordCount++;
+    }
+
+    private void sync() {
+        if (syncWrites) {
+            journal.force();
+        }
+    }
+
+    private int dictionaryId(String value) throws SQLException {
+        Integer id = dictionaryIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        try {
+            while (entry.hasRemaining()) {
+                dictionaryChannel.write(entry);
+            }
+            if (syncWrites) {
+                dictionaryChannel.force(false);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Cannot write trade dictionary", e);
+        }
+        id = dictionary.size();
+        dictionary.add(value);
+        dictionaryIds.put(value, id);
+        return id;
+    }
+
+    private Trade decode(int record) {
+        return decodeAt(positionOf(record));
+    }
+
+    private Trade decodeAt(int position) {
+        // Records keep volume and price as doubles; 2-decimal values convert back exactly
+        Trade trade = new Trade(
+            journal.getInt(position + OFFSET_ID),
+            journal.getInt(position + OFFSET_DATE),
+            dictionary.get(journal.getInt(position + OFFSET_COUNTERPARTY)),
+            dictionary.get(journal.getInt(position + OFFSET_COMMODITY)),
+            FixedPoint.toUnits(journal.getDouble(position + OFFSET_VOLUME)),
+            FixedPoint.toUnits(journal.getDouble(position + OFFSET_PRICE)),
+            journal.get(position + OFFSET_TYPE) == 1 ? "SELL" : "BUY"
+        );
+        trade.setVersion(journal.getInt(position + OFFSET_VERSION));
+        return trade;
+    }
+
+    private static int positionOf(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private void openDictionary() throws IOException {
+        dictionaryChannel = FileChannel.open(dictionaryPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ByteBuffer contents = ByteBuffer.allocate((int) dictionaryChannel.size());
+        while (contents.hasRemaining() && dictionaryChannel.read(contents) >= 0) {
+            // keep reading until the buffer is full
+        }
+        contents.flip();
+
+        long validEnd = 0;
+        while (contents.remaining() >= 4) {
+            int length = contents.getInt();
+            if (length < 0 || length > contents.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            contents.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            dictionaryIds.put(value, dictionary.size());
+            dictionary.add(value);
+            validEnd = contents.position();
+        }
+        // Drop a partially written trailing entry
+        dictionaryChannel.truncate(validEnd);
+        dictionaryChannel.position(validEnd);
+    }
+
+    private void openJournal() throws IOException {
+        journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long existing = journalChannel.size();
+        long mapSize = INITIAL_MAP_SIZE;
+        while (mapSize < existing) {
+            mapSize *= 2;
+        }
+        journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(mapSize, Integer.MAX_VALUE));
+        journal.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (existing == 0) {
+            journal.putInt(0, MAGIC);
+            journal.putInt(4, FORMAT_VERSION);
+            journal.putInt(8, 1);
+        } else if (journal.getInt(0) != MAGIC) {
+            throw new IOException("Not a trade journal: " + journalPath);
+        } else if (journal.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported trade journal version " + journal.getInt(4));
+        }
+    }
+
+    private void replay() {
+        nextTradeId = Math.max(1, journal.getInt(8));
+        int record = 0;
+        while (positionOf(record) + RECORD_SIZE <= journal.capacity()) {
+            int position = positionOf(record);
+            byte status = journal.get(position);
+            if (status == STATUS_END) {
+                break;
+            }
+            int tradeId = journal.getInt(position + OFFSET_ID);
+            if (status == STATUS_LIVE) {
+                if (index.get(tradeId) >= 0) {
+                    deadRecords++;
+                }
+                index.put(tradeId, record);
+            } else {
+                if (index.remove(tradeId) >= 0) {
+                    deadRecords++;
+                }
+                deadRecords++;
+            }
+            nextTradeId = Math.max(nextTradeId, tradeId + 1);
+            record++;
+        }
+        recordCount = record;
+
+        int[] ids = index.keys();
+        Arrays.sort(ids);
+        for (int tradeId : ids) {
+            liveIds.add(tradeId);
+        }
+    }
+}
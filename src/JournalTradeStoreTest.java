@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Exercises the journal store in a temporary directory: CRUD, replay after reopen and
+ * compaction. Needs no database.
+ */
+public class JournalTradeStoreTest {
+    public static void main(String[] args) {
+        System.out.println("Testing Trade Journal...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("trade-journal-test");
+
+            // 1. Basic operations
+            System.out.println("1. Testing add/update/delete...");
+            int keptId;
+            int deletedId;
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                Trade kept = new Trade("2024-01-15", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+                Trade deleted = new Trade("2024-01-16", "XYZ Trading Ltd", "Natural Gas", 500, 3.25, "SELL");
+                store.addTrade(kept);
+                store.addTrade(deleted);
+                keptId = kept.getTradeId();
+                deletedId = deleted.getTradeId();
+                check(keptId == 1 && deletedId == 2, "trade IDs assigned in order");
+
+                check(store.updateTrade(keptId, 80.0, 900), "update existing trade");
+                check(!store.updateTrade(999, 1, 1), "update of unknown trade is rejected");
+                check(store.deleteTrade(deletedId), "delete existing trade");
+                check(store.getTradeById(deletedId) == null, "deleted trade is gone");
+
+                Trade updated = store.getTradeById(keptId);
+                check(updated.getPrice() == 80.0 && updated.getVolume() == 900, "update is visible");
+                check(store.searchTrades("Counterparty", "abc").size() == 1, "case-insensitive search");
+            }
+
+            // 2. Replay
+            System.out.println("\n2. Testing replay after reopen...");
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                check(store.countTrades() == 1, "one live trade after replay");
+                Trade replayed = store.getTradeById(keptId);
+                check(replayed != null && replayed.getPrice() == 80.0, "latest version replayed");
+                check("Crude Oil".equals(replayed.getCommodity()), "dictionary strings replayed");
+
+                Trade next = new Trade("2024-01-17", "Global Power Inc", "Coal", 2000, 45, "BUY");
+                store.addTrade(next);
+                check(next.getTradeId() == 3, "IDs continue after replay");
+            }
+
+            // 3. Compaction
+            System.out.println("\n3. Testing compaction...");
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                List<Trade> bulk = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    bulk.add(new Trade("2024-02-01", "Counterparty " + (i % 10), "Electricity", 10 + i, 50, "BUY"));
+                }
+                store.addTrades(bulk, 100);
+                for (int i = 0; i < 1000; i += 2) {
+                    store.deleteTrade(bulk.get(i).getTradeId());
+                }
+                int before = store.getRecordCount();
+                store.compact();
+                check(store.getRecordCount() < before, "compaction reclaimed records");
+                check(store.getRecordCount() == store.countTrades(), "only live records remain");
+                check(store.getTradeById(bulk.get(1).getTradeId()) != null, "live trade survives compaction");
+            }
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                check(store.countTrades() == 502, "compacted journal replays");
+                Trade next = new Trade("2024-02-02", "Late Trader", "Coal", 1, 1, "SELL");
+                store.addTrade(next);
+                check(next.getTradeId() == 1004, "deleted IDs are not reused after compaction");
+            }
+
+            System.out.println("\n All tests passed! Trade journal is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Trade journal test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses a flat JSON object, such as an API request body, into field name to value text.
+ * Strings are unescaped; numbers, booleans and null are returned as written (null as a
+ * Java null). Nested objects and arrays are rejected with IllegalArgumentException.
+ */
+public final class JsonObjectParser {
+    private final String json;
+    private int position;
+
+    private JsonObjectParser(String json) {
+        this.json = json;
+    }
+
+    public static Map<String, String> parse(String json) {
+        return new JsonObjectParser(json).parseObject();
+    }
+
+    private Map<String, String> parseObject() {
+        Map<String, String> fields = new HashMap<>();
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return finish(fields);
+        }
+        while (true) {
+            skipWhitespace();
+            String name = parseString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            fields.put(name, parseValue());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return finish(fields);
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private Map<String, String> finish(Map<String, String> fields) {
+        skipWhitespace();
+        if (position != json.length()) {
+            throw error("Unexpected trailing content");
+        }
+        return fields;
+    }
+
+    private String parseValue() {
+        char c = peek();
+        if (c == '"') {
+            return parseString();
+        }
+        if (c == '{' || c == '[') {
+            throw error("Nested values are not supported");
+        }
+        int start = position;
+        while (position < json.length() && "+-.eE0123456789truefalsn".indexOf(json.charAt(position)) >= 0) {
+            position++;
+        }
+        String literal = json.substring(start, position);
+        if (literal.isEmpty()) {
+            throw error("Expected a value");
+        }
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (!literal.equals("true") && !literal.equals("false")) {
+            try {
+                Double.parseDouble(literal);
+            } catch (NumberFormatException e) {
+                throw error("Invalid literal '" + literal + "'");
+            }
+        }
+        return literal;
+    }
+
+    private String parseString() {
+        expect('"');
+        StringBuilder value = null;
+        int start = position;
+        while (true) {
+            if (position >= json.length()) {
+                throw error("Unterminated string");
+            }
+            char c = json.charAt(position++);
+            if (c == '"') {
+                return value == null ? json.substring(start, position - 1) : value.toString();
+            }
+            if (c != '\\') {
+                if (value != null) {
+                    value.append(c);
+                }
+                continue;
+            }
+            // First escape: copy what has been scanned so far
+            if (value == null) {
+                value = new StringBuilder(json.substring(start, position - 1));
+            }
+            char escaped = next();
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    if (position + 4 > json.length()) {
+                        throw error("Truncated unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                }
+                default -> throw error("Invalid escape '\\" + escaped + "'");
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= json.length()) {
+            throw error("Unexpected end of input");
+        }
+        return json.charAt(position);
+    }
+
+    private char next() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid JSON at offset " + position + ": " + message);
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming JSON writer that encodes straight into a byte buffer and flushes it to an
+ * OutputStream when full. Integers are written digit by digit and ASCII strings byte by
+ * byte, so writing a trade allocates nothing beyond the formatting of its two doubles.
+ * Not thread-safe; use one writer per response.
+ */
+public class JsonWriter implements AutoCloseable {
+    private static final int MAX_DEPTH = 32;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    // Per nesting level: whether the next value needs a leading comma
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separate();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            separate();
+            writeLong((long) value);
+            writeAscii(".0");
+            return this;
+        }
+        separate();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separate();
+        writeAscii("null");
+        return this;
+    }
+
+    // Writes the trade as an object with the same field names the API accepts
+    public JsonWriter trade(Trade trade) throws IOException {
+        return beginObject()
+                .name("tradeId").value(trade.getTradeId())
+                .name("tradeDate").value(trade.getTradeDate())
+                .name("counterparty").value(trade.getCounterparty())
+                .name("commodity").value(trade.getCommodity())
+                .name("volume").value(trade.getVolume())
+                .name("price").value(trade.getPrice())
+                .name("tradeType").value(trade.getTradeType())
+                .name("version").value(trade.getVersion())
+                .endObject();
+    }
+
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        writeByte(bracket);
+        needsComma[++depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open JSON object or array");
+        }
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            writeByte(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) throws IOException {
+        writeByte('\\');
+        switch (c) {
+            case '\n' -> writeByte('n');
+            case '\r' -> writeByte('r');
+            case '\t' -> writeByte('t');
+            case '\b' -> writeByte('b');
+            case '\f' -> writeByte('f');
+            default -> {
+                writeAscii("u00");
+                writeByte(HEX[c >> 4]);
+                writeByte(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        if (position + 20 > buffer.length) {
+            flushBuffer();
+        }
+        // Digits are produced backwards, then reversed in place
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
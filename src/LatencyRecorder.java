@@ -0,0 +1,205 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count, rows and a latency histogram for one operation.
+ *
+ * The histogram is log-linear like HdrHistogram: each power of two is split into 16 equal
+ * sub-buckets, so any recorded latency is reported to within about 6%.
+ *
+ * The buckets, call count and total time are striped: each thread adds to one of a few
+ * copies, picked by its identity hash, and readers merge the copies. Threads on different
+ * cores then rarely write the same cache line, so recording stays a few uncontended atomic
+ * adds. A stripe is created the first time a thread lands on it; after that recording
+ * never allocates.
+ *
+ * Typical use:
+ * <pre>
+ *     long start = System.nanoTime();
+ *     int rows = LatencyRecorder.FAILED;
+ *     try {
+ *         ...
+ *         rows = result.size();
+ *         return result;
+ *     } finally {
+ *         recorder.record(start, rows);
+ *     }
+ * </pre>
+ */
+public class LatencyRecorder implements LatencyRecorderMBean {
+    // Passed as the row count when the call threw
+    public static final int FAILED = -1;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    // Slots after the buckets in each stripe
+    private static final int COUNT_SLOT = BUCKET_COUNT;
+    private static final int TOTAL_NANOS_SLOT = BUCKET_COUNT + 1;
+    private static final int STRIPE_LENGTH = BUCKET_COUNT + 2;
+    // A power of two at least twice the CPU count, so few threads share a stripe
+    private static final int STRIPES = Math.min(64,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    private final String name;
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    // Records the time since startNanos; rows == FAILED counts the call as an error
+    public void record(long startNanos, long rowCount) {
+        recordNanos(System.nanoTime() - startNanos, rowCount);
+    }
+
+    // Records a latency the caller measured itself, e.g. from an intended rather than actual start
+    public void recordNanos(long elapsed, long rowCount) {
+        if (elapsed < 0) {
+            elapsed = 0;
+        }
+        AtomicLongArray stripe = stripe();
+        stripe.incrementAndGet(bucketIndex(elapsed));
+        stripe.incrementAndGet(COUNT_SLOT);
+        stripe.addAndGet(TOTAL_NANOS_SLOT, elapsed);
+        if (rowCount == FAILED) {
+            errors.increment();
+        } else if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        long max = maxNanos.get();
+        while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the latency in nanoseconds below which the given fraction of calls fell,
+     * e.g. 0.99 for p99. Reports the upper edge of the matching bucket.
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe != null) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    long bucket = stripe.get(i);
+                    snapshot[i] += bucket;
+                    total += bucket;
+                }
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    private AtomicLongArray stripe() {
+        int hash = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        int index = (hash ^ (hash >>> 16)) & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_LENGTH));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    // Sum of one slot over all stripes
+    private long sum(int slot) {
+        long sum = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe != null) {
+                sum += stripe.get(slot);
+            }
+        }
+        return sum;
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    @Override
+    public String getName() { return name; }
+
+    @Override
+    public long getCount() { return sum(COUNT_SLOT); }
+
+    @Override
+    public long getErrorCount() { return errors.sum(); }
+
+    @Override
+    public long getRows() { return rows.sum(); }
+
+    @Override
+    public double getMeanMicros() {
+        long calls = sum(COUNT_SLOT);
+        return calls == 0 ? 0 : sum(TOTAL_NANOS_SLOT) / 1000.0 / calls;
+    }
+
+    @Override
+    public double getP50Micros() { return getPercentileNanos(0.50) / 1000.0; }
+
+    @Override
+    public double getP99Micros() { return getPercentileNanos(0.99) / 1000.0; }
+
+    @Override
+    public double getP999Micros() { return getPercentileNanos(0.999) / 1000.0; }
+
+    @Override
+    public double getMaxMicros() { return maxNanos.get() / 1000.0; }
+
+    // Not atomic with respect to concurrent recording; meant for an operator clearing stats
+    @Override
+    public void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe != null) {
+                for (int i = 0; i < STRIPE_LENGTH; i++) {
+                    stripe.set(i, 0);
+                }
+            }
+        }
+        errors.reset();
+        rows.reset();
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s %10d %7d %10d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                name, getCount(), getErrorCount(), getRows(), getMeanMicros(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+}
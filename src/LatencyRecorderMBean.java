@@ -0,0 +1,24 @@
+/**
+ * JMX view of one {@link LatencyRecorder}. Latencies are reported in microseconds.
+ */
+public interface LatencyRecorderMBean {
+    String getName();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getRows();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,35 @@
+/**
+ * An open lot: the unmatched part of a trade, waiting for trades on the other side.
+ * Under weighted-average matching a book has a single pooled lot with no trade ID.
+ */
+public class Lot {
+    private final int tradeId;
+    private final String tradeDate;
+    private final String side;
+    // Fixed-point hundredths
+    private final long volume;
+    private final long price;
+
+    public Lot(int tradeId, String tradeDate, String side, long volume, long price) {
+        this.tradeId = tradeId;
+        this.tradeDate = tradeDate;
+        this.side = side;
+        this.volume = volume;
+        this.price = price;
+    }
+
+    public int getTradeId() { return tradeId; }
+    public String getTradeDate() { return tradeDate; }
+    public String getSide() { return side; }
+    public double getVolume() { return FixedPoint.toDouble(volume); }
+    public double getPrice() { return FixedPoint.toDouble(price); }
+    public long getVolumeUnits() { return volume; }
+    public long getPriceUnits() { return price; }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s | %-10s | %-4s | Open Volume:%14s | Price:%12s",
+                tradeId == 0 ? "pooled" : String.valueOf(tradeId), tradeDate == null ? "-" : tradeDate, side,
+                FixedPoint.format(volume), FixedPoint.format(price));
+    }
+}
@@ -0,0 +1,517 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Matches SELLs against open BUY lots (and BUYs against open SELL lots) per commodity, or
+ * per commodity and counterparty, and reports realized P&L, open lots and average cost.
+ *
+ * Each book keeps its trades and open lots in primitive arrays; the open lots are a ring
+ * buffer that FIFO consumes from the front and LIFO from the back, and weighted average
+ * keeps one pooled lot. A trade either opens one lot or closes lots that are then gone, so
+ * matching a book costs time linear in its trades. New trades are matched as they arrive;
+ * an amend, delete or back-dated trade replays only its own book.
+ * {@link #rebuild(TradeRepository)} replays every commodity on the fork/join pool.
+ */
+public class LotMatchingEngine {
+    public enum Method { FIFO, LIFO, WEIGHTED_AVERAGE }
+
+    // Book key when books are kept per commodity only
+    private static final String ALL_COUNTERPARTIES = "";
+
+    private final Method method;
+    private final boolean byCounterparty;
+    private final ForkJoinPool pool;
+    // Commodity -> its books, keyed by counterparty
+    private volatile Map<String, Map<String, Book>> partitions = new ConcurrentHashMap<>();
+
+    public LotMatchingEngine(Method method, boolean byCounterparty) {
+        this(method, byCounterparty, ForkJoinPool.commonPool());
+    }
+
+    public LotMatchingEngine(Method method, boolean byCounterparty, ForkJoinPool pool) {
+        this.method = method;
+        this.byCounterparty = byCounterparty;
+        this.pool = pool;
+    }
+
+    /**
+     * Engine configured by -Dtrading.lots.method (FIFO, LIFO or WEIGHTED_AVERAGE, default
+     * FIFO) and -Dtrading.lots.byCounterparty (default false).
+     */
+    public static LotMatchingEngine fromSystemProperties() {
+        String name = System.getProperty("trading.lots.method", "FIFO").trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        Method method;
+        if (name.equals("AVERAGE") || name.equals("WAVG")) {
+            method = Method.WEIGHTED_AVERAGE;
+        } else {
+            try {
+                method = Method.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown lot matching method " + name + "; using FIFO.");
+                method = Method.FIFO;
+            }
+        }
+        return new LotMatchingEngine(method, Boolean.getBoolean("trading.lots.byCounterparty"));
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public boolean isByCounterparty() {
+        return byCounterparty;
+    }
+
+    public void onTradeCreated(Trade trade) {
+        bookFor(partitions, trade).add(trade.getTradeId(), trade.getTradeEpochDay(), signedVolume(trade),
+                trade.getPriceUnits());
+    }
+
+    public void onTradeDeleted(Trade trade) {
+        Book book = findBook(trade.getCommodity(), trade.getCounterparty());
+        if (book != null) {
+            book.remove(trade.getTradeId());
+        }
+    }
+
+    public void onTradeUpdated(Trade before, Trade after) {
+        Book book = findBook(before.getCommodity(), before.getCounterparty());
+        if (book != null && book == findBook(after.getCommodity(), after.getCounterparty())) {
+            book.update(after.getTradeId(), after.getTradeEpochDay(), signedVolume(after), after.getPriceUnits());
+            return;
+        }
+        onTradeDeleted(before);
+        onTradeCreated(after);
+    }
+
+    // Every book with trades, ordered by commodity then counterparty
+    public List<LotSummary> getSummaries() {
+        List<LotSummary> summaries = new ArrayList<>();
+        for (Map<String, Book> books : partitions.values()) {
+            for (Book book : books.values()) {
+                LotSummary summary = book.summary();
+                if (summary.getTradeCount() != 0) {
+                    summaries.add(summary);
+                }
+            }
+        }
+        summaries.sort(Comparator.comparing(LotSummary::getKey));
+        return summaries;
+    }
+
+    // The counterparty is ignored unless books are kept per counterparty
+    public LotSummary getSummary(String commodity, String counterparty) {
+        Book book = findBook(commodity, counterparty);
+        return book == null ? new Book(commodity, byCounterparty ? counterparty : null).summary() : book.summary();
+    }
+
+    // Open lots in matching order: the next lot to be closed comes first
+    public List<Lot> getOpenLots(String commodity, String counterparty) {
+        Book book = findBook(commodity, counterparty);
+        return book == null ? new ArrayList<>() : book.openLots();
+    }
+
+    // Realized P&L in hundredths across all of a commodity's books
+    public long getRealizedPnlUnits(String commodity) {
+        Map<String, Book> books = partitions.get(commodity);
+        long total = 0;
+        if (books != null) {
+            for (Book book : books.values()) {
+                total += book.summary().getRealizedPnlUnits();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Recomputes every book from a full scan. The scan only files trades into their books;
+     * matching then runs as one fork/join task per commodity, and the new books replace
+     * the old ones when all are done. Intended for startup or a quiet period: trades
+     * written during the rebuild may be missed.
+     */
+    public int rebuild(TradeRepository tradeRepository) throws SQLException {
+        Map<String, Map<String, Book>> fresh = new ConcurrentHashMap<>();
+        int[] count = { 0 };
+        tradeRepository.forEachTrade(trade -> {
+            bookFor(fresh, trade).append(trade.getTradeId(), trade.getTradeEpochDay(), signedVolume(trade),
+                    trade.getPriceUnits());
+            count[0]++;
+            return true;
+        });
+
+        List<ReplayTask> tasks = new ArrayList<>(fresh.size());
+        for (Map<String, Book> books : fresh.values()) {
+            tasks.add(new ReplayTask(books.values()));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        partitions = fresh;
+        return count[0];
+    }
+
+    private Book bookFor(Map<String, Map<String, Book>> target, Trade trade) {
+        String commodity = trade.getCommodity();
+        Map<String, Book> books = target.get(commodity);
+        if (books == null) {
+            books = target.computeIfAbsent(commodity, k -> new ConcurrentHashMap<>());
+        }
+        String key = byCounterparty ? trade.getCounterparty() : ALL_COUNTERPARTIES;
+        Book book = books.get(key);
+        return book != null ? book
+                : books.computeIfAbsent(key, k -> new Book(commodity, byCounterparty ? trade.getCounterparty() : null));
+    }
+
+    private Book findBook(String commodity, String counterparty) {
+        Map<String, Book> books = commodity == null ? null : partitions.get(commodity);
+        if (books == null) {
+            return null;
+        }
+        if (!byCounterparty) {
+            return books.get(ALL_COUNTERPARTIES);
+        }
+        return counterparty == null ? null : books.get(counterparty);
+    }
+
+    // BUYs positive, SELLs negative
+    private static long signedVolume(Trade trade) {
+        long volume = trade.getVolumeUnits();
+        return "SELL".equalsIgnoreCase(trade.getTradeType()) ? -volume : volume;
+    }
+
+    // a * b / c rounded half away from zero, for non-negative a and positive b <= c
+    static long mulDiv(long a, long b, long c) {
+        long product = a * b;
+        if (Math.multiplyHigh(a, b) == (product >> 63)) {
+            long quotient = product / c;
+            long remainder = product % c;
+            return Math.abs(remainder) * 2 >= c ? quotient + Long.signum(product) : quotient;
+        }
+        return new BigDecimal(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)))
+                .divide(BigDecimal.valueOf(c), 0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static class ReplayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Iterable<Book> books;
+
+        ReplayTask(Iterable<Book> books) {
+            this.books = books;
+        }
+
+        @Override
+        protected void compute() {
+            for (Book book : books) {
+                book.replay();
+            }
+        }
+    }
+
+    private final class Book {
+        private final String commodity;
+        private final String counterparty;
+
+        // Trades in matching order (trade date, then ID); volumes are signed, SELLs negative
+        private int[] tradeIds = new int[8];
+        private int[] tradeDays = new int[8];
+        private long[] tradeVolumes = new long[8];
+        private long[] tradePrices = new long[8];
+        private int tradeCount;
+
+        // Open lots, a ring buffer in matching order; all are on openSide (1 long, -1 short)
+        private int[] lotIds = new int[8];
+        private int[] lotDays = new int[8];
+        private long[] lotVolumes = new long[8];
+        private long[] lotPrices = new long[8];
+        private int lotHead;
+        private int lotCount;
+        private int openSide;
+
+        // Weighted average: the pooled open volume (signed) and what it cost
+        private long pooledVolume;
+        private long pooledCost;
+
+        private long realized;
+        private long matched;
+
+        Book(String commodity, String counterparty) {
+            this.commodity = commodity;
+            this.counterparty = counterparty;
+        }
+
+        // Matches at once, unless the trade sorts before ones already matched
+        synchronized void add(int id, int day, long volume, long price) {
+            int index = insertionPoint(id, day);
+            insertTrade(index, id, day, volume, price);
+            if (index == tradeCount - 1) {
+                match(id, day, volume, price);
+            } else {
+                replay();
+            }
+        }
+
+        synchronized void update(int id, int day, long volume, long price) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                removeTrade(index);
+            }
+            insertTrade(insertionPoint(id, day), id, day, volume, price);
+            replay();
+        }
+
+        synchronized void remove(int id) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                removeTrade(index);
+                replay();
+            }
+        }
+
+        // Files a scanned trade without matching; the rebuild sorts and replays afterwards
+        synchronized void append(int id, int day, long volume, long price) {
+            insertTrade(tradeCount, id, day, volume, price);
+        }
+
+        synchronized void replay() {
+            sortTrades();
+            lotHead = 0;
+            lotCount = 0;
+            openSide = 0;
+            pooledVolume = 0;
+            pooledCost = 0;
+            realized = 0;
+            matched = 0;
+            for (int i = 0; i < tradeCount; i++) {
+                match(tradeIds[i], tradeDays[i], tradeVolumes[i], tradePrices[i]);
+            }
+        }
+
+        synchronized LotSummary summary() {
+            long openVolume;
+            long cost;
+            int openLots;
+            if (method == Method.WEIGHTED_AVERAGE) {
+                openVolume = pooledVolume;
+                cost = pooledCost;
+                openLots = pooledVolume == 0 ? 0 : 1;
+            } else {
+                openVolume = 0;
+                cost = 0;
+                for (int i = 0; i < lotCount; i++) {
+                    int slot = (lotHead + i) & (lotIds.length - 1);
+                    openVolume += lotVolumes[slot];
+                    cost += FixedPoint.multiply(lotVolumes[slot], lotPrices[slot]);
+                }
+                openVolume *= openSide;
+                openLots = lotCount;
+            }
+            long averageCost = openVolume == 0 ? 0 : mulDiv(cost, FixedPoint.SCALE, Math.abs(openVolume));
+            return new LotSummary(commodity, counterparty, openVolume, averageCost, realized, matched, openLots,
+                    tradeCount);
+        }
+
+        synchronized List<Lot> openLots() {
+            List<Lot> lots = new ArrayList<>();
+            if (method == Method.WEIGHTED_AVERAGE) {
+                if (pooledVolume != 0) {
+                    long volume = Math.abs(pooledVolume);
+                    lots.add(new Lot(0, null, pooledVolume > 0 ? "BUY" : "SELL", volume,
+                            mulDiv(pooledCost, FixedPoint.SCALE, volume)));
+                }
+                return lots;
+            }
+            String side = openSide > 0 ? "BUY" : "SELL";
+            for (int i = 0; i < lotCount; i++) {
+                // LIFO closes from the back, so list the newest lot first
+                int offset = method == Method.FIFO ? i : lotCount - 1 - i;
+                int slot = (lotHead + offset) & (lotIds.length - 1);
+                lots.add(new Lot(lotIds[slot], TradeDates.format(lotDays[slot]), side, lotVolumes[slot],
+                        lotPrices[slot]));
+            }
+            return lots;
+        }
+
+        private void match(int id, int day, long volume, long price) {
+            int side = volume > 0 ? 1 : -1;
+            long remaining = Math.abs(volume);
+            if (method == Method.WEIGHTED_AVERAGE) {
+                matchPooled(side, remaining, price);
+                return;
+            }
+            int mask = lotIds.length - 1;
+            while (remaining > 0 && lotCount > 0 && openSide != side) {
+                int slot = method == Method.FIFO ? lotHead : (lotHead + lotCount - 1) & mask;
+                long closing = Math.min(remaining, lotVolumes[slot]);
+                // Closing a long lot earns sell - buy; closing a short lot earns the same, with the roles swapped
+                realized += openSide * FixedPoint.multiply(closing, price - lotPrices[slot]);
+                matched += closing;
+                remaining -= closing;
+                lotVolumes[slot] -= closing;
+                if (lotVolumes[slot] == 0) {
+                    if (method == Method.FIFO) {
+                        lotHead = (lotHead + 1) & mask;
+                    }
+                    lotCount--;
+                }
+            }
+            if (remaining > 0) {
+                pushLot(id, day, remaining, price);
+                openSide = side;
+            } else if (lotCount == 0) {
+                openSide = 0;
+            }
+        }
+
+        private void matchPooled(int side, long volume, long price) {
+            if (pooledVolume == 0 || Long.signum(pooledVolume) == side) {
+                pooledVolume += side * volume;
+                pooledCost += FixedPoint.multiply(volume, price);
+                return;
+            }
+            long open = Math.abs(pooledVolume);
+            long closing = Math.min(volume, open);
+            long relieved = closing == open ? pooledCost : mulDiv(pooledCost, closing, open);
+            long value = FixedPoint.multiply(closing, price);
+            realized += pooledVolume > 0 ? value - relieved : relieved - value;
+            matched += closing;
+            pooledVolume += side * closing;
+            pooledCost -= relieved;
+            long rest = volume - closing;
+            if (rest > 0) {
+                pooledVolume = side * rest;
+                pooledCost = FixedPoint.multiply(rest, price);
+            }
+        }
+
+        private void pushLot(int id, int day, long volume, long price) {
+            if (lotCount == lotIds.length) {
+                growLots();
+            }
+            int slot = (lotHead + lotCount) & (lotIds.length - 1);
+            lotIds[slot] = id;
+            lotDays[slot] = day;
+            lotVolumes[slot] = volume;
+            lotPrices[slot] = price;
+            lotCount++;
+        }
+
+        // Doubles the ring, unwrapping it so the oldest lot is at 0
+        private void growLots() {
+            int capacity = lotIds.length * 2;
+            int[] ids = new int[capacity];
+            int[] days = new int[capacity];
+            long[] volumes = new long[capacity];
+            long[] prices = new long[capacity];
+            for (int i = 0; i < lotCount; i++) {
+                int slot = (lotHead + i) & (lotIds.length - 1);
+                ids[i] = lotIds[slot];
+                days[i] = lotDays[slot];
+                volumes[i] = lotVolumes[slot];
+                prices[i] = lotPrices[slot];
+            }
+            lotIds = ids;
+            lotDays = days;
+            lotVolumes = volumes;
+            lotPrices = prices;
+            lotHead = 0;
+        }
+
+        // Trades nearly always arrive in order, so search back from the end
+        private int insertionPoint(int id, int day) {
+            int index = tradeCount;
+            while (index > 0 && (tradeDays[index - 1] > day || (tradeDays[index - 1] == day && tradeIds[index - 1] > id))) {
+                index--;
+            }
+            return index;
+        }
+
+        private int indexOf(int id) {
+            for (int i = tradeCount - 1; i >= 0; i--) {
+                if (tradeIds[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insertTrade(int index, int id, int day, long volume, long price) {
+            if (tradeCount == tradeIds.length) {
+                int capacity = tradeCount * 2;
+                tradeIds = Arrays.copyOf(tradeIds, capacity);
+                tradeDays = Arrays.copyOf(tradeDays, capacity);
+                tradeVolumes = Arrays.copyOf(tradeVolumes, capacity);
+                tradePrices = Arrays.copyOf(tradePrices, capacity);
+            }
+            int moved = tradeCount - index;
+            if (moved > 0) {
+                System.arraycopy(tradeIds, index, tradeIds, index + 1, moved);
+                System.arraycopy(tradeDays, index, tradeDays, index + 1, moved);
+                System.arraycopy(tradeVolumes, index, tradeVolumes, index + 1, moved);
+                System.arraycopy(tradePrices, index, tradePrices, index + 1, moved);
+            }
+            tradeIds[index] = id;
+            tradeDays[index] = day;
+            tradeVolumes[index] = volume;
+            tradePrices[index] = price;
+            tradeCount++;
+        }
+
+        private void removeTrade(int index) {
+            int moved = tradeCount - index - 1;
+            System.arraycopy(tradeIds, index + 1, tradeIds, index, moved);
+            System.arraycopy(tradeDays, index + 1, tradeDays, index, moved);
+            System.arraycopy(tradeVolumes, index + 1, tradeVolumes, index, moved);
+            System.arraycopy(tradePrices, index + 1, tradePrices, index, moved);
+            tradeCount--;
+        }
+
+        // Scans come in ID order, usually also date order; sort only when they are not
+        private void sortTrades() {
+            boolean sorted = true;
+            for (int i = 1; i < tradeCount && sorted; i++) {
+                sorted = tradeDays[i - 1] < tradeDays[i] || (tradeDays[i - 1] == tradeDays[i] && tradeIds[i - 1] <= tradeIds[i]);
+            }
+            if (sorted) {
+                return;
+            }
+            // Date in the high half, ID (always positive) in the low half, so a long sort orders both
+            long[] keys = new long[tradeCount];
+            IntIntMap indexById = new IntIntMap(tradeCount, -1);
+            for (int i = 0; i < tradeCount; i++) {
+                keys[i] = ((long) tradeDays[i] << 32) | tradeIds[i];
+                indexById.put(tradeIds[i], i);
+            }
+            Arrays.sort(keys);
+            int[] days = new int[tradeIds.length];
+            long[] volumes = new long[tradeIds.length];
+            long[] prices = new long[tradeIds.length];
+            int[] ids = new int[tradeIds.length];
+            for (int i = 0; i < tradeCount; i++) {
+                int from = indexById.get((int) keys[i]);
+                ids[i] = tradeIds[from];
+                days[i] = tradeDays[from];
+                volumes[i] = tradeVolumes[from];
+                prices[i] = tradePrices[from];
+            }
+            tradeIds = ids;
+            tradeDays = days;
+            tradeVolumes = volumes;
+            tradePrices = prices;
+        }
+    }
+}
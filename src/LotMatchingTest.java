@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks FIFO, LIFO and weighted-average lot matching on worked examples and against a
+ * straightforward matcher after random amends and deletes, compares incremental matching
+ * with a parallel rebuild from a journal store, and times matching as the book grows.
+ *
+ * Usage: java LotMatchingTest [tradeCount]
+ */
+public class LotMatchingTest {
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Coal", "Electricity", "Solar Power" };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.println("Testing Lot Matching...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            // 1. Worked examples: buy 100 @ 10, buy 100 @ 12, sell 150 @ 15
+            System.out.println("\n1. Testing worked examples...");
+            LotSummary fifo = example(LotMatchingEngine.Method.FIFO);
+            check(fifo.getRealizedPnlUnits() == 650_00 && fifo.getOpenVolumeUnits() == 50_00
+                    && fifo.getAverageCostUnits() == 12_00, "FIFO closes the oldest lot first");
+            LotSummary lifo = example(LotMatchingEngine.Method.LIFO);
+            check(lifo.getRealizedPnlUnits() == 550_00 && lifo.getOpenVolumeUnits() == 50_00
+                    && lifo.getAverageCostUnits() == 10_00, "LIFO closes the newest lot first");
+            LotSummary average = example(LotMatchingEngine.Method.WEIGHTED_AVERAGE);
+            check(average.getRealizedPnlUnits() == 600_00 && average.getOpenVolumeUnits() == 50_00
+                    && average.getAverageCostUnits() == 11_00 && average.getOpenLotCount() == 1,
+                    "weighted average closes at the pooled cost");
+
+            LotMatchingEngine shorts = new LotMatchingEngine(LotMatchingEngine.Method.FIFO, false);
+            shorts.onTradeCreated(new Trade(1, "2024-01-10", "A", "Coal", 100, 20, "SELL"));
+            shorts.onTradeCreated(new Trade(2, "2024-01-11", "B", "Coal", 40, 18, "BUY"));
+            LotSummary covered = shorts.getSummary("Coal", null);
+            check(covered.getRealizedPnlUnits() == 80_00 && covered.getOpenVolumeUnits() == -60_00,
+                    "BUYs cover open SELL lots");
+            shorts.onTradeCreated(new Trade(3, "2024-01-12", "C", "Coal", 100, 21, "BUY"));
+            List<Lot> lots = shorts.getOpenLots("Coal", null);
+            check(shorts.getSummary("Coal", null).getRealizedPnlUnits() == 20_00 && lots.size() == 1
+                    && lots.get(0).getTradeId() == 3 && lots.get(0).getVolumeUnits() == 40_00
+                    && lots.get(0).getSide().equals("BUY"), "a trade larger than the open lots flips the book");
+
+            LotMatchingEngine backDated = new LotMatchingEngine(LotMatchingEngine.Method.FIFO, false);
+            backDated.onTradeCreated(new Trade(1, "2024-01-12", "A", "Coal", 100, 12, "BUY"));
+            backDated.onTradeCreated(new Trade(2, "2024-01-13", "A", "Coal", 100, 15, "SELL"));
+            backDated.onTradeCreated(new Trade(3, "2024-01-10", "A", "Coal", 100, 10, "BUY"));
+            check(backDated.getSummary("Coal", null).getRealizedPnlUnits() == 500_00
+                    && backDated.getOpenLots("Coal", null).get(0).getTradeId() == 1,
+                    "a back-dated trade is matched in trade date order");
+
+            LotMatchingEngine perCounterparty = new LotMatchingEngine(LotMatchingEngine.Method.FIFO, true);
+            perCounterparty.onTradeCreated(new Trade(1, "2024-01-10", "A", "Coal", 100, 10, "BUY"));
+            perCounterparty.onTradeCreated(new Trade(2, "2024-01-11", "B", "Coal", 100, 15, "SELL"));
+            check(perCounterparty.getSummaries().size() == 2 && perCounterparty.getRealizedPnlUnits("Coal") == 0
+                    && perCounterparty.getSummary("Coal", "A").getOpenVolumeUnits() == 100_00,
+                    "books per counterparty do not match across counterparties");
+
+            // 2. Random books against a straightforward matcher, after amends and deletes
+            System.out.println("\n2. Testing " + count + " random trades against a reference matcher...");
+            Random random = new Random(42);
+            List<Trade> trades = randomTrades(random, count);
+            for (LotMatchingEngine.Method method : LotMatchingEngine.Method.values()) {
+                LotMatchingEngine engine = new LotMatchingEngine(method, false);
+                List<Trade> book = new ArrayList<>(trades);
+                for (Trade trade : book) {
+                    engine.onTradeCreated(trade);
+                }
+                checkAgainstReference(engine, book, method + " after " + count + " trades");
+                for (int i = 0; i < 200; i++) {
+                    int index = random.nextInt(book.size());
+                    Trade before = book.get(index);
+                    Trade after = new Trade(before.getTradeId(), before.getTradeDate(), before.getCounterparty(),
+                            before.getCommodity(), before.getVolume() + 1, before.getPrice() + 0.5, before.getTradeType());
+                    engine.onTradeUpdated(before, after);
+                    book.set(index, after);
+                }
+                for (int i = 0; i < 200; i++) {
+                    engine.onTradeDeleted(book.remove(random.nextInt(book.size())));
+                }
+                checkAgainstReference(engine, book, method + " after amends and deletes");
+            }
+
+            // 3. Parallel rebuild from a store
+            System.out.println("\n3. Testing rebuild from a journal store...");
+            directory = Files.createTempDirectory("lot-matching-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory)) {
+                List<Trade> stored = new ArrayList<>(count);
+                for (Trade trade : trades) {
+                    stored.add(new Trade(trade.getTradeDate(), trade.getCounterparty(), trade.getCommodity(),
+                            trade.getVolume(), trade.getPrice(), trade.getTradeType()));
+                }
+                store.addTrades(stored);
+                for (LotMatchingEngine.Method method : LotMatchingEngine.Method.values()) {
+                    LotMatchingEngine incremental = new LotMatchingEngine(method, true);
+                    for (Trade trade : stored) {
+                        incremental.onTradeCreated(trade);
+                    }
+                    LotMatchingEngine rebuilt = new LotMatchingEngine(method, true);
+                    long start = System.nanoTime();
+                    int scanned = rebuilt.rebuild(store);
+                    long elapsed = System.nanoTime() - start;
+                    check(scanned == count && rebuilt.getSummaries().toString().equals(incremental.getSummaries().toString()),
+                            method + " rebuild of " + scanned + " trades matches incremental matching in "
+                                    + elapsed / 1_000_000 + " ms");
+                }
+            }
+
+            // 4. Matching cost grows linearly with the book
+            System.out.println("\n4. Timing incremental matching...");
+            for (int size = count / 4; size <= count * 4; size *= 2) {
+                List<Trade> timed = randomTrades(new Random(size), size);
+                LotMatchingEngine engine = new LotMatchingEngine(LotMatchingEngine.Method.FIFO, true);
+                long start = System.nanoTime();
+                for (Trade trade : timed) {
+                    engine.onTradeCreated(trade);
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("  %,9d trades: %5d ms, %4d ns per trade%n", size, elapsed / 1_000_000, elapsed / size);
+            }
+
+            System.out.println("\n All tests passed! Lot matching is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Lot matching test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static LotSummary example(LotMatchingEngine.Method method) {
+        LotMatchingEngine engine = new LotMatchingEngine(method, false);
+        engine.onTradeCreated(new Trade(1, "2024-01-10", "A", "Crude Oil", 100, 10, "BUY"));
+        engine.onTradeCreated(new Trade(2, "2024-01-11", "B", "Crude Oil", 100, 12, "BUY"));
+        engine.onTradeCreated(new Trade(3, "2024-01-12", "C", "Crude Oil", 150, 15, "SELL"));
+        return engine.getSummary("Crude Oil", null);
+    }
+
+    // Mostly in date order, with some back-dated trades
+    private static List<Trade> randomTrades(Random random, int count) {
+        List<Trade> trades = new ArrayList<>(count);
+        int day = TradeDates.parse("2024-01-01");
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) == 0) {
+                day++;
+            }
+            int tradeDay = random.nextInt(50) == 0 ? day - random.nextInt(30) : day;
+            trades.add(new Trade(i + 1, tradeDay, "Counterparty " + random.nextInt(200),
+                    COMMODITIES[random.nextInt(COMMODITIES.length)], 100 + random.nextInt(100_000),
+                    5000 + random.nextInt(5000), random.nextBoolean() ? "BUY" : "SELL"));
+        }
+        return trades;
+    }
+
+    private static void checkAgainstReference(LotMatchingEngine engine, List<Trade> book, String description) {
+        for (String commodity : COMMODITIES) {
+            List<Trade> trades = new ArrayList<>();
+            for (Trade trade : book) {
+                if (trade.getCommodity().equals(commodity)) {
+                    trades.add(trade);
+                }
+            }
+            trades.sort(Comparator.comparingInt(Trade::getTradeEpochDay).thenComparingInt(Trade::getTradeId));
+            long[] expected = match(engine.getMethod(), trades);
+            LotSummary summary = engine.getSummary(commodity, null);
+            if (summary.getRealizedPnlUnits() != expected[0] || summary.getOpenVolumeUnits() != expected[1]) {
+                throw new AssertionError("Check failed: " + description + " for " + commodity + ": " + summary
+                        + " expected realized " + expected[0] + " open " + expected[1]);
+            }
+        }
+        System.out.println(" " + description + " match the reference");
+    }
+
+    // Realized P&L and signed open volume, one lot object at a time
+    private static long[] match(LotMatchingEngine.Method method, List<Trade> trades) {
+        Deque<long[]> lots = new ArrayDeque<>();
+        long realized = 0;
+        long poolVolume = 0;
+        long poolCost = 0;
+        for (Trade trade : trades) {
+            long side = "SELL".equals(trade.getTradeType()) ? -1 : 1;
+            long remaining = trade.getVolumeUnits();
+            long price = trade.getPriceUnits();
+            if (method == LotMatchingEngine.Method.WEIGHTED_AVERAGE) {
+                if (poolVolume == 0 || Long.signum(poolVolume) == side) {
+                    poolVolume += side * remaining;
+                    poolCost += FixedPoint.multiply(remaining, price);
+                    continue;
+                }
+                long open = Math.abs(poolVolume);
+                long closing = Math.min(remaining, open);
+                long relieved = BigDecimal.valueOf(poolCost).multiply(BigDecimal.valueOf(closing))
+                        .divide(BigDecimal.valueOf(open), 0, RoundingMode.HALF_UP).longValueExact();
+                long value = FixedPoint.multiply(closing, price);
+                realized += poolVolume > 0 ? value - relieved : relieved - value;
+                poolVolume += side * closing;
+                poolCost -= relieved;
+                if (remaining > closing) {
+                    poolVolume = side * (remaining - closing);
+                    poolCost = FixedPoint.multiply(remaining - closing, price);
+                }
+                continue;
+            }
+            while (remaining > 0 && !lots.isEmpty() && lots.peekFirst()[0] != side) {
+                long[] lot = method == LotMatchingEngine.Method.FIFO ? lots.peekFirst() : lots.peekLast();
+                long closing = Math.min(remaining, lot[1]);
+                realized += lot[0] * FixedPoint.multiply(closing, price - lot[2]);
+                lot[1] -= closing;
+                remaining -= closing;
+                if (lot[1] == 0) {
+                    if (method == LotMatchingEngine.Method.FIFO) {
+                        lots.removeFirst();
+                    } else {
+                        lots.removeLast();
+                    }
+                }
+            }
+            if (remaining > 0) {
+                lots.addLast(new long[] { side, remaining, price });
+            }
+        }
+        if (method == LotMatchingEngine.Method.WEIGHTED_AVERAGE) {
+            return new long[] { realized, poolVolume };
+        }
+        long open = 0;
+        for (long[] lot : lots) {
+            open += lot[0] * lot[1];
+        }
+        return new long[] { realized, open };
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Lot-matching result for one book (a commodity, or a commodity and counterparty): the
+ * P&L realized by matching BUYs against SELLs, and what is still open. Amounts are
+ * fixed-point hundredths; open volume is negative for a net short book.
+ */
+public class LotSummary {
+    private final String commodity;
+    private final String counterparty;
+    private final long openVolume;
+    private final long averageCost;
+    private final long realizedPnl;
+    private final long matchedVolume;
+    private final int openLotCount;
+    private final int tradeCount;
+
+    public LotSummary(String commodity, String counterparty, long openVolume, long averageCost, long realizedPnl,
+                      long matchedVolume, int openLotCount, int tradeCount) {
+        this.commodity = commodity;
+        this.counterparty = counterparty;
+        this.openVolume = openVolume;
+        this.averageCost = averageCost;
+        this.realizedPnl = realizedPnl;
+        this.matchedVolume = matchedVolume;
+        this.openLotCount = openLotCount;
+        this.tradeCount = tradeCount;
+    }
+
+    public String getCommodity() { return commodity; }
+    // Null when books are kept per commodity only
+    public String getCounterparty() { return counterparty; }
+    public String getKey() { return counterparty == null ? commodity : commodity + " / " + counterparty; }
+    public double getOpenVolume() { return FixedPoint.toDouble(openVolume); }
+    public double getAverageCost() { return FixedPoint.toDouble(averageCost); }
+    public double getRealizedPnl() { return FixedPoint.toDouble(realizedPnl); }
+    public long getOpenVolumeUnits() { return openVolume; }
+    public long getAverageCostUnits() { return averageCost; }
+    public long getRealizedPnlUnits() { return realizedPnl; }
+    public long getMatchedVolumeUnits() { return matchedVolume; }
+    public int getOpenLotCount() { return openLotCount; }
+    public int getTradeCount() { return tradeCount; }
+
+    @Override
+    public String toString() {
+        return String.format("%-35s | Open:%14s @ %10s | Lots:%5d | Matched:%14s | Realized P&L:%16s",
+                getKey(), FixedPoint.format(openVolume), FixedPoint.format(averageCost), openLotCount,
+                FixedPoint.format(matchedVolume), FixedPoint.format(realizedPnl));
+    }
+}
@@ -0,0 +1,402 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values the book against the latest price per commodity and keeps unrealized P&L per
+ * commodity and per counterparty.
+ *
+ * A trade's P&L against mark M is signedVolume x (M - price), with SELL volumes negative.
+ * Summed over trades that is M x netVolume - netCost, so each (counterparty, commodity)
+ * pair only needs its net volume and net cost to be valued exactly at any mark. A tick
+ * revalues every open trade in the commodity with one pass over the counterparties that
+ * trade it, however many trades they hold.
+ *
+ * Commodities and counterparties are interned to dense int IDs, and all valuation state
+ * lives in primitive arrays indexed by those IDs, so a tick allocates nothing. Trade
+ * events and ticks are serialized on one lock; listeners run after the lock is released,
+ * on the thread that delivered the tick.
+ */
+public class MarkToMarketEngine {
+    private static final LatencyRecorder TICKS = TradeMetrics.recorder("valuation.priceTick");
+
+    // Called after each tick; must be quick, it runs on the feed thread
+    @FunctionalInterface
+    public interface Listener {
+        void onRevalued(int commodityId, double mark, double commodityPnl);
+    }
+
+    private final Object lock = new Object();
+    // Copied on change so a tick can walk it without allocating an iterator
+    private volatile Listener[] listeners = new Listener[0];
+
+    private final Map<String, Integer> commodityIds = new HashMap<>();
+    private final List<String> commodityNames = new ArrayList<>();
+    private final Map<String, Integer> counterpartyIds = new HashMap<>();
+    private final List<String> counterpartyNames = new ArrayList<>();
+
+    // Per commodity; a mark of NaN means no price has been seen yet and P&L stays 0.
+    // Net volumes and costs are fixed-point hundredths, so they never drift however many trades net out.
+    private double[] marks = new double[16];
+    private long[] commodityNetVolume = new long[16];
+    private long[] commodityNetCost = new long[16];
+    private double[] commodityPnl = new double[16];
+    private long[] commodityTradeCount = new long[16];
+    private int[][] commodityCells = new int[16][];
+    private int[] commodityCellCount = new int[16];
+
+    // Per counterparty
+    private long[] counterpartyNetVolume = new long[16];
+    private double[] counterpartyPnl = new double[16];
+    private long[] counterpartyTradeCount = new long[16];
+
+    // Per (counterparty, commodity) pair that has ever traded
+    private final Map<Long, Integer> cellIds = new HashMap<>();
+    private int[] cellCounterparty = new int[64];
+    private long[] cellNetVolume = new long[64];
+    private long[] cellNetCost = new long[64];
+    private double[] cellPnl = new double[64];
+    private int cellCount;
+
+    private long tickCount;
+
+    public MarkToMarketEngine() {
+        Arrays.fill(marks, Double.NaN);
+    }
+
+    public void addListener(Listener listener) {
+        synchronized (lock) {
+            Listener[] current = listeners;
+            Listener[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+            listeners = updated;
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        synchronized (lock) {
+            List<Listener> remaining = new ArrayList<>(Arrays.asList(listeners));
+            remaining.remove(listener);
+            listeners = remaining.toArray(new Listener[0]);
+        }
+    }
+
+    public void onTradeCreated(Trade trade) {
+        apply(trade, 1);
+    }
+
+    public void onTradeDeleted(Trade trade) {
+        apply(trade, -1);
+    }
+
+    public void onTradeUpdated(Trade before, Trade after) {
+        synchronized (lock) {
+            apply(before, -1);
+            apply(after, 1);
+        }
+    }
+
+    // Interned ID for the commodity, so a feed can resolve names once and tick by ID
+    public int commodityId(String commodity) {
+        synchronized (lock) {
+            return internCommodity(commodity);
+        }
+    }
+
+    public String commodityName(int commodityId) {
+        synchronized (lock) {
+            return commodityNames.get(commodityId);
+        }
+    }
+
+    public void onPriceTick(String commodity, double price) {
+        onPriceTick(commodityId(commodity), price);
+    }
+
+    /**
+     * Sets the commodity's mark and revalues all of its trades, updating the commodity's
+     * P&L and that of every counterparty trading it.
+     */
+    public void onPriceTick(int commodityId, double price) {
+        if (!(price >= 0) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("Invalid price: " + price);
+        }
+        long start = System.nanoTime();
+        double pnl;
+        synchronized (lock) {
+            if (commodityId < 0 || commodityId >= commodityNames.size()) {
+                throw new IllegalArgumentException("Unknown commodity ID: " + commodityId);
+            }
+            marks[commodityId] = price;
+            pnl = value(price, commodityNetVolume[commodityId], commodityNetCost[commodityId]);
+            commodityPnl[commodityId] = pnl;
+            int[] cells = commodityCells[commodityId];
+            for (int i = 0, n = commodityCellCount[commodityId]; i < n; i++) {
+                int cell = cells[i];
+                double cellValue = value(price, cellNetVolume[cell], cellNetCost[cell]);
+                counterpartyPnl[cellCounterparty[cell]] += cellValue - cellPnl[cell];
+                cellPnl[cell] = cellValue;
+            }
+            tickCount++;
+        }
+        for (Listener listener : listeners) {
+            listener.onRevalued(commodityId, price, pnl);
+        }
+        TICKS.record(start, 1);
+    }
+
+    public double getMark(String commodity) {
+        synchronized (lock) {
+            Integer id = commodityIds.get(commodity);
+            return id == null ? Double.NaN : marks[id];
+        }
+    }
+
+    public double getCommodityPnl(String commodity) {
+        synchronized (lock) {
+            Integer id = commodityIds.get(commodity);
+            return id == null ? 0 : commodityPnl[id];
+        }
+    }
+
+    public double getCounterpartyPnl(String counterparty) {
+        synchronized (lock) {
+            Integer id = counterpartyIds.get(counterparty);
+            return id == null ? 0 : counterpartyPnl[id];
+        }
+    }
+
+    public long getTickCount() {
+        synchronized (lock) {
+            return tickCount;
+        }
+    }
+
+    // Commodities with trades or a price, ordered by name
+    public List<Valuation> getCommodityValuations() {
+        List<Valuation> valuations = new ArrayList<>();
+        synchronized (lock) {
+            for (int id = 0; id < commodityNames.size(); id++) {
+                if (commodityTradeCount[id] != 0 || !Double.isNaN(marks[id])) {
+                    valuations.add(new Valuation(commodityNames.get(id), FixedPoint.toDouble(commodityNetVolume[id]), marks[id],
+                            commodityPnl[id], commodityTradeCount[id]));
+                }
+            }
+        }
+        valuations.sort(Comparator.comparing(Valuation::getKey));
+        return valuations;
+    }
+
+    // Counterparties with trades, ordered by name; they span commodities, so there is no single mark
+    public List<Valuation> getCounterpartyValuations() {
+        List<Valuation> valuations = new ArrayList<>();
+        synchronized (lock) {
+            for (int id = 0; id < counterpartyNames.size(); id++) {
+                if (counterpartyTradeCount[id] != 0) {
+                    valuations.add(new Valuation(counterpartyNames.get(id), FixedPoint.toDouble(counterpartyNetVolume[id]),
+                            Double.NaN, counterpartyPnl[id], counterpartyTradeCount[id]));
+                }
+            }
+        }
+        valuations.sort(Comparator.comparing(Valuation::getKey));
+        return valuations;
+    }
+
+    /**
+     * Recomputes the book from a full scan, keeping the current marks. The scan totals
+     * into separate arrays and replaces the book in one step under the lock, so ticks and
+     * reads see the old book until then and a failed scan leaves it as it was. Intended
+     * for startup or a quiet period, like {@link PositionEngine#rebuild(TradeRepository)}.
+     */
+    public int rebuild(TradeRepository tradeRepository) throws SQLException {
+        Totals totals = new Totals();
+        int count = tradeRepository.forEachTrade(trade -> {
+            int commodity;
+            int counterparty;
+            int cell;
+            synchronized (lock) {
+                commodity = internCommodity(trade.getCommodity());
+                counterparty = internCounterparty(trade.getCounterparty());
+                cell = cellFor(counterparty, commodity);
+            }
+            totals.add(trade, commodity, counterparty, cell);
+            return true;
+        });
+        synchronized (lock) {
+            install(totals);
+        }
+        return count;
+    }
+
+    // Replaces the net volumes, costs and counts and revalues everything at the current marks
+    private void install(Totals totals) {
+        copyInto(commodityNetVolume, totals.commodityNetVolume);
+        copyInto(commodityNetCost, totals.commodityNetCost);
+        copyInto(commodityTradeCount, totals.commodityTradeCount);
+        copyInto(counterpartyNetVolume, totals.counterpartyNetVolume);
+        copyInto(counterpartyTradeCount, totals.counterpartyTradeCount);
+        copyInto(cellNetVolume, totals.cellNetVolume);
+        copyInto(cellNetCost, totals.cellNetCost);
+
+        Arrays.fill(counterpartyPnl, 0);
+        for (int id = 0; id < commodityNames.size(); id++) {
+            double mark = marks[id];
+            boolean marked = !Double.isNaN(mark);
+            commodityPnl[id] = marked ? value(mark, commodityNetVolume[id], commodityNetCost[id]) : 0;
+            int[] cells = commodityCells[id];
+            for (int i = 0, n = commodityCellCount[id]; i < n; i++) {
+                int cell = cells[i];
+                cellPnl[cell] = marked ? value(mark, cellNetVolume[cell], cellNetCost[cell]) : 0;
+                counterpartyPnl[cellCounterparty[cell]] += cellPnl[cell];
+            }
+        }
+    }
+
+    // Every ID in the source was interned before it was used, so the target is at least as long as its non-zero part
+    private static void copyInto(long[] target, long[] source) {
+        Arrays.fill(target, 0);
+        System.arraycopy(source, 0, target, 0, Math.min(source.length, target.length));
+    }
+
+    private void apply(Trade trade, int direction) {
+        long sign = "SELL".equalsIgnoreCase(trade.getTradeType()) ? -direction : direction;
+        long volume = sign * trade.getVolumeUnits();
+        long cost = sign * trade.getNotionalUnits();
+        synchronized (lock) {
+            int commodity = internCommodity(trade.getCommodity());
+            int counterparty = internCounterparty(trade.getCounterparty());
+            int cell = cellFor(counterparty, commodity);
+
+            commodityNetVolume[commodity] += volume;
+            commodityNetCost[commodity] += cost;
+            commodityTradeCount[commodity] += direction;
+            counterpartyNetVolume[counterparty] += volume;
+            counterpartyTradeCount[counterparty] += direction;
+            cellNetVolume[cell] += volume;
+            cellNetCost[cell] += cost;
+
+            double mark = marks[commodity];
+            if (!Double.isNaN(mark)) {
+                commodityPnl[commodity] = value(mark, commodityNetVolume[commodity], commodityNetCost[commodity]);
+                double cellValue = value(mark, cellNetVolume[cell], cellNetCost[cell]);
+                counterpartyPnl[counterparty] += cellValue - cellPnl[cell];
+                cellPnl[cell] = cellValue;
+            }
+        }
+    }
+
+    // Net volumes, costs and counts gathered by a rebuild scan, indexed like the book
+    private static class Totals {
+        long[] commodityNetVolume = new long[16];
+        long[] commodityNetCost = new long[16];
+        long[] commodityTradeCount = new long[16];
+        long[] counterpartyNetVolume = new long[16];
+        long[] counterpartyTradeCount = new long[16];
+        long[] cellNetVolume = new long[64];
+        long[] cellNetCost = new long[64];
+
+        void add(Trade trade, int commodity, int counterparty, int cell) {
+            long sign = "SELL".equalsIgnoreCase(trade.getTradeType()) ? -1 : 1;
+            long volume = sign * trade.getVolumeUnits();
+            long cost = sign * trade.getNotionalUnits();
+            if (commodity >= commodityNetVolume.length) {
+                int capacity = Math.max(commodity + 1, commodityNetVolume.length * 2);
+                commodityNetVolume = Arrays.copyOf(commodityNetVolume, capacity);
+                commodityNetCost = Arrays.copyOf(commodityNetCost, capacity);
+                commodityTradeCount = Arrays.copyOf(commodityTradeCount, capacity);
+            }
+            if (counterparty >= counterpartyNetVolume.length) {
+                int capacity = Math.max(counterparty + 1, counterpartyNetVolume.length * 2);
+                counterpartyNetVolume = Arrays.copyOf(counterpartyNetVolume, capacity);
+                counterpartyTradeCount = Arrays.copyOf(counterpartyTradeCount, capacity);
+            }
+            if (cell >= cellNetVolume.length) {
+                int capacity = Math.max(cell + 1, cellNetVolume.length * 2);
+                cellNetVolume = Arrays.copyOf(cellNetVolume, capacity);
+                cellNetCost = Arrays.copyOf(cellNetCost, capacity);
+            }
+            commodityNetVolume[commodity] += volume;
+            commodityNetCost[commodity] += cost;
+            commodityTradeCount[commodity]++;
+            counterpartyNetVolume[counterparty] += volume;
+            counterpartyTradeCount[counterparty]++;
+            cellNetVolume[cell] += volume;
+            cellNetCost[cell] += cost;
+        }
+    }
+
+    // Unrealized P&L at the mark of a net volume bought for a net cost, both in hundredths
+    private static double value(double mark, long netVolume, long netCost) {
+        return (mark * netVolume - netCost) / FixedPoint.SCALE;
+    }
+
+    private int internCommodity(String commodity) {
+        Integer id = commodityIds.get(commodity);
+        if (id != null) {
+            return id;
+        }
+        int newId = commodityNames.size();
+        if (newId == marks.length) {
+            int capacity = newId * 2;
+            marks = Arrays.copyOf(marks, capacity);
+            Arrays.fill(marks, newId, capacity, Double.NaN);
+            commodityNetVolume = Arrays.copyOf(commodityNetVolume, capacity);
+            commodityNetCost = Arrays.copyOf(commodityNetCost, capacity);
+            commodityPnl = Arrays.copyOf(commodityPnl, capacity);
+            commodityTradeCount = Arrays.copyOf(commodityTradeCount, capacity);
+            commodityCells = Arrays.copyOf(commodityCells, capacity);
+            commodityCellCount = Arrays.copyOf(commodityCellCount, capacity);
+        }
+        commodityCells[newId] = new int[8];
+        commodityIds.put(commodity, newId);
+        commodityNames.add(commodity);
+        return newId;
+    }
+
+    private int internCounterparty(String counterparty) {
+        Integer id = counterpartyIds.get(counterparty);
+        if (id != null) {
+            return id;
+        }
+        int newId = counterpartyNames.size();
+        if (newId == counterpartyPnl.length) {
+            int capacity = newId * 2;
+            counterpartyNetVolume = Arrays.copyOf(counterpartyNetVolume, capacity);
+            counterpartyPnl = Arrays.copyOf(counterpartyPnl, capacity);
+            counterpartyTradeCount = Arrays.copyOf(counterpartyTradeCount, capacity);
+        }
+        counterpartyIds.put(counterparty, newId);
+        counterpartyNames.add(counterparty);
+        return newId;
+    }
+
+    private int cellFor(int counterparty, int commodity) {
+        Long key = ((long) counterparty << 32) | commodity;
+        Integer cell = cellIds.get(key);
+        if (cell != null) {
+            return cell;
+        }
+        int newCell = cellCount++;
+        if (newCell == cellCounterparty.length) {
+            int capacity = newCell * 2;
+            cellCounterparty = Arrays.copyOf(cellCounterparty, capacity);
+            cellNetVolume = Arrays.copyOf(cellNetVolume, capacity);
+            cellNetCost = Arrays.copyOf(cellNetCost, capacity);
+            cellPnl = Arrays.copyOf(cellPnl, capacity);
+        }
+        cellCounterparty[newCell] = counterparty;
+        cellIds.put(key, newCell);
+
+        int count = commodityCellCount[commodity];
+        if (count == commodityCells[commodity].length) {
+            commodityCells[commodity] = Arrays.copyOf(commodityCells[commodity], count * 2);
+        }
+        commodityCells[commodity][count] = newCell;
+        commodityCellCount[commodity] = count + 1;
+        return newCell;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the mark-to-market engine against a trade-by-trade valuation, times ticks on a
+ * large book and feeds prices through a file and a socket. Needs no database.
+ *
+ * Usage: java MarkToMarketTest [tradeCount]
+ */
+public class MarkToMarketTest {
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Coal", "Electricity", "Solar Power" };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+
+        System.out.println("Testing Mark-to-Market Valuation...");
+        System.out.println("================================");
+
+        try {
+            // 1. Correctness against a brute-force valuation
+            System.out.println("\n1. Testing valuation of " + count + " trades...");
+            Random random = new Random(42);
+            MarkToMarketEngine engine = new MarkToMarketEngine();
+            List<Trade> book = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Trade trade = new Trade(i + 1, "2024-01-15", "Counterparty " + random.nextInt(2000),
+                        COMMODITIES[random.nextInt(COMMODITIES.length)], 1 + random.nextInt(1000),
+                        50 + random.nextInt(5000) / 100.0, random.nextBoolean() ? "BUY" : "SELL");
+                book.add(trade);
+                engine.onTradeCreated(trade);
+            }
+            check(engine.getCommodityPnl("Coal") == 0, "no P&L before the first price");
+
+            Map<String, Double> marks = new HashMap<>();
+            for (String commodity : COMMODITIES) {
+                double mark = 50 + random.nextInt(5000) / 100.0;
+                marks.put(commodity, mark);
+                engine.onPriceTick(commodity, mark);
+            }
+            checkAgainstBruteForce(engine, book, marks);
+
+            // Amend and delete some trades after prices are known
+            for (int i = 0; i < 1000; i++) {
+                int index = random.nextInt(book.size());
+                Trade before = book.get(index);
+                Trade after = new Trade(before.getTradeId(), before.getTradeDate(), before.getCounterparty(),
+                        before.getCommodity(), before.getVolume() + 1, before.getPrice() + 0.5, before.getTradeType());
+                engine.onTradeUpdated(before, after);
+                book.set(index, after);
+            }
+            for (int i = 0; i < 1000; i++) {
+                engine.onTradeDeleted(book.remove(book.size() - 1));
+            }
+            marks.put("Coal", 61.25);
+            engine.onPriceTick("Coal", 61.25);
+            checkAgainstBruteForce(engine, book, marks);
+
+            // 2. Tick latency and allocation
+            System.out.println("\n2. Timing ticks...");
+            int crude = engine.commodityId("Crude Oil");
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            for (int i = 0; i < 200_000; i++) {
+                engine.onPriceTick(crude, 70 + (i & 1023) / 100.0);
+            }
+            int ticks = 1_000_000;
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++) {
+                engine.onPriceTick(crude, 70 + (i & 1023) / 100.0);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            System.out.printf(" %.0f ns per tick revaluing %d trades, %.2f bytes allocated per tick%n",
+                    (double) elapsed / ticks, book.size() / COMMODITIES.length, (double) allocated / ticks);
+            check(allocated < ticks, "ticks do not allocate");
+
+            // 3. Feeds
+            System.out.println("\n3. Testing price feeds...");
+            Path file = Files.createTempFile("ticks", ".csv");
+            Files.write(file, List.of("# commodity,price", "Coal,55.5", "Natural Gas,3.10", "bad line", "Coal,56.0"));
+            try (PriceFeed feed = PriceFeed.replay(file, engine, 0)) {
+                waitFor(() -> !feed.isRunning());
+                check(feed.getTickCount() == 3 && feed.getRejectedCount() == 1, "file replay applies ticks, skips bad lines");
+            } finally {
+                Files.deleteIfExists(file);
+            }
+            check(engine.getMark("Coal") == 56.0, "last tick wins");
+
+            try (PriceFeed feed = PriceFeed.listen(0, engine);
+                 Socket socket = new Socket("localhost", feed.getPort())) {
+                OutputStream out = socket.getOutputStream();
+                out.write("Solar Power,130.25\nElectricity,44\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                waitFor(() -> feed.getTickCount() == 2);
+                check(engine.getMark("Solar Power") == 130.25 && engine.getMark("Electricity") == 44,
+                        "socket feed applies ticks");
+            }
+
+            System.out.println("\n All tests passed! Mark-to-market valuation is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Mark-to-market test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void checkAgainstBruteForce(MarkToMarketEngine engine, List<Trade> book, Map<String, Double> marks) {
+        Map<String, Double> byCommodity = new HashMap<>();
+        Map<String, Double> byCounterparty = new HashMap<>();
+        for (Trade trade : book) {
+            double sign = "SELL".equals(trade.getTradeType()) ? -1 : 1;
+            double pnl = sign * trade.getVolume() * (marks.get(trade.getCommodity()) - trade.getPrice());
+            byCommodity.merge(trade.getCommodity(), pnl, Double::sum);
+            byCounterparty.merge(trade.getCounterparty(), pnl, Double::sum);
+        }
+        double worst = 0;
+        for (Map.Entry<String, Double> entry : byCommodity.entrySet()) {
+            worst = Math.max(worst, Math.abs(entry.getValue() - engine.getCommodityPnl(entry.getKey())));
+        }
+        check(worst < 1e-3, "commodity P&L matches trade-by-trade valuation");
+        worst = 0;
+        for (Map.Entry<String, Double> entry : byCounterparty.entrySet()) {
+            worst = Math.max(worst, Math.abs(entry.getValue() - engine.getCounterpartyPnl(entry.getKey())));
+        }
+        check(worst < 1e-3, "counterparty P&L matches trade-by-trade valuation");
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Stress test for versioned updates: many threads read a trade, add to its volume and
+ * write it back with the version they read, retrying on conflict. Any lost update shows
+ * up as a final volume short of the expected total. Runs against a temporary journal
+ * store, and also through TradeDAO against whatever -Dtrading.db.url points at when it
+ * is set (with -Dtrading.db.driver if needed); the database run adds one trade under a
+ * unique counterparty and deletes it again. An empty embedded database such as H2 gets
+ * the Trades table created first.
+ *
+ * Usage: java OptimisticConcurrencyTest [threads] [incrementsPerThread]
+ */
+public class OptimisticConcurrencyTest {
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int increments = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        System.out.println("Testing Optimistic Concurrency...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("optimistic-concurrency-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                System.out.println("\nJournal store");
+                run(store, threads, increments);
+            }
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                check(store.countTrades() == 0, "delete survives replay");
+            }
+
+            if (System.getProperty("trading.db.url") != null) {
+                System.out.println("\nDatabase at " + System.getProperty("trading.db.url"));
+                DatabaseConnection dbConnection = DatabaseConnection.getInstance();
+                try {
+                    // SQL Server has the table from its setup script; an empty embedded database needs it created
+                    try (Connection connection = dbConnection.getConnection()) {
+                        if (!connection.getMetaData().getDatabaseProductName().startsWith("Microsoft SQL Server")) {
+                            TradeLoadGenerator.createSchema(connection);
+                        }
+                    }
+                    run(new TradeDAO(dbConnection.getDataSource()), threads, increments);
+                } finally {
+                    dbConnection.closeConnection();
+                }
+            }
+
+            System.out.println("\n All tests passed! Versioned updates lose nothing under contention.");
+        } catch (Exception e) {
+            System.err.println(" Optimistic concurrency test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static void run(TradeRepository repository, int threads, int increments) throws Exception {
+        TradeService tradeService = new TradeService(repository);
+        try {
+            tradeService.initialize();
+
+            // A counterparty of its own, so a shared database's other trades don't count
+            String counterparty = "OCC Test " + System.nanoTime();
+            check(tradeService.createTrade("2024-01-15", counterparty, "Crude Oil", 1000, 75.5, "BUY"), "trade created");
+            int tradeId = tradeService.searchTrades("1", counterparty).get(0).getTradeId();
+
+            // 1. Single-writer semantics
+            System.out.println("\n1. Testing version checks...");
+            Trade original = tradeService.getTradeById(tradeId);
+            check(original.getVersion() == 1, "new trade starts at version 1");
+
+            Trade updated = tradeService.updateTrade(tradeId, original.getVersion(), 76.0, 1000);
+            check(updated != null && updated.getVersion() == 2, "versioned update bumps the version");
+
+            try {
+                tradeService.updateTrade(tradeId, original.getVersion(), 99.0, 1000);
+                check(false, "stale update is rejected");
+            } catch (TradeConflictException e) {
+                check(e.getCurrentTrade().getVersion() == 2 && e.getCurrentTrade().getPrice() == 76.0,
+                        "stale update is rejected with the current state");
+            }
+            check(tradeService.getTradeById(tradeId).getPrice() == 76.0, "rejected update changed nothing");
+            Trade cached = tradeService.getTradeById(tradeId);
+            cached.setPrice(1.0);
+            check(tradeService.getTradeById(tradeId).getPrice() == 76.0, "editing a returned trade does not change the cache");
+            check(tradeService.updateTrade(Integer.MAX_VALUE, 1, 1, 1) == null, "versioned update of unknown trade returns null");
+            check(!tradeService.updateTrade(tradeId, 0.004, 1000) && !tradeService.updateTrade(tradeId, 76.0, 100_000_000),
+                    "update below a hundredth or beyond DECIMAL(10,2) is rejected");
+            try {
+                tradeService.updateTrade(tradeId, updated.getVersion(), 76.0, 0.004);
+                check(false, "versioned update validates like create");
+            } catch (IllegalArgumentException e) {
+                check(e.getMessage().equals(TradeService.validationError("2024-01-15", counterparty, "Crude Oil", 0.004,
+                        76.0, "BUY")), "versioned update validates like create");
+            }
+
+            // 2. Many writers on one row
+            System.out.printf("%n2. Testing %d threads x %d increments...%n", threads, increments);
+            AtomicInteger conflicts = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < increments; i++) {
+                        incrementVolume(tradeService, tradeId, conflicts);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            Trade result = tradeService.getTradeById(tradeId);
+            double expectedVolume = 1000 + (double) threads * increments;
+            System.out.printf(" %d updates in %d ms, %d conflicts retried%n",
+                    threads * increments, elapsedMs, conflicts.get());
+            check(result.getVolume() == expectedVolume, "no lost updates (volume " + result.getVolume() + ")");
+            check(result.getVersion() == 2 + threads * increments, "one version per successful update");
+            Position position = tradeService.getPosition(PositionEngine.Dimension.COUNTERPARTY, counterparty);
+            check(position.getNetVolume() == expectedVolume, "position follows every update");
+
+            // 3. Deletes
+            System.out.println("\n3. Testing versioned delete...");
+            try {
+                tradeService.deleteTrade(tradeId, 1);
+                check(false, "stale delete is rejected");
+            } catch (TradeConflictException e) {
+                check(e.getCurrentTrade().getVersion() == result.getVersion(), "stale delete is rejected");
+            }
+            check(tradeService.deleteTrade(tradeId, result.getVersion()), "delete at current version");
+            check(!tradeService.deleteTrade(tradeId, result.getVersion()), "second delete finds nothing");
+            position = tradeService.getPosition(PositionEngine.Dimension.COUNTERPARTY, counterparty);
+            check(position == null || position.getNetVolume() == 0, "position removed with the trade");
+        } finally {
+            tradeService.shutdown();
+        }
+    }
+
+    // Read-modify-write: the read may be stale, so a conflict means re-read and try again
+    private static void incrementVolume(TradeService tradeService, int tradeId, AtomicInteger conflicts)
+            throws Exception {
+        Trade current = tradeService.getTradeById(tradeId);
+        while (true) {
+            try {
+                tradeService.updateTrade(tradeId, current.getVersion(), current.getPrice(), current.getVolume() + 1);
+                return;
+            } catch (TradeConflictException e) {
+                conflicts.incrementAndGet();
+                current = e.getCurrentTrade();
+            }
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,78 @@
+public class PoolConfig {
+    private int minSize = 2;
+    private int maxSize = 10;
+    private long connectionTimeoutMs = 30_000;
+    private long validationIdleMs = 30_000;
+    private int validationTimeoutSeconds = 5;
+    private long leakDetectionThresholdMs = 60_000;
+    private boolean leakStackTraces;
+    private long maxLifetimeMs = 30 * 60_000;
+    private long housekeepingIntervalMs = 15_000;
+    private int statementCacheSize = 64;
+
+    // Default constructor
+    public PoolConfig() {}
+
+    // Reads overrides such as -Dtrading.pool.maxSize=20 from the system properties
+    public static PoolConfig fromSystemProperties() {
+        PoolConfig config = new PoolConfig();
+        config.setMinSize(Integer.getInteger("trading.pool.minSize", config.getMinSize()));
+        config.setMaxSize(Integer.getInteger("trading.pool.maxSize", config.getMaxSize()));
+        config.setConnectionTimeoutMs(Long.getLong("trading.pool.connectionTimeoutMs", config.getConnectionTimeoutMs()));
+        config.setValidationIdleMs(Long.getLong("trading.pool.validationIdleMs", config.getValidationIdleMs()));
+        config.setValidationTimeoutSeconds(Integer.getInteger("trading.pool.validationTimeoutSeconds",
+                config.getValidationTimeoutSeconds()));
+        config.setLeakDetectionThresholdMs(Long.getLong("trading.pool.leakDetectionThresholdMs",
+                config.getLeakDetectionThresholdMs()));
+        config.setLeakStackTraces(Boolean.parseBoolean(System.getProperty("trading.pool.leakStackTraces",
+                String.valueOf(config.isLeakStackTraces()))));
+        config.setMaxLifetimeMs(Long.getLong("trading.pool.maxLifetimeMs", config.getMaxLifetimeMs()));
+        config.setHousekeepingIntervalMs(Long.getLong("trading.pool.housekeepingIntervalMs",
+                config.getHousekeepingIntervalMs()));
+        config.setStatementCacheSize(Integer.getInteger("trading.pool.statementCacheSize",
+                config.getStatementCacheSize()));
+        return config;
+    }
+
+    // Getters and Setters
+    public int getMinSize() { return minSize; }
+    public void setMinSize(int minSize) { this.minSize = minSize; }
+
+    public int getMaxSize() { return maxSize; }
+    public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+
+    public long getConnectionTimeoutMs() { return connectionTimeoutMs; }
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) { this.connectionTimeoutMs = connectionTimeoutMs; }
+
+    // Idle connections older than this are validated with isValid() before being handed out
+    public long getValidationIdleMs() { return validationIdleMs; }
+    public void setValidationIdleMs(long validationIdleMs) { this.validationIdleMs = validationIdleMs; }
+
+    public int getValidationTimeoutSeconds() { return validationTimeoutSeconds; }
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) { this.validationTimeoutSeconds = validationTimeoutSeconds; }
+
+    // 0 disables leak detection
+    public long getLeakDetectionThresholdMs() { return leakDetectionThresholdMs; }
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs) { this.leakDetectionThresholdMs = leakDetectionThresholdMs; }
+
+    // Records where each connection was borrowed, for leak reports; costs a stack trace per borrow
+    public boolean isLeakStackTraces() { return leakStackTraces; }
+    public void setLeakStackTraces(boolean leakStackTraces) { this.leakStackTraces = leakStackTraces; }
+
+    public long getMaxLifetimeMs() { return maxLifetimeMs; }
+    public void setMaxLifetimeMs(long maxLifetimeMs) { this.maxLifetimeMs = maxLifetimeMs; }
+
+    public long getHousekeepingIntervalMs() { return housekeepingIntervalMs; }
+    public void setHousekeepingIntervalMs(long housekeepingIntervalMs) { this.housekeepingIntervalMs = housekeepingIntervalMs; }
+
+    // PreparedStatements cached per connection; 0 disables the cache
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = statementCacheSize; }
+
+    @Override
+    public String toString() {
+        return String.format("min=%d max=%d timeout=%dms validateIdle=%dms leak=%dms lifetime=%dms statements=%d",
+                minSize, maxSize, connectionTimeoutMs, validationIdleMs, leakDetectionThresholdMs, maxLifetimeMs,
+                statementCacheSize);
+    }
+}
@@ -0,0 +1,110 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A physical connection owned by {@link ConnectionPool}. Callers never see it directly:
+ * each borrow hands out a fresh lease proxy whose close() returns the connection to the pool.
+ */
+class PooledConnection {
+    private final ConnectionPool pool;
+    private final Connection physical;
+    private final StatementCache statementCache;
+    private final long createdAt;
+    private volatile long lastReturnedAt;
+    private volatile long borrowedAt;
+    private volatile Thread borrower;
+    private volatile Throwable borrowSite;
+    private volatile boolean leakReported;
+
+    PooledConnection(ConnectionPool pool, Connection physical, StatementCache statementCache) {
+        this.pool = pool;
+        this.physical = physical;
+        this.statementCache = statementCache;
+        this.createdAt = System.currentTimeMillis();
+        this.lastReturnedAt = createdAt;
+    }
+
+    // Capturing the borrow site fills in a stack trace, so it is only done when asked for
+    Connection lease(boolean captureBorrowSite) {
+        borrowedAt = System.currentTimeMillis();
+        borrower = Thread.currentThread();
+        borrowSite = captureBorrowSite ? new Throwable("Connection borrowed here") : null;
+        leakReported = false;
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Lease());
+    }
+
+    void markReturned() {
+        lastReturnedAt = System.currentTimeMillis();
+        borrower = null;
+        borrowSite = null;
+    }
+
+    Connection getPhysical() { return physical; }
+    long getCreatedAt() { return createdAt; }
+    long getLastReturnedAt() { return lastReturnedAt; }
+    long getBorrowedAt() { return borrowedAt; }
+    Thread getBorrower() { return borrower; }
+    Throwable getBorrowSite() { return borrowSite; }
+
+    boolean isLeakReported() { return leakReported; }
+    void setLeakReported(boolean leakReported) { this.leakReported = leakReported; }
+
+    void closePhysical() {
+        if (statementCache != null) {
+            statementCache.closeAll();
+        }
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+        // Closed by the borrower, possibly from another thread than the one using it; only the
+        // first close may return the connection, or the pool's permit would be released twice
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + (closed.get() ? ", returned]" : "]");
+                default:
+                    if (closed.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (statementCache != null && method.getName().equals("prepareStatement")) {
+                        if (args.length == 1) {
+                            return statementCache.prepare((String) args[0]);
+                        }
+                        if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                            return statementCache.prepare((String) args[0], (Integer) args[1]);
+                        }
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Net position snapshot for one commodity, counterparty or trade date.
+ * BUY trades add to volume and notional, SELL trades subtract.
+ */
+public class Position {
+    private final String key;
+    // Fixed-point hundredths
+    private final long netVolume;
+    private final long netNotional;
+    private final long tradeCount;
+
+    public Position(String key, long netVolume, long netNotional, long tradeCount) {
+        this.key = key;
+        this.netVolume = netVolume;
+        this.netNotional = netNotional;
+        this.tradeCount = tradeCount;
+    }
+
+    public String getKey() { return key; }
+    public double getNetVolume() { return FixedPoint.toDouble(netVolume); }
+    public double getNetNotional() { return FixedPoint.toDouble(netNotional); }
+    public long getNetVolumeUnits() { return netVolume; }
+    public long getNetNotionalUnits() { return netNotional; }
+    public long getTradeCount() { return tradeCount; }
+
+    @Override
+    public String toString() {
+        return String.format("%-25s | Net Volume:%14s | Net Notional:%18s | Trades:%d",
+                key, FixedPoint.format(netVolume), FixedPoint.format(netNotional), tradeCount);
+    }
+}
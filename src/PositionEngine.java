@@ -0,0 +1,180 @@
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps net volume and notional (volume x price, signed by BUY/SELL) per commodity,
+ * per counterparty and per trade date, in fixed-point hundredths.
+ *
+ * Positions are striped adders, so concurrent trade events update them without locks
+ * and a lookup is a single map get. {@link #rebuild(TradeRepository)} recomputes everything
+ * from a full scan into fresh maps, aggregating each scanned page on the fork/join pool,
+ * and swaps them in when the scan is done; readers see the old positions until then.
+ */
+public class PositionEngine {
+    public enum Dimension { COMMODITY, COUNTERPARTY, TRADE_DATE }
+
+    private static final int LEAF_SIZE = 256;
+
+    private volatile Positions current = new Positions();
+    private final ForkJoinPool pool;
+
+    public PositionEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PositionEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void onTradeCreated(Trade trade) {
+        current.apply(trade, 1);
+    }
+
+    public void onTradeDeleted(Trade trade) {
+        current.apply(trade, -1);
+    }
+
+    public void onTradeUpdated(Trade before, Trade after) {
+        Positions positions = current;
+        positions.apply(before, -1);
+        positions.apply(after, 1);
+    }
+
+    public Position getPosition(Dimension dimension, String key) {
+        Accumulator accumulator = current.mapFor(dimension).get(key);
+        return accumulator == null ? new Position(key, 0, 0, 0) : accumulator.snapshot(key);
+    }
+
+    // All non-empty positions for a dimension, ordered by key
+    public List<Position> getPositions(Dimension dimension) {
+        List<Position> positions = new ArrayList<>();
+        for (Map.Entry<String, Accumulator> entry : current.mapFor(dimension).entrySet()) {
+            Position position = entry.getValue().snapshot(entry.getKey());
+            if (position.getTradeCount() != 0) {
+                positions.add(position);
+            }
+        }
+        positions.sort(Comparator.comparing(Position::getKey));
+        return positions;
+    }
+
+    /**
+     * Recomputes all positions from a full table scan. Pages are aggregated in parallel
+     * while the scan continues; at most a few pages are in flight so memory stays bounded.
+     * The new positions replace the old ones only once the scan completes, so a failed scan
+     * leaves them as they were. Intended for startup or a quiet period: trades written during
+     * the rebuild may be missed.
+     */
+    public int rebuild(TradeRepository tradeRepository) throws SQLException {
+        Positions fresh = new Positions();
+        int maxInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<Void>> inFlight = new ArrayDeque<>();
+        List<Trade> page = new ArrayList<>(TradeRepository.DEFAULT_PAGE_SIZE);
+        int[] count = { 0 };
+
+        tradeRepository.forEachTrade(trade -> {
+            page.add(trade);
+            count[0]++;
+            if (page.size() == TradeRepository.DEFAULT_PAGE_SIZE) {
+                inFlight.addLast(pool.submit(new AggregateTask(fresh, new ArrayList<>(page), 0, page.size())));
+                page.clear();
+                if (inFlight.size() > maxInFlight) {
+                    inFlight.removeFirst().join();
+                }
+            }
+            return true;
+        });
+        if (!page.isEmpty()) {
+            inFlight.addLast(pool.submit(new AggregateTask(fresh, page, 0, page.size())));
+        }
+        while (!inFlight.isEmpty()) {
+            inFlight.removeFirst().join();
+        }
+        current = fresh;
+        return count[0];
+    }
+
+    // One complete set of positions; rebuild fills a new one and swaps it in
+    private static class Positions {
+        private final Map<String, Accumulator> byCommodity = new ConcurrentHashMap<>();
+        private final Map<String, Accumulator> byCounterparty = new ConcurrentHashMap<>();
+        private final Map<String, Accumulator> byTradeDate = new ConcurrentHashMap<>();
+
+        void apply(Trade trade, int direction) {
+            long sign = "SELL".equalsIgnoreCase(trade.getTradeType()) ? -direction : direction;
+            long volume = sign * trade.getVolumeUnits();
+            long notional = sign * trade.getNotionalUnits();
+            accumulatorFor(byCommodity, trade.getCommodity()).add(volume, notional, direction);
+            accumulatorFor(byCounterparty, trade.getCounterparty()).add(volume, notional, direction);
+            accumulatorFor(byTradeDate, trade.getTradeDate()).add(volume, notional, direction);
+        }
+
+        private static Accumulator accumulatorFor(Map<String, Accumulator> map, String key) {
+            Accumulator accumulator = map.get(key);
+            return accumulator != null ? accumulator : map.computeIfAbsent(key, k -> new Accumulator());
+        }
+
+        Map<String, Accumulator> mapFor(Dimension dimension) {
+            switch (dimension) {
+                case COMMODITY: return byCommodity;
+                case COUNTERPARTY: return byCounterparty;
+                default: return byTradeDate;
+            }
+        }
+    }
+
+    private static class AggregateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Positions target;
+        private final List<Trade> trades;
+        private final int from;
+        private final int to;
+
+        AggregateTask(Positions target, List<Trade> trades, int from, int to) {
+            this.target = target;
+            this.trades = trades;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    target.apply(trades.get(i), 1);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AggregateTask(target, trades, from, middle), new AggregateTask(target, trades, middle, to));
+        }
+    }
+
+    private static class Accumulator {
+        // Fixed-point hundredths, so sums are exact whatever order the adds land in
+        private final LongAdder netVolume = new LongAdder();
+        private final LongAdder netNotional = new LongAdder();
+        private final LongAdder tradeCount = new LongAdder();
+
+        void add(long volume, long notional, int count) {
+            netVolume.add(volume);
+            netNotional.add(notional);
+            tradeCount.add(count);
+        }
+
+        Position snapshot(String key) {
+            return new Position(key, netVolume.sum(), netNotional.sum(), tradeCount.sum());
+        }
+    }
+}
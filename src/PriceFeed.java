@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Feeds commodity price ticks into a {@link MarkToMarketEngine}, standing in for a market
+ * data connection. Ticks are text lines of the form {@code commodity,price}; blank lines
+ * and lines starting with '#' are skipped and malformed lines are counted and dropped.
+ *
+ * {@link #replay} plays a file back on a background thread, optionally paced, and
+ * {@link #listen} accepts TCP connections (e.g. {@code nc localhost 9100}) and applies
+ * every line received.
+ */
+public class PriceFeed implements AutoCloseable {
+    private final MarkToMarketEngine engine;
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final String source;
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+    private Thread thread;
+
+    private PriceFeed(MarkToMarketEngine engine, String source) {
+        this.engine = engine;
+        this.source = source;
+    }
+
+    // Plays the file back once, sleeping intervalMs between ticks (0 for as fast as possible)
+    public static PriceFeed replay(Path file, MarkToMarketEngine engine, long intervalMs) throws IOException {
+        PriceFeed feed = new PriceFeed(engine, file.toString());
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        feed.start("price-feed-replay", () -> {
+            try (reader) {
+                String line;
+                while (feed.running && (line = reader.readLine()) != null) {
+                    if (feed.apply(line) && intervalMs > 0) {
+                        Thread.sleep(intervalMs);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[Prices] Replay of " + file + " failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return feed;
+    }
+
+    // Accepts any number of connections on the port; port 0 picks a free one
+    public static PriceFeed listen(int port, MarkToMarketEngine engine) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        PriceFeed feed = new PriceFeed(engine, "port " + serverSocket.getLocalPort());
+        feed.serverSocket = serverSocket;
+        feed.start("price-feed-listener", () -> {
+            while (feed.running) {
+                try {
+                    Socket client = serverSocket.accept();
+                    feed.clients.add(client);
+                    Thread reader = new Thread(() -> feed.readClient(client), "price-feed-" + client.getPort());
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    if (feed.running) {
+                        System.err.println("[Prices] Accept failed: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        return feed;
+    }
+
+    private void start(String name, Runnable body) {
+        thread = new Thread(body, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readClient(Socket client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (running && (line = reader.readLine()) != null) {
+                apply(line);
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[Prices] Connection closed: " + e.getMessage());
+            }
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    // Returns true if the line was a tick that was applied
+    boolean apply(String line) {
+        String text = line.trim();
+        if (text.isEmpty() || text.startsWith("#")) {
+            return false;
+        }
+        int comma = text.lastIndexOf(',');
+        try {
+            if (comma <= 0) {
+                throw new IllegalArgumentException("Expected commodity,price");
+            }
+            String commodity = text.substring(0, comma).trim();
+            double price = InputValidator.parseDouble(text.substring(comma + 1));
+            engine.onPriceTick(commodity, price);
+            ticks.increment();
+            return true;
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            rejected.increment();
+            return false;
+        }
+    }
+
+    public long getTickCount() { return ticks.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public boolean isRunning() { return running && thread.isAlive(); }
+    public int getPort() { return serverSocket == null ? -1 : serverSocket.getLocalPort(); }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket client : clients) {
+                client.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Price feed from %s | Ticks:%d | Rejected:%d | %s", source, getTickCount(),
+                getRejectedCount(), isRunning() ? "running" : "finished");
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Outcome of reconciling the trades table against a confirmation file. Only the counts
+ * are kept here; the breaks themselves are written to the report file.
+ */
+public class ReconciliationResult {
+    private long oursCount;
+    private long theirsCount;
+    private long rejectedCount;
+    private long matchedCount;
+    private long mismatchedCount;
+    private long missingOursCount;
+    private long missingTheirsCount;
+    private int partitionCount;
+    private int spilledPartitionCount;
+    private long spilledBytes;
+    private long peakRecordsInMemory;
+    private long elapsedNanos;
+
+    // Our trades within the file's dates and counterparties
+    public long getOursCount() { return oursCount; }
+    public long getTheirsCount() { return theirsCount; }
+    // Confirmation lines that could not be parsed; they are in the rejects file
+    public long getRejectedCount() { return rejectedCount; }
+    public long getMatchedCount() { return matchedCount; }
+    // Paired on date, counterparty, commodity and type, but volume or price is out of tolerance
+    public long getMismatchedCount() { return mismatchedCount; }
+    // Confirmed by the counterparty but not in our table
+    public long getMissingOursCount() { return missingOursCount; }
+    // In our table but not confirmed
+    public long getMissingTheirsCount() { return missingTheirsCount; }
+    public int getPartitionCount() { return partitionCount; }
+    public int getSpilledPartitionCount() { return spilledPartitionCount; }
+    public long getSpilledBytes() { return spilledBytes; }
+    // Most records held in memory at once, ours and theirs; bounded by the budget, not the data
+    public long getPeakRecordsInMemory() { return peakRecordsInMemory; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public long getBreakCount() {
+        return mismatchedCount + missingOursCount + missingTheirsCount;
+    }
+
+    synchronized void add(long matched, long mismatched, long missingOurs, long missingTheirs) {
+        matchedCount += matched;
+        mismatchedCount += mismatched;
+        missingOursCount += missingOurs;
+        missingTheirsCount += missingTheirs;
+    }
+
+    synchronized void addSpill(long bytes) {
+        spilledPartitionCount++;
+        spilledBytes += bytes;
+    }
+
+    void setOursCount(long oursCount) { this.oursCount = oursCount; }
+    void setTheirsCount(long theirsCount) { this.theirsCount = theirsCount; }
+    void setRejectedCount(long rejectedCount) { this.rejectedCount = rejectedCount; }
+    void setPartitionCount(int partitionCount) { this.partitionCount = partitionCount; }
+    void setPeakRecordsInMemory(long peakRecordsInMemory) { this.peakRecordsInMemory = peakRecordsInMemory; }
+    void setElapsedNanos(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("Ours:%d | Theirs:%d | Matched:%d | Mismatched:%d | Missing ours:%d | Missing theirs:%d"
+                        + " | Rejected:%d | Partitions:%d (%d spilled, %.1f MB) | Peak in memory:%d | %.2fs",
+                oursCount, theirsCount, matchedCount, mismatchedCount, missingOursCount, missingTheirsCount,
+                rejectedCount, partitionCount, spilledPartitionCount, spilledBytes / 1e6, peakRecordsInMemory,
+                elapsedNanos / 1e9);
+    }
+}
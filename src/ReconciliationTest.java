@@ -0,0 +1,161 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Reconciles a journal store against a generated confirmation file with known breaks:
+ * counterparty names in other spellings, prices inside and outside tolerance, trades
+ * missing from either side and unreadable lines. Runs once in memory and once with a
+ * budget small enough to spill, and expects the same report. Needs no database.
+ *
+ * Usage: java ReconciliationTest [tradeCount]
+ */
+public class ReconciliationTest {
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Coal", "Electricity", "Solar Power" };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.println("Testing Trade Reconciliation...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("reconciliation-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("journal"), false, 0)) {
+                TradeService tradeService = new TradeService(store);
+
+                // Our side, plus trades outside the file's counterparties and dates
+                List<Trade> ours = new ArrayList<>(count + 200);
+                for (int i = 0; i < count; i++) {
+                    ours.add(new Trade(dateOf(i), "Counterparty " + i % 20, COMMODITIES[i % 5], 1000 + i,
+                            50 + i % 4999 / 100.0, i % 2 == 0 ? "BUY" : "SELL"));
+                }
+                for (int i = 0; i < 100; i++) {
+                    ours.add(new Trade("2024-01-15", "Not In The File Ltd", "Coal", 10, 60, "BUY"));
+                    ours.add(new Trade("2024-03-15", "Counterparty 1", "Coal", 10, 60, "BUY"));
+                }
+                store.addTrades(ours);
+
+                // Their side
+                Path confirmations = directory.resolve("confirmations.csv");
+                long missingTheirs = 0;
+                long mismatched = 0;
+                long extras = 500;
+                try (BufferedWriter out = Files.newBufferedWriter(confirmations, StandardCharsets.UTF_8)) {
+                    out.write("TradeDate,Counterparty,Commodity,Volume,Price,TradeType\n");
+                    List<String> lines = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        if (i % 97 == 0) {
+                            missingTheirs++;
+                            continue;
+                        }
+                        double volume = 1000 + i;
+                        double price = 50 + i % 4999 / 100.0;
+                        if (i % 103 == 0) {
+                            mismatched++;
+                            volume += 5;
+                        } else if (i % 101 == 0) {
+                            price += 0.01;
+                        }
+                        String counterparty = i % 3 == 0 ? "  counterparty   " + i % 20 : "COUNTERPARTY " + i % 20;
+                        lines.add(String.format("%s,%s,%s,%.2f,%.2f,%s", dateOf(i), counterparty, COMMODITIES[i % 5],
+                                volume, price, i % 2 == 0 ? "BUY" : "SELL"));
+                    }
+                    for (int i = 0; i < extras; i++) {
+                        lines.add("2024-01-20,Counterparty " + i % 20 + ",Uranium," + (i + 1) + ",10.00,BUY");
+                    }
+                    Collections.shuffle(lines, new Random(42));
+                    for (String line : lines) {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                    out.write("2024-01-20,Counterparty 1,Coal,abc,10.00,BUY\n");
+                    out.write("2024-01-20,Counterparty 1,Coal,10.00,10.00,HOLD\n");
+                }
+                long matched = count - missingTheirs - mismatched;
+
+                // 1. In memory
+                System.out.println("\n1. Testing reconciliation in memory...");
+                Path report = directory.resolve("breaks.csv");
+                TradeReconciler inMemory = new TradeReconciler(tradeService, TradeFileIngester.Format.CSV, 0, 0.01,
+                        512L << 20, directory);
+                ReconciliationResult result = inMemory.reconcile(confirmations, report, directory.resolve("rejects"));
+                System.out.println(" " + result);
+                check(result.getOursCount() == count && result.getTheirsCount() == count - missingTheirs + extras,
+                        "our trades outside the file's dates and counterparties are left out");
+                check(result.getRejectedCount() == 2, "unreadable lines and unknown trade types are rejected");
+                check(result.getMatchedCount() == matched, "names match in any case and spacing, prices within 0.01");
+                check(result.getMismatchedCount() == mismatched, "volume breaks are mismatched");
+                check(result.getMissingTheirsCount() == missingTheirs && result.getMissingOursCount() == extras,
+                        "unpaired trades are missing from the other side");
+                check(result.getSpilledPartitionCount() == 0, "nothing spilled within the budget");
+                List<String> breaks = Files.readAllLines(report, StandardCharsets.UTF_8);
+                check(breaks.size() == 1 + result.getBreakCount() && breaks.get(0).equals(TradeReconciler.REPORT_HEADER),
+                        "report has a header and one line per break");
+                check(breaks.contains("MISSING_THEIRS,2024-01-01,COUNTERPARTY 0,CRUDE OIL,BUY,1,1000.00,50.00,,"),
+                        "report shows our side of a missing trade");
+
+                // 2. Spilling
+                System.out.println("\n2. Testing reconciliation with a small memory budget...");
+                Path spilledReport = directory.resolve("breaks-spilled.csv");
+                TradeReconciler spilling = new TradeReconciler(tradeService, TradeFileIngester.Format.CSV, 0, 0.01,
+                        1L << 20, directory);
+                ReconciliationResult spilled = spilling.reconcile(confirmations, spilledReport, null);
+                System.out.println(" " + spilled);
+                check(spilled.getSpilledPartitionCount() > 0, "partitions spill to disk over the budget");
+                long records = spilled.getOursCount() + spilled.getTheirsCount();
+                check(spilled.getPeakRecordsInMemory() * 4 < records,
+                        "at most " + spilled.getPeakRecordsInMemory() + " of " + records + " records in memory at once");
+                List<String> spilledBreaks = Files.readAllLines(spilledReport, StandardCharsets.UTF_8);
+                Collections.sort(breaks);
+                Collections.sort(spilledBreaks);
+                check(spilled.getMatchedCount() == matched && spilledBreaks.equals(breaks),
+                        "spilled partitions give the same report");
+                try (Stream<Path> files = Files.list(directory)) {
+                    check(files.noneMatch(path -> path.getFileName().toString().endsWith(".spill")),
+                            "spill files are removed");
+                }
+            }
+
+            System.out.println("\n All tests passed! Reconciliation is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Reconciliation test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // January 2024, 31 days
+    private static String dateOf(int i) {
+        return String.format("2024-01-%02d", 1 + i % 31);
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
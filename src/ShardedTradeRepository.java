@@ -0,0 +1,463 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads trades over several backing repositories (shards), each its own database or
+ * journal, behind a single {@link TradeRepository}.
+ *
+ * A {@link Router} picks each new trade's shard, by a hash of the counterparty or by
+ * trade-date range. The shard is encoded in the trade ID that callers see:
+ * {@code globalId = localId * shardCount + shard}. Lookups, updates and deletes by ID
+ * therefore go straight to one shard. Global IDs from the same shard keep their local
+ * order, and IDs from different shards interleave much as the trades were created.
+ * Changing the shard count changes every ID, so it is fixed for the life of the data.
+ *
+ * Reads that span shards are scatter-gather: every shard runs the query on its own thread
+ * and the sorted results are combined with a k-way merge on TradeID (or on the query's sort
+ * order). {@link #forEachTrade} streams the merge from one keyset page per shard, so memory
+ * stays bounded however many trades there are.
+ */
+public class ShardedTradeRepository implements TradeRepository, AutoCloseable {
+    private static final Comparator<Trade> BY_ID = Comparator.comparingInt(Trade::getTradeId);
+
+    /** Chooses the shard for a new trade. Must always give the same answer for the same trade. */
+    public interface Router {
+        int shardFor(Trade trade);
+
+        // The only shard that can hold this counterparty, or -1 if it could be on any
+        default int shardForCounterparty(String counterparty) {
+            return -1;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(int shard, TradeRepository repository) throws SQLException;
+    }
+
+    private final List<TradeRepository> shards;
+    private final int shardCount;
+    private final Router router;
+    private final ExecutorService executor;
+
+    public ShardedTradeRepository(List<TradeRepository> shards, Router router) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.shardCount = shards.size();
+        this.router = router;
+        this.executor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "trade-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Same counterparty, same shard; the hash is String.hashCode, so routing is stable across runs
+    public static Router byCounterparty(int shardCount) {
+        return new Router() {
+            @Override
+            public int shardFor(Trade trade) {
+                return shardForCounterparty(trade.getCounterparty());
+            }
+
+            @Override
+            public int shardForCounterparty(String counterparty) {
+                int hash = counterparty.hashCode();
+                return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+            }
+        };
+    }
+
+    /**
+     * Shard 0 holds trades dated before the first boundary, shard 1 those from the first
+     * boundary up to the second, and so on; pass one boundary fewer than there are shards.
+     */
+    public static Router byTradeDate(String... boundaries) {
+        for (int i = 0; i < boundaries.length; i++) {
+            if (!InputValidator.isValidDate(boundaries[i]) || (i > 0 && boundaries[i].compareTo(boundaries[i - 1]) <= 0)) {
+                throw new IllegalArgumentException("Shard boundaries must be ascending yyyy-MM-dd dates: "
+                        + Arrays.toString(boundaries));
+            }
+        }
+        int[] sorted = new int[boundaries.length];
+        for (int i = 0; i < boundaries.length; i++) {
+            sorted[i] = TradeDates.parse(boundaries[i]);
+        }
+        return trade -> {
+            int shard = 0;
+            while (shard < sorted.length && trade.getTradeEpochDay() >= sorted[shard]) {
+                shard++;
+            }
+            return shard;
+        };
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public TradeRepository getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    public static int shardOf(int globalId, int shardCount) {
+        return globalId % shardCount;
+    }
+
+    // A local ID past Integer.MAX_VALUE / shardCount has no global ID; wrapping would alias another trade
+    private int globalId(int localId, int shard) {
+        try {
+            return Math.addExact(Math.multiplyExact(localId, shardCount), shard);
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Trade ID " + localId + " in shard " + shard
+                    + " is too large for a global ID with " + shardCount + " shards", e);
+        }
+    }
+
+    private int localId(int globalId) {
+        return globalId / shardCount;
+    }
+
+    private int route(Trade trade) {
+        int shard = router.shardFor(trade);
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalStateException("Router chose shard " + shard + " of " + shardCount);
+        }
+        return shard;
+    }
+
+    // Rewrites a trade read from a shard to carry its global ID; shards return fresh objects
+    private Trade toGlobal(Trade trade, int shard) {
+        if (trade != null && trade.getTradeId() > 0) {
+            trade.setTradeId(globalId(trade.getTradeId(), shard));
+        }
+        return trade;
+    }
+
+    private List<Trade> toGlobal(List<Trade> trades, int shard) {
+        for (Trade trade : trades) {
+            toGlobal(trade, shard);
+        }
+        return trades;
+    }
+
+    // Runs the call on every shard at once and returns the results in shard order
+    private <T> List<T> scatter(ShardCall<T> call) throws SQLException {
+        if (shardCount == 1) {
+            return List.of(call.call(0, shards.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            futures.add(executor.submit(() -> call.call(shard, shards.get(shard))));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Shard query failed: " + cause, cause);
+        } catch (InterruptedException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while querying shards", e);
+        }
+    }
+
+    // Merges lists that are each sorted by the comparator, keeping at most limit trades (0 for all)
+    static List<Trade> merge(List<List<Trade>> sortedLists, Comparator<Trade> order, int limit) {
+        int total = 0;
+        for (List<Trade> list : sortedLists) {
+            total += list.size();
+        }
+        int size = limit > 0 ? Math.min(limit, total) : total;
+        List<Trade> merged = new ArrayList<>(size);
+        // Heap entries are {list, position}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (a, b) -> order.compare(sortedLists.get(a[0]).get(a[1]), sortedLists.get(b[0]).get(b[1])));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                heap.add(new int[] { i, 0 });
+            }
+        }
+        while (merged.size() < size) {
+            int[] head = heap.poll();
+            List<Trade> list = sortedLists.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heap.add(head);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public boolean addTrade(Trade trade) throws SQLException {
+        int shard = route(trade);
+        boolean added = shards.get(shard).addTrade(trade);
+        if (added) {
+            toGlobal(trade, shard);
+        }
+        return added;
+    }
+
+    // Splits the trades by shard and loads the shards in parallel
+    @Override
+    public BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        List<List<Trade>> byShard = new ArrayList<>(shardCount);
+        List<List<Integer>> indexes = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            byShard.add(new ArrayList<>());
+            indexes.add(new ArrayList<>());
+        }
+        int index = 0;
+        for (Trade trade : trades) {
+            int shard = route(trade);
+            byShard.get(shard).add(trade);
+            indexes.get(shard).add(index++);
+        }
+
+        List<BulkInsertResult> results = scatter((shard, repository) ->
+                byShard.get(shard).isEmpty() ? new BulkInsertResult() : repository.addTrades(byShard.get(shard), chunkSize));
+
+        BulkInsertResult combined = new BulkInsertResult();
+        for (int shard = 0; shard < shardCount; shard++) {
+            BulkInsertResult result = results.get(shard);
+            combined.addInserted(result.getInsertedCount());
+            combined.addChunks(result.getChunkCount());
+            Set<Trade> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (BulkInsertResult.Failure failure : result.getFailures()) {
+                failed.add(failure.getTrade());
+                combined.addFailure(indexes.get(shard).get(failure.getIndex()), failure.getTrade(), failure.getReason());
+            }
+            for (Trade trade : byShard.get(shard)) {
+                if (!failed.contains(trade)) {
+                    toGlobal(trade, shard);
+                }
+            }
+        }
+        return combined;
+    }
+
+    @Override
+    public List<Trade> getAllTrades() throws SQLException {
+        List<List<Trade>> results = scatter((shard, repository) -> toGlobal(repository.getAllTrades(), shard));
+        return merge(results, BY_ID, 0);
+    }
+
+    @Override
+    public int countTrades() throws SQLException {
+        int total = 0;
+        for (int count : scatter((shard, repository) -> repository.countTrades())) {
+            total += count;
+        }
+        return total;
+    }
+
+    // The page after a global ID is the merge of each shard's page after the matching local ID
+    @Override
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException {
+        List<List<Trade>> results = scatter((shard, repository) ->
+                toGlobal(repository.getTradesPage(localAfter(afterTradeId, shard), pageSize), shard));
+        return merge(results, BY_ID, pageSize);
+    }
+
+    // Largest local ID on the shard whose global ID is not above afterTradeId
+    private int localAfter(int afterTradeId, int shard) {
+        return Math.max(0, Math.floorDiv(afterTradeId - shard, shardCount));
+    }
+
+    /**
+     * Streams every trade in global TradeID order. Each shard is read one keyset page at a
+     * time; a heap over the current trade of each shard picks the next one, and a shard's
+     * next page is fetched only when its current page runs out.
+     */
+    @Override
+    public int forEachTrade(TradeHandler handler, int pageSize) throws SQLException {
+        List<List<Trade>> pages = new ArrayList<>(scatter((shard, repository) ->
+                toGlobal(repository.getTradesPage(0, pageSize), shard)));
+        int[] positions = new int[shardCount];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(shardCount,
+                Comparator.comparingInt(shard -> pages.get(shard).get(positions[shard]).getTradeId()));
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (!pages.get(shard).isEmpty()) {
+                heap.add(shard);
+            }
+        }
+
+        int visited = 0;
+        while (!heap.isEmpty()) {
+            int shard = heap.poll();
+            List<Trade> page = pages.get(shard);
+            Trade trade = page.get(positions[shard]++);
+            visited++;
+            if (!handler.handle(trade)) {
+                return visited;
+            }
+            if (positions[shard] == page.size()) {
+                if (page.size() < pageSize) {
+                    continue;
+                }
+                page = toGlobal(shards.get(shard).getTradesPage(localId(trade.getTradeId()), pageSize), shard);
+                pages.set(shard, page);
+                positions[shard] = 0;
+                if (page.isEmpty()) {
+                    continue;
+                }
+            }
+            heap.add(shard);
+        }
+        return visited;
+    }
+
+    @Override
+    public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
+        return tradeId > 0 && shards.get(shardOf(tradeId, shardCount)).updateTrade(localId(tradeId), newPrice, newVolume);
+    }
+
+    @Override
+    public boolean deleteTrade(int tradeId) throws SQLException {
+        return tradeId > 0 && shards.get(shardOf(tradeId, shardCount)).deleteTrade(localId(tradeId));
+    }
+
+    @Override
+    public TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException {
+        if (tradeId <= 0) {
+            return null;
+        }
+        int shard = shardOf(tradeId, shardCount);
+        TradeUpdate update = shards.get(shard).updateTradeIfVersion(localId(tradeId), expectedVersion, newPrice, newVolume);
+        if (update == null) {
+            return null;
+        }
+        return new TradeUpdate(toGlobal(update.getBefore(), shard), toGlobal(update.getAfter(), shard));
+    }
+
+    @Override
+    public Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException {
+        if (tradeId <= 0) {
+            return null;
+        }
+        int shard = shardOf(tradeId, shardCount);
+        return toGlobal(shards.get(shard).deleteTradeIfVersion(localId(tradeId), expectedVersion), shard);
+    }
+
+    @Override
+    public List<Trade> searchTrades(String searchColumn, String searchValue) throws SQLException {
+        List<List<Trade>> results = scatter((shard, repository) -> {
+            List<Trade> trades = toGlobal(repository.searchTrades(searchColumn, searchValue), shard);
+            trades.sort(BY_ID);
+            return trades;
+        });
+        return merge(results, BY_ID, 0);
+    }
+
+    /**
+     * Each shard applies the whole query, including sort and limit, and the per-shard results
+     * are merged in the query's order. The global top N is always within the shards' top Ns.
+     * An exact counterparty under counterparty routing only needs its own shard.
+     */
+    @Override
+    public List<Trade> findTrades(TradeQuery query) throws SQLException {
+        if (query.getCounterparty() != null && query.getCounterpartyMatch() == TradeQuery.Match.EQUALS) {
+            int shard = router.shardForCounterparty(query.getCounterparty());
+            if (shard >= 0) {
+                return toGlobal(shards.get(shard).findTrades(query), shard);
+            }
+        }
+        List<List<Trade>> results = scatter((shard, repository) -> toGlobal(repository.findTrades(query), shard));
+        return merge(results, query.comparator(), query.getLimit());
+    }
+
+    @Override
+    public Trade getTradeById(int tradeId) throws SQLException {
+        if (tradeId <= 0) {
+            return null;
+        }
+        int shard = shardOf(tradeId, shardCount);
+        return toGlobal(shards.get(shard).getTradeById(localId(tradeId)), shard);
+    }
+
+    @Override
+    public List<Trade> getTradesByIds(int[] tradeIds) throws SQLException {
+        int[][] localIds = new int[shardCount][];
+        int[] counts = new int[shardCount];
+        for (int tradeId : tradeIds) {
+            if (tradeId > 0) {
+                counts[shardOf(tradeId, shardCount)]++;
+            }
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            localIds[shard] = new int[counts[shard]];
+            counts[shard] = 0;
+        }
+        for (int tradeId : tradeIds) {
+            if (tradeId > 0) {
+                int shard = shardOf(tradeId, shardCount);
+                localIds[shard][counts[shard]++] = localId(tradeId);
+            }
+        }
+        List<List<Trade>> results = scatter((shard, repository) -> localIds[shard].length == 0
+                ? new ArrayList<>() : toGlobal(repository.getTradesByIds(localIds[shard]), shard));
+        return merge(results, BY_ID, 0);
+    }
+
+    /**
+     * Stops the query threads and closes every shard that can be closed: journal stores
+     * directly, and database shards through their connection pool.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (TradeRepository shard : shards) {
+            closeShard(shard);
+        }
+    }
+
+    static void closeShard(TradeRepository shard) {
+        if (shard instanceof JournalTradeStore) {
+            ((JournalTradeStore) shard).close();
+        } else if (shard instanceof TradeDAO && ((TradeDAO) shard).getDataSource() instanceof ConnectionPool) {
+            ((ConnectionPool) ((TradeDAO) shard).getDataSource()).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedTradeRepository[shards=" + shardCount + "]";
+    }
+
+    // For reports: how many trades each shard holds
+    public int[] countByShard() throws SQLException {
+        List<Integer> counts = scatter((shard, repository) -> repository.countTrades());
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the sharded trade store against a single store holding the same trades: routing and
+ * ID encoding, ordered scatter-gather reads, keyset paging and streaming, queries, updates,
+ * deletes and compare-and-set writes, date-range routing, and TradeService on top. Each shard
+ * is a temporary journal store, so it needs no database.
+ *
+ * Usage: java ShardedTradeStoreTest [trades]
+ */
+public class ShardedTradeStoreTest {
+    private static final String[] COUNTERPARTIES = {
+        "ABC Energy Corp", "Baltic Power", "Coastal Gas", "Delta Oil", "Eastern Grid", "Fjord Hydro", "Gulf Trading"
+    };
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Electricity", "Coal" };
+
+    public static void main(String[] args) {
+        int tradeCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int shardCount = 4;
+
+        System.out.println("Testing Sharded Trade Store...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("sharded-trade-store-test");
+            List<TradeRepository> shards = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(new JournalTradeStore(directory.resolve("shard-" + i), false, 0));
+            }
+            ShardedTradeRepository.Router router = ShardedTradeRepository.byCounterparty(shardCount);
+            try (ShardedTradeRepository sharded = new ShardedTradeRepository(shards, router);
+                 JournalTradeStore single = new JournalTradeStore(directory.resolve("single"), false, 0)) {
+                Random random = new Random(42);
+                List<Trade> trades = new ArrayList<>();
+                for (int i = 0; i < tradeCount; i++) {
+                    trades.add(randomTrade(random));
+                }
+
+                // 1. Routing and ID encoding
+                System.out.printf("%n1. Testing bulk load of %,d trades over %d shards...%n", tradeCount, shardCount);
+                long start = System.nanoTime();
+                BulkInsertResult result = sharded.addTrades(trades);
+                System.out.printf(" Loaded in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+                single.addTrades(copies(trades));
+                check(result.getInsertedCount() == tradeCount && result.getFailures().isEmpty(), "every trade inserted");
+                boolean routed = true;
+                for (Trade trade : trades) {
+                    int shard = ShardedTradeRepository.shardOf(trade.getTradeId(), shardCount);
+                    routed &= shard == router.shardFor(trade)
+                            && sharded.getShard(shard).getTradeById(trade.getTradeId() / shardCount) != null;
+                }
+                check(routed, "each trade's ID names the shard its counterparty routes to");
+                int[] counts = sharded.countByShard();
+                int nonEmpty = 0;
+                for (int count : counts) {
+                    nonEmpty += count > 0 ? 1 : 0;
+                }
+                check(nonEmpty > 1 && sharded.countTrades() == tradeCount, "trades spread over shards, counts add up");
+
+                // 2. Scatter-gather reads come back in TradeID order
+                System.out.println("\n2. Testing ordered scatter-gather reads...");
+                List<Trade> all = sharded.getAllTrades();
+                check(all.size() == tradeCount && isSortedById(all), "getAllTrades merges shards in TradeID order");
+                check(ids(all).equals(trades.stream().map(Trade::getTradeId).sorted().collect(Collectors.toList())),
+                        "getAllTrades returns every trade exactly once");
+                List<Trade> streamed = new ArrayList<>();
+                int visited = sharded.forEachTrade(trade -> streamed.add(trade) || true, 97);
+                check(visited == tradeCount && ids(streamed).equals(ids(all)), "forEachTrade streams the same order in pages");
+                List<Trade> paged = new ArrayList<>();
+                int after = 0;
+                while (true) {
+                    List<Trade> page = sharded.getTradesPage(after, 250);
+                    paged.addAll(page);
+                    if (page.size() < 250) {
+                        break;
+                    }
+                    after = page.get(page.size() - 1).getTradeId();
+                }
+                check(ids(paged).equals(ids(all)), "keyset pages join up without gaps or repeats");
+                int stopped = sharded.forEachTrade(trade -> trade.getTradeId() < all.get(9).getTradeId(), 4);
+                check(stopped == 10, "forEachTrade stops when the handler says so");
+
+                // 3. Searches and queries match a single store
+                System.out.println("\n3. Testing searches and queries...");
+                List<Trade> gas = sharded.searchTrades("Counterparty", "Gas");
+                List<Trade> oil = sharded.searchTrades("Commodity", "oil");
+                check(isSortedById(gas) && sameTrades(gas, single.searchTrades("Counterparty", "Gas"))
+                        && isSortedById(oil) && sameTrades(oil, single.searchTrades("Commodity", "oil")),
+                        "searchTrades matches a single store, in TradeID order");
+                List<TradeQuery> queries = List.of(
+                        TradeQuery.builder().commodity("Crude Oil", TradeQuery.Match.EQUALS).build(),
+                        TradeQuery.builder().counterparty("Delta Oil", TradeQuery.Match.EQUALS)
+                                .sortBy(TradeQuery.SortField.PRICE, true).limit(50).build(),
+                        TradeQuery.builder().counterparty("B", TradeQuery.Match.PREFIX).build(),
+                        TradeQuery.builder().tradeDateBetween("2024-03-01", "2024-06-30")
+                                .sortBy(TradeQuery.SortField.VOLUME, false).limit(100).build(),
+                        TradeQuery.builder().priceBetween(50.0, 60.0).sortBy(TradeQuery.SortField.TRADE_DATE, true).build());
+                boolean queriesMatch = true;
+                for (TradeQuery query : queries) {
+                    List<Trade> expected = all.stream().filter(query::matches).sorted(query.comparator())
+                            .limit(query.getLimit() > 0 ? query.getLimit() : Long.MAX_VALUE).collect(Collectors.toList());
+                    queriesMatch &= ids(sharded.findTrades(query)).equals(ids(expected));
+                }
+                check(queriesMatch, "findTrades matches a brute-force scan in order and limit");
+                int[] wanted = { all.get(0).getTradeId(), all.get(tradeCount / 2).getTradeId(), 999_999_999,
+                        all.get(tradeCount - 1).getTradeId() };
+                List<Trade> byIds = sharded.getTradesByIds(wanted);
+                check(byIds.size() == 3 && isSortedById(byIds), "getTradesByIds finds existing IDs, in order");
+
+                // 4. Writes by ID go to the owning shard
+                System.out.println("\n4. Testing updates and deletes...");
+                Trade target = all.get(tradeCount / 3);
+                check(sharded.updateTrade(target.getTradeId(), 99.5, 4321), "update by global ID");
+                Trade updated = sharded.getTradeById(target.getTradeId());
+                check(updated.getPrice() == 99.5 && updated.getVersion() == 2, "update landed on the right trade");
+                TradeUpdate cas = sharded.updateTradeIfVersion(target.getTradeId(), 2, 100.0, 10);
+                check(cas != null && cas.getBefore().getTradeId() == target.getTradeId()
+                        && cas.getAfter().getTradeId() == target.getTradeId(), "CAS update reports global IDs");
+                check(sharded.updateTradeIfVersion(target.getTradeId(), 2, 1.0, 1) == null, "stale CAS update rejected");
+                Trade deleted = sharded.deleteTradeIfVersion(target.getTradeId(), 3);
+                check(deleted != null && deleted.getTradeId() == target.getTradeId()
+                        && sharded.getTradeById(target.getTradeId()) == null, "CAS delete by global ID");
+                check(sharded.deleteTrade(all.get(1).getTradeId()) && !sharded.deleteTrade(all.get(1).getTradeId())
+                        && sharded.countTrades() == tradeCount - 2, "delete by global ID");
+            }
+
+            // 5. Date-range routing
+            System.out.println("\n5. Testing trade-date routing...");
+            List<TradeRepository> dateShards = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                dateShards.add(new JournalTradeStore(directory.resolve("date-" + i), false, 0));
+            }
+            try (ShardedTradeRepository byDate = new ShardedTradeRepository(dateShards,
+                    ShardedTradeRepository.byTradeDate("2024-05-01", "2024-09-01"))) {
+                Trade early = new Trade(0, "2024-01-15", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+                Trade middle = new Trade(0, "2024-05-01", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+                Trade late = new Trade(0, "2024-12-31", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+                byDate.addTrade(early);
+                byDate.addTrade(middle);
+                byDate.addTrade(late);
+                check(ShardedTradeRepository.shardOf(early.getTradeId(), 3) == 0
+                        && ShardedTradeRepository.shardOf(middle.getTradeId(), 3) == 1
+                        && ShardedTradeRepository.shardOf(late.getTradeId(), 3) == 2, "trades routed by date range");
+                List<Trade> found = byDate.findTrades(TradeQuery.builder()
+                        .counterparty("ABC Energy Corp", TradeQuery.Match.EQUALS).build());
+                check(found.size() == 3, "counterparty query scatters when routing by date");
+            }
+
+            // 6. TradeService on top of the shards
+            System.out.println("\n6. Testing TradeService over shards...");
+            List<TradeRepository> serviceShards = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                serviceShards.add(new JournalTradeStore(directory.resolve("service-" + i), false, 0));
+            }
+            try (ShardedTradeRepository repository = new ShardedTradeRepository(serviceShards,
+                    ShardedTradeRepository.byCounterparty(shardCount))) {
+                TradeService tradeService = new TradeService(repository);
+                for (String counterparty : COUNTERPARTIES) {
+                    tradeService.createTrade("2024-02-01", counterparty, "Natural Gas", 500, 3.25, "SELL");
+                }
+                List<Trade> created = tradeService.getAllTrades();
+                check(created.size() == COUNTERPARTIES.length && isSortedById(created), "service lists trades from every shard");
+                Trade first = created.get(0);
+                check(tradeService.getTradeById(first.getTradeId()).getCounterparty().equals(first.getCounterparty()),
+                        "service reads a trade back by its global ID");
+                check(tradeService.updateTrade(first.getTradeId(), 3.5, 600)
+                        && repository.getTradeById(first.getTradeId()).getPrice() == 3.5, "service updates through the shards");
+                tradeService.shutdown();
+            }
+
+            System.out.println("\n All tests passed! The sharded trade store is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Sharded trade store test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static Trade randomTrade(Random random) {
+        String date = String.format("2024-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+        return new Trade(0, date, COUNTERPARTIES[random.nextInt(COUNTERPARTIES.length)],
+                COMMODITIES[random.nextInt(COMMODITIES.length)], 100 + random.nextInt(10_000),
+                Math.round((20 + random.nextDouble() * 80) * 100) / 100.0, random.nextBoolean() ? "BUY" : "SELL");
+    }
+
+    private static List<Trade> copies(List<Trade> trades) {
+        List<Trade> copies = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            copies.add(new Trade(0, trade.getTradeDate(), trade.getCounterparty(), trade.getCommodity(),
+                    trade.getVolume(), trade.getPrice(), trade.getTradeType()));
+        }
+        return copies;
+    }
+
+    private static List<Integer> ids(List<Trade> trades) {
+        return trades.stream().map(Trade::getTradeId).collect(Collectors.toList());
+    }
+
+    private static boolean isSortedById(List<Trade> trades) {
+        for (int i = 1; i < trades.size(); i++) {
+            if (trades.get(i - 1).getTradeId() >= trades.get(i).getTradeId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same trades by content; IDs and so ID order differ between the two stores
+    private static boolean sameTrades(List<Trade> sharded, List<Trade> single) {
+        return describe(sharded).equals(describe(single));
+    }
+
+    private static List<String> describe(List<Trade> trades) {
+        return trades.stream()
+                .map(t -> t.getTradeDate() + "|" + t.getCounterparty() + "|" + t.getCommodity() + "|"
+                        + t.getVolume() + "|" + t.getPrice() + "|" + t.getTradeType())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Milestones of one launch of the application, such as the menu first being shown and the
+ * first store-backed action finishing. Each milestone is recorded once, in wall-clock
+ * milliseconds, and reported relative to the JVM's own start so class loading and JIT
+ * warm-up are included.
+ */
+public final class StartupTimer {
+    private static final Map<String, Long> MILESTONES = new LinkedHashMap<>();
+
+    private StartupTimer() {
+    }
+
+    // Only the first call for each milestone counts
+    public static synchronized void mark(String milestone) {
+        MILESTONES.putIfAbsent(milestone, System.currentTimeMillis());
+    }
+
+    public static synchronized String report() {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        long jvmStart = runtime.getStartTime();
+        StringBuilder report = new StringBuilder("[Startup] ms since JVM start:");
+        String separator = " ";
+        for (Map.Entry<String, Long> milestone : MILESTONES.entrySet()) {
+            report.append(separator).append(milestone.getKey()).append(' ').append(milestone.getValue() - jvmStart);
+            separator = " | ";
+        }
+        String archive = "JDK default";
+        for (String argument : runtime.getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile=")) {
+                archive = argument.substring("-XX:SharedArchiveFile=".length());
+            } else if (argument.equals("-Xshare:off")) {
+                archive = "off";
+            }
+        }
+        return report.append(" (fast start ").append(Boolean.getBoolean("trading.fastStart") ? "on" : "off")
+                .append(", CDS archive ").append(archive).append(')').toString();
+    }
+}
@@ -0,0 +1,154 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of PreparedStatements for one physical connection, keyed by SQL text.
+ *
+ * A pooled connection is only ever used by the thread that borrowed it, so the cache
+ * itself is not synchronized. Statements handed out are wrappers whose close() clears
+ * parameters and keeps the statement prepared; the real statements are closed on
+ * eviction or when the connection is retired.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final Set<PreparedStatement> checkedOut = new HashSet<>();
+    private final LongAdder poolHits;
+    private final LongAdder poolMisses;
+    private long hits;
+    private long misses;
+
+    StatementCache(Connection physical, int maxSize, LongAdder poolHits, LongAdder poolMisses) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.poolHits = poolHits;
+        this.poolMisses = poolMisses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        return lookup(sql, sql, -1);
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        return lookup(autoGeneratedKeys + ":" + sql, sql, autoGeneratedKeys);
+    }
+
+    private PreparedStatement lookup(String key, String sql, int autoGeneratedKeys) throws SQLException {
+        PreparedStatement statement = statements.get(key);
+        if (statement != null && checkedOut.contains(statement)) {
+            // Same SQL already open on this connection: give this caller its own statement
+            misses++;
+            poolMisses.increment();
+            return autoGeneratedKeys < 0
+                    ? physical.prepareStatement(sql)
+                    : physical.prepareStatement(sql, autoGeneratedKeys);
+        }
+        if (statement != null && !statement.isClosed()) {
+            hits++;
+            poolHits.increment();
+            return wrap(statement);
+        }
+
+        misses++;
+        poolMisses.increment();
+        statement = autoGeneratedKeys < 0
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, statement);
+        evictOverflow();
+        return wrap(statement);
+    }
+
+    private void evictOverflow() {
+        Iterator<PreparedStatement> eldest = statements.values().iterator();
+        while (statements.size() > maxSize && eldest.hasNext()) {
+            PreparedStatement statement = eldest.next();
+            if (!checkedOut.contains(statement)) {
+                closeQuietly(statement);
+                eldest.remove();
+            }
+        }
+    }
+
+    void closeAll() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        checkedOut.clear();
+    }
+
+    long getHits() { return hits; }
+    long getMisses() { return misses; }
+    int size() { return statements.size(); }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is being discarded either way
+        }
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement) {
+        checkedOut.add(statement);
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new CachedStatement(statement));
+    }
+
+    private class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        checkedOut.remove(statement);
+                        // Leave the statement prepared for the next caller
+                        statement.clearParameters();
+                        statement.clearBatch();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement is closed");
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementCache[size=%d hits=%d misses=%d]", size(), hits, misses);
+    }
+}
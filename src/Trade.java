@@ -1,11 +1,19 @@
+/**
+ * A trade. Volume and price are fixed-point longs counting hundredths (see {@link FixedPoint})
+ * and the trade date is an epoch day (see {@link TradeDates}), so arithmetic on them is exact
+ * and a trade holds no per-trade date string. The double and yyyy-MM-dd accessors convert at
+ * the edge for display and existing callers.
+ */
 public class Trade {
     private int tradeId;
-    private String tradeDate;
+    private int tradeDate = TradeDates.NO_DATE;
     private String counterparty;
     private String commodity;
-    private double volume;
-    private double price;
+    private long volume;
+    private long price;
     private String tradeType;
+    // Incremented by the store on every update; used for optimistic concurrency checks
+    private int version;
     
     // Default constructor
     public Trade() {}
@@ -13,11 +21,11 @@ public class Trade {
     // Constructor without ID (for new trades)
     public Trade(String tradeDate, String counterparty, String commodity, 
                 double volume, double price, String tradeType) {
-        this.tradeDate = tradeDate;
+        this.tradeDate = TradeDates.parse(tradeDate);
         this.counterparty = counterparty;
         this.commodity = commodity;
-        this.volume = volume;
-        this.price = price;
+        this.volume = FixedPoint.toUnits(volume);
+        this.price = FixedPoint.toUnits(price);
         this.tradeType = tradeType;
     }
     
@@ -27,13 +35,35 @@ public class Trade {
         this(tradeDate, counterparty, commodity, volume, price, tradeType);
         this.tradeId = tradeId;
     }
+
+    // Constructor from stored fields: epoch day, and volume and price in hundredths
+    public Trade(int tradeId, int tradeEpochDay, String counterparty, String commodity,
+                long volumeUnits, long priceUnits, String tradeType) {
+        this.tradeId = tradeId;
+        this.tradeDate = tradeEpochDay;
+        this.counterparty = counterparty;
+        this.commodity = commodity;
+        this.volume = volumeUnits;
+        this.price = priceUnits;
+        this.tradeType = tradeType;
+    }
+
+    // Copy constructor, including the version
+    public Trade(Trade other) {
+        this(other.tradeId, other.tradeDate, other.counterparty, other.commodity, other.volume, other.price,
+                other.tradeType);
+        this.version = other.version;
+    }
     
     // Getters and Setters
     public int getTradeId() { return tradeId; }
     public void setTradeId(int tradeId) { this.tradeId = tradeId; }
     
-    public String getTradeDate() { return tradeDate; }
-    public void setTradeDate(String tradeDate) { this.tradeDate = tradeDate; }
+    public String getTradeDate() { return TradeDates.format(tradeDate); }
+    public void setTradeDate(String tradeDate) { this.tradeDate = TradeDates.parse(tradeDate); }
+
+    public int getTradeEpochDay() { return tradeDate; }
+    public void setTradeEpochDay(int tradeEpochDay) { this.tradeDate = tradeEpochDay; }
     
     public String getCounterparty() { return counterparty; }
     public void setCounterparty(String counterparty) { this.counterparty = counterparty; }
@@ -41,18 +71,30 @@ public class Trade {
     public String getCommodity() { return commodity; }
     public void setCommodity(String commodity) { this.commodity = commodity; }
     
-    public double getVolume() { return volume; }
-    public void setVolume(double volume) { this.volume = volume; }
+    public double getVolume() { return FixedPoint.toDouble(volume); }
+    public void setVolume(double volume) { this.volume = FixedPoint.toUnits(volume); }
+
+    public long getVolumeUnits() { return volume; }
+    public void setVolumeUnits(long volumeUnits) { this.volume = volumeUnits; }
     
-    public double getPrice() { return price; }
-    public void setPrice(double price) { this.price = price; }
+    public double getPrice() { return FixedPoint.toDouble(price); }
+    public void setPrice(double price) { this.price = FixedPoint.toUnits(price); }
+
+    public long getPriceUnits() { return price; }
+    public void setPriceUnits(long priceUnits) { this.price = priceUnits; }
+
+    // Volume x price in hundredths, rounded like a DECIMAL(x,2) column
+    public long getNotionalUnits() { return FixedPoint.multiply(volume, price); }
     
     public String getTradeType() { return tradeType; }
     public void setTradeType(String tradeType) { this.tradeType = tradeType; }
     
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+    
     @Override
     public String toString() {
         return String.format("ID:%d | Date:%s | Counterparty:%s | Commodity:%s | Volume:%.2f | Price:%.2f | Type:%s",
-                tradeId, tradeDate, counterparty, commodity, volume, price, tradeType);
+                tradeId, getTradeDate(), counterparty, commodity, getVolume(), getPrice(), tradeType);
     }
 }
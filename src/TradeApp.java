@@ -1,29 +1,216 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class TradeApp {
+    // -Dtrading.fastStart=true shows the menu at once and connects in the background
+    private static final boolean FAST_START = Boolean.getBoolean("trading.fastStart");
+
     private final TradeController tradeController;
+    private final TradeService tradeService;
+    private final TradeRepository tradeRepository;
     private final Scanner scanner;
+    private TradeHttpServer httpServer;
+    private PriceFeed priceFeed;
+    private final CompletableFuture<Void> startup;
     private boolean isRunning;
     
     public TradeApp() throws SQLException {
         this.scanner = new Scanner(System.in);
-        DatabaseConnection dbConnection = DatabaseConnection.getInstance();
-        TradeDAO tradeDAO = new TradeDAO(dbConnection.getConnection());
-        TradeService tradeService = new TradeService(tradeDAO);
+        if (FAST_START) {
+            CompletableFuture<TradeRepository> opening = new CompletableFuture<>();
+            this.tradeRepository = new DeferredTradeRepository(opening);
+            this.tradeService = new TradeService(new InstrumentedTradeRepository(tradeRepository));
+            this.startup = startInBackground(opening);
+        } else {
+            this.tradeRepository = createRepository();
+            StartupTimer.mark("store connected");
+            this.tradeService = new TradeService(new InstrumentedTradeRepository(tradeRepository));
+            initializeService();
+            this.startup = CompletableFuture.completedFuture(null);
+        }
+        TradeMetrics.startLogDump(Paths.get(System.getProperty("trading.stats.log", "trade-stats.log")),
+                Long.getLong("trading.stats.intervalMs", 60_000));
         this.tradeController = new TradeController(tradeService, scanner);
         this.isRunning = true;
     }
     
+    private void initializeService() throws SQLException {
+        tradeService.initialize();
+        if (Boolean.getBoolean("trading.async.capture")) {
+            tradeService.startAsyncCapture(Integer.getInteger("trading.async.capacity", 8192),
+                    Integer.getInteger("trading.async.maxBatch", 500),
+                    Long.getLong("trading.async.lingerMs", 5));
+        }
+        StartupTimer.mark("indexes loaded");
+    }
+    
+    // Opens the store and loads the indexes on a daemon thread; the returned future completes when both are done
+    private CompletableFuture<Void> startInBackground(CompletableFuture<TradeRepository> opening) {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                opening.complete(createRepository());
+                StartupTimer.mark("store connected");
+                initializeService();
+                ready.complete(null);
+            } catch (SQLException | RuntimeException e) {
+                opening.completeExceptionally(e);
+                ready.completeExceptionally(e);
+            }
+        }, "trade-app-startup");
+        thread.setDaemon(true);
+        thread.start();
+        return ready;
+    }
+    
+    // Blocks a store-backed action until startup has finished; false if it failed
+    private boolean awaitStartup() {
+        if (!startup.isDone()) {
+            System.out.println("[Connecting] Waiting for the trade store...");
+        }
+        try {
+            startup.join();
+            return true;
+        } catch (CompletionException e) {
+            System.err.println("Failed to initialize application: " + e.getCause().getMessage());
+            System.err.println("Please check your database connection settings.");
+            isRunning = false;
+            return false;
+        }
+    }
+    
+    // -Dtrading.http.port=8080 serves the JSON trade API alongside the console menu
+    private void startHttpServer() {
+        Integer port = Integer.getInteger("trading.http.port");
+        if (port == null) {
+            return;
+        }
+        try {
+            httpServer = new TradeHttpServer(tradeService, port, Integer.getInteger("trading.http.maxConcurrent", 256));
+            httpServer.start();
+            System.out.println("[HTTP] Trade API listening on port " + httpServer.getPort());
+        } catch (IOException e) {
+            System.err.println("Could not start HTTP server on port " + port + ": " + e.getMessage());
+        }
+    }
+    
+    // -Dtrading.prices.file replays ticks from a file; -Dtrading.prices.port accepts them over TCP
+    private void startPriceFeed() {
+        String file = System.getProperty("trading.prices.file");
+        Integer port = Integer.getInteger("trading.prices.port");
+        try {
+            if (file != null) {
+                priceFeed = PriceFeed.replay(Paths.get(file), tradeService.getMarkToMarket(),
+                        Long.getLong("trading.prices.intervalMs", 0));
+            } else if (port != null) {
+                priceFeed = PriceFeed.listen(port, tradeService.getMarkToMarket());
+            } else {
+                return;
+            }
+            System.out.println("[Prices] Mark-to-market feed started: " + priceFeed);
+        } catch (IOException e) {
+            System.err.println("Could not start price feed: " + e.getMessage());
+        }
+    }
+    
+    // -Dtrading.store=journal keeps trades in a local journal (-Dtrading.journal.dir) instead of SQL Server
+    static TradeRepository createRepository() throws SQLException {
+        int shardCount = Integer.getInteger("trading.shards", 1);
+        if (shardCount > 1) {
+            return createShardedRepository(shardCount);
+        }
+        if (isJournalStore()) {
+            return new JournalTradeStore(Paths.get(System.getProperty("trading.journal.dir", "data")));
+        }
+        return new TradeDAO(DatabaseConnection.getInstance().getDataSource());
+    }
+
+    /**
+     * -Dtrading.shards=N spreads trades over N stores. Journal shards live in shard-0..N-1 under
+     * the journal directory; database shard 0 is the main database and shard i is at
+     * -Dtrading.shard.i.url. Trades are routed by counterparty, or with
+     * -Dtrading.shard.by=tradeDate by the N-1 dates in -Dtrading.shard.dateBoundaries.
+     */
+    static ShardedTradeRepository createShardedRepository(int shardCount) throws SQLException {
+        ShardedTradeRepository.Router router;
+        if ("tradeDate".equalsIgnoreCase(System.getProperty("trading.shard.by"))) {
+            String[] boundaries = System.getProperty("trading.shard.dateBoundaries", "").split(",");
+            if (boundaries.length != shardCount - 1) {
+                throw new SQLException(shardCount + " date shards need " + (shardCount - 1)
+                        + " comma-separated -Dtrading.shard.dateBoundaries");
+            }
+            router = ShardedTradeRepository.byTradeDate(boundaries);
+        } else {
+            router = ShardedTradeRepository.byCounterparty(shardCount);
+        }
+
+        List<TradeRepository> shards = new ArrayList<>(shardCount);
+        try {
+            if (isJournalStore()) {
+                Path root = Paths.get(System.getProperty("trading.journal.dir", "data"));
+                for (int i = 0; i < shardCount; i++) {
+                    shards.add(new JournalTradeStore(root.resolve("shard-" + i)));
+                }
+            } else {
+                // Shard 0 loads the JDBC driver along with the main pool
+                shards.add(new TradeDAO(DatabaseConnection.getInstance().getDataSource()));
+                for (int i = 1; i < shardCount; i++) {
+                    String url = System.getProperty("trading.shard." + i + ".url");
+                    if (url == null) {
+                        throw new SQLException("No URL for shard " + i + "; set -Dtrading.shard." + i + ".url");
+                    }
+                    shards.add(new TradeDAO(new ConnectionPool(url, PoolConfig.fromSystemProperties())));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (TradeRepository shard : shards) {
+                ShardedTradeRepository.closeShard(shard);
+            }
+            throw e;
+        }
+        return new ShardedTradeRepository(shards, router);
+    }
+
+    static boolean isJournalStore() {
+        return "journal".equalsIgnoreCase(System.getProperty("trading.store"));
+    }
+    
     public void start() {
-        System.out.println("[Connected] Connected to EnergyTradingDB successfully.");
+        if (!startup.isDone()) {
+            System.out.println("[Connecting] Opening the trade store in the background.");
+        }
+        // Runs straight away unless startup is still in progress
+        startup.thenRun(() -> {
+            if (Integer.getInteger("trading.shards", 1) > 1) {
+                System.out.println("[Connected] Using " + Integer.getInteger("trading.shards") + " trade store shards.");
+            } else if (isJournalStore()) {
+                System.out.println("[Connected] Using local trade journal.");
+            } else {
+                System.out.println("[Connected] Connected to EnergyTradingDB successfully.");
+            }
+            startHttpServer();
+            startPriceFeed();
+        });
         System.out.println("Welcome to Energy Trading Management System!");
         
         while (isRunning) {
             try {
                 showMenu();
+                StartupTimer.mark("menu shown");
                 int choice = InputValidator.getValidInteger(scanner, "Enter option number: ");
                 processChoice(choice);
+            } catch (NoSuchElementException e) {
+                // Standard input is closed, e.g. the end of a scripted session
+                System.out.println("\n[Goodbye] Input closed. Closing application.");
+                isRunning = false;
             } catch (Exception e) {
                 System.err.println("An error occurred: " + e.getMessage());
                 System.out.println("Please try again.");
@@ -42,36 +229,75 @@ public class TradeApp {
         System.out.println("3. [Edit] Update Trade");
         System.out.println("4. [Delete] Delete Trade");
         System.out.println("5. [Search] Search Trades");
-        System.out.println("6. [Exit] Exit");
+        System.out.println("6. [Positions] Net Positions");
+        System.out.println("7. [Stats] Operation Stats");
+        System.out.println("8. [Import] Import Trade File");
+        System.out.println("9. [Export] Export Trades");
+        System.out.println("10. [Reconcile] Reconcile Confirmations");
+        System.out.println("11. [Exit] Exit");
         System.out.println("-".repeat(35));
     }
     
     private void processChoice(int choice) {
+        boolean usesStore = choice >= 1 && choice <= 10 && choice != 7;
+        if (usesStore && !awaitStartup()) {
+            return;
+        }
         switch (choice) {
             case 1 -> tradeController.addTrade();
             case 2 -> tradeController.viewAllTrades();
             case 3 -> tradeController.updateTrade();
             case 4 -> tradeController.deleteTrade();
             case 5 -> tradeController.searchTrades();
-            case 6 -> {
+            case 6 -> tradeController.viewPositions();
+            case 7 -> tradeController.viewStats();
+            case 8 -> tradeController.importTrades();
+            case 9 -> tradeController.exportTrades();
+            case 10 -> tradeController.reconcileTrades();
+            case 11 -> {
                 System.out.println("[Goodbye] Closing application. Thank you for Using!");
                 isRunning = false;
             }
-            default -> System.out.println("[Warning] Invalid option. Please select 1-6.");
+            default -> System.out.println("[Warning] Invalid option. Please select 1-11.");
+        }
+        if (usesStore) {
+            StartupTimer.mark("first query");
         }
     }
     
     private void cleanup() {
         try {
             scanner.close();
-            DatabaseConnection.getInstance().closeConnection();
-            System.out.println("[Closed] Database connection closed.");
+            if (httpServer != null) {
+                httpServer.close();
+            }
+            if (priceFeed != null) {
+                priceFeed.close();
+            }
+            tradeService.shutdown();
+            TradeMetrics.stopLogDump();
+            TradeRepository store = tradeRepository instanceof DeferredTradeRepository
+                    ? ((DeferredTradeRepository) tradeRepository).getIfOpened() : tradeRepository;
+            if (store instanceof ShardedTradeRepository) {
+                ((ShardedTradeRepository) store).close();
+                System.out.println("[Closed] Trade shards closed.");
+            } else if (store instanceof JournalTradeStore) {
+                ((JournalTradeStore) store).close();
+                System.out.println("[Closed] Trade journal closed.");
+            } else if (store != null) {
+                DatabaseConnection.getInstance().closeConnection();
+                System.out.println("[Closed] Database connection closed.");
+            }
         } catch (SQLException e) {
             System.err.println("Error closing database connection: " + e.getMessage());
         }
+        if (Boolean.getBoolean("trading.startup.report")) {
+            System.out.println(StartupTimer.report());
+        }
     }
     
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         try {
             TradeApp app = new TradeApp();
             app.start();
@@ -0,0 +1,163 @@
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, thread-safe LRU cache of trades by ID.
+ *
+ * The cache is split into independently locked segments so concurrent lookups of
+ * different trades rarely contend. Each segment keeps a write generation: a loader
+ * that raced with an invalidation does not put its (possibly stale) result back.
+ * Trades are copied on the way in and on the way out, so a caller that edits the
+ * instance it was given cannot change what later callers see.
+ */
+public class TradeCache {
+    public static final int DEFAULT_MAX_SIZE = Integer.getInteger("trading.cache.size", 10_000);
+
+    @FunctionalInterface
+    public interface Loader {
+        Trade load(int tradeId) throws SQLException;
+    }
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TradeCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public TradeCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(16, maxSize / 64)));
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        int perSegment = (maxSize + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    public Trade get(int tradeId) {
+        Segment segment = segmentFor(tradeId);
+        Trade trade;
+        synchronized (segment) {
+            trade = segment.get(tradeId);
+        }
+        if (trade != null) {
+            hits.increment();
+            return new Trade(trade);
+        }
+        misses.increment();
+        return null;
+    }
+
+    // Read-through lookup: on a miss the loader is called outside the segment lock
+    public Trade getOrLoad(int tradeId, Loader loader) throws SQLException {
+        Segment segment = segmentFor(tradeId);
+        long generation;
+        synchronized (segment) {
+            Trade cached = segment.get(tradeId);
+            if (cached != null) {
+                hits.increment();
+                return new Trade(cached);
+            }
+            generation = segment.generation;
+        }
+        misses.increment();
+
+        Trade loaded = loader.load(tradeId);
+        if (loaded != null) {
+            synchronized (segment) {
+                if (segment.generation == generation) {
+                    segment.put(tradeId, new Trade(loaded));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public void put(Trade trade) {
+        Trade copy = new Trade(trade);
+        Segment segment = segmentFor(copy.getTradeId());
+        synchronized (segment) {
+            segment.generation++;
+            segment.put(copy.getTradeId(), copy);
+        }
+    }
+
+    public void invalidate(int tradeId) {
+        Segment segment = segmentFor(tradeId);
+        synchronized (segment) {
+            segment.generation++;
+            segment.remove(tradeId);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    private Segment segmentFor(int tradeId) {
+        // Spread sequential IDs across segments
+        int hash = tradeId * 0x9E3779B9;
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TradeCache[size=%d hits=%d misses=%d hitRatio=%.2f evictions=%d]",
+                size(), getHitCount(), getMissCount(), getHitRatio(), getEvictionCount());
+    }
+
+    private class Segment extends LinkedHashMap<Integer, Trade> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private long generation;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Trade> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+import java.sql.SQLException;
+
+/**
+ * Thrown when a versioned update or delete finds that the trade was changed by someone
+ * else since it was read. Carries the current state so the caller can show it or retry.
+ */
+public class TradeConflictException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    // Standard SQLSTATE for a serialization failure
+    private static final String SQL_STATE = "40001";
+
+    private final transient Trade currentTrade;
+
+    public TradeConflictException(Trade currentTrade, int expectedVersion) {
+        super("Trade " + currentTrade.getTradeId() + " was modified concurrently (expected version "
+                + expectedVersion + ", now " + currentTrade.getVersion() + ")", SQL_STATE);
+        this.currentTrade = currentTrade;
+    }
+
+    public Trade getCurrentTrade() {
+        return currentTrade;
+    }
+}
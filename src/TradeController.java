@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Scanner;
@@ -35,21 +40,24 @@ public class TradeController {
     public void viewAllTrades() {
         try {
             System.out.println("\n--- All Trades ---");
-            List<Trade> trades = tradeService.getAllTrades();
+            int total = tradeService.countTrades();
 
-            if (trades.isEmpty()) {
+            if (total == 0) {
                 System.out.println("No trades found in the database.");
                 return;
             }
 
-            System.out.println("Total trades: " + trades.size());
-            System.out.println("-".repeat(100));
+            System.out.println("Total trades: " + total);
 
-            for (Trade trade : trades) {
-                System.out.println(trade);
-            }
+            // Streamed page by page so the listing runs in constant memory
+            TradeTableRenderer table = TradeTableRenderer.forConsole(scanner);
+            table.writeHeader();
+            tradeService.forEachTrade(table);
+            table.finish();
         } catch (SQLException e) {
             System.err.println("Database error: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println("Could not write the listing: " + e.getCause().getMessage());
         }
     }
 
@@ -71,11 +79,15 @@ public class TradeController {
             double newPrice = InputValidator.getValidDouble(scanner, "Enter new price: ");
             double newVolume = InputValidator.getValidDouble(scanner, "Enter new volume: ");
 
-            if (tradeService.updateTrade(tradeId, newPrice, newVolume)) {
+            // Only applies if nobody changed the trade while the prompts were open
+            if (tradeService.updateTrade(tradeId, existingTrade.getVersion(), newPrice, newVolume) != null) {
                 System.out.println("✓ Trade updated successfully!");
             } else {
-                System.out.println("✗ Failed to update trade.");
+                System.out.println("✗ Trade with ID " + tradeId + " was deleted by another user.");
             }
+        } catch (TradeConflictException e) {
+            System.out.println("✗ Trade was changed by another user; nothing was updated.");
+            System.out.println("Current trade details: " + e.getCurrentTrade());
         } catch (SQLException e) {
             System.err.println("Database error: " + e.getMessage());
         }
@@ -99,14 +111,17 @@ public class TradeController {
             String confirmation = scanner.nextLine().trim().toLowerCase();
 
             if (confirmation.equals("y") || confirmation.equals("yes")) {
-                if (tradeService.deleteTrade(tradeId)) {
+                if (tradeService.deleteTrade(tradeId, existingTrade.getVersion())) {
                     System.out.println("✓ Trade deleted successfully!");
                 } else {
-                    System.out.println("✗ Failed to delete trade.");
+                    System.out.println("✗ Trade with ID " + tradeId + " was already deleted.");
                 }
             } else {
                 System.out.println("Delete operation cancelled.");
             }
+        } catch (TradeConflictException e) {
+            System.out.println("✗ Trade was changed by another user; nothing was deleted.");
+            System.out.println("Current trade details: " + e.getCurrentTrade());
         } catch (SQLException e) {
             System.err.println("Database error: " + e.getMessage());
         }
@@ -117,11 +132,16 @@ public class TradeController {
             System.out.println("\n--- Search Trades ---");
             System.out.println("1. Search by Counterparty");
             System.out.println("2. Search by Commodity");
+            System.out.println("3. Advanced filter");
 
-            int choice = InputValidator.getValidInteger(scanner, "Enter search option (1 or 2): ");
+            int choice = InputValidator.getValidInteger(scanner, "Enter search option (1-3): ");
 
+            if (choice == 3) {
+                filterTrades();
+                return;
+            }
             if (choice != 1 && choice != 2) {
-                System.out.println("Invalid choice. Please select 1 or 2.");
+                System.out.println("Invalid choice. Please select 1-3.");
                 return;
             }
 
@@ -132,13 +152,324 @@ public class TradeController {
                 System.out.println("No trades found matching your search criteria.");
             } else {
                 System.out.println("\nSearch Results (" + results.size() + " found):");
-                System.out.println("-".repeat(100));
-                for (Trade trade : results) {
-                    System.out.println(trade);
+                printTable(results);
+            }
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println("Could not write the listing: " + e.getCause().getMessage());
+        }
+    }
+
+    private void filterTrades() throws SQLException {
+        System.out.println("\n--- Advanced Filter --- (press Enter to skip a criterion)");
+        TradeQuery.Builder builder = TradeQuery.builder();
+        try {
+            builder.tradeDateBetween(InputValidator.getOptionalDate(scanner, "From date (YYYY-MM-DD): "),
+                    InputValidator.getOptionalDate(scanner, "To date (YYYY-MM-DD): "));
+            String commodity = InputValidator.getOptionalString(scanner, "Commodity (end with * for prefix): ");
+            if (commodity != null) {
+                builder.commodity(stripWildcard(commodity), matchOf(commodity));
+            }
+            String counterparty = InputValidator.getOptionalString(scanner, "Counterparty (end with * for prefix): ");
+            if (counterparty != null) {
+                builder.counterparty(stripWildcard(counterparty), matchOf(counterparty));
+            }
+            String tradeType = InputValidator.getOptionalString(scanner, "Trade type (BUY/SELL): ");
+            if (tradeType != null) {
+                builder.tradeType(tradeType);
+            }
+            builder.volumeBetween(InputValidator.getOptionalDouble(scanner, "Min volume: "),
+                    InputValidator.getOptionalDouble(scanner, "Max volume: "));
+            builder.priceBetween(InputValidator.getOptionalDouble(scanner, "Min price: "),
+                    InputValidator.getOptionalDouble(scanner, "Max price: "));
+
+            System.out.println("Sort by: 1. Trade ID  2. Date  3. Counterparty  4. Commodity  5. Volume  6. Price");
+            String sort = InputValidator.getOptionalString(scanner, "Sort option (1-6, default 1): ");
+            TradeQuery.SortField[] fields = TradeQuery.SortField.values();
+            int sortChoice = sort == null ? 1 : Integer.parseInt(sort);
+            if (sortChoice < 1 || sortChoice > fields.length) {
+                System.out.println("Invalid sort option. Please select 1-6.");
+                return;
+            }
+            String descending = InputValidator.getOptionalString(scanner, "Descending? (y/N): ");
+            builder.sortBy(fields[sortChoice - 1], "y".equalsIgnoreCase(descending));
+            String limit = InputValidator.getOptionalString(scanner, "Maximum results (default 100, 0 for all): ");
+            builder.limit(limit == null ? 100 : Integer.parseInt(limit));
+
+            TradeQuery query = builder.build();
+            long start = System.nanoTime();
+            List<Trade> results = tradeService.findTrades(query);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            if (results.isEmpty()) {
+                System.out.println("No trades match " + query);
+            } else {
+                System.out.println("\nFilter Results (" + results.size() + " found in " + elapsedMs + " ms):");
+                printTable(results);
+            }
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from the sort and limit prompts
+            System.out.println("Invalid filter: " + e.getMessage());
+        }
+    }
+
+    private void printTable(List<Trade> trades) {
+        TradeTableRenderer table = TradeTableRenderer.forConsole(scanner);
+        table.writeHeader();
+        table.render(trades);
+        table.finish();
+    }
+
+    private static TradeQuery.Match matchOf(String value) {
+        return value.endsWith("*") ? TradeQuery.Match.PREFIX : TradeQuery.Match.EQUALS;
+    }
+
+    private static String stripWildcard(String value) {
+        return value.endsWith("*") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    public void viewPositions() {
+        try {
+            System.out.println("\n--- Net Positions ---");
+            System.out.println("1. By Commodity");
+            System.out.println("2. By Counterparty");
+            System.out.println("3. By Trade Date");
+            System.out.println("4. Rebuild from database");
+            System.out.println("5. Mark-to-market P&L by Commodity");
+            System.out.println("6. Mark-to-market P&L by Counterparty");
+            System.out.println("7. Enter a price tick");
+            System.out.println("8. Realized P&L and open lots");
+            System.out.println("9. Open lots for a commodity");
+
+            int choice = InputValidator.getValidInteger(scanner, "Enter option (1-9): ");
+
+            PositionEngine.Dimension dimension;
+            switch (choice) {
+                case 1 -> dimension = PositionEngine.Dimension.COMMODITY;
+                case 2 -> dimension = PositionEngine.Dimension.COUNTERPARTY;
+                case 3 -> dimension = PositionEngine.Dimension.TRADE_DATE;
+                case 4 -> {
+                    int trades = tradeService.rebuildPositions();
+                    System.out.println("✓ Positions rebuilt from " + trades + " trades.");
+                    return;
+                }
+                case 5, 6 -> {
+                    showValuations(choice == 5);
+                    return;
+                }
+                case 7 -> {
+                    String commodity = InputValidator.getValidString(scanner, "Enter commodity: ");
+                    double price = InputValidator.getValidDouble(scanner, "Enter price: ");
+                    MarkToMarketEngine markToMarket = tradeService.getMarkToMarket();
+                    markToMarket.onPriceTick(commodity, price);
+                    System.out.printf("✓ %s marked at %.2f; unrealized P&L %.2f%n", commodity, price,
+                            markToMarket.getCommodityPnl(commodity));
+                    return;
+                }
+                case 8 -> {
+                    showLotSummaries();
+                    return;
                 }
+                case 9 -> {
+                    showOpenLots();
+                    return;
+                }
+                default -> {
+                    System.out.println("Invalid choice. Please select 1-9.");
+                    return;
+                }
+            }
+
+            List<Position> positions = tradeService.getPositions(dimension);
+            if (positions.isEmpty()) {
+                System.out.println("No open positions.");
+                return;
+            }
+            System.out.println("-".repeat(100));
+            for (Position position : positions) {
+                System.out.println(position);
+            }
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+        }
+    }
+
+    private void showValuations(boolean byCommodity) {
+        MarkToMarketEngine markToMarket = tradeService.getMarkToMarket();
+        List<Valuation> valuations = byCommodity
+                ? markToMarket.getCommodityValuations()
+                : markToMarket.getCounterpartyValuations();
+        if (valuations.isEmpty()) {
+            System.out.println("No open positions.");
+            return;
+        }
+        System.out.println("-".repeat(100));
+        double total = 0;
+        for (Valuation valuation : valuations) {
+            System.out.println(valuation);
+            total += valuation.getUnrealizedPnl();
+        }
+        System.out.println("-".repeat(100));
+        System.out.printf("Total unrealized P&L: %.2f (%d price ticks applied; commodities without a price count as 0)%n",
+                total, markToMarket.getTickCount());
+    }
+
+    private void showLotSummaries() {
+        LotMatchingEngine lotMatching = tradeService.getLotMatching();
+        List<LotSummary> summaries = lotMatching.getSummaries();
+        if (summaries.isEmpty()) {
+            System.out.println("No trades to match.");
+            return;
+        }
+        System.out.println("-".repeat(140));
+        long total = 0;
+        for (LotSummary summary : summaries) {
+            System.out.println(summary);
+            total += summary.getRealizedPnlUnits();
+        }
+        System.out.println("-".repeat(140));
+        System.out.println("Total realized P&L: " + FixedPoint.format(total) + " (" + lotMatching.getMethod() + " matching)");
+    }
+
+    private void showOpenLots() {
+        LotMatchingEngine lotMatching = tradeService.getLotMatching();
+        String commodity = InputValidator.getValidString(scanner, "Enter commodity: ");
+        String counterparty = lotMatching.isByCounterparty()
+                ? InputValidator.getValidString(scanner, "Enter counterparty: ")
+                : null;
+        List<Lot> lots = lotMatching.getOpenLots(commodity, counterparty);
+        if (lots.isEmpty()) {
+            System.out.println("No open lots.");
+            return;
+        }
+        System.out.println(lotMatching.getSummary(commodity, counterparty));
+        System.out.println("-".repeat(100));
+        for (Lot lot : lots) {
+            System.out.println(lot);
+        }
+    }
+
+    public void importTrades() {
+        try {
+            System.out.println("\n--- Import Trade File ---");
+            Path file = Paths.get(InputValidator.getValidString(scanner, "Enter file path: "));
+            if (!Files.isRegularFile(file)) {
+                System.out.println("✗ File not found: " + file);
+                return;
+            }
+
+            System.out.println("1. CSV (TradeDate,Counterparty,Commodity,Volume,Price,TradeType)");
+            System.out.println("2. Fixed width (10/40/20/16/16/4 characters)");
+            int choice = InputValidator.getValidInteger(scanner, "Enter file format (1 or 2): ");
+            if (choice != 1 && choice != 2) {
+                System.out.println("Invalid choice. Please select 1 or 2.");
+                return;
+            }
+            System.out.print("Use all cores? Trade IDs will not follow file order (y/N): ");
+            String answer = scanner.nextLine().trim().toLowerCase();
+            boolean parallel = answer.equals("y") || answer.equals("yes");
+
+            TradeFileIngester ingester = new TradeFileIngester(tradeService,
+                    choice == 1 ? TradeFileIngester.Format.CSV : TradeFileIngester.Format.FIXED_WIDTH);
+            Path rejects = Paths.get(file + ".rejects");
+            IngestResult result = ingester.ingest(file, rejects, parallel);
+
+            System.out.println("✓ Import finished: " + result);
+            if (result.getRejectedCount() > 0) {
+                System.out.println("Rejected lines were written to " + rejects);
+            } else {
+                Files.deleteIfExists(rejects);
+            }
+        } catch (IOException e) {
+            System.err.println("File error: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+        }
+    }
+
+    public void exportTrades() {
+        try {
+            System.out.println("\n--- Export Trades ---");
+            System.out.println("1. CSV (TradeID,TradeDate,Counterparty,Commodity,Volume,Price,TradeType,Version)");
+            System.out.println("2. Columnar binary (compact; read with ColumnarTradeReader)");
+            int choice = InputValidator.getValidInteger(scanner, "Enter export format (1 or 2): ");
+            if (choice != 1 && choice != 2) {
+                System.out.println("Invalid choice. Please select 1 or 2.");
+                return;
             }
+            Path file = Paths.get(InputValidator.getValidString(scanner, "Enter output file path: "));
+
+            TradeExporter exporter = new TradeExporter(tradeService);
+            ExportResult result = exporter.export(file,
+                    choice == 1 ? TradeExporter.Format.CSV : TradeExporter.Format.COLUMNAR);
+            System.out.println("✓ Export finished: " + result);
+        } catch (IOException e) {
+            System.err.println("File error: " + e.getMessage());
         } catch (SQLException e) {
             System.err.println("Database error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public void reconcileTrades() {
+        try {
+            System.out.println("\n--- Reconcile Confirmations ---");
+            Path file = Paths.get(InputValidator.getValidString(scanner, "Enter confirmation file path: "));
+            if (!Files.isRegularFile(file)) {
+                System.out.println("✗ File not found: " + file);
+                return;
+            }
+
+            System.out.println("1. CSV (TradeDate,Counterparty,Commodity,Volume,Price,TradeType)");
+            System.out.println("2. Fixed width (10/40/20/16/16/4 characters)");
+            int choice = InputValidator.getValidInteger(scanner, "Enter file format (1 or 2): ");
+            if (choice != 1 && choice != 2) {
+                System.out.println("Invalid choice. Please select 1 or 2.");
+                return;
+            }
+
+            TradeReconciler reconciler = new TradeReconciler(tradeService,
+                    choice == 1 ? TradeFileIngester.Format.CSV : TradeFileIngester.Format.FIXED_WIDTH);
+            Path report = Paths.get(file + ".breaks.csv");
+            Path rejects = Paths.get(file + ".rejects");
+            ReconciliationResult result = reconciler.reconcile(file, report, rejects);
+
+            System.out.println("✓ Reconciliation finished: " + result);
+            System.out.println(result.getBreakCount() == 0
+                    ? "No breaks."
+                    : result.getBreakCount() + " breaks were written to " + report);
+            if (result.getRejectedCount() > 0) {
+                System.out.println("Unreadable lines were written to " + rejects);
+            } else {
+                Files.deleteIfExists(rejects);
+            }
+        } catch (IOException e) {
+            System.err.println("File error: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Database error: " + e.getMessage());
+        }
+    }
+
+    public void viewStats() {
+        System.out.println("\n--- Operation Stats ---");
+        System.out.print(TradeMetrics.report());
+        System.out.println("-".repeat(100));
+        System.out.println(tradeService.getTradeCache());
+        WriteBehindWriter writeBehind = tradeService.getWriteBehind();
+        if (writeBehind != null) {
+            System.out.println(writeBehind);
+        }
+        TradeEventBus eventBus = tradeService.getEventBus();
+        System.out.println(eventBus);
+        for (TradeEventBus.Subscription subscription : eventBus.getSubscriptions()) {
+            System.out.println("  " + subscription);
+        }
+
+        System.out.print("Reset operation stats? (y/N): ");
+        String confirmation = scanner.nextLine().trim().toLowerCase();
+        if (confirmation.equals("y") || confirmation.equals("yes")) {
+            TradeMetrics.resetAll();
+            System.out.println("✓ Operation stats reset.");
+        }
+    }
+}
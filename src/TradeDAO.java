@@ -1,44 +1,260 @@
+import javax.sql.DataSource;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class TradeDAO {
-    private final Connection connection;
+public class TradeDAO implements TradeRepository {
+    private static final int ID_LOOKUP_CHUNK = 100;
+    private static final String ID_LOOKUP_SQL = buildIdLookupSql(ID_LOOKUP_CHUNK);
+
+    // Above this many IDs a dense list is read with one range scan instead of a round trip per chunk
+    private static final int ID_SCAN_THRESHOLD = 2_000;
+    // Streaming about this many rows costs roughly one lookup round trip per ID in it
+    private static final int ID_SCAN_MAX_ROWS_PER_ID = 10;
+    private static final String ID_RANGE_SQL =
+        "SELECT * FROM Trades WHERE TradeID BETWEEN ? AND ? ORDER BY TradeID";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO Trades (TradeDate, Counterparty, Commodity, Volume, Price, TradeType) "
+        + "OUTPUT INSERTED.TradeID VALUES (?, ?, ?, ?, ?, ?)";
+    // Other databases report the new TradeID through JDBC generated keys
+    private static final String PORTABLE_INSERT_SQL =
+        "INSERT INTO Trades (TradeDate, Counterparty, Commodity, Volume, Price, TradeType) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Rows per multi-row insert: six parameters each, under SQL Server's limit of 2100
+    private static final int ROWS_PER_INSERT = 300;
+    private static final String MULTI_ROW_INSERT_SQL = buildMultiRowInsertSql(ROWS_PER_INSERT);
+    
+    // New rows start at the column default, version 1
+    private static final int INITIAL_VERSION = 1;
+    
+    private static final String UPDATE_IF_VERSION_SQL =
+        "UPDATE Trades SET Price=?, Volume=?, Version=Version+1 "
+        + "OUTPUT DELETED.Price AS PreviousPrice, DELETED.Volume AS PreviousVolume, INSERTED.* "
+        + "WHERE TradeID=? AND Version=?";
+    
+    private static final String DELETE_IF_VERSION_SQL =
+        "DELETE FROM Trades OUTPUT DELETED.* WHERE TradeID=? AND Version=?";
+
+    // Without OUTPUT the row is read first; the version check in the WHERE clause keeps the write atomic
+    private static final String SELECT_BY_ID_SQL = "SELECT * FROM Trades WHERE TradeID=?";
+    private static final String PORTABLE_UPDATE_IF_VERSION_SQL =
+        "UPDATE Trades SET Price=?, Volume=?, Version=Version+1 WHERE TradeID=? AND Version=?";
+    private static final String PORTABLE_DELETE_IF_VERSION_SQL =
+        "DELETE FROM Trades WHERE TradeID=? AND Version=?";
+
+    // SQL text per TradeQuery shape; identical text also hits the pool's statement cache
+    private static final ConcurrentHashMap<Integer, String> QUERY_SQL = new ConcurrentHashMap<>();
+
+    private final DataSource dataSource;
+    // Whether the database is SQL Server and so supports OUTPUT; found on the first write
+    private volatile Boolean outputClause;
     
-    public TradeDAO(Connection connection) {
-        this.connection = connection;
+    // Each operation borrows its own connection, so concurrent callers run in parallel
+    public TradeDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    private boolean supportsOutput(Connection connection) throws SQLException {
+        Boolean supported = outputClause;
+        if (supported == null) {
+            supported = connection.getMetaData().getDatabaseProductName().startsWith("Microsoft SQL Server");
+            outputClause = supported;
+        }
+        return supported;
     }
     
+    @Override
     public boolean addTrade(Trade trade) throws SQLException {
-        String sql = "INSERT INTO Trades (TradeDate, Counterparty, Commodity, Volume, Price, TradeType) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection connection = dataSource.getConnection()) {
+            boolean output = supportsOutput(connection);
+            try (PreparedStatement ps = prepareInsert(connection, output)) {
+                bindInsert(ps, 0, trade);
+                trade.setTradeId(insertedId(ps, output));
+                trade.setVersion(INITIAL_VERSION);
+                return true;
+            }
+        }
+    }
+
+    private static PreparedStatement prepareInsert(Connection connection, boolean output) throws SQLException {
+        return output ? connection.prepareStatement(INSERT_SQL)
+                : connection.prepareStatement(PORTABLE_INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    // Runs a single-row insert and returns its TradeID, from OUTPUT or from the generated keys
+    private static int insertedId(PreparedStatement ps, boolean output) throws SQLException {
+        if (!output) {
+            ps.executeUpdate();
+        }
+        try (ResultSet rs = output ? ps.executeQuery() : ps.getGeneratedKeys()) {
+            if (!rs.next()) {
+                throw new SQLException("Insert returned no TradeID");
+            }
+            return rs.getInt(1);
+        }
+    }
+    
+    /**
+     * Inserts trades in chunks of {@code chunkSize} rows, committing once per chunk. On SQL
+     * Server each statement is a multi-row MERGE that outputs its source row number next to
+     * the new TradeID, so IDs are assigned by row whatever order the server returns them in.
+     * Elsewhere the rows go in as a JDBC batch and take the generated keys in row order. If a
+     * chunk fails, or its IDs do not account for every row, it is replayed row by row under
+     * savepoints so that only the offending rows are rejected and the rest still commits.
+     */
+    @Override
+    public BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        BulkInsertResult result = new BulkInsertResult();
+        List<Trade> chunk = new ArrayList<>(chunkSize);
         
-        try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, trade.getTradeDate());
-            ps.setString(2, trade.getCounterparty());
-            ps.setString(3, trade.getCommodity());
-            ps.setDouble(4, trade.getVolume());
-            ps.setDouble(5, trade.getPrice());
-            ps.setString(6, trade.getTradeType());
+        try (Connection connection = dataSource.getConnection()) {
+            boolean output = supportsOutput(connection);
+            connection.setAutoCommit(false);
+            int index = 0;
+            int chunkStart = 0;
             
-            int rowsAffected = ps.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        trade.setTradeId(generatedKeys.getInt(1));
+            for (Trade trade : trades) {
+                chunk.add(trade);
+                index++;
+                if (chunk.size() == chunkSize) {
+                    insertChunk(connection, output, chunk, chunkStart, result);
+                    chunk.clear();
+                    chunkStart = index;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                insertChunk(connection, output, chunk, chunkStart, result);
+            }
+            connection.setAutoCommit(true);
+        }
+        return result;
+    }
+    
+    private void insertChunk(Connection connection, boolean output, List<Trade> chunk, int chunkStart,
+                             BulkInsertResult result) throws SQLException {
+        result.addChunk();
+        try {
+            if (output) {
+                for (int from = 0; from < chunk.size(); from += ROWS_PER_INSERT) {
+                    insertRows(connection, chunk, from, Math.min(ROWS_PER_INSERT, chunk.size() - from));
+                }
+            } else {
+                insertBatch(connection, chunk);
+            }
+            connection.commit();
+            for (Trade trade : chunk) {
+                trade.setVersion(INITIAL_VERSION);
+            }
+            result.addInserted(chunk.size());
+        } catch (SQLException e) {
+            connection.rollback();
+            for (Trade trade : chunk) {
+                trade.setTradeId(0);
+            }
+            insertChunkRowByRow(connection, output, chunk, chunkStart, result);
+        }
+    }
+
+    // Inserts the chunk as one JDBC batch; the driver must return one generated key per row
+    private void insertBatch(Connection connection, List<Trade> chunk) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(PORTABLE_INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (Trade trade : chunk) {
+                bindInsert(ps, 0, trade);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            int count = 0;
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next()) {
+                    if (count == chunk.size()) {
+                        throw new SQLException("Insert returned more TradeIDs than " + chunk.size() + " rows");
                     }
+                    chunk.get(count++).setTradeId(rs.getInt(1));
                 }
-                return true;
             }
-            return false;
+            if (count != chunk.size()) {
+                throw new SQLException("Insert returned " + count + " TradeIDs for " + chunk.size() + " rows");
+            }
         }
     }
+
+    // Inserts chunk[from, from + rows) in one statement and assigns each row the ID output for it
+    private void insertRows(Connection connection, List<Trade> chunk, int from, int rows) throws SQLException {
+        String sql = rows == ROWS_PER_INSERT ? MULTI_ROW_INSERT_SQL : buildMultiRowInsertSql(rows);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int row = 0; row < rows; row++) {
+                bindInsert(ps, row * 6, chunk.get(from + row));
+            }
+            boolean[] assigned = new boolean[rows];
+            int count = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int row = rs.getInt(1);
+                    if (row < 0 || row >= rows || assigned[row]) {
+                        throw new SQLException("Insert returned an unexpected row number " + row);
+                    }
+                    assigned[row] = true;
+                    chunk.get(from + row).setTradeId(rs.getInt(2));
+                    count++;
+                }
+            }
+            if (count != rows) {
+                throw new SQLException("Insert returned " + count + " TradeIDs for " + rows + " rows");
+            }
+        }
+    }
+
+    private void insertChunkRowByRow(Connection connection, boolean output, List<Trade> chunk, int chunkStart,
+                                     BulkInsertResult result) throws SQLException {
+        int inserted = 0;
+        try (PreparedStatement ps = prepareInsert(connection, output)) {
+            for (int i = 0; i < chunk.size(); i++) {
+                Trade trade = chunk.get(i);
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    bindInsert(ps, 0, trade);
+                    trade.setTradeId(insertedId(ps, output));
+                    trade.setVersion(INITIAL_VERSION);
+                    inserted++;
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    trade.setTradeId(0);
+                    result.addFailure(chunkStart + i, trade, e.getMessage());
+                }
+            }
+        }
+        connection.commit();
+        result.addInserted(inserted);
+    }
     
+    // Binds the six insert columns after the first {@code offset} parameters
+    private void bindInsert(PreparedStatement ps, int offset, Trade trade) throws SQLException {
+        ps.setString(offset + 1, trade.getTradeDate());
+        ps.setString(offset + 2, trade.getCounterparty());
+        ps.setString(offset + 3, trade.getCommodity());
+        ps.setBigDecimal(offset + 4, decimal(trade.getVolumeUnits()));
+        ps.setBigDecimal(offset + 5, decimal(trade.getPriceUnits()));
+        ps.setString(offset + 6, trade.getTradeType());
+    }
+    
+    @Override
     public List<Trade> getAllTrades() throws SQLException {
         List<Trade> trades = new ArrayList<>();
         String sql = "SELECT * FROM Trades ORDER BY TradeID";
         
-        try (Statement st = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             Statement st = connection.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
             
             while (rs.next()) {
@@ -48,32 +264,224 @@ public class TradeDAO {
         return trades;
     }
     
+    @Override
+    public int countTrades() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM Trades";
+        
+        try (Connection connection = dataSource.getConnection();
+             Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    @Override
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException {
+        List<Trade> trades = new ArrayList<>(pageSize);
+        String sql = "SELECT * FROM Trades WHERE TradeID > ? ORDER BY TradeID OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, afterTradeId);
+            ps.setInt(2, pageSize);
+            ps.setFetchSize(pageSize);
+            
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    trades.add(mapResultSetToTrade(rs));
+                }
+            }
+        }
+        return trades;
+    }
+    
+    /**
+     * One forward-only, read-only cursor over the whole table, fetched in blocks of
+     * {@link TradeRepository#DEFAULT_PAGE_SIZE}. The same Trade instance is refilled for each
+     * row, so a fast handler can stream millions of rows without creating garbage per row.
+     */
+    @Override
+    public int scanTrades(TradeHandler handler) throws SQLException {
+        String sql = "SELECT * FROM Trades ORDER BY TradeID";
+        Trade trade = new Trade();
+        int visited = 0;
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DEFAULT_PAGE_SIZE);
+            
+            try (ResultSet rs = ps.executeQuery()) {
+                int tradeIdColumn = rs.findColumn("TradeID");
+                int tradeDateColumn = rs.findColumn("TradeDate");
+                int counterpartyColumn = rs.findColumn("Counterparty");
+                int commodityColumn = rs.findColumn("Commodity");
+                int volumeColumn = rs.findColumn("Volume");
+                int priceColumn = rs.findColumn("Price");
+                int tradeTypeColumn = rs.findColumn("TradeType");
+                int versionColumn = rs.findColumn("Version");
+                while (rs.next()) {
+                    trade.setTradeId(rs.getInt(tradeIdColumn));
+                    trade.setTradeEpochDay(epochDay(rs.getDate(tradeDateColumn)));
+                    trade.setCounterparty(rs.getString(counterpartyColumn));
+                    trade.setCommodity(rs.getString(commodityColumn));
+                    trade.setVolumeUnits(units(rs, volumeColumn));
+                    trade.setPriceUnits(units(rs, priceColumn));
+                    trade.setTradeType(rs.getString(tradeTypeColumn));
+                    trade.setVersion(rs.getInt(versionColumn));
+                    visited++;
+                    if (!handler.handle(trade)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+    
+    @Override
     public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
-        String sql = "UPDATE Trades SET Price=?, Volume=? WHERE TradeID=?";
+        String sql = "UPDATE Trades SET Price=?, Volume=?, Version=Version+1 WHERE TradeID=?";
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setDouble(1, newPrice);
-            ps.setDouble(2, newVolume);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setBigDecimal(1, decimal(FixedPoint.toUnits(newPrice)));
+            ps.setBigDecimal(2, decimal(FixedPoint.toUnits(newVolume)));
             ps.setInt(3, tradeId);
             
             return ps.executeUpdate() > 0;
         }
     }
     
+    @Override
     public boolean deleteTrade(int tradeId) throws SQLException {
         String sql = "DELETE FROM Trades WHERE TradeID=?";
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, tradeId);
             return ps.executeUpdate() > 0;
         }
     }
     
+    @Override
+    public TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!supportsOutput(connection)) {
+                return updateIfVersionPortable(connection, tradeId, expectedVersion, newPrice, newVolume);
+            }
+            return updateIfVersionOutput(connection, tradeId, expectedVersion, newPrice, newVolume);
+        }
+    }
+
+    private static TradeUpdate updateIfVersionOutput(Connection connection, int tradeId, int expectedVersion,
+                                                     double newPrice, double newVolume) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(UPDATE_IF_VERSION_SQL)) {
+            ps.setBigDecimal(1, decimal(FixedPoint.toUnits(newPrice)));
+            ps.setBigDecimal(2, decimal(FixedPoint.toUnits(newVolume)));
+            ps.setInt(3, tradeId);
+            ps.setInt(4, expectedVersion);
+            
+            // OUTPUT returns the old and new values from the same statement, so no read is needed
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Trade after = mapResultSetToTrade(rs);
+                Trade before = new Trade(tradeId, after.getTradeEpochDay(), after.getCounterparty(), after.getCommodity(),
+                        units(rs, rs.findColumn("PreviousVolume")), units(rs, rs.findColumn("PreviousPrice")),
+                        after.getTradeType());
+                before.setVersion(expectedVersion);
+                return new TradeUpdate(before, after);
+            }
+        }
+    }
+    
+    /*
+     * A row read at the expected version still has those values when an update guarded by
+     * the same version succeeds, because every change bumps the version; so the read gives
+     * the before image and the write stays a single compare-and-set.
+     */
+    private static TradeUpdate updateIfVersionPortable(Connection connection, int tradeId, int expectedVersion,
+                                                       double newPrice, double newVolume) throws SQLException {
+        Trade before = selectIfVersion(connection, tradeId, expectedVersion);
+        if (before == null) {
+            return null;
+        }
+        long priceUnits = FixedPoint.toUnits(newPrice);
+        long volumeUnits = FixedPoint.toUnits(newVolume);
+        try (PreparedStatement ps = connection.prepareStatement(PORTABLE_UPDATE_IF_VERSION_SQL)) {
+            ps.setBigDecimal(1, decimal(priceUnits));
+            ps.setBigDecimal(2, decimal(volumeUnits));
+            ps.setInt(3, tradeId);
+            ps.setInt(4, expectedVersion);
+            if (ps.executeUpdate() == 0) {
+                return null;
+            }
+        }
+        Trade after = new Trade(tradeId, before.getTradeEpochDay(), before.getCounterparty(), before.getCommodity(),
+                volumeUnits, priceUnits, before.getTradeType());
+        after.setVersion(expectedVersion + 1);
+        return new TradeUpdate(before, after);
+    }
+    
+    @Override
+    public Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!supportsOutput(connection)) {
+                return deleteIfVersionPortable(connection, tradeId, expectedVersion);
+            }
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_IF_VERSION_SQL)) {
+                ps.setInt(1, tradeId);
+                ps.setInt(2, expectedVersion);
+                
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? mapResultSetToTrade(rs) : null;
+                }
+            }
+        }
+    }
+
+    private static Trade deleteIfVersionPortable(Connection connection, int tradeId, int expectedVersion)
+            throws SQLException {
+        Trade before = selectIfVersion(connection, tradeId, expectedVersion);
+        if (before == null) {
+            return null;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(PORTABLE_DELETE_IF_VERSION_SQL)) {
+            ps.setInt(1, tradeId);
+            ps.setInt(2, expectedVersion);
+            return ps.executeUpdate() == 0 ? null : before;
+        }
+    }
+
+    // The trade if it exists at the expected version, otherwise null
+    private static Trade selectIfVersion(Connection connection, int tradeId, int expectedVersion) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID_SQL)) {
+            ps.setInt(1, tradeId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Trade trade = mapResultSetToTrade(rs);
+                return trade.getVersion() == expectedVersion ? trade : null;
+            }
+        }
+    }
+    
+    @Override
     public List<Trade> searchTrades(String searchColumn, String searchValue) throws SQLException {
+        // Only whitelisted columns reach the SQL text, which also keeps the number of
+        // distinct statements (and so cached plans) fixed
+        if (!searchColumn.equals("Counterparty") && !searchColumn.equals("Commodity")) {
+            throw new IllegalArgumentException("Unsupported search column: " + searchColumn);
+        }
         List<Trade> trades = new ArrayList<>();
         String sql = "SELECT * FROM Trades WHERE " + searchColumn + " LIKE ?";
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, "%" + searchValue + "%");
             
             try (ResultSet rs = ps.executeQuery()) {
@@ -85,10 +493,139 @@ public class TradeDAO {
         return trades;
     }
     
-    public Trade getTradeById(int tradeId) throws SQLException {
-        String sql = "SELECT * FROM Trades WHERE TradeID=?";
+    @Override
+    public List<Trade> findTrades(TradeQuery query) throws SQLException {
+        List<Trade> trades = new ArrayList<>();
+        String sql = QUERY_SQL.computeIfAbsent(query.shape(), shape -> compileQuery(query));
         
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            bindQuery(ps, query);
+            if (query.getLimit() > 0) {
+                ps.setFetchSize(Math.min(query.getLimit(), 1000));
+            }
+            
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    trades.add(mapResultSetToTrade(rs));
+                }
+            }
+        }
+        return trades;
+    }
+    
+    /**
+     * Builds the SQL for the query's shape. Each predicate compares the bare column with a
+     * parameter (prefixes become LIKE 'x%'), so the optimizer can seek IX_trades_trade_date,
+     * IX_trades_commodity or IX_trades_counterparty instead of scanning. The limit is a
+     * parameter too, so one plan serves every value. bindQuery must follow the same order.
+     */
+    static String compileQuery(TradeQuery query) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (query.getLimit() > 0) {
+            sql.append("TOP (?) ");
+        }
+        sql.append("* FROM Trades");
+        
+        List<String> predicates = new ArrayList<>();
+        if (query.getFromDate() != null) {
+            predicates.add("TradeDate >= ?");
+        }
+        if (query.getToDate() != null) {
+            predicates.add("TradeDate <= ?");
+        }
+        if (query.getCommodity() != null) {
+            predicates.add(textPredicate("Commodity", query.getCommodityMatch()));
+        }
+        if (query.getCounterparty() != null) {
+            predicates.add(textPredicate("Counterparty", query.getCounterpartyMatch()));
+        }
+        if (query.getTradeType() != null) {
+            predicates.add("TradeType = ?");
+        }
+        if (query.getMinVolume() != null) {
+            predicates.add("Volume >= ?");
+        }
+        if (query.getMaxVolume() != null) {
+            predicates.add("Volume <= ?");
+        }
+        if (query.getMinPrice() != null) {
+            predicates.add("Price >= ?");
+        }
+        if (query.getMaxPrice() != null) {
+            predicates.add("Price <= ?");
+        }
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+        
+        String direction = query.isDescending() ? " DESC" : "";
+        sql.append(" ORDER BY ").append(query.getSortField().getColumn()).append(direction);
+        if (query.getSortField() != TradeQuery.SortField.TRADE_ID) {
+            sql.append(", TradeID").append(direction);
+        }
+        return sql.toString();
+    }
+    
+    private static String textPredicate(String column, TradeQuery.Match match) {
+        return match == TradeQuery.Match.PREFIX ? column + " LIKE ? ESCAPE '\\'" : column + " = ?";
+    }
+    
+    private static void bindQuery(PreparedStatement ps, TradeQuery query) throws SQLException {
+        int index = 1;
+        if (query.getLimit() > 0) {
+            ps.setInt(index++, query.getLimit());
+        }
+        // Typed as DATE so the comparison never converts the column
+        if (query.getFromDate() != null) {
+            ps.setDate(index++, Date.valueOf(query.getFromDate()));
+        }
+        if (query.getToDate() != null) {
+            ps.setDate(index++, Date.valueOf(query.getToDate()));
+        }
+        if (query.getCommodity() != null) {
+            ps.setString(index++, textValue(query.getCommodity(), query.getCommodityMatch()));
+        }
+        if (query.getCounterparty() != null) {
+            ps.setString(index++, textValue(query.getCounterparty(), query.getCounterpartyMatch()));
+        }
+        if (query.getTradeType() != null) {
+            ps.setString(index++, query.getTradeType());
+        }
+        if (query.getMinVolume() != null) {
+            ps.setDouble(index++, query.getMinVolume());
+        }
+        if (query.getMaxVolume() != null) {
+            ps.setDouble(index++, query.getMaxVolume());
+        }
+        if (query.getMinPrice() != null) {
+            ps.setDouble(index++, query.getMinPrice());
+        }
+        if (query.getMaxPrice() != null) {
+            ps.setDouble(index++, query.getMaxPrice());
+        }
+    }
+    
+    // Wildcards typed by the user are escaped, so a prefix only ever matches literally
+    private static String textValue(String value, TradeQuery.Match match) {
+        if (match != TradeQuery.Match.PREFIX) {
+            return value;
+        }
+        StringBuilder pattern = new StringBuilder(value.length() + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '%' || c == '_' || c == '[') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+    
+    @Override
+    public Trade getTradeById(int tradeId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BY_ID_SQL)) {
             ps.setInt(1, tradeId);
             
             try (ResultSet rs = ps.executeQuery()) {
@@ -100,15 +637,121 @@ public class TradeDAO {
         return null;
     }
     
-    private Trade mapResultSetToTrade(ResultSet rs) throws SQLException {
-        return new Trade(
+    /**
+     * Fetches the given trades in TradeID order. IDs are looked up in fixed-size IN lists
+     * (padded with -1) so every call reuses the same prepared statement. A long list whose
+     * IDs are close together, such as a broad search hit list, is read instead with a
+     * single streamed scan of its TradeID range, keeping the rows it asked for.
+     */
+    @Override
+    public List<Trade> getTradesByIds(int[] tradeIds) throws SQLException {
+        List<Trade> trades = new ArrayList<>(tradeIds.length);
+        if (tradeIds.length == 0) {
+            return trades;
+        }
+        if (tradeIds.length >= ID_SCAN_THRESHOLD) {
+            int[] sorted = tradeIds.clone();
+            Arrays.sort(sorted);
+            long span = (long) sorted[sorted.length - 1] - sorted[0] + 1;
+            if (span <= (long) sorted.length * ID_SCAN_MAX_ROWS_PER_ID) {
+                return scanTradesByIds(sorted, trades);
+            }
+        }
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(ID_LOOKUP_SQL)) {
+            for (int start = 0; start < tradeIds.length; start += ID_LOOKUP_CHUNK) {
+                for (int i = 0; i < ID_LOOKUP_CHUNK; i++) {
+                    int index = start + i;
+                    ps.setInt(i + 1, index < tradeIds.length ? tradeIds[index] : -1);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        trades.add(mapResultSetToTrade(rs));
+                    }
+                }
+            }
+        }
+        return trades;
+    }
+    
+    private List<Trade> scanTradesByIds(int[] sortedIds, List<Trade> trades) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(ID_RANGE_SQL)) {
+            ps.setInt(1, sortedIds[0]);
+            ps.setInt(2, sortedIds[sortedIds.length - 1]);
+            ps.setFetchSize(DEFAULT_PAGE_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                // Rows and IDs both ascend, so one pass over each merges them
+                int next = 0;
+                while (rs.next() && next < sortedIds.length) {
+                    int tradeId = rs.getInt("TradeID");
+                    while (next < sortedIds.length && sortedIds[next] < tradeId) {
+                        next++;
+                    }
+                    if (next < sortedIds.length && sortedIds[next] == tradeId) {
+                        trades.add(mapResultSetToTrade(rs));
+                        next++;
+                    }
+                }
+            }
+        }
+        return trades;
+    }
+
+    /*
+     * INSERT ... OUTPUT cannot see the source rows, so a MERGE that never matches inserts
+     * them instead and outputs each source row number with the TradeID it received.
+     */
+    private static String buildMultiRowInsertSql(int rows) {
+        StringBuilder sql = new StringBuilder("MERGE INTO Trades USING (VALUES ");
+        for (int row = 0; row < rows; row++) {
+            sql.append(row == 0 ? "" : ", ").append('(').append(row).append(", ?, ?, ?, ?, ?, ?)");
+        }
+        return sql.append(") AS Source (RowNo, TradeDate, Counterparty, Commodity, Volume, Price, TradeType) ")
+                .append("ON 1 = 0 WHEN NOT MATCHED THEN ")
+                .append("INSERT (TradeDate, Counterparty, Commodity, Volume, Price, TradeType) ")
+                .append("VALUES (Source.TradeDate, Source.Counterparty, Source.Commodity, Source.Volume, ")
+                .append("Source.Price, Source.TradeType) ")
+                .append("OUTPUT Source.RowNo, INSERTED.TradeID;").toString();
+    }
+
+    private static String buildIdLookupSql(int parameterCount) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM Trades WHERE TradeID IN (");
+        for (int i = 0; i < parameterCount; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(") ORDER BY TradeID").toString();
+    }
+    
+    // Package-private so the benchmarks can measure row mapping on its own
+    static Trade mapResultSetToTrade(ResultSet rs) throws SQLException {
+        Trade trade = new Trade(
             rs.getInt("TradeID"),
-            rs.getDate("TradeDate").toString(),
+            epochDay(rs.getDate("TradeDate")),
             rs.getString("Counterparty"),
             rs.getString("Commodity"),
-            rs.getDouble("Volume"),
-            rs.getDouble("Price"),
+            FixedPoint.toUnits(rs.getDouble("Volume")),
+            FixedPoint.toUnits(rs.getDouble("Price")),
             rs.getString("TradeType")
         );
+        trade.setVersion(rs.getInt("Version"));
+        return trade;
+    }
+
+    /*
+     * DECIMAL(10,2) values have at most 10 significant digits, well inside a double's 15, so
+     * rounding the double gives the exact unscaled value without a BigDecimal per column.
+     */
+    private static long units(ResultSet rs, int column) throws SQLException {
+        return FixedPoint.toUnits(rs.getDouble(column));
+    }
+
+    private static int epochDay(Date date) {
+        return date == null ? TradeDates.NO_DATE : (int) date.toLocalDate().toEpochDay();
+    }
+
+    private static BigDecimal decimal(long units) {
+        return BigDecimal.valueOf(units, 2);
     }
 }
@@ -0,0 +1,77 @@
+import java.time.LocalDate;
+
+/**
+ * Trade dates as epoch days (days since 1970-01-01) in an int, instead of a String per
+ * trade. Ordering and range checks are int comparisons. The yyyy-MM-dd text of each day
+ * is built once and shared, so formatting a trade's date does not allocate.
+ */
+public final class TradeDates {
+    // Stored for a trade without a date
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    // Days with cached text: 1950-01-01 up to 2099-12-31
+    private static final int CACHE_FIRST_DAY = (int) LocalDate.of(1950, 1, 1).toEpochDay();
+    private static final int CACHE_DAYS = (int) LocalDate.of(2100, 1, 1).toEpochDay() - CACHE_FIRST_DAY;
+    // Racy but safe: Strings are immutable, so a thread sees either null or a complete one
+    private static final String[] TEXT = new String[CACHE_DAYS];
+
+    private TradeDates() {}
+
+    /**
+     * Parses yyyy-MM-dd without creating a LocalDate. Returns NO_DATE for null and throws
+     * IllegalArgumentException for anything that is not a valid calendar date.
+     */
+    public static int parse(String date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            int year = digits(date, 0, 4);
+            int month = digits(date, 5, 7);
+            int day = digits(date, 8, 10);
+            if (InputValidator.isValidDate(year, month, day)) {
+                return epochDay(year, month, day);
+            }
+        }
+        throw new IllegalArgumentException("Invalid trade date: " + date);
+    }
+
+    // Days from civil date (proleptic Gregorian), counted from 1970-01-01
+    public static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // yyyy-MM-dd text for the day, or null for NO_DATE
+    public static String format(int epochDay) {
+        if (epochDay == NO_DATE) {
+            return null;
+        }
+        int slot = epochDay - CACHE_FIRST_DAY;
+        if (slot < 0 || slot >= CACHE_DAYS) {
+            return LocalDate.ofEpochDay(epochDay).toString();
+        }
+        String text = TEXT[slot];
+        if (text == null) {
+            text = LocalDate.ofEpochDay(epochDay).toString();
+            TEXT[slot] = text;
+        }
+        return text;
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * One committed change to a trade, as published on the {@link TradeEventBus}. Creates
+ * have no before state and deletes have no after state. Sequence numbers start at 1 and
+ * increase by one per event with no gaps.
+ */
+public class TradeEvent {
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final long sequence;
+    private final Type type;
+    private final long timestamp;
+    private final Trade before;
+    private final Trade after;
+
+    public TradeEvent(long sequence, Type type, long timestamp, Trade before, Trade after) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.before = before;
+        this.after = after;
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    // Epoch milliseconds at publication
+    public long getTimestamp() { return timestamp; }
+    public Trade getBefore() { return before; }
+    public Trade getAfter() { return after; }
+
+    // The trade's latest known state: after for creates and updates, before for deletes
+    public Trade getTrade() {
+        return after != null ? after : before;
+    }
+
+    public int getTradeId() {
+        return getTrade().getTradeId();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d %s TradeID:%d v%d at %d", sequence, type, getTradeId(), getTrade().getVersion(),
+                timestamp);
+    }
+}
@@ -0,0 +1,372 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process change feed for trades. TradeService publishes every committed create, update
+ * and delete, and subscribers consume the events incrementally instead of rescanning the table.
+ *
+ * Events go into a fixed ring of slots. A publisher claims a sequence with one atomic
+ * increment and writes the slot, so neither side takes a lock. Each subscription has its own
+ * thread and cursor, which is the last sequence it has finished with. It takes every
+ * contiguous published event as one batch and advances its cursor once per batch. A slot is
+ * only reused once every subscriber's cursor has passed it.
+ *
+ * If a subscriber keeps the ring full for longer than {@code maxStallMs}, it is declared
+ * overrun. Publishers stop waiting for it. It then gets {@link TradeEventHandler#onOverrun}
+ * and resumes from the newest events. A stuck consumer can delay trade writes by maxStallMs
+ * at most, and cannot block them.
+ *
+ * Sequence order is publication order. Two writers changing the same trade at once may
+ * publish in either order; the trade's version tells which change is newer.
+ */
+public class TradeEventBus implements AutoCloseable {
+    private static final LatencyRecorder PUBLISH = TradeMetrics.recorder("events.publish");
+    private static final LatencyRecorder STALLS = TradeMetrics.recorder("events.publishStall");
+
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final long DEFAULT_MAX_STALL_MS = 1000;
+    public static final int DEFAULT_MAX_BATCH = 1024;
+    // An idle consumer spins this many times before parking
+    private static final int SPIN_TRIES = 100;
+    // Parked consumers are woken by publishers; the timeout is only a safety net
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicReferenceArray<TradeEvent> ring;
+    private final int mask;
+    private final long maxStallNanos;
+    private final AtomicLong claimed = new AtomicLong();
+    // Lowest subscriber cursor at the last check; publishers below it need not look again
+    private volatile long gateCache;
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private final Object subscriptionLock = new Object();
+    private final LongAdder overruns = new LongAdder();
+
+    public TradeEventBus() {
+        this(Integer.getInteger("trading.events.capacity", DEFAULT_CAPACITY),
+                Long.getLong("trading.events.maxStallMs", DEFAULT_MAX_STALL_MS));
+    }
+
+    // The capacity is rounded up to a power of two
+    public TradeEventBus(int capacity, long maxStallMs) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxStallNanos = TimeUnit.MILLISECONDS.toNanos(maxStallMs);
+    }
+
+    public TradeEvent publishCreated(Trade trade) {
+        return publish(TradeEvent.Type.CREATED, null, trade);
+    }
+
+    public TradeEvent publishUpdated(Trade before, Trade after) {
+        return publish(TradeEvent.Type.UPDATED, before, after);
+    }
+
+    public TradeEvent publishDeleted(Trade trade) {
+        return publish(TradeEvent.Type.DELETED, trade, null);
+    }
+
+    private TradeEvent publish(TradeEvent.Type type, Trade before, Trade after) {
+        long start = System.nanoTime();
+        long sequence = claimed.incrementAndGet();
+        awaitSlot(sequence);
+        TradeEvent event = new TradeEvent(sequence, type, System.currentTimeMillis(), before, after);
+        ring.set(index(sequence), event);
+        for (Subscription subscription : subscriptions) {
+            subscription.wake();
+        }
+        PUBLISH.record(start, 1);
+        return event;
+    }
+
+    // Waits until every subscriber has finished with the event the slot held one lap ago
+    private void awaitSlot(long sequence) {
+        long wrapPoint = sequence - ring.length();
+        if (wrapPoint <= gateCache) {
+            return;
+        }
+        long start = System.nanoTime();
+        int tries = 0;
+        long gate;
+        while (wrapPoint > (gate = minimumCursor(sequence))) {
+            if (System.nanoTime() - start > maxStallNanos) {
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.cursor < wrapPoint) {
+                        subscription.markOverrun("still at #" + subscription.cursor + " after "
+                                + TimeUnit.NANOSECONDS.toMillis(maxStallNanos) + " ms with the ring full");
+                    }
+                }
+            } else if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        gateCache = gate;
+        if (tries > 0) {
+            STALLS.record(start, 1);
+        }
+    }
+
+    private long minimumCursor(long sequence) {
+        long minimum = sequence - 1;
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.overrun.get()) {
+                minimum = Math.min(minimum, subscription.cursor);
+            }
+        }
+        return minimum;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    public Subscription subscribe(String name, TradeEventHandler handler) {
+        return subscribe(name, handler, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Starts delivering events published from now on to the handler, on a new thread, at
+     * most {@code maxBatch} at a time. Close the subscription to stop.
+     */
+    public Subscription subscribe(String name, TradeEventHandler handler, int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        Subscription subscription = new Subscription(name, handler, maxBatch);
+        synchronized (subscriptionLock) {
+            Subscription[] current = subscriptions;
+            Subscription[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+        }
+        subscription.resetCursor();
+        subscription.thread.start();
+        return subscription;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        synchronized (subscriptionLock) {
+            List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+            remaining.remove(subscription);
+            subscriptions = remaining.toArray(new Subscription[0]);
+        }
+    }
+
+    // Last sequence handed to a publisher; its event may still be being written
+    public long getPublishedSequence() {
+        return claimed.get();
+    }
+
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    public long getOverrunCount() {
+        return overruns.sum();
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return List.of(subscriptions);
+    }
+
+    // Lets each subscriber catch up with what has been published, then stops them
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Event bus | Capacity:%d | Published:%d | Subscribers:%d | Overruns:%d",
+                getCapacity(), getPublishedSequence(), subscriptions.length, getOverrunCount());
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final TradeEventHandler handler;
+        private final int maxBatch;
+        private final Thread thread;
+        private final LatencyRecorder batchRecorder;
+        private final AtomicBoolean overrun = new AtomicBoolean();
+        private volatile long cursor;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        // Metrics
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder overrunCount = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private Subscription(String name, TradeEventHandler handler, int maxBatch) {
+            this.name = name;
+            this.handler = handler;
+            this.maxBatch = maxBatch;
+            this.batchRecorder = TradeMetrics.recorder("events." + name);
+            this.thread = new Thread(this::consumeLoop, "trade-events-" + name);
+            this.thread.setDaemon(true);
+            this.cursor = claimed.get();
+        }
+
+        /*
+         * Moves the cursor to the newest claimed sequence and rejoins the gate. The cursor is
+         * read again after the flag is cleared, so a publisher that claimed a later sequence
+         * is certain to see this subscriber and wait for it.
+         */
+        private void resetCursor() {
+            cursor = claimed.get();
+            overrun.set(false);
+            cursor = claimed.get();
+        }
+
+        private void markOverrun(String reason) {
+            if (overrun.compareAndSet(false, true)) {
+                overrunCount.increment();
+                overruns.increment();
+                System.err.println("[Events] Subscriber '" + name + "' overrun: " + reason);
+                wake();
+            }
+        }
+
+        private void wake() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void consumeLoop() {
+            long next = cursor + 1;
+            int idle = 0;
+            while (running) {
+                if (overrun.get()) {
+                    next = resync();
+                    continue;
+                }
+                TradeEvent event = ring.get(index(next));
+                if (event == null || event.getSequence() < next) {
+                    idle = awaitEvent(next, idle);
+                } else if (event.getSequence() > next) {
+                    markOverrun("event #" + next + " was overwritten before it was read");
+                } else {
+                    idle = 0;
+                    next = deliverBatch(event, next);
+                }
+            }
+        }
+
+        private int awaitEvent(long next, int idle) {
+            if (idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+                return idle + 1;
+            }
+            parked = true;
+            // Checked again after announcing the park, so a concurrent publish cannot be missed
+            TradeEvent event = ring.get(index(next));
+            if ((event == null || event.getSequence() < next) && running && !overrun.get()) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            parked = false;
+            return idle;
+        }
+
+        private long deliverBatch(TradeEvent first, long next) {
+            long start = System.nanoTime();
+            TradeEvent event = first;
+            int count = 0;
+            while (true) {
+                long following = next + 1;
+                TradeEvent nextEvent = ++count < maxBatch ? ring.get(index(following)) : null;
+                boolean endOfBatch = nextEvent == null || nextEvent.getSequence() != following;
+                deliver(event, endOfBatch);
+                next = following;
+                if (endOfBatch) {
+                    break;
+                }
+                event = nextEvent;
+            }
+            // Releases the whole batch's slots at once
+            cursor = next - 1;
+            delivered.add(count);
+            batches.increment();
+            batchRecorder.record(start, count);
+            return next;
+        }
+
+        private void deliver(TradeEvent event, boolean endOfBatch) {
+            try {
+                handler.onEvent(event, endOfBatch);
+            } catch (Exception e) {
+                errors.increment();
+                System.err.println("[Events] Subscriber '" + name + "' failed on event #" + event.getSequence()
+                        + ": " + e.getMessage());
+            }
+        }
+
+        private long resync() {
+            resetCursor();
+            long resume = cursor + 1;
+            try {
+                handler.onOverrun(resume);
+            } catch (RuntimeException e) {
+                errors.increment();
+                System.err.println("[Events] Subscriber '" + name + "' failed to resync: " + e.getMessage());
+            }
+            return resume;
+        }
+
+        public String getName() { return name; }
+        public long getCursor() { return cursor; }
+        public long getLag() { return Math.max(0, claimed.get() - cursor); }
+        public boolean isOverrun() { return overrun.get(); }
+        public long getDeliveredCount() { return delivered.sum(); }
+        public long getBatchCount() { return batches.sum(); }
+        public long getOverrunCount() { return overrunCount.sum(); }
+        public long getErrorCount() { return errors.sum(); }
+
+        // Waits up to five seconds for the subscriber to catch up, then stops its thread
+        @Override
+        public void close() {
+            if (Thread.currentThread() != thread) {
+                long target = claimed.get();
+                long start = System.nanoTime();
+                while (running && thread.isAlive() && cursor < target && !overrun.get()
+                        && System.nanoTime() - start < DRAIN_TIMEOUT_NANOS) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+            running = false;
+            LockSupport.unpark(thread);
+            unsubscribe(this);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            long batchCount = getBatchCount();
+            return String.format("Subscriber '%s' | Cursor:%d | Lag:%d | Delivered:%d | Avg batch:%.1f | Overruns:%d | Errors:%d",
+                    name, cursor, getLag(), getDeliveredCount(),
+                    batchCount == 0 ? 0.0 : (double) getDeliveredCount() / batchCount, getOverrunCount(), getErrorCount());
+        }
+    }
+}
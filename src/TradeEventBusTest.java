@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Exercises the trade event bus: concurrent publishers with several subscribers, a stuck
+ * subscriber being overrun, and the events TradeService publishes for a trade's lifecycle
+ * (plus the failed future from asynchronous capture once its writer has stopped).
+ * Runs against a temporary journal store, so it needs no database.
+ *
+ * Usage: java TradeEventBusTest [publishers] [eventsPerPublisher]
+ */
+public class TradeEventBusTest {
+    public static void main(String[] args) {
+        int publishers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int perPublisher = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+
+        System.out.println("Testing Trade Event Bus...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            Trade trade = new Trade(1, "2024-01-15", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+
+            // 1. Every subscriber sees every event once, in sequence
+            System.out.printf("%n1. Testing %d publishers x %d events, 2 subscribers...%n", publishers, perPublisher);
+            TradeEventBus bus = new TradeEventBus(4096, 10_000);
+            SequenceChecker all = new SequenceChecker();
+            SequenceChecker batched = new SequenceChecker();
+            TradeEventBus.Subscription first = bus.subscribe("test-all", all);
+            TradeEventBus.Subscription second = bus.subscribe("test-batched", batched, 64);
+            List<Thread> threads = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < publishers; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < perPublisher; j++) {
+                        bus.publishCreated(trade);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            bus.close();
+            long elapsed = System.nanoTime() - start;
+            long total = (long) publishers * perPublisher;
+            System.out.printf(" %,.0f events/s%n %s%n %s%n", total * 1e9 / elapsed, first, second);
+            check(all.count == total && all.inOrder, "first subscriber saw every event in order");
+            check(batched.count == total && batched.inOrder, "second subscriber saw every event in order");
+            check(first.getBatchCount() < total, "events were delivered in batches");
+            check(batched.largestBatch <= 64, "batches respect the subscriber's limit");
+
+            // 2. A stuck subscriber is overrun instead of blocking publishers
+            System.out.println("\n2. Testing slow consumer detection...");
+            TradeEventBus small = new TradeEventBus(1024, 50);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicLong resumedAt = new AtomicLong();
+            SequenceChecker slowEvents = new SequenceChecker();
+            TradeEventBus.Subscription slow = small.subscribe("test-slow", new TradeEventHandler() {
+                @Override
+                public void onEvent(TradeEvent event, boolean endOfBatch) throws Exception {
+                    release.await();
+                    slowEvents.onEvent(event, endOfBatch);
+                }
+
+                @Override
+                public void onOverrun(long resumeSequence) {
+                    resumedAt.set(resumeSequence);
+                    slowEvents.last = resumeSequence - 1;
+                }
+            });
+            SequenceChecker fast = new SequenceChecker();
+            small.subscribe("test-fast", fast);
+            start = System.nanoTime();
+            for (int i = 0; i < 5000; i++) {
+                small.publishCreated(trade);
+            }
+            long stalledMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            check(slow.isOverrun() && slow.getOverrunCount() == 1, "stuck subscriber was declared overrun");
+            check(stalledMs < 2000, "publishers stalled once, for " + stalledMs + " ms");
+            release.countDown();
+            waitFor(() -> resumedAt.get() > 0);
+            for (int i = 0; i < 10; i++) {
+                small.publishCreated(trade);
+            }
+            small.close();
+            check(resumedAt.get() > 1024, "overrun subscriber resynced at #" + resumedAt.get());
+            check(slowEvents.inOrder && slowEvents.last == 5010, "and then received new events in order");
+            check(fast.count == 5010 && fast.inOrder, "other subscriber was unaffected");
+
+            // 3. TradeService publishes its writes
+            System.out.println("\n3. Testing TradeService events...");
+            directory = Files.createTempDirectory("trade-event-bus-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                TradeService tradeService = new TradeService(store);
+                List<TradeEvent> events = new ArrayList<>();
+                tradeService.getEventBus().subscribe("test-service", (event, endOfBatch) -> {
+                    synchronized (events) {
+                        events.add(event);
+                    }
+                });
+                tradeService.createTrade("2024-01-15", "ABC Energy Corp", "Crude Oil", 1000, 75.5, "BUY");
+                int tradeId = tradeService.getAllTrades().get(0).getTradeId();
+                tradeService.updateTrade(tradeId, 80.0, 1200);
+                tradeService.deleteTrade(tradeId);
+                tradeService.shutdown();
+
+                check(events.size() == 3, "one event per write");
+                TradeEvent created = events.get(0);
+                TradeEvent updated = events.get(1);
+                TradeEvent deleted = events.get(2);
+                check(created.getType() == TradeEvent.Type.CREATED && created.getBefore() == null
+                        && created.getTradeId() == tradeId, "create carries the new trade");
+                check(updated.getType() == TradeEvent.Type.UPDATED && updated.getBefore().getPrice() == 75.5
+                        && updated.getAfter().getPrice() == 80.0 && updated.getAfter().getVersion() == 2,
+                        "update carries before and after state");
+                check(deleted.getType() == TradeEvent.Type.DELETED && deleted.getAfter() == null
+                        && deleted.getBefore().getVersion() == 2, "delete carries the last state");
+                check(updated.getSequence() == created.getSequence() + 1
+                        && deleted.getSequence() == updated.getSequence() + 1
+                        && created.getTimestamp() <= deleted.getTimestamp(), "sequences and timestamps increase");
+
+                // A capture writer stopped under a caller refuses the trade through its future
+                TradeService asyncService = new TradeService(store);
+                asyncService.startAsyncCapture(16, 8, 1);
+                asyncService.getWriteBehind().close();
+                CompletableFuture<Integer> refused = asyncService.createTradeAsync("2024-01-15", "ABC Energy Corp",
+                        "Crude Oil", 1000, 75.5, "BUY");
+                try {
+                    refused.join();
+                    check(false, "closed writer refuses the trade");
+                } catch (CompletionException e) {
+                    check(e.getCause() instanceof IllegalStateException,
+                            "closed writer fails the future instead of throwing");
+                }
+                asyncService.shutdown();
+            }
+
+            System.out.println("\n All tests passed! The trade event bus is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Trade event bus test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // Records whether events arrived with consecutive sequence numbers
+    private static class SequenceChecker implements TradeEventHandler {
+        volatile long last;
+        volatile long count;
+        volatile boolean inOrder = true;
+        int batch;
+        int largestBatch;
+
+        @Override
+        public void onEvent(TradeEvent event, boolean endOfBatch) {
+            if (event.getSequence() != last + 1) {
+                inOrder = false;
+            }
+            last = event.getSequence();
+            count++;
+            batch++;
+            if (endOfBatch) {
+                largestBatch = Math.max(largestBatch, batch);
+                batch = 0;
+            }
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Consumer of a {@link TradeEventBus} subscription. Events arrive in sequence order on the
+ * subscription's own thread, in batches; {@code endOfBatch} marks the last event currently
+ * available, which is the point to flush any work accumulated over the batch.
+ */
+@FunctionalInterface
+public interface TradeEventHandler {
+    void onEvent(TradeEvent event, boolean endOfBatch) throws Exception;
+
+    /**
+     * Called when the subscriber fell so far behind that the ring overwrote events it had
+     * not read. Delivery resumes with {@code resumeSequence}; state built from earlier
+     * events should be rebuilt from the repository.
+     */
+    default void onOverrun(long resumeSequence) {
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Exports trades from a temporary journal store to CSV and to the columnar format, and
+ * reads the columnar file back field by field. Needs no database.
+ *
+ * Usage: java TradeExportTest [tradeCount]
+ */
+public class TradeExportTest {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.println("Testing Trade Export...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("trade-export-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("journal"), false, 0)) {
+                List<Trade> trades = new ArrayList<>(count);
+                String[] counterparties = { "ABC Energy Corp", "Smith, Jones & Co", "Quote \"Q\" Ltd", "Énergie Öl" };
+                for (int i = 0; i < count; i++) {
+                    trades.add(new Trade(java.time.LocalDate.of(1965, 1, 1).plusDays(i % 40_000).toString(),
+                            counterparties[i % counterparties.length], "Commodity " + (i % 7),
+                            1 + i % 5000, i % 1000 == 0 ? 0.1 + 0.2 : 10 + (i % 10_000) / 100.0,
+                            i % 3 == 0 ? "SELL" : "BUY"));
+                }
+                store.addTrades(trades, 10_000);
+                store.updateTrade(trades.get(1).getTradeId(), 99.99, 42);
+                TradeService tradeService = new TradeService(store);
+                TradeExporter exporter = new TradeExporter(tradeService);
+
+                // 1. CSV
+                System.out.println("\n1. Testing CSV export...");
+                Path csv = directory.resolve("trades.csv");
+                ExportResult csvResult = exporter.export(csv, TradeExporter.Format.CSV);
+                System.out.println(" " + csvResult);
+                List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+                check(csvResult.getRowCount() == count && lines.size() == count + 1, "one line per trade plus header");
+                check(lines.get(0).equals(CsvTradeWriter.HEADER.trim()), "header line");
+                check(lines.get(1).equals("1,1965-01-01,ABC Energy Corp,Commodity 0,1.00,0.30,SELL,1"),
+                        "inexact double stored and written as hundredths");
+                check(lines.get(2).equals("2,1965-01-02,\"Smith, Jones & Co\",Commodity 1,42.00,99.99,BUY,2"),
+                        "comma quoted, update and version exported");
+                check(lines.get(3).equals("3,1965-01-03,\"Quote \"\"Q\"\" Ltd\",Commodity 2,3.00,10.02,BUY,1"),
+                        "quotes escaped");
+                check(lines.get(4).startsWith("4,1965-01-04,Énergie Öl,"), "UTF-8 strings");
+                check(!Files.exists(directory.resolve("trades.csv.part")), "no partial file left behind");
+
+                // 2. Columnar
+                System.out.println("\n2. Testing columnar export...");
+                Path columnar = directory.resolve("trades.trdc");
+                ExportResult columnarResult = exporter.export(columnar, TradeExporter.Format.COLUMNAR);
+                System.out.println(" " + columnarResult);
+                check(columnarResult.getBytesWritten() * 3 < csvResult.getBytesWritten(),
+                        "columnar file is under a third of the CSV size");
+                List<Trade> expected = store.getAllTrades();
+                check(readsBack(columnar, expected), "every field reads back exactly");
+
+                // 3. Small row groups, so dictionaries and deltas span group boundaries
+                System.out.println("\n3. Testing many row groups...");
+                Path grouped = directory.resolve("grouped.trdc");
+                try (ColumnarTradeWriter writer = new ColumnarTradeWriter(grouped, 1000)) {
+                    tradeService.scanTrades(trade -> {
+                        try {
+                            writer.write(trade);
+                        } catch (IOException e) {
+                            throw new java.io.UncheckedIOException(e);
+                        }
+                        return true;
+                    });
+                }
+                check(readsBack(grouped, expected), "multi-group file reads back exactly");
+
+                // 4. Truncation is detected
+                System.out.println("\n4. Testing truncated file...");
+                Path truncated = directory.resolve("truncated.trdc");
+                byte[] bytes = Files.readAllBytes(columnar);
+                Files.write(truncated, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+                try (ColumnarTradeReader reader = new ColumnarTradeReader(truncated)) {
+                    while (reader.nextGroup()) {
+                        // Drain until the missing trailer
+                    }
+                    check(false, "truncated file is rejected");
+                } catch (IOException e) {
+                    check(true, "truncated file is rejected (" + e.getMessage() + ")");
+                }
+            }
+
+            System.out.println("\n All tests passed! Trade export is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Trade export test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static boolean readsBack(Path file, List<Trade> expected) throws Exception {
+        int[] index = { 0 };
+        boolean[] equal = { true };
+        long start = System.nanoTime();
+        try (ColumnarTradeReader reader = new ColumnarTradeReader(file)) {
+            reader.forEachTrade(trade -> {
+                Trade original = expected.get(index[0]++);
+                equal[0] &= trade.getTradeId() == original.getTradeId()
+                        && trade.getTradeDate().equals(original.getTradeDate())
+                        && trade.getCounterparty().equals(original.getCounterparty())
+                        && trade.getCommodity().equals(original.getCommodity())
+                        && trade.getVolume() == original.getVolume()
+                        && trade.getPrice() == original.getPrice()
+                        && trade.getTradeType().equals(original.getTradeType())
+                        && trade.getVersion() == original.getVersion();
+                return true;
+            });
+        }
+        System.out.printf(" Read %d trades in %d ms%n", index[0], (System.nanoTime() - start) / 1_000_000);
+        return equal[0] && index[0] == expected.size();
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
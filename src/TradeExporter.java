@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Exports every trade to CSV ({@link CsvTradeWriter}) or the columnar binary format
+ * ({@link ColumnarTradeWriter}).
+ *
+ * Trades stream from {@link TradeService#scanTrades(TradeHandler)}, a single cursor over
+ * the table, straight into the writer's buffer, so memory use stays constant however many
+ * trades there are. The file is written under a ".part" name and renamed when complete,
+ * so a reader never sees a partial export.
+ *
+ * For a nightly job, run it on its own:
+ * {@code java TradeExporter trades-2024-01-31.trdc columnar}
+ */
+public class TradeExporter {
+    public enum Format { CSV, COLUMNAR }
+
+    private final TradeService tradeService;
+
+    public TradeExporter(TradeService tradeService) {
+        this.tradeService = tradeService;
+    }
+
+    public ExportResult export(Path file, Format format) throws IOException, SQLException {
+        Path partFile = file.resolveSibling(file.getFileName() + ".part");
+        long start = System.nanoTime();
+        TradeWriter writer = format == Format.CSV ? new CsvTradeWriter(partFile) : new ColumnarTradeWriter(partFile);
+        boolean completed = false;
+        try {
+            try (writer) {
+                tradeService.scanTrades(trade -> {
+                    try {
+                        writer.write(trade);
+                    } catch (IOException e) {
+                        // TradeHandler can only throw SQLException; unwrapped below
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(partFile);
+            }
+        }
+        return new ExportResult(format, writer.getRowCount(), writer.getBytesWritten(), System.nanoTime() - start);
+    }
+
+    // Picks the format from the extension: .csv for CSV, anything else columnar
+    public static Format formatOf(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? Format.CSV : Format.COLUMNAR;
+    }
+
+    private static void close(TradeRepository repository) {
+        try {
+            if (repository instanceof ShardedTradeRepository) {
+                ((ShardedTradeRepository) repository).close();
+            } else if (repository instanceof JournalTradeStore) {
+                ((JournalTradeStore) repository).close();
+            } else if (repository != null) {
+                DatabaseConnection.getInstance().closeConnection();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java TradeExporter <file> [csv|columnar]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        Format format = args.length > 1 ? Format.valueOf(args[1].toUpperCase(Locale.ROOT)) : formatOf(file);
+
+        TradeRepository repository = null;
+        int status = 0;
+        try {
+            repository = TradeApp.createRepository();
+            TradeExporter exporter = new TradeExporter(new TradeService(repository));
+            System.out.println("Exported " + file + ": " + exporter.export(file, format));
+        } catch (IOException | SQLException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            status = 1;
+        } finally {
+            close(repository);
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+}
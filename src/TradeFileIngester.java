@@ -0,0 +1,613 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports trade blotter files in CSV or fixed-width layout.
+ *
+ * The file is memory-mapped in line-aligned segments and each line is parsed straight
+ * from the mapped bytes: dates, volumes, prices and BUY/SELL are decoded without creating
+ * a String per field, and repeated dates, counterparties and commodities resolve to one
+ * shared String through a per-segment cache. Parsed trades are loaded in batches through
+ * {@link TradeService#createTrades(Iterable, int)}, so they get the same validation as
+ * trades entered at the console. In parallel mode the segments are parsed and loaded on
+ * all cores at once; trade IDs then follow completion order rather than file order.
+ *
+ * Both layouts have the fields TradeDate, Counterparty, Commodity, Volume, Price, TradeType.
+ * CSV fields may be double-quoted; a first line starting with a letter is taken as a header.
+ * Blank lines and lines starting with '#' are skipped. Rejected lines are copied to the
+ * rejects file, each preceded by a '#' comment with its byte offset and the reason, so the
+ * file can be corrected and imported again as is. A CSV rejects file starts with a header
+ * line, so a rejected line that starts with a letter is not taken for one.
+ */
+public class TradeFileIngester {
+    public enum Format { CSV, FIXED_WIDTH }
+
+    /**
+     * Receives each batch of parsed trades; failures are written to the rejects file. In
+     * parallel mode it is called from several threads, and the list is reused after it returns.
+     */
+    public interface BatchLoader {
+        BulkInsertResult load(List<Trade> batch) throws SQLException;
+    }
+
+    static final String CSV_HEADER = "TradeDate,Counterparty,Commodity,Volume,Price,TradeType\n";
+
+    // TradeDate, Counterparty, Commodity, Volume, Price, TradeType
+    public static final int[] DEFAULT_FIXED_WIDTHS = { 10, 40, 20, 16, 16, 4 };
+
+    private static final int FIELD_COUNT = 6;
+    private static final long MAX_SEGMENT_BYTES = 256L << 20;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final BatchLoader loader;
+    private final Format format;
+    private final int[] fieldWidths;
+    private final int batchSize;
+    private long maxSegmentBytes = MAX_SEGMENT_BYTES;
+
+    public TradeFileIngester(TradeService tradeService, Format format) {
+        this(tradeService, format, DEFAULT_FIXED_WIDTHS, TradeRepository.DEFAULT_BATCH_SIZE);
+    }
+
+    public TradeFileIngester(TradeService tradeService, Format format, int[] fieldWidths, int batchSize) {
+        this(batch -> tradeService.createTrades(batch, batchSize), format, fieldWidths, batchSize);
+    }
+
+    // Parses only: batches go to the loader instead of into the trade store
+    public TradeFileIngester(BatchLoader loader, Format format, int[] fieldWidths, int batchSize) {
+        if (fieldWidths.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Fixed-width layout needs " + FIELD_COUNT + " widths");
+        }
+        this.loader = loader;
+        this.format = format;
+        this.fieldWidths = fieldWidths.clone();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports {@code file}. Rejected lines are written to {@code rejectsFile}, or only
+     * counted if it is null. Rows already committed stay committed if a later batch fails
+     * with a database error.
+     */
+    public IngestResult ingest(Path file, Path rejectsFile, boolean parallel) throws IOException, SQLException {
+        long start = System.nanoTime();
+        IngestResult result = new IngestResult();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             RejectWriter rejects = new RejectWriter(rejectsFile, format == Format.CSV ? CSV_HEADER : null)) {
+            long size = channel.size();
+            int segments = (int) Math.max(1, (size + maxSegmentBytes - 1) / maxSegmentBytes);
+            if (parallel) {
+                segments = Math.max(segments, Runtime.getRuntime().availableProcessors());
+            }
+            long[] bounds = segmentBounds(channel, size, segments);
+            result.setSegmentCount(bounds.length - 1);
+            result.setBytesRead(size);
+
+            if (!parallel || bounds.length == 2) {
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    new SegmentParser(channel, bounds[i], bounds[i + 1], rejects, result).run();
+                }
+            } else {
+                runInParallel(channel, bounds, rejects, result);
+            }
+        }
+
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    // Lets a test split a small file into segments the way a large one is split
+    void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    private void runInParallel(FileChannel channel, long[] bounds, RejectWriter rejects, IngestResult result)
+            throws IOException, SQLException {
+        int threads = Math.min(bounds.length - 1, Runtime.getRuntime().availableProcessors());
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "trade-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                SegmentParser parser = new SegmentParser(channel, bounds[i], bounds[i + 1], rejects, result);
+                futures.add(workers.submit(() -> {
+                    parser.run();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Import failed: " + cause.getMessage(), cause);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Splits [0, size) into roughly equal ranges whose boundaries fall just after a newline
+    private static long[] segmentBounds(FileChannel channel, long size, int segments) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        for (int i = 1; i < segments; i++) {
+            long boundary = nextLineStart(channel, size * i / segments, size, probe);
+            if (boundary > bounds.get(bounds.size() - 1) && boundary < size) {
+                bounds.add(boundary);
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = Math.max(0, from - 1);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private class SegmentParser {
+        private final MappedByteBuffer buffer;
+        private final long baseOffset;
+        private final RejectWriter rejects;
+        private final IngestResult result;
+
+        private final int[] fieldStart = new int[FIELD_COUNT];
+        private final int[] fieldEnd = new int[FIELD_COUNT];
+        private final boolean[] fieldEscaped = new boolean[FIELD_COUNT];
+        private final StringCache texts = new StringCache(8192);
+        private final StringCache dates = new StringCache(4096);
+
+        private final List<Trade> batch = new ArrayList<>(batchSize);
+        private final int[] batchLineStart = new int[batchSize];
+        private final int[] batchLineEnd = new int[batchSize];
+        private String rejectReason;
+        private long lines;
+        private long rejected;
+
+        SegmentParser(FileChannel channel, long start, long end, RejectWriter rejects, IngestResult result)
+                throws IOException {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            this.baseOffset = start;
+            this.rejects = rejects;
+            this.result = result;
+        }
+
+        void run() throws IOException, SQLException {
+            int limit = buffer.limit();
+            int position = 0;
+            boolean headerAllowed = baseOffset == 0 && format == Format.CSV;
+
+            while (position < limit) {
+                int lineStart = position;
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                position = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd == lineStart || buffer.get(lineStart) == '#') {
+                    continue;
+                }
+                if (headerAllowed) {
+                    headerAllowed = false;
+                    if (isLetter(buffer.get(lineStart))) {
+                        continue;
+                    }
+                }
+
+                lines++;
+                Trade trade = parseLine(lineStart, lineEnd);
+                if (trade == null) {
+                    reject(lineStart, lineEnd, rejectReason);
+                    continue;
+                }
+                batchLineStart[batch.size()] = lineStart;
+                batchLineEnd[batch.size()] = lineEnd;
+                batch.add(trade);
+                if (batch.size() == batchSize) {
+                    flush();
+                }
+            }
+            flush();
+        }
+
+        private void flush() throws IOException, SQLException {
+            long inserted = 0;
+            if (!batch.isEmpty()) {
+                BulkInsertResult loaded = loader.load(batch);
+                for (BulkInsertResult.Failure failure : loaded.getFailures()) {
+                    reject(batchLineStart[failure.getIndex()], batchLineEnd[failure.getIndex()], failure.getReason());
+                }
+                inserted = loaded.getInsertedCount();
+                batch.clear();
+            }
+            result.add(lines, inserted, rejected);
+            lines = 0;
+            rejected = 0;
+        }
+
+        private void reject(int lineStart, int lineEnd, String reason) throws IOException {
+            rejected++;
+            rejects.write(baseOffset + lineStart, buffer, lineStart, lineEnd, reason);
+        }
+
+        // Returns null and sets rejectReason if the line cannot be parsed
+        private Trade parseLine(int lineStart, int lineEnd) {
+            if (!(format == Format.CSV ? splitCsv(lineStart, lineEnd) : splitFixedWidth(lineStart, lineEnd))) {
+                return null;
+            }
+
+            String tradeDate = parseDate(fieldStart[0], fieldEnd[0]);
+            if (tradeDate == null) {
+                rejectReason = "Invalid trade date, expected YYYY-MM-DD";
+                return null;
+            }
+            double volume = parseDecimal(buffer, fieldStart[3], fieldEnd[3]);
+            if (Double.isNaN(volume)) {
+                rejectReason = "Invalid volume";
+                return null;
+            }
+            double price = parseDecimal(buffer, fieldStart[4], fieldEnd[4]);
+            if (Double.isNaN(price)) {
+                rejectReason = "Invalid price";
+                return null;
+            }
+            // Anything other than BUY/SELL is left null and rejected by TradeService validation
+            return new Trade(tradeDate, text(1), text(2), volume, price, parseTradeType(fieldStart[5], fieldEnd[5]));
+        }
+
+        private boolean splitCsv(int lineStart, int lineEnd) {
+            int count = 0;
+            int position = lineStart;
+            while (true) {
+                int start;
+                int end;
+                boolean escaped = false;
+                if (position < lineEnd && buffer.get(position) == '"') {
+                    start = ++position;
+                    while (true) {
+                        if (position >= lineEnd) {
+                            rejectReason = "Unterminated quoted field";
+                            return false;
+                        }
+                        if (buffer.get(position) == '"') {
+                            if (position + 1 < lineEnd && buffer.get(position + 1) == '"') {
+                                escaped = true;
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        position++;
+                    }
+                    end = position++;
+                    if (position < lineEnd && buffer.get(position) != ',') {
+                        rejectReason = "Unexpected text after quoted field";
+                        return false;
+                    }
+                } else {
+                    start = position;
+                    while (position < lineEnd && buffer.get(position) != ',') {
+                        position++;
+                    }
+                    end = position;
+                    while (start < end && isBlank(buffer.get(start))) {
+                        start++;
+                    }
+                    while (end > start && isBlank(buffer.get(end - 1))) {
+                        end--;
+                    }
+                }
+                if (count < FIELD_COUNT) {
+                    fieldStart[count] = start;
+                    fieldEnd[count] = end;
+                    fieldEscaped[count] = escaped;
+                }
+                count++;
+                if (position >= lineEnd) {
+                    break;
+                }
+                position++;
+            }
+            if (count != FIELD_COUNT) {
+                rejectReason = "Expected " + FIELD_COUNT + " fields but found " + count;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean splitFixedWidth(int lineStart, int lineEnd) {
+            int position = lineStart;
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                if (position >= lineEnd) {
+                    rejectReason = "Line is shorter than the fixed-width layout";
+                    return false;
+                }
+                int start = position;
+                int end = Math.min(position + fieldWidths[i], lineEnd);
+                position = end;
+                while (start < end && isBlank(buffer.get(start))) {
+                    start++;
+                }
+                while (end > start && isBlank(buffer.get(end - 1))) {
+                    end--;
+                }
+                fieldStart[i] = start;
+                fieldEnd[i] = end;
+                fieldEscaped[i] = false;
+            }
+            return true;
+        }
+
+        private String parseDate(int start, int end) {
+            if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+                return null;
+            }
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year < 0 || month < 0 || day < 0 || !InputValidator.isValidDate(year, month, day)) {
+                return null;
+            }
+            return dates.get(buffer, start, end);
+        }
+
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private String parseTradeType(int start, int end) {
+            int length = end - start;
+            if (length == 3 && matches(start, "BUY")) {
+                return "BUY";
+            }
+            if (length == 4 && matches(start, "SELL")) {
+                return "SELL";
+            }
+            return null;
+        }
+
+        private boolean matches(int start, String upperCase) {
+            for (int i = 0; i < upperCase.length(); i++) {
+                if ((buffer.get(start + i) & ~0x20) != upperCase.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String text(int field) {
+            if (fieldEscaped[field]) {
+                byte[] bytes = new byte[fieldEnd[field] - fieldStart[field]];
+                buffer.get(fieldStart[field], bytes);
+                return new String(bytes, StandardCharsets.UTF_8).replace("\"\"", "\"");
+            }
+            return texts.get(buffer, fieldStart[field], fieldEnd[field]);
+        }
+    }
+
+    /**
+     * Parses a plain decimal such as -12, 75.5 or 0.125 from the bytes in [start, end),
+     * returning NaN if they are not a number. Up to 18 significant digits are converted
+     * exactly with one division; anything longer or in exponent form goes through
+     * Double.parseDouble.
+     */
+    static double parseDecimal(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            return Double.NaN;
+        }
+        int position = start;
+        boolean negative = false;
+        byte first = buffer.get(position);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; position < end; position++) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    return parseSlow(buffer, start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b == 'e' || b == 'E') {
+                return parseSlow(buffer, start, end);
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value;
+        if (fractionDigits <= 0) {
+            value = mantissa;
+        } else if (mantissa < (1L << 53) && fractionDigits < POWERS_OF_TEN.length) {
+            // Both operands are exact, so the quotient is correctly rounded
+            value = mantissa / POWERS_OF_TEN[fractionDigits];
+        } else {
+            return parseSlow(buffer, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+    }
+
+    /**
+     * Maps byte ranges to Strings, returning the same instance for repeated values.
+     * Open addressing over a fixed table; once half full, new values are no longer cached.
+     */
+    private static class StringCache {
+        private final int[] hashes;
+        private final byte[][] keys;
+        private final String[] values;
+        private final int mask;
+        private int size;
+
+        StringCache(int capacity) {
+            hashes = new int[capacity];
+            keys = new byte[capacity][];
+            values = new String[capacity];
+            mask = capacity - 1;
+        }
+
+        String get(ByteBuffer buffer, int start, int end) {
+            if (start == end) {
+                return "";
+            }
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (values[slot] != null) {
+                if (hashes[slot] == hash && sameBytes(keys[slot], buffer, start, end)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] key = new byte[end - start];
+            buffer.get(start, key);
+            String value = new String(key, StandardCharsets.UTF_8);
+            if (size < values.length / 2) {
+                hashes[slot] = hash;
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+            }
+            return value;
+        }
+
+        private static boolean sameBytes(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Shared by all segments; rejects are expected to be rare, so a lock is fine
+    private static class RejectWriter implements AutoCloseable {
+        private final OutputStream out;
+        private String header;
+
+        // header, if not null, is written before the first rejected line
+        RejectWriter(Path file, String header) throws IOException {
+            this.out = file == null ? null : new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            this.header = header;
+        }
+
+        synchronized void write(long offset, ByteBuffer buffer, int lineStart, int lineEnd, String reason)
+                throws IOException {
+            if (out == null) {
+                return;
+            }
+            if (header != null) {
+                out.write(header.getBytes(StandardCharsets.UTF_8));
+                header = null;
+            }
+            String comment = "# offset " + offset + ": " + reason.replace('\n', ' ').replace('\r', ' ') + "\n";
+            out.write(comment.getBytes(StandardCharsets.UTF_8));
+            for (int i = lineStart; i < lineEnd; i++) {
+                out.write(buffer.get(i));
+            }
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+}
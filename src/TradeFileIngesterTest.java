@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Imports generated blotter files into a temporary journal store: quoting, number and
+ * date edge cases, files split into segments part way through a line, and a rejects
+ * file imported again as is and after correcting it. Needs no database.
+ */
+public class TradeFileIngesterTest {
+    public static void main(String[] args) {
+        System.out.println("Testing Trade File Import...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("trade-ingest-test");
+
+            // 1. Quoting
+            System.out.println("1. Testing quoted CSV fields...");
+            Path quoted = write(directory.resolve("quoted.csv"), List.of(
+                    "TradeDate,Counterparty,Commodity,Volume,Price,TradeType",
+                    "2024-01-15,\"Smith, Jones & Co\",Crude Oil,1000,75.50,BUY",
+                    "2024-01-15,\"The \"\"Big\"\" Energy Co\",\"Natural Gas\",500,3.25,sell",
+                    "2024-01-15,  Padded Ltd  ,\"\",10,1,BUY",
+                    "2024-01-15,\"Unterminated,Coal,10,1,BUY",
+                    "2024-01-15,\"Trailing\" text,Coal,10,1,BUY",
+                    "2024-01-15,Too,Few,Fields",
+                    "2024-01-15,Too,Many,10,1,BUY,Extra"));
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("quoted"), false, 0)) {
+                IngestResult result = ingest(new TradeService(store), quoted, directory.resolve("quoted.rejects"), false);
+                check(result.getLinesRead() == 7 && result.getInsertedCount() == 2 && result.getRejectedCount() == 5,
+                        "header skipped, two lines imported, five rejected");
+                List<Trade> trades = store.getAllTrades();
+                check(trades.get(0).getCounterparty().equals("Smith, Jones & Co"), "comma inside quotes");
+                check(trades.get(1).getCounterparty().equals("The \"Big\" Energy Co")
+                        && trades.get(1).getCommodity().equals("Natural Gas"), "doubled quotes unescaped");
+                check(trades.get(1).getTradeType().equals("SELL"), "trade type in any case");
+                String rejects = Files.readString(directory.resolve("quoted.rejects"));
+                check(rejects.contains("Commodity cannot be empty") && rejects.contains("Unterminated quoted field")
+                        && rejects.contains("Unexpected text after quoted field")
+                        && rejects.contains("Expected 6 fields but found 4")
+                        && rejects.contains("Expected 6 fields but found 7"), "rejects give the reason");
+            }
+
+            // 2. Numbers
+            System.out.println("\n2. Testing number parsing...");
+            String[] numbers = { "0", "75.5", "-12", "+3.25", "0.125", "123456789012345678", "1234567890123456789",
+                    "12345678901234567890", "0.1234567890123456789", "00000000000000000001000", "1.5e3", "7.55E1",
+                    "1e-2", "9007199254740993.5", "1.7976931348623157E308" };
+            boolean exact = true;
+            for (String number : numbers) {
+                exact &= parse(number) == Double.parseDouble(number);
+            }
+            check(exact, "plain, 19+ digit and exponent numbers parse as Double.parseDouble does");
+            String[] invalid = { "", "-", ".", "abc", "1.2.3", "1,000", "12a", "1e", "0x10", "NaN", "Infinity" };
+            boolean rejected = true;
+            for (String number : invalid) {
+                rejected &= Double.isNaN(parse(number));
+            }
+            check(rejected, "malformed numbers are rejected");
+
+            Path longNumbers = write(directory.resolve("numbers.csv"), List.of(
+                    "2024-01-15,Long Digits Ltd,Coal,00000000000000000001000,75.50000000000000000001,BUY",
+                    "2024-01-15,Exponent Ltd,Coal,1.5e3,7.55E1,SELL",
+                    "2024-01-15,Bad Volume Ltd,Coal,1.2.3,75.5,BUY",
+                    "2024-01-15,Bad Price Ltd,Coal,1000,75.5x,BUY",
+                    "2024-01-15,Too Large Ltd,Coal,1e12,75.5,BUY"));
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("numbers"), false, 0)) {
+                IngestResult result = ingest(new TradeService(store), longNumbers, directory.resolve("numbers.rejects"),
+                        false);
+                List<Trade> trades = store.getAllTrades();
+                check(result.getInsertedCount() == 2 && trades.get(0).getVolume() == 1000
+                        && trades.get(0).getPrice() == 75.5, "19+ digit fields imported");
+                check(trades.get(1).getVolume() == 1500 && trades.get(1).getPrice() == 75.5, "exponent fields imported");
+                String rejects = Files.readString(directory.resolve("numbers.rejects"));
+                check(result.getRejectedCount() == 3 && rejects.contains("Invalid volume")
+                        && rejects.contains("Invalid price") && rejects.contains("below 100,000,000"),
+                        "bad and out-of-range numbers rejected");
+            }
+
+            // 3. Dates and trade types
+            System.out.println("\n3. Testing dates and trade types...");
+            Path dates = write(directory.resolve("dates.csv"), List.of(
+                    "2024-02-29,Leap Day Ltd,Coal,10,1,BUY",
+                    "Jan 15 2024,Letter First Ltd,Coal,10,1,BUY",
+                    "2023-02-29,Not Leap Ltd,Coal,10,1,BUY",
+                    "2024-04-31,Day Out Of Range Ltd,Coal,10,1,BUY",
+                    "2024-13-01,Month Out Of Range Ltd,Coal,10,1,BUY",
+                    "2024/01/15,Slashes Ltd,Coal,10,1,BUY",
+                    "24-01-15,Short Year Ltd,Coal,10,1,BUY",
+                    "2024-01-15,Hold Ltd,Coal,10,1,HOLD",
+                    "2024-01-15,Empty Type Ltd,Coal,10,1,"));
+            Path dateRejects = directory.resolve("dates.rejects");
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("dates"), false, 0)) {
+                IngestResult result = ingest(new TradeService(store), dates, dateRejects, false);
+                check(result.getLinesRead() == 9, "only a first line starting with a letter is a header");
+                check(result.getInsertedCount() == 1 && store.getAllTrades().get(0).getCounterparty().equals("Leap Day Ltd"),
+                        "only the valid date imported");
+                String rejects = Files.readString(dateRejects);
+                check(count(rejects, "Invalid trade date") == 6, "impossible and misformatted dates rejected");
+                check(count(rejects, "Trade type must be BUY or SELL") == 2, "unknown trade types rejected");
+            }
+
+            // 4. Rejects file
+            System.out.println("\n4. Testing re-import of the rejects file...");
+            List<String> rejectLines = Files.readAllLines(dateRejects, StandardCharsets.UTF_8);
+            check(rejectLines.get(0).equals(TradeFileIngester.CSV_HEADER.trim()), "rejects file starts with a header");
+            List<String> original = Files.readAllLines(dates, StandardCharsets.UTF_8);
+            long firstOffset = original.get(0).length() + 1;
+            check(rejectLines.get(1).equals("# offset " + firstOffset + ": Invalid trade date, expected YYYY-MM-DD")
+                    && rejectLines.get(2).equals(original.get(1)), "comment gives the byte offset, line copied as is");
+            long secondOffset = firstOffset + original.get(1).length() + 1;
+            check(rejectLines.get(3).startsWith("# offset " + secondOffset + ":"), "offsets count bytes in the file");
+
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("reimport"), false, 0)) {
+                TradeService tradeService = new TradeService(store);
+                Path again = directory.resolve("dates.rejects.rejects");
+                IngestResult asIs = ingest(tradeService, dateRejects, again, false);
+                check(asIs.getLinesRead() == 8 && asIs.getRejectedCount() == 8 && asIs.getInsertedCount() == 0,
+                        "rejects file imports as is, including a line starting with a letter");
+                check(Files.readAllLines(again, StandardCharsets.UTF_8).stream().filter(line -> !line.startsWith("#"))
+                        .collect(Collectors.toList()).equals(rejectLines.stream().filter(line -> !line.startsWith("#"))
+                        .collect(Collectors.toList())), "re-rejected lines are unchanged");
+
+                List<String> corrected = new ArrayList<>();
+                for (String line : rejectLines) {
+                    corrected.add(line.replaceFirst("^(Jan 15 2024|2024/01/15|24-01-15),", "2024-01-15,")
+                            .replace("2023-02-29", "2023-02-28").replace("2024-04-31", "2024-04-30")
+                            .replace("2024-13-01", "2024-12-01").replace("HOLD", "BUY")
+                            + (line.endsWith(",") ? "SELL" : ""));
+                }
+                Path fixed = write(directory.resolve("dates.fixed.csv"), corrected);
+                IngestResult result = ingest(tradeService, fixed, directory.resolve("dates.fixed.rejects"), false);
+                check(result.getInsertedCount() == 8 && result.getRejectedCount() == 0, "corrected rejects import cleanly");
+            }
+
+            // 5. Segments
+            System.out.println("\n5. Testing files split into segments...");
+            List<String> lines = new ArrayList<>();
+            lines.add("TradeDate,Counterparty,Commodity,Volume,Price,TradeType");
+            int expected = 0;
+            for (int i = 0; i < 2000; i++) {
+                if (i % 250 == 7) {
+                    lines.add("2024-01-" + (10 + i % 20) + ",\"Segment, Bad " + i + "\",Coal,abc,1,BUY");
+                } else {
+                    lines.add("2024-01-" + (10 + i % 20) + ",\"Segment, Co " + i + "\",Coal," + (1 + i) + ",1.5,"
+                            + (i % 2 == 0 ? "BUY" : "SELL"));
+                    expected++;
+                }
+            }
+            Path segmented = write(directory.resolve("segmented.csv"), lines);
+            for (boolean parallel : new boolean[] { false, true }) {
+                String mode = parallel ? "parallel" : "sequential";
+                try (JournalTradeStore store = new JournalTradeStore(directory.resolve("segmented-" + mode), false, 0)) {
+                    TradeFileIngester ingester = new TradeFileIngester(new TradeService(store),
+                            TradeFileIngester.Format.CSV, TradeFileIngester.DEFAULT_FIXED_WIDTHS, 64);
+                    // Segment boundaries land part way through lines and are moved to the next line start
+                    ingester.setMaxSegmentBytes(1000);
+                    Path rejectsFile = directory.resolve("segmented-" + mode + ".rejects");
+                    IngestResult result = ingester.ingest(segmented, rejectsFile, parallel);
+                    check(result.getSegmentCount() > 50, mode + ": file split into " + result.getSegmentCount()
+                            + " segments");
+                    check(result.getLinesRead() == 2000 && result.getInsertedCount() == expected
+                            && result.getRejectedCount() == 2000 - expected, mode + ": every line read exactly once");
+                    List<Trade> trades = store.getAllTrades();
+                    double volume = 0;
+                    for (Trade trade : trades) {
+                        volume += trade.getVolume();
+                    }
+                    double expectedVolume = 0;
+                    for (int i = 0; i < 2000; i++) {
+                        expectedVolume += i % 250 == 7 ? 0 : 1 + i;
+                    }
+                    check(trades.size() == expected && volume == expectedVolume
+                            && trades.stream().allMatch(trade -> trade.getCounterparty().startsWith("Segment, Co ")),
+                            mode + ": no line torn at a segment boundary");
+                    long offsetsRight = Files.readAllLines(rejectsFile, StandardCharsets.UTF_8).stream()
+                            .filter(line -> line.startsWith("# offset "))
+                            .filter(line -> lineAt(segmented, Long.parseLong(line.substring(9, line.indexOf(':'))))
+                                    .contains("Segment, Bad "))
+                            .count();
+                    check(offsetsRight == 2000 - expected, mode + ": reject offsets point into the whole file");
+                }
+            }
+
+            // 6. Fixed width
+            System.out.println("\n6. Testing fixed-width files...");
+            Path fixedWidth = write(directory.resolve("fixed.txt"), List.of(
+                    String.format("%-10s%-40s%-20s%16s%16s%-4s", "2024-01-15", "Fixed, Width Co", "Crude Oil",
+                            "1000", "75.50", "BUY"),
+                    String.format("%-10s%-40s%-20s%16s%16s%-4s", "2024-01-16", "Another Co", "Coal",
+                            "1.5e3", "1235e-2", "sell"),
+                    "2024-01-17Short Line Co"));
+            try (JournalTradeStore store = new JournalTradeStore(directory.resolve("fixed"), false, 0)) {
+                TradeFileIngester ingester = new TradeFileIngester(new TradeService(store),
+                        TradeFileIngester.Format.FIXED_WIDTH);
+                Path rejectsFile = directory.resolve("fixed.rejects");
+                IngestResult result = ingester.ingest(fixedWidth, rejectsFile, false);
+                List<Trade> trades = store.getAllTrades();
+                check(result.getInsertedCount() == 2 && trades.get(0).getCounterparty().equals("Fixed, Width Co")
+                        && trades.get(1).getVolume() == 1500 && trades.get(1).getPrice() == 12.35,
+                        "fields trimmed, commas kept, exponents parsed");
+                check(result.getRejectedCount() == 1 && Files.readString(rejectsFile).startsWith("# offset ")
+                        && Files.readString(rejectsFile).contains("shorter than the fixed-width layout"),
+                        "short line rejected, no header in a fixed-width rejects file");
+            }
+
+            System.out.println("\n All tests passed! Trade file import is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Trade file import test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    private static IngestResult ingest(TradeService tradeService, Path file, Path rejects, boolean parallel)
+            throws Exception {
+        // A small batch so failures are mapped back to lines across several batches
+        return new TradeFileIngester(tradeService, TradeFileIngester.Format.CSV,
+                TradeFileIngester.DEFAULT_FIXED_WIDTHS, 3).ingest(file, rejects, parallel);
+    }
+
+    private static double parse(String number) {
+        byte[] bytes = ("," + number + ",").getBytes(StandardCharsets.US_ASCII);
+        return TradeFileIngester.parseDecimal(ByteBuffer.wrap(bytes), 1, bytes.length - 1);
+    }
+
+    private static Path write(Path file, List<String> lines) throws IOException {
+        return Files.write(file, (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String lineAt(Path file, long offset) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int end = (int) offset;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            return new String(bytes, (int) offset, end - (int) offset, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,11 @@
+import java.sql.SQLException;
+
+/**
+ * Callback for streaming trade scans. Trades are handed over one at a time so that
+ * the caller never has to hold the whole table in memory.
+ */
+@FunctionalInterface
+public interface TradeHandler {
+    // Return false to stop the scan early
+    boolean handle(Trade trade) throws SQLException;
+}
@@ -0,0 +1,420 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON trade API on the JDK's built-in HTTP server, backed by {@link TradeService}.
+ *
+ * <pre>
+ *   POST   /api/trades                     create; body has the trade fields, returns {"tradeId":n}
+ *   GET    /api/trades?after=0&amp;limit=100   page of trades in TradeID order
+ *   GET    /api/trades/{id}                one trade
+ *   PUT    /api/trades/{id}                update; body {"price":..,"volume":..[,"version":n]}
+ *   DELETE /api/trades/{id}[?version=n]    delete
+ *   GET    /api/trades/search?counterparty=abc  (or commodity=...)
+ *   GET    /api/trades/query?from=&amp;to=&amp;commodity=&amp;counterpartyPrefix=&amp;tradeType=&amp;minPrice=..
+ *          &amp;sort=tradeDate&amp;order=desc&amp;limit=100   multi-criteria filter (see {@link TradeQuery})
+ * </pre>
+ *
+ * Each request runs on its own virtual thread when the JDK has them (21+), otherwise on a
+ * cached thread pool. At most {@code maxConcurrent} requests are served at once; further
+ * requests are answered immediately with 503 rather than queued, so a burst cannot exhaust
+ * the connection pool.
+ */
+public class TradeHttpServer implements AutoCloseable {
+    private static final String TRADES_PATH = "/api/trades";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final TradeService tradeService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+
+    public TradeHttpServer(TradeService tradeService, int port, int maxConcurrent) throws IOException {
+        this.tradeService = tradeService;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("trading.http.backlog", 1024));
+        this.server.createContext(TRADES_PATH, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getActiveRequests() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Virtual threads are looked up reflectively so the project still builds and runs on JDK 17
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "trade-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Package-private so TradeHttpServerTest can drive a request without a socket
+    void handle(HttpExchange exchange) throws IOException {
+        if (!permits.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Server busy, retry later");
+            return;
+        }
+        try {
+            route(exchange);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (TradeConflictException e) {
+            sendConflict(exchange, e);
+        } catch (SQLException e) {
+            sendError(exchange, 500, "Database error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "Internal error: " + e.getMessage());
+        } finally {
+            permits.release();
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        if (path.length() > TRADES_PATH.length() && path.charAt(TRADES_PATH.length()) != '/') {
+            sendError(exchange, 404, "Not found");
+            return;
+        }
+        String rest = path.length() > TRADES_PATH.length() ? path.substring(TRADES_PATH.length() + 1) : "";
+
+        if (rest.isEmpty()) {
+            switch (method) {
+                case "GET" -> listTrades(exchange);
+                case "POST" -> createTrade(exchange);
+                default -> sendError(exchange, 405, "Method not allowed");
+            }
+        } else if (rest.equals("search")) {
+            if (method.equals("GET")) {
+                searchTrades(exchange);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+        } else if (rest.equals("query")) {
+            if (method.equals("GET")) {
+                queryTrades(exchange);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+        } else {
+            int tradeId = parseInt(rest, "trade ID");
+            switch (method) {
+                case "GET" -> getTrade(exchange, tradeId);
+                case "PUT" -> updateTrade(exchange, tradeId);
+                case "DELETE" -> deleteTrade(exchange, tradeId);
+                default -> sendError(exchange, 405, "Method not allowed");
+            }
+        }
+    }
+
+    private void createTrade(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> body = readJson(exchange);
+        // With async capture running this waits for the group commit, so concurrent
+        // requests share transactions
+        Integer tradeId;
+        try {
+            tradeId = tradeService.createTradeAsync(body.get("tradeDate"), body.get("counterparty"),
+                    body.get("commodity"), parseDouble(body.get("volume"), "volume"),
+                    parseDouble(body.get("price"), "price"), body.get("tradeType")).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the trade to be saved", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            }
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+        try (JsonWriter json = startJson(exchange, 201)) {
+            json.beginObject().name("tradeId").value(tradeId).endObject();
+        }
+    }
+
+    private void listTrades(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> query = parseQuery(exchange);
+        int after = query.containsKey("after") ? parseInt(query.get("after"), "after") : 0;
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 100;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        List<Trade> trades = tradeService.getTradesPage(after, limit);
+        try (JsonWriter json = startJson(exchange, 200)) {
+            json.beginObject().name("trades").beginArray();
+            for (Trade trade : trades) {
+                json.trade(trade);
+            }
+            json.endArray().name("nextAfter");
+            // A short page is the last one
+            if (trades.size() == limit) {
+                json.value(trades.get(trades.size() - 1).getTradeId());
+            } else {
+                json.nullValue();
+            }
+            json.endObject();
+        }
+    }
+
+    private void getTrade(HttpExchange exchange, int tradeId) throws IOException, SQLException {
+        Trade trade = tradeService.getTradeById(tradeId);
+        if (trade == null) {
+            sendError(exchange, 404, "Trade " + tradeId + " not found");
+            return;
+        }
+        try (JsonWriter json = startJson(exchange, 200)) {
+            json.trade(trade);
+        }
+    }
+
+    private void updateTrade(HttpExchange exchange, int tradeId) throws IOException, SQLException {
+        Map<String, String> body = readJson(exchange);
+        double price = parseDouble(body.get("price"), "price");
+        double volume = parseDouble(body.get("volume"), "volume");
+        String error = TradeService.amountError(volume, price);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        // With "version" the update is conditional and a concurrent change answers 409
+        if (body.containsKey("version")) {
+            Trade updated = tradeService.updateTrade(tradeId, parseInt(body.get("version"), "version"), price, volume);
+            if (updated == null) {
+                sendError(exchange, 404, "Trade " + tradeId + " not found");
+                return;
+            }
+            try (JsonWriter json = startJson(exchange, 200)) {
+                json.trade(updated);
+            }
+            return;
+        }
+        if (!tradeService.updateTrade(tradeId, price, volume)) {
+            sendError(exchange, 404, "Trade " + tradeId + " not found");
+            return;
+        }
+        getTrade(exchange, tradeId);
+    }
+
+    private void deleteTrade(HttpExchange exchange, int tradeId) throws IOException, SQLException {
+        Map<String, String> query = parseQuery(exchange);
+        boolean deleted = query.containsKey("version")
+                ? tradeService.deleteTrade(tradeId, parseInt(query.get("version"), "version"))
+                : tradeService.deleteTrade(tradeId);
+        if (!deleted) {
+            sendError(exchange, 404, "Trade " + tradeId + " not found");
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void searchTrades(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> query = parseQuery(exchange);
+        String searchType;
+        String value;
+        if (query.containsKey("counterparty")) {
+            searchType = "1";
+            value = query.get("counterparty");
+        } else if (query.containsKey("commodity")) {
+            searchType = "2";
+            value = query.get("commodity");
+        } else {
+            throw new IllegalArgumentException("Specify counterparty=... or commodity=...");
+        }
+        if (value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search value cannot be empty.");
+        }
+
+        List<Trade> trades = tradeService.searchTrades(searchType, value);
+        try (JsonWriter json = startJson(exchange, 200)) {
+            json.beginObject().name("count").value(trades.size()).name("trades").beginArray();
+            for (Trade trade : trades) {
+                json.trade(trade);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private void queryTrades(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> parameters = parseQuery(exchange);
+        TradeQuery.Builder builder = TradeQuery.builder()
+                .tradeDateBetween(parameters.get("from"), parameters.get("to"))
+                .volumeBetween(optionalDouble(parameters, "minVolume"), optionalDouble(parameters, "maxVolume"))
+                .priceBetween(optionalDouble(parameters, "minPrice"), optionalDouble(parameters, "maxPrice"));
+        if (parameters.containsKey("commodity")) {
+            builder.commodity(parameters.get("commodity"), TradeQuery.Match.EQUALS);
+        } else if (parameters.containsKey("commodityPrefix")) {
+            builder.commodity(parameters.get("commodityPrefix"), TradeQuery.Match.PREFIX);
+        }
+        if (parameters.containsKey("counterparty")) {
+            builder.counterparty(parameters.get("counterparty"), TradeQuery.Match.EQUALS);
+        } else if (parameters.containsKey("counterpartyPrefix")) {
+            builder.counterparty(parameters.get("counterpartyPrefix"), TradeQuery.Match.PREFIX);
+        }
+        if (parameters.containsKey("tradeType")) {
+            builder.tradeType(parameters.get("tradeType"));
+        }
+        builder.sortBy(sortField(parameters.getOrDefault("sort", "tradeId")),
+                "desc".equalsIgnoreCase(parameters.get("order")));
+        int limit = parameters.containsKey("limit") ? parseInt(parameters.get("limit"), "limit") : 100;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        List<Trade> trades = tradeService.findTrades(builder.limit(limit).build());
+        try (JsonWriter json = startJson(exchange, 200)) {
+            json.beginObject().name("count").value(trades.size()).name("trades").beginArray();
+            for (Trade trade : trades) {
+                json.trade(trade);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private static TradeQuery.SortField sortField(String name) {
+        return switch (name) {
+            case "tradeId" -> TradeQuery.SortField.TRADE_ID;
+            case "tradeDate" -> TradeQuery.SortField.TRADE_DATE;
+            case "counterparty" -> TradeQuery.SortField.COUNTERPARTY;
+            case "commodity" -> TradeQuery.SortField.COMMODITY;
+            case "volume" -> TradeQuery.SortField.VOLUME;
+            case "price" -> TradeQuery.SortField.PRICE;
+            default -> throw new IllegalArgumentException("Unsupported sort: " + name);
+        };
+    }
+
+    private static Double optionalDouble(Map<String, String> parameters, String name) {
+        return parameters.containsKey(name) ? parseDouble(parameters.get(name), name) : null;
+    }
+
+    // Responses are streamed with chunked encoding, so large pages are never fully buffered
+    private static JsonWriter startJson(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new JsonWriter(exchange.getResponseBody());
+    }
+
+    // The status line and headers are already out once a streamed response has started
+    private static boolean responseStarted(HttpExchange exchange) {
+        return exchange.getResponseCode() != -1;
+    }
+
+    private static void sendConflict(HttpExchange exchange, TradeConflictException e) throws IOException {
+        if (responseStarted(exchange)) {
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(409, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody(), 1024)) {
+            json.beginObject().name("error").value(e.getMessage()).name("current");
+            json.trade(e.getCurrentTrade());
+            json.endObject();
+        }
+    }
+
+    // A failure part way through a streamed body cannot change its status; the exchange is
+    // closed instead, so the client sees the response end early rather than a second one
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (responseStarted(exchange)) {
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody(), 512)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+    private static Map<String, String> readJson(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Request body too large");
+            }
+            return JsonObjectParser.parse(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Drives the JSON API over real HTTP on an ephemeral port: create, read, update and delete
+ * round trips, search and query, malformed requests, the 503 answer once every permit is
+ * taken, and a listing that fails after its 200 has gone out. Runs on a temporary journal
+ * store, so it needs no database.
+ *
+ * Usage: java TradeHttpServerTest
+ */
+public class TradeHttpServerTest {
+    // Set by the tests to make the store's getTradesPage wait, or fail part way through its result
+    private static volatile CountDownLatch pageGate;
+    private static volatile boolean failPageMidway;
+
+    public static void main(String[] args) {
+        System.out.println("Testing Trade HTTP API...");
+        System.out.println("================================");
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("trade-http-test");
+            try (JournalTradeStore store = new JournalTradeStore(directory, false, 0)) {
+                TradeService tradeService = new TradeService(hooked(store));
+                tradeService.initialize();
+                HttpClient client = HttpClient.newHttpClient();
+
+                try (TradeHttpServer server = new TradeHttpServer(tradeService, 0, 1)) {
+                    server.start();
+                    String base = "http://localhost:" + server.getPort() + "/api/trades";
+
+                    // 1. Round trips
+                    System.out.println("1. Testing create, get, update and delete...");
+                    HttpResponse<String> created = send(client, "POST", base, "{\"tradeDate\":\"2024-01-15\","
+                            + "\"counterparty\":\"ABC Energy Corp\",\"commodity\":\"Crude Oil\",\"volume\":1000,"
+                            + "\"price\":75.5,\"tradeType\":\"buy\"}");
+                    check(created.statusCode() == 201, "POST creates a trade");
+                    int tradeId = Integer.parseInt(json(created).get("tradeId"));
+                    Map<String, String> trade = json(send(client, "GET", base + "/" + tradeId, null));
+                    check("ABC Energy Corp".equals(trade.get("counterparty")) && "BUY".equals(trade.get("tradeType"))
+                            && "1".equals(trade.get("version")), "GET returns the stored trade at version 1");
+
+                    HttpResponse<String> updated = send(client, "PUT", base + "/" + tradeId,
+                            "{\"price\":76.25,\"volume\":1200,\"version\":1}");
+                    check(updated.statusCode() == 200 && "2".equals(json(updated).get("version"))
+                            && Double.parseDouble(json(updated).get("price")) == 76.25, "versioned PUT updates");
+                    HttpResponse<String> stale = send(client, "PUT", base + "/" + tradeId,
+                            "{\"price\":99,\"volume\":1,\"version\":1}");
+                    check(stale.statusCode() == 409 && stale.body().contains("\"current\""),
+                            "stale PUT answers 409 with the current trade");
+                    check(send(client, "PUT", base + "/" + tradeId, "{\"price\":77,\"volume\":1300}").statusCode() == 200,
+                            "unversioned PUT updates the latest version");
+                    check(send(client, "DELETE", base + "/" + tradeId + "?version=1", null).statusCode() == 409,
+                            "stale DELETE answers 409");
+                    check(send(client, "DELETE", base + "/" + tradeId, null).statusCode() == 204, "DELETE removes it");
+                    check(send(client, "GET", base + "/" + tradeId, null).statusCode() == 404, "deleted trade is gone");
+                    check(send(client, "PUT", base + "/" + tradeId, "{\"price\":77,\"volume\":1300}").statusCode() == 404,
+                            "PUT of an unknown trade answers 404");
+
+                    // 2. Listing, search and query
+                    System.out.println("\n2. Testing listing, search and query...");
+                    String[] commodities = { "Coal", "Coal", "Natural Gas", "Coal" };
+                    for (int i = 0; i < commodities.length; i++) {
+                        check(send(client, "POST", base, "{\"tradeDate\":\"2024-02-0" + (i + 1) + "\","
+                                + "\"counterparty\":\"Search Test " + i % 2 + "\",\"commodity\":\"" + commodities[i]
+                                + "\",\"volume\":10,\"price\":" + (40 + i) + ",\"tradeType\":\"SELL\"}").statusCode() == 201,
+                                "created trade " + (i + 1) + " of " + commodities.length);
+                    }
+                    HttpResponse<String> page = send(client, "GET", base + "?after=0&limit=3", null);
+                    check(page.statusCode() == 200 && count(page.body(), "\"tradeId\"") == 3
+                            && !page.body().contains("\"nextAfter\":null"), "a full page links to the next");
+                    check(send(client, "GET", base + "?after=0&limit=10", null).body().contains("\"nextAfter\":null"),
+                            "a short page is the last");
+                    HttpResponse<String> search = send(client, "GET", base + "/search?counterparty=test%201", null);
+                    check(search.statusCode() == 200 && search.body().contains("\"count\":2"),
+                            "search matches a counterparty substring in any case");
+                    HttpResponse<String> query = send(client, "GET",
+                            base + "/query?commodity=Coal&sort=price&order=desc&limit=2", null);
+                    check(query.statusCode() == 200 && query.body().contains("\"count\":2")
+                            && query.body().indexOf("\"price\":43") < query.body().indexOf("\"price\":41"),
+                            "query filters, sorts and limits");
+
+                    // 3. Bad requests
+                    System.out.println("\n3. Testing malformed requests...");
+                    check(send(client, "POST", base, "{\"tradeDate\":\"2024-01-15\",").statusCode() == 400,
+                            "malformed JSON answers 400");
+                    check(send(client, "POST", base, "{\"tradeDate\":\"2024-01-15\",\"counterparty\":\"X\","
+                            + "\"commodity\":\"Coal\",\"volume\":0.004,\"price\":1,\"tradeType\":\"BUY\"}").statusCode() == 400,
+                            "invalid trade answers 400");
+                    check(send(client, "PUT", base + "/1", "{\"price\":0.004,\"volume\":10}").statusCode() == 400,
+                            "invalid update answers 400");
+                    check(send(client, "GET", base + "/abc", null).statusCode() == 400, "non-numeric ID answers 400");
+                    check(send(client, "GET", base + "/query?sort=colour", null).statusCode() == 400,
+                            "unknown sort answers 400");
+                    check(send(client, "PATCH", base, "{}").statusCode() == 405, "unsupported method answers 405");
+
+                    // 4. Concurrency limit
+                    System.out.println("\n4. Testing the concurrency limit...");
+                    pageGate = new CountDownLatch(1);
+                    CompletableFuture<HttpResponse<String>> held = client.sendAsync(
+                            HttpRequest.newBuilder(URI.create(base)).GET().build(), HttpResponse.BodyHandlers.ofString());
+                    while (server.getActiveRequests() == 0) {
+                        Thread.sleep(5);
+                    }
+                    HttpResponse<String> busy = send(client, "GET", base + "/search?commodity=Coal", null);
+                    check(busy.statusCode() == 503 && busy.headers().firstValue("Retry-After").isPresent(),
+                            "request over the limit answers 503 with Retry-After");
+                    pageGate.countDown();
+                    check(held.get().statusCode() == 200, "the request holding the permit still completes");
+                    pageGate = null;
+
+                    // 5. Failure after the response has started
+                    System.out.println("\n5. Testing a listing that fails part way through...");
+                    failPageMidway = true;
+                    String truncated;
+                    try {
+                        HttpResponse<String> broken = send(client, "GET", base, null);
+                        check(broken.statusCode() == 200, "status already sent is kept, not replaced by a 500");
+                        truncated = broken.body();
+                    } catch (IOException e) {
+                        truncated = "";
+                    }
+                    check(!truncated.contains("\"error\"") && !truncated.contains("\"nextAfter\""),
+                            "body ends early instead of carrying a second response");
+                    failPageMidway = false;
+                    // The client can finish reading before the handler's finally block has run
+                    long deadline = System.nanoTime() + 5_000_000_000L;
+                    while (server.getActiveRequests() > 0 && System.nanoTime() < deadline) {
+                        Thread.sleep(5);
+                    }
+                    check(server.getActiveRequests() == 0, "permit released after the failure");
+                    check(send(client, "GET", base + "?limit=1", null).statusCode() == 200, "server keeps serving");
+
+                    // The JDK refuses a second set of headers; the handler must not try to send them
+                    failPageMidway = true;
+                    RecordingExchange exchange = new RecordingExchange("GET", "/api/trades");
+                    server.handle(exchange);
+                    failPageMidway = false;
+                    check(exchange.statuses.equals(List.of(200)) && exchange.closed,
+                            "failed listing closes the exchange without sending a second status");
+                } finally {
+                    tradeService.shutdown();
+                }
+            }
+
+            System.out.println("\n All tests passed! The HTTP API is working properly.");
+        } catch (Exception e) {
+            System.err.println(" HTTP API test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(directory);
+        }
+    }
+
+    // The store, with getTradesPage open to the gate and failure switches above
+    private static TradeRepository hooked(TradeRepository store) {
+        return (TradeRepository) Proxy.newProxyInstance(TradeRepository.class.getClassLoader(),
+                new Class<?>[] { TradeRepository.class }, (proxy, method, arguments) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(store, arguments);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (!method.getName().equals("getTradesPage")) {
+                        return result;
+                    }
+                    CountDownLatch gate = pageGate;
+                    if (gate != null) {
+                        gate.await();
+                    }
+                    if (!failPageMidway) {
+                        return result;
+                    }
+                    List<?> trades = (List<?>) result;
+                    return new AbstractList<Object>() {
+                        @Override
+                        public Object get(int index) {
+                            if (index > 0) {
+                                throw new IllegalStateException("Store failed after the first row");
+                            }
+                            return trades.get(index);
+                        }
+
+                        @Override
+                        public int size() {
+                            return trades.size();
+                        }
+                    };
+                });
+    }
+
+    // Stands in for the JDK's exchange, which throws if headers are sent twice
+    private static class RecordingExchange extends HttpExchange {
+        private final String method;
+        private final URI uri;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final List<Integer> statuses = new ArrayList<>();
+        boolean closed;
+
+        RecordingExchange(String method, String path) {
+            this.method = method;
+            this.uri = URI.create(path);
+        }
+
+        @Override
+        public void sendResponseHeaders(int status, long length) throws IOException {
+            if (!statuses.isEmpty()) {
+                throw new IOException("headers already sent");
+            }
+            statuses.add(status);
+        }
+
+        @Override
+        public int getResponseCode() {
+            return statuses.isEmpty() ? -1 : statuses.get(0);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return body;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+        }
+
+        @Override
+        public void setStreams(InputStream in, OutputStream out) {
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String method, String url, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = body == null
+                ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
+        return client.send(HttpRequest.newBuilder(URI.create(url)).method(method, publisher).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Map<String, String> json(HttpResponse<String> response) {
+        return JsonObjectParser.parse(response.body());
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Temporary directory; nothing else to do
+        }
+    }
+}
@@ -0,0 +1,509 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+
+/**
+ * Load and soak test for TradeService. Worker threads run a weighted mix of create, get,
+ * update, delete and search calls for a fixed time and report throughput and latency
+ * percentiles per operation.
+ *
+ * Usage: java [-Dload.*=...] TradeLoadGenerator
+ *
+ * In closed-loop mode ({@code load.mode=closed}) each worker issues its next call as soon as
+ * the last one returns. In open-loop mode ({@code load.mode=open}) calls are scheduled at
+ * {@code load.rate} per second in total, whether or not earlier calls have finished, as real
+ * clients would send them. Two latencies are reported:
+ * - service time, from the moment a call actually started;
+ * - response time, corrected for coordinated omission. In open loop this is measured from
+ *   the call's scheduled start, so time spent queued behind a stall counts. In closed loop a
+ *   stall also holds back the calls the worker would have issued meanwhile, so each slow
+ *   call is backfilled with those calls' latencies, one per expected interval (the warm-up
+ *   mean), as HdrHistogram does.
+ *
+ * Counterparties follow a Zipf distribution and commodities a fixed market share. Reads and
+ * writes favour recently created trades. By default the run uses a temporary local journal
+ * store, so it needs no database. {@code load.store=jdbc} uses the configured database
+ * instead; with {@code load.createSchema=true} the Trades table is created first, which
+ * suits an empty embedded database such as H2.
+ */
+public class TradeLoadGenerator {
+    enum Op { CREATE, GET, UPDATE, DELETE, SEARCH }
+
+    private static final String COUNTERPARTY_PREFIX = "LOAD-";
+    private static final String[] COMMODITIES = { "Crude Oil", "Natural Gas", "Electricity", "Coal", "Solar Power" };
+    private static final double[] COMMODITY_SHARES = { 0.35, 0.25, 0.20, 0.12, 0.08 };
+    private static final double[] BASE_PRICES = { 75, 3.2, 45, 120, 38 };
+    private static final Op[] OPS = Op.values();
+    // Index of the all-operations total in a Window's arrays
+    private static final int TOTAL = OPS.length;
+
+    private final TradeService tradeService;
+    private final double[] mixCdf;
+    private final String[] counterparties;
+    private final double[] counterpartyCdf;
+    private final double[] commodityCdf;
+    private final LocalDate today = LocalDate.now();
+    private final AtomicInteger highestTradeId = new AtomicInteger();
+    private final AtomicBoolean[] errorReported = new AtomicBoolean[OPS.length];
+
+    private volatile boolean running = true;
+    private volatile Window interval = new Window();
+    // Null during warm-up, when nothing is kept
+    private volatile Window measured;
+    private volatile long expectedIntervalNanos;
+
+    /**
+     * Latencies for one reporting period: service and CO-corrected response time per
+     * operation, plus the total over all operations.
+     */
+    private static class Window {
+        final LatencyRecorder[] service = new LatencyRecorder[OPS.length + 1];
+        final LatencyRecorder[] response = new LatencyRecorder[OPS.length + 1];
+
+        Window() {
+            for (int i = 0; i <= OPS.length; i++) {
+                String name = i == TOTAL ? "total" : OPS[i].name().toLowerCase(Locale.ROOT);
+                service[i] = new LatencyRecorder(name);
+                response[i] = new LatencyRecorder(name);
+            }
+        }
+
+        void record(Op op, long serviceNanos, long responseNanos, long expectedInterval, int rows) {
+            int index = op.ordinal();
+            service[index].recordNanos(serviceNanos, rows);
+            service[TOTAL].recordNanos(serviceNanos, rows);
+            response[index].recordNanos(responseNanos, rows);
+            response[TOTAL].recordNanos(responseNanos, rows);
+            if (expectedInterval > 0) {
+                // The calls this one held up would have waited progressively less
+                for (long backfill = responseNanos - expectedInterval; backfill > expectedInterval;
+                     backfill -= expectedInterval) {
+                    response[index].recordNanos(backfill, 0);
+                    response[TOTAL].recordNanos(backfill, 0);
+                }
+            }
+        }
+    }
+
+    public TradeLoadGenerator(TradeService tradeService, int[] mixWeights, int counterpartyCount, double zipfExponent) {
+        this.tradeService = tradeService;
+        this.mixCdf = cumulative(Arrays.stream(mixWeights).asDoubleStream().toArray());
+        this.counterparties = new String[counterpartyCount];
+        double[] weights = new double[counterpartyCount];
+        for (int rank = 0; rank < counterpartyCount; rank++) {
+            counterparties[rank] = String.format("%sCounterparty %04d", COUNTERPARTY_PREFIX, rank + 1);
+            weights[rank] = 1 / Math.pow(rank + 1, zipfExponent);
+        }
+        this.counterpartyCdf = cumulative(weights);
+        this.commodityCdf = cumulative(COMMODITY_SHARES);
+        for (int i = 0; i < OPS.length; i++) {
+            errorReported[i] = new AtomicBoolean();
+        }
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = Arrays.stream(weights).sum();
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("Weights must add up to more than zero");
+        }
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum / total;
+        }
+        cdf[weights.length - 1] = 1.0;
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        double value = random.nextDouble();
+        int index = Arrays.binarySearch(cdf, value);
+        index = index >= 0 ? index + 1 : -index - 1;
+        // An exact hit on a run of equal entries must skip the zero weights
+        while (index < cdf.length - 1 && cdf[index] <= value) {
+            index++;
+        }
+        return index;
+    }
+
+    // Bulk-loads trades so reads and searches have data from the first call
+    public void preload(int count) throws SQLException {
+        if (count <= 0) {
+            return;
+        }
+        Random random = new Random(42);
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(newTrade(random));
+        }
+        long start = System.nanoTime();
+        BulkInsertResult result = tradeService.createTrades(trades);
+        for (Trade trade : trades) {
+            highestTradeId.accumulateAndGet(trade.getTradeId(), Math::max);
+        }
+        System.out.printf("Preloaded %d trades in %d ms%n", result.getInsertedCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Trade newTrade(Random random) {
+        int commodity = sample(commodityCdf, random);
+        double price = Math.round(BASE_PRICES[commodity] * (0.8 + 0.4 * random.nextDouble()) * 100) / 100.0;
+        double volume = Math.max(1, Math.round(100 * Math.exp(random.nextGaussian())));
+        return new Trade(today.minusDays(random.nextInt(90)).toString(),
+                counterparties[sample(counterpartyCdf, random)], COMMODITIES[commodity], volume, price,
+                random.nextInt(100) < 55 ? "BUY" : "SELL");
+    }
+
+    // Recent trades are the hot ones: the cube pulls the offset towards zero
+    private int pickTradeId(Random random) {
+        int highest = highestTradeId.get();
+        double offset = Math.pow(random.nextDouble(), 3);
+        return Math.max(1, highest - (int) (offset * highest));
+    }
+
+    // Returns the rows the call touched, or LatencyRecorder.FAILED
+    private int execute(Op op, Random random) {
+        try {
+            switch (op) {
+                case CREATE -> {
+                    Trade trade = newTrade(random);
+                    int tradeId = tradeService.createTradeAsync(trade.getTradeDate(), trade.getCounterparty(),
+                            trade.getCommodity(), trade.getVolume(), trade.getPrice(), trade.getTradeType()).get();
+                    highestTradeId.accumulateAndGet(tradeId, Math::max);
+                    return 1;
+                }
+                case GET -> {
+                    return tradeService.getTradeById(pickTradeId(random)) == null ? 0 : 1;
+                }
+                case UPDATE -> {
+                    double price = Math.round((10 + 100 * random.nextDouble()) * 100) / 100.0;
+                    return tradeService.updateTrade(pickTradeId(random), price, 1 + random.nextInt(1000)) ? 1 : 0;
+                }
+                case DELETE -> {
+                    return tradeService.deleteTrade(pickTradeId(random)) ? 1 : 0;
+                }
+                default -> {
+                    List<Trade> trades = random.nextInt(4) == 0
+                            ? tradeService.searchTrades("2", COMMODITIES[sample(commodityCdf, random)])
+                            : tradeService.searchTrades("1", counterparties[sample(counterpartyCdf, random)]);
+                    return trades.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return LatencyRecorder.FAILED;
+        } catch (Exception e) {
+            if (errorReported[op.ordinal()].compareAndSet(false, true)) {
+                System.err.println("First " + op + " error: " + e);
+            }
+            return LatencyRecorder.FAILED;
+        }
+    }
+
+    private void record(Op op, long serviceNanos, long responseNanos, long expectedInterval, int rows) {
+        interval.record(op, serviceNanos, responseNanos, expectedInterval, rows);
+        Window window = measured;
+        if (window != null) {
+            window.record(op, serviceNanos, responseNanos, expectedInterval, rows);
+        }
+    }
+
+    private void runClosedLoop() {
+        Random random = ThreadLocalRandom.current();
+        while (running) {
+            Op op = OPS[sample(mixCdf, random)];
+            long start = System.nanoTime();
+            int rows = execute(op, random);
+            long elapsed = System.nanoTime() - start;
+            record(op, elapsed, elapsed, expectedIntervalNanos, rows);
+        }
+    }
+
+    private void runOpenLoop(long scheduleStart, double periodNanos, AtomicLong nextSlot) {
+        Random random = ThreadLocalRandom.current();
+        while (running) {
+            long intended = scheduleStart + (long) (nextSlot.getAndIncrement() * periodNanos);
+            long wait;
+            while (running && (wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+            Op op = OPS[sample(mixCdf, random)];
+            long start = System.nanoTime();
+            int rows = execute(op, random);
+            long end = System.nanoTime();
+            record(op, end - start, end - intended, 0, rows);
+        }
+    }
+
+    /**
+     * Runs the workers for the warm-up and then the measurement period, printing a progress
+     * line every reportSeconds, and prints the final report. A rate of 0 means closed loop.
+     * Returns the number of calls that failed during the measurement period.
+     */
+    public long run(int threads, boolean virtualThreads, double rate, int warmupSeconds, int durationSeconds,
+                    int reportSeconds) throws InterruptedException {
+        ExecutorService workers = newWorkerExecutor(threads, virtualThreads);
+        AtomicLong nextSlot = new AtomicLong();
+        long scheduleStart = System.nanoTime();
+        double periodNanos = rate > 0 ? 1e9 / rate : 0;
+        for (int i = 0; i < threads; i++) {
+            workers.execute(rate > 0 ? () -> runOpenLoop(scheduleStart, periodNanos, nextSlot) : this::runClosedLoop);
+        }
+
+        long runStart = System.nanoTime();
+        if (warmupSeconds > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            Window warmup = interval;
+            printProgress("warm-up", warmup, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - runStart), warmupSeconds);
+            if (rate <= 0) {
+                expectedIntervalNanos = (long) (warmup.service[TOTAL].getMeanMicros() * 1000);
+            }
+        }
+        interval = new Window();
+        Window window = new Window();
+        measured = window;
+        long measureStart = System.nanoTime();
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1, reportSeconds));
+        long lastReport = measureStart;
+        while (System.nanoTime() < measureEnd) {
+            long sleep = Math.min(lastReport + reportNanos, measureEnd) - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            long now = System.nanoTime();
+            Window finished = interval;
+            interval = new Window();
+            printProgress(TimeUnit.NANOSECONDS.toSeconds(now - runStart) + "s", finished,
+                    TimeUnit.NANOSECONDS.toSeconds(now - runStart), (now - lastReport) / 1e9);
+            lastReport = now;
+        }
+        measured = null;
+        long stop = System.nanoTime();
+        double measuredSeconds = (stop - measureStart) / 1e9;
+        // Calls that were due by now but had not started
+        double backlog = rate > 0 ? (stop - scheduleStart) / periodNanos - nextSlot.get() : 0;
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            System.err.println("Some workers were still busy 30 s after the run ended");
+        }
+
+        printReport(window, measuredSeconds);
+        if (rate > 0) {
+            System.out.printf("Target %.0f ops/s, achieved %.0f ops/s%s%n", rate,
+                    window.service[TOTAL].getCount() / measuredSeconds,
+                    backlog >= 1 ? String.format(", %.0f ms behind schedule at the end", backlog * periodNanos / 1e6) : "");
+        } else if (expectedIntervalNanos > 0) {
+            System.out.printf("Response times backfilled at the warm-up mean of %.1f us per call%n",
+                    expectedIntervalNanos / 1000.0);
+        } else {
+            System.out.println("No warm-up, so closed-loop response times are not corrected");
+        }
+        return window.service[TOTAL].getErrorCount();
+    }
+
+    private static void printProgress(String label, Window window, long elapsedSeconds, double periodSeconds) {
+        Runtime runtime = Runtime.getRuntime();
+        LatencyRecorder service = window.service[TOTAL];
+        LatencyRecorder response = window.response[TOTAL];
+        System.out.printf("[%7s] %10.0f ops/s | errors %d | p99 %.2f ms (corrected %.2f ms) | heap %d MB%n",
+                label, service.getCount() / periodSeconds, service.getErrorCount(),
+                service.getPercentileNanos(0.99) / 1e6, response.getPercentileNanos(0.99) / 1e6,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+    }
+
+    private static void printReport(Window window, double seconds) {
+        System.out.println();
+        printTable("Service time (us, from each call's actual start)", window.service, window.service, seconds);
+        System.out.println();
+        printTable("Response time (us, corrected for coordinated omission)", window.response, window.service, seconds);
+    }
+
+    private static void printTable(String title, LatencyRecorder[] latencies, LatencyRecorder[] calls, double seconds) {
+        System.out.println(title);
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Calls", "Errors", "Ops/s", "p50", "p90", "p99", "p99.9", "Max");
+        System.out.println("-".repeat(98));
+        for (int i = 0; i <= OPS.length; i++) {
+            LatencyRecorder recorder = latencies[i];
+            long count = calls[i].getCount();
+            if (count == 0) {
+                continue;
+            }
+            System.out.printf("%-10s %10d %8d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    recorder.getName(), count, calls[i].getErrorCount(), count / seconds,
+                    recorder.getPercentileNanos(0.50) / 1000.0, recorder.getPercentileNanos(0.90) / 1000.0,
+                    recorder.getPercentileNanos(0.99) / 1000.0, recorder.getPercentileNanos(0.999) / 1000.0,
+                    recorder.getMaxMicros());
+        }
+    }
+
+    // Virtual threads are looked up reflectively so the project still builds and runs on JDK 17
+    private static ExecutorService newWorkerExecutor(int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.out.println("Virtual threads need JDK 21+; using platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "trade-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Parses "create:20,get:45,..." into weights in Op order; operations left out get 0
+    static int[] parseMix(String mix) {
+        int[] weights = new int[OPS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight, got '" + part + "'");
+            }
+            weights[Op.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        return weights;
+    }
+
+    public static void main(String[] args) {
+        String mode = System.getProperty("load.mode", "closed");
+        int threads = Integer.getInteger("load.threads", 16);
+        boolean virtualThreads = Boolean.parseBoolean(System.getProperty("load.virtualThreads", "true"));
+        double rate = "open".equalsIgnoreCase(mode) ? Double.parseDouble(System.getProperty("load.rate", "2000")) : 0;
+        int warmupSeconds = Integer.getInteger("load.warmupSec", 5);
+        int durationSeconds = Integer.getInteger("load.durationSec", 30);
+        int reportSeconds = Integer.getInteger("load.reportSec", 5);
+        String mix = System.getProperty("load.mix", "create:20,get:45,update:15,delete:5,search:15");
+        int preload = Integer.getInteger("load.preload", 10_000);
+        boolean jdbc = "jdbc".equalsIgnoreCase(System.getProperty("load.store", "journal"));
+
+        System.out.printf("Load: %s loop%s, %d %s threads, mix %s, warm-up %d s, run %d s, %s store%n",
+                rate > 0 ? "open" : "closed", rate > 0 ? String.format(" at %.0f ops/s", rate) : "", threads,
+                virtualThreads ? "virtual" : "platform", mix, warmupSeconds, durationSeconds,
+                jdbc ? "JDBC" : "temporary journal");
+
+        Path directory = null;
+        TradeRepository repository = null;
+        TradeService tradeService = null;
+        try {
+            if (jdbc) {
+                if (Boolean.getBoolean("load.createSchema")) {
+                    try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+                        createSchema(connection);
+                    }
+                }
+                repository = TradeApp.createRepository();
+            } else {
+                directory = Files.createTempDirectory("trade-load");
+                repository = new JournalTradeStore(directory);
+            }
+            tradeService = new TradeService(new InstrumentedTradeRepository(repository));
+            if (Boolean.getBoolean("trading.async.capture")) {
+                tradeService.startAsyncCapture(Integer.getInteger("trading.async.capacity", 8192),
+                        Integer.getInteger("trading.async.maxBatch", 500),
+                        Long.getLong("trading.async.lingerMs", 5));
+            }
+            TradeLoadGenerator generator = new TradeLoadGenerator(tradeService, parseMix(mix),
+                    Integer.getInteger("load.counterparties", 2000),
+                    Double.parseDouble(System.getProperty("load.zipf", "1.0")));
+            generator.preload(preload);
+            tradeService.initialize();
+            generator.run(threads, virtualThreads, rate, warmupSeconds, durationSeconds, reportSeconds);
+        } catch (Exception e) {
+            System.err.println("Load test failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (tradeService != null) {
+                tradeService.shutdown();
+            }
+            close(repository, directory);
+        }
+    }
+
+    /*
+     * The Trades table with the column types and constraints of sqlserver-Script-toSetUpDB.sql,
+     * for an empty embedded database, so the load is held to the same limits as production.
+     * The identity column is written in standard SQL, so H2 accepts it in any mode, and the
+     * date index leaves out INCLUDE, which only SQL Server has.
+     */
+    static void createSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS Trades ("
+                    + "TradeID INT GENERATED BY DEFAULT AS IDENTITY NOT NULL, TradeDate DATE NOT NULL, "
+                    + "Counterparty NVARCHAR(100) NOT NULL, Commodity NVARCHAR(50) NOT NULL, "
+                    + "Volume DECIMAL(10,2) NOT NULL, Price DECIMAL(10,2) NOT NULL, TradeType NVARCHAR(10) NOT NULL, "
+                    + "Version INT NOT NULL DEFAULT 1, "
+                    + "CONSTRAINT PK_trades PRIMARY KEY (TradeID), "
+                    + "CONSTRAINT CHK_trade_type CHECK (TradeType IN ('BUY','SELL')), "
+                    + "CONSTRAINT CHK_volume CHECK (Volume > 0), "
+                    + "CONSTRAINT CHK_price CHECK (Price >= 0))");
+            statement.execute("CREATE INDEX IF NOT EXISTS IX_trades_counterparty ON Trades(Counterparty)");
+            statement.execute("CREATE INDEX IF NOT EXISTS IX_trades_commodity ON Trades(Commodity)");
+            statement.execute("CREATE INDEX IF NOT EXISTS IX_trades_trade_date ON Trades(TradeDate)");
+        }
+    }
+
+    private static void deleteLoadTrades(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM Trades WHERE Counterparty LIKE '" + COUNTERPARTY_PREFIX + "%'");
+        }
+    }
+
+    // Removes everything the run created
+    private static void close(TradeRepository repository, Path directory) {
+        try {
+            if (repository instanceof ShardedTradeRepository) {
+                ShardedTradeRepository sharded = (ShardedTradeRepository) repository;
+                for (int i = 0; i < sharded.getShardCount(); i++) {
+                    if (sharded.getShard(i) instanceof TradeDAO) {
+                        deleteLoadTrades(((TradeDAO) sharded.getShard(i)).getDataSource());
+                    }
+                }
+                sharded.close();
+            } else if (repository instanceof JournalTradeStore) {
+                ((JournalTradeStore) repository).close();
+            } else if (repository != null) {
+                DatabaseConnection dbConnection = DatabaseConnection.getInstance();
+                deleteLoadTrades(dbConnection.getDataSource());
+                dbConnection.closeConnection();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error cleaning up: " + e.getMessage());
+        }
+        if (directory != null) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                // Temporary directory; nothing else to do
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Smoke run of the load generator's {@code load.store=jdbc} mode on an empty embedded
+ * database: creates the schema, checks it holds trades to the production limits, then
+ * runs a short closed-loop load and expects no failed calls. Needs the H2 jar on the
+ * class path, or -Dtrading.db.url pointing at another empty database.
+ *
+ * Usage: java -cp "src:h2.jar" TradeLoadGeneratorTest
+ */
+public class TradeLoadGeneratorTest {
+    private static final String URL = System.getProperty("trading.db.url",
+        "jdbc:h2:mem:load-test;MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+
+    public static void main(String[] args) {
+        System.out.println("Testing Load Generator on an embedded database...");
+        System.out.println("================================");
+
+        TradeService tradeService = null;
+        try (ConnectionPool pool = new ConnectionPool(URL, PoolConfig.fromSystemProperties())) {
+            // 1. Schema
+            System.out.println("1. Testing schema creation...");
+            try (Connection connection = pool.getConnection()) {
+                TradeLoadGenerator.createSchema(connection);
+                TradeLoadGenerator.createSchema(connection);
+            }
+            System.out.println(" Schema can be created more than once");
+            TradeDAO dao = new TradeDAO(pool);
+            Trade trade = new Trade("2024-01-15", "LOAD-TEST", "Coal", 99_999_999.99, 45, "BUY");
+            check(dao.addTrade(trade) && trade.getTradeId() > 0, "largest DECIMAL(10,2) volume is stored");
+            check(rejected(dao, new Trade("2024-01-15", "LOAD-TEST", "Coal", 100_000_000, 45, "BUY")),
+                    "volume beyond DECIMAL(10,2) is rejected");
+            check(rejected(dao, new Trade("2024-01-15", "LOAD-TEST", "Coal", 10, 45, "HOLD")),
+                    "trade type outside BUY/SELL is rejected");
+            check(dao.deleteTrade(trade.getTradeId()), "test trade removed");
+
+            // 2. Load
+            System.out.println("\n2. Testing a short closed-loop run...");
+            tradeService = new TradeService(new InstrumentedTradeRepository(dao));
+            TradeLoadGenerator generator = new TradeLoadGenerator(tradeService,
+                    TradeLoadGenerator.parseMix("create:20,get:45,update:15,delete:5,search:15"), 200, 1.0);
+            generator.preload(2_000);
+            tradeService.initialize();
+            check(dao.countTrades() == 2_000, "preload inserted every trade");
+            long errors = generator.run(4, false, 0, 1, 2, 1);
+            check(errors == 0, "no call failed during the run");
+
+            System.out.println("\n All tests passed! The load generator runs on an embedded database.");
+        } catch (Exception e) {
+            System.err.println(" Load generator test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            if (tradeService != null) {
+                tradeService.shutdown();
+            }
+        }
+    }
+
+    private static boolean rejected(TradeDAO dao, Trade trade) {
+        try {
+            dao.addTrade(trade);
+            return false;
+        } catch (SQLException expected) {
+            return true;
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of {@link LatencyRecorder}s. Each recorder is registered as an MBean
+ * under {@code EnergyTrading:type=Latency,name=<operation>} shortly after it is created, and
+ * {@link #startLogDump(Path, long)} appends the whole table to a log file periodically.
+ */
+public final class TradeMetrics {
+    private static final String JMX_DOMAIN = "EnergyTrading";
+    private static final Map<String, LatencyRecorder> RECORDERS = new ConcurrentHashMap<>();
+    // Starting the platform MBean server takes a few hundred ms, so it happens off the startup path
+    private static final ExecutorService JMX_REGISTRATION = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trade-metrics-jmx");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledExecutorService dumpScheduler;
+    private static Path logFile;
+
+    private TradeMetrics() {}
+
+    // Callers keep the returned recorder in a static field; this lookup is not on the hot path
+    public static LatencyRecorder recorder(String name) {
+        return RECORDERS.computeIfAbsent(name, key -> {
+            LatencyRecorder recorder = new LatencyRecorder(key);
+            JMX_REGISTRATION.execute(() -> register(recorder));
+            return recorder;
+        });
+    }
+
+    private static void register(LatencyRecorder recorder) {
+        String name = recorder.getName();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Latency,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(recorder, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register latency MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    public static List<LatencyRecorder> getRecorders() {
+        List<LatencyRecorder> recorders = new ArrayList<>(RECORDERS.values());
+        recorders.sort(Comparator.comparing(LatencyRecorder::getName));
+        return recorders;
+    }
+
+    public static void resetAll() {
+        for (LatencyRecorder recorder : RECORDERS.values()) {
+            recorder.reset();
+        }
+    }
+
+    // Recorders that have seen at least one call, as an aligned table (latencies in microseconds)
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-32s %10s %7s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Calls", "Errors", "Rows", "Mean(us)", "p50(us)", "p99(us)", "p999(us)", "Max(us)"));
+        for (LatencyRecorder recorder : getRecorders()) {
+            if (recorder.getCount() > 0) {
+                report.append(recorder).append(System.lineSeparator());
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Appends {@link #report()} to {@code file} every {@code intervalMs} on a daemon thread,
+     * and once more from {@link #stopLogDump()}.
+     */
+    public static synchronized void startLogDump(Path file, long intervalMs) {
+        if (dumpScheduler != null || intervalMs <= 0) {
+            return;
+        }
+        dumpScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trade-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpScheduler.scheduleAtFixedRate(() -> dump(file), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logFile = file;
+    }
+
+    public static synchronized void stopLogDump() {
+        if (dumpScheduler == null) {
+            return;
+        }
+        dumpScheduler.shutdownNow();
+        dumpScheduler = null;
+        dump(logFile);
+    }
+
+    private static void dump(Path file) {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write("=== Trade stats " + LocalDateTime.now() + " ===" + System.lineSeparator());
+            writer.write(report());
+            writer.write(System.lineSeparator());
+        } catch (IOException e) {
+            System.err.println("Could not write stats log " + file + ": " + e.getMessage());
+        }
+    }
+}
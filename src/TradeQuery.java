@@ -0,0 +1,345 @@
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Immutable multi-criteria trade filter: a trade-date range, commodity and counterparty
+ * (exact or prefix), trade type, volume and price bounds, a sort order and a row limit.
+ * Absent criteria match everything. Build one with {@link #builder()}.
+ *
+ * Text matching is case-insensitive, like the default SQL Server collation. Every
+ * predicate compiles to a plain comparison on the bare column (prefixes to
+ * {@code LIKE 'x%'}), so the date, commodity and counterparty indexes can be used for seeks.
+ */
+public class TradeQuery {
+    public enum Match { EQUALS, PREFIX }
+
+    public enum SortField {
+        TRADE_ID("TradeID", Comparator.comparingInt(Trade::getTradeId)),
+        TRADE_DATE("TradeDate", Comparator.comparingInt(Trade::getTradeEpochDay)),
+        COUNTERPARTY("Counterparty", Comparator.comparing(Trade::getCounterparty, String.CASE_INSENSITIVE_ORDER)),
+        COMMODITY("Commodity", Comparator.comparing(Trade::getCommodity, String.CASE_INSENSITIVE_ORDER)),
+        VOLUME("Volume", Comparator.comparingLong(Trade::getVolumeUnits)),
+        PRICE("Price", Comparator.comparingLong(Trade::getPriceUnits));
+
+        private final String column;
+        private final Comparator<Trade> comparator;
+
+        SortField(String column, Comparator<Trade> comparator) {
+            this.column = column;
+            this.comparator = comparator;
+        }
+
+        public String getColumn() { return column; }
+    }
+
+    // Bits of shape(): which predicates are present and how they match
+    static final int HAS_FROM_DATE = 1;
+    static final int HAS_TO_DATE = 1 << 1;
+    static final int HAS_COMMODITY = 1 << 2;
+    static final int COMMODITY_PREFIX = 1 << 3;
+    static final int HAS_COUNTERPARTY = 1 << 4;
+    static final int COUNTERPARTY_PREFIX = 1 << 5;
+    static final int HAS_TRADE_TYPE = 1 << 6;
+    static final int HAS_MIN_VOLUME = 1 << 7;
+    static final int HAS_MAX_VOLUME = 1 << 8;
+    static final int HAS_MIN_PRICE = 1 << 9;
+    static final int HAS_MAX_PRICE = 1 << 10;
+    static final int HAS_LIMIT = 1 << 11;
+    static final int DESCENDING = 1 << 12;
+    private static final int SORT_SHIFT = 13;
+
+    private final String fromDate;
+    private final String toDate;
+    // The date range as epoch days, open ends widened to the int range
+    private final int fromEpochDay;
+    private final int toEpochDay;
+    private final String commodity;
+    private final Match commodityMatch;
+    private final String counterparty;
+    private final Match counterpartyMatch;
+    private final String tradeType;
+    private final Double minVolume;
+    private final Double maxVolume;
+    private final Double minPrice;
+    private final Double maxPrice;
+    private final SortField sortField;
+    private final boolean descending;
+    private final int limit;
+
+    private TradeQuery(Builder builder) {
+        this.fromDate = builder.fromDate;
+        this.toDate = builder.toDate;
+        this.fromEpochDay = fromDate == null ? Integer.MIN_VALUE : TradeDates.parse(fromDate);
+        this.toEpochDay = toDate == null ? Integer.MAX_VALUE : TradeDates.parse(toDate);
+        this.commodity = builder.commodity;
+        this.commodityMatch = builder.commodityMatch;
+        this.counterparty = builder.counterparty;
+        this.counterpartyMatch = builder.counterpartyMatch;
+        this.tradeType = builder.tradeType;
+        this.minVolume = builder.minVolume;
+        this.maxVolume = builder.maxVolume;
+        this.minPrice = builder.minPrice;
+        this.maxPrice = builder.maxPrice;
+        this.sortField = builder.sortField;
+        this.descending = builder.descending;
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getFromDate() { return fromDate; }
+    public String getToDate() { return toDate; }
+    public int getFromEpochDay() { return fromEpochDay; }
+    public int getToEpochDay() { return toEpochDay; }
+    public String getCommodity() { return commodity; }
+    public Match getCommodityMatch() { return commodityMatch; }
+    public String getCounterparty() { return counterparty; }
+    public Match getCounterpartyMatch() { return counterpartyMatch; }
+    public String getTradeType() { return tradeType; }
+    public Double getMinVolume() { return minVolume; }
+    public Double getMaxVolume() { return maxVolume; }
+    public Double getMinPrice() { return minPrice; }
+    public Double getMaxPrice() { return maxPrice; }
+    public SortField getSortField() { return sortField; }
+    public boolean isDescending() { return descending; }
+    // 0 means no limit
+    public int getLimit() { return limit; }
+
+    /**
+     * Identifies the query's structure, ignoring the values: two queries with the same
+     * shape compile to the same SQL and differ only in their parameters.
+     */
+    public int shape() {
+        int shape = sortField.ordinal() << SORT_SHIFT;
+        if (fromDate != null) {
+            shape |= HAS_FROM_DATE;
+        }
+        if (toDate != null) {
+            shape |= HAS_TO_DATE;
+        }
+        if (commodity != null) {
+            shape |= HAS_COMMODITY | (commodityMatch == Match.PREFIX ? COMMODITY_PREFIX : 0);
+        }
+        if (counterparty != null) {
+            shape |= HAS_COUNTERPARTY | (counterpartyMatch == Match.PREFIX ? COUNTERPARTY_PREFIX : 0);
+        }
+        if (tradeType != null) {
+            shape |= HAS_TRADE_TYPE;
+        }
+        if (minVolume != null) {
+            shape |= HAS_MIN_VOLUME;
+        }
+        if (maxVolume != null) {
+            shape |= HAS_MAX_VOLUME;
+        }
+        if (minPrice != null) {
+            shape |= HAS_MIN_PRICE;
+        }
+        if (maxPrice != null) {
+            shape |= HAS_MAX_PRICE;
+        }
+        if (limit > 0) {
+            shape |= HAS_LIMIT;
+        }
+        if (descending) {
+            shape |= DESCENDING;
+        }
+        return shape;
+    }
+
+    // In-memory equivalent of the compiled SQL, for stores that filter trades themselves
+    public boolean matches(Trade trade) {
+        int date = trade.getTradeEpochDay();
+        return date >= fromEpochDay && date <= toEpochDay
+                && matchesCommodity(trade.getCommodity())
+                && matchesCounterparty(trade.getCounterparty())
+                && matchesTradeType(trade.getTradeType())
+                && matchesVolume(trade.getVolume())
+                && matchesPrice(trade.getPrice());
+    }
+
+    public boolean matchesCommodity(String value) {
+        return matchesText(commodity, commodityMatch, value);
+    }
+
+    public boolean matchesCounterparty(String value) {
+        return matchesText(counterparty, counterpartyMatch, value);
+    }
+
+    public boolean matchesTradeType(String value) {
+        return tradeType == null || tradeType.equalsIgnoreCase(value);
+    }
+
+    public boolean matchesVolume(double volume) {
+        return (minVolume == null || volume >= minVolume) && (maxVolume == null || volume <= maxVolume);
+    }
+
+    public boolean matchesPrice(double price) {
+        return (minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice);
+    }
+
+    // Sort order of the results; ties are broken by TradeID so paging is stable
+    public Comparator<Trade> comparator() {
+        Comparator<Trade> comparator = sortField.comparator;
+        if (sortField != SortField.TRADE_ID) {
+            comparator = comparator.thenComparing(SortField.TRADE_ID.comparator);
+        }
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private static boolean matchesText(String expected, Match match, String value) {
+        if (expected == null) {
+            return true;
+        }
+        return match == Match.PREFIX
+                ? value.regionMatches(true, 0, expected, 0, expected.length())
+                : value.equalsIgnoreCase(expected);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("TradeQuery[");
+        if (fromDate != null) {
+            text.append(" date>=").append(fromDate);
+        }
+        if (toDate != null) {
+            text.append(" date<=").append(toDate);
+        }
+        if (commodity != null) {
+            text.append(" commodity").append(commodityMatch == Match.PREFIX ? "^=" : "=").append(commodity);
+        }
+        if (counterparty != null) {
+            text.append(" counterparty").append(counterpartyMatch == Match.PREFIX ? "^=" : "=").append(counterparty);
+        }
+        if (tradeType != null) {
+            text.append(" type=").append(tradeType);
+        }
+        if (minVolume != null) {
+            text.append(" volume>=").append(minVolume);
+        }
+        if (maxVolume != null) {
+            text.append(" volume<=").append(maxVolume);
+        }
+        if (minPrice != null) {
+            text.append(" price>=").append(minPrice);
+        }
+        if (maxPrice != null) {
+            text.append(" price<=").append(maxPrice);
+        }
+        text.append(" sort=").append(sortField).append(descending ? " desc" : "");
+        if (limit > 0) {
+            text.append(" limit=").append(limit);
+        }
+        return text.append(" ]").toString();
+    }
+
+    /**
+     * Collects criteria for a TradeQuery. Each setter validates its argument and throws
+     * IllegalArgumentException, so bad user input is reported before any query runs.
+     */
+    public static class Builder {
+        private String fromDate;
+        private String toDate;
+        private String commodity;
+        private Match commodityMatch = Match.EQUALS;
+        private String counterparty;
+        private Match counterpartyMatch = Match.EQUALS;
+        private String tradeType;
+        private Double minVolume;
+        private Double maxVolume;
+        private Double minPrice;
+        private Double maxPrice;
+        private SortField sortField = SortField.TRADE_ID;
+        private boolean descending;
+        private int limit;
+
+        private Builder() {}
+
+        // Inclusive range of yyyy-MM-dd dates; either end may be null
+        public Builder tradeDateBetween(String from, String to) {
+            this.fromDate = checkDate(from);
+            this.toDate = checkDate(to);
+            return this;
+        }
+
+        public Builder commodity(String commodity, Match match) {
+            this.commodity = checkText(commodity, "Commodity");
+            this.commodityMatch = match;
+            return this;
+        }
+
+        public Builder counterparty(String counterparty, Match match) {
+            this.counterparty = checkText(counterparty, "Counterparty");
+            this.counterpartyMatch = match;
+            return this;
+        }
+
+        public Builder tradeType(String tradeType) {
+            if (!"BUY".equalsIgnoreCase(tradeType) && !"SELL".equalsIgnoreCase(tradeType)) {
+                throw new IllegalArgumentException("Trade type must be BUY or SELL: " + tradeType);
+            }
+            this.tradeType = tradeType.toUpperCase(Locale.ROOT);
+            return this;
+        }
+
+        public Builder volumeBetween(Double min, Double max) {
+            this.minVolume = min;
+            this.maxVolume = max;
+            return this;
+        }
+
+        public Builder priceBetween(Double min, Double max) {
+            this.minPrice = min;
+            this.maxPrice = max;
+            return this;
+        }
+
+        public Builder sortBy(SortField sortField, boolean descending) {
+            this.sortField = sortField;
+            this.descending = descending;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public TradeQuery build() {
+            if (fromDate != null && toDate != null && fromDate.compareTo(toDate) > 0) {
+                throw new IllegalArgumentException("Start date " + fromDate + " is after end date " + toDate);
+            }
+            checkRange(minVolume, maxVolume, "Volume");
+            checkRange(minPrice, maxPrice, "Price");
+            return new TradeQuery(this);
+        }
+
+        private static String checkDate(String date) {
+            if (date != null && !InputValidator.isValidDate(date)) {
+                throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd: " + date);
+            }
+            return date;
+        }
+
+        private static String checkText(String value, String field) {
+            if (value == null || value.trim().isEmpty()) {
+                throw new IllegalArgumentException(field + " cannot be empty.");
+            }
+            return value.trim();
+        }
+
+        private static void checkRange(Double min, Double max, String field) {
+            if ((min != null && min.isNaN()) || (max != null && max.isNaN())) {
+                throw new IllegalArgumentException(field + " bounds must be numbers.");
+            }
+            if (min != null && max != null && min > max) {
+                throw new IllegalArgumentException(field + " minimum " + min + " is above maximum " + max);
+            }
+        }
+    }
+}
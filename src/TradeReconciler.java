@@ -0,0 +1,678 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reconciles the trades table against a confirmation file sent back by counterparties.
+ *
+ * Both sides are keyed by (trade date, counterparty, commodity, BUY/SELL), with names
+ * trimmed, upper-cased and their spaces collapsed. Trades with the same key are paired
+ * when volume and price agree within the tolerances. Pairs that do not agree are reported
+ * as mismatched, and the rest as missing ours (only in their file) or missing theirs
+ * (only in our table). Only our trades within the file's date range and counterparties
+ * are compared.
+ *
+ * The confirmation file is parsed on all cores by {@link TradeFileIngester}, and our
+ * trades are streamed from one cursor. Each record is hashed on its key into one of many
+ * partitions, held in primitive arrays. A partition that outgrows its share of the memory
+ * budget spills to a temporary file. The partitions are then matched in parallel, each
+ * loaded back on its own, so memory stays near the budget however large both sides are.
+ * Breaks are written to a CSV report; matched pairs are only counted.
+ */
+public class TradeReconciler {
+    public enum Status { MATCHED, MISMATCHED, MISSING_OURS, MISSING_THEIRS }
+
+    public static final String REPORT_HEADER =
+            "Status,TradeDate,Counterparty,Commodity,TradeType,OurTradeID,OurVolume,OurPrice,TheirVolume,TheirPrice";
+
+    // Rough heap cost of one buffered record: its primitive columns, two references and array slack
+    private static final int RECORD_BYTES = 64;
+    // Typical confirmation line length, used to size the partitions before the file is read
+    private static final int ESTIMATED_LINE_BYTES = 48;
+    private static final int MAX_PARTITIONS = 4096;
+    private static final int REPORT_CHUNK_CHARS = 1 << 16;
+
+    private static final byte SELL = 1;
+    private static final byte THEIRS = 2;
+
+    private final TradeService tradeService;
+    private final TradeFileIngester.Format format;
+    // Fixed-point hundredths
+    private final long volumeTolerance;
+    private final long priceTolerance;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final int workers;
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Tolerances from -Dtrading.recon.volumeTolerance and -Dtrading.recon.priceTolerance
+     * (default 0, exact), memory budget from -Dtrading.recon.memoryMB (default 256), and
+     * spill files in java.io.tmpdir.
+     */
+    public TradeReconciler(TradeService tradeService, TradeFileIngester.Format format) {
+        this(tradeService, format,
+                Double.parseDouble(System.getProperty("trading.recon.volumeTolerance", "0")),
+                Double.parseDouble(System.getProperty("trading.recon.priceTolerance", "0")),
+                Long.getLong("trading.recon.memoryMB", 256) << 20,
+                Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public TradeReconciler(TradeService tradeService, TradeFileIngester.Format format, double volumeTolerance,
+                           double priceTolerance, long memoryBudgetBytes, Path spillDirectory) {
+        this.tradeService = tradeService;
+        this.format = format;
+        this.volumeTolerance = FixedPoint.toUnits(volumeTolerance);
+        this.priceTolerance = FixedPoint.toUnits(priceTolerance);
+        this.memoryBudget = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        this.workers = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Reconciles {@code confirmations} and writes every break to {@code report}. Lines that
+     * cannot be parsed go to {@code rejectsFile}, or are only counted if it is null.
+     */
+    public ReconciliationResult reconcile(Path confirmations, Path report, Path rejectsFile)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        ReconciliationResult result = new ReconciliationResult();
+        RecordGauge gauge = new RecordGauge();
+        Partition[] partitions = createPartitions(Files.size(confirmations), gauge);
+        result.setPartitionCount(partitions.length);
+        int shift = 32 - Integer.numberOfTrailingZeros(partitions.length);
+        Path partFile = report.resolveSibling(report.getFileName() + ".part");
+        boolean completed = false;
+        try {
+            // 1. Their side, parsed on all cores; this also fixes the scope of our side
+            Scope scope = new Scope();
+            TradeFileIngester ingester = new TradeFileIngester(batch -> loadTheirs(batch, partitions, shift, scope),
+                    format, TradeFileIngester.DEFAULT_FIXED_WIDTHS, TradeRepository.DEFAULT_BATCH_SIZE);
+            IngestResult parsed;
+            try {
+                parsed = ingester.ingest(confirmations, rejectsFile, true);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            result.setTheirsCount(parsed.getInsertedCount());
+            result.setRejectedCount(parsed.getRejectedCount());
+
+            // 2. Our side, one cursor over the table
+            long[] ours = { 0 };
+            try {
+                tradeService.scanTrades(trade -> {
+                    int day = trade.getTradeEpochDay();
+                    if (day < scope.firstDay || day > scope.lastDay) {
+                        return true;
+                    }
+                    String counterparty = normalize(trade.getCounterparty());
+                    if (!scope.counterparties.contains(counterparty)) {
+                        return true;
+                    }
+                    add(partitions, shift, day, typeFlag(trade.getTradeType()), counterparty,
+                            normalize(trade.getCommodity()), trade.getVolumeUnits(), trade.getPriceUnits(),
+                            trade.getTradeId());
+                    ours[0]++;
+                    return true;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            result.setOursCount(ours[0]);
+
+            // 3. Match the partitions in parallel
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(partFile),
+                    StandardCharsets.UTF_8), REPORT_CHUNK_CHARS)) {
+                writer.write(REPORT_HEADER);
+                writer.write('\n');
+                matchInParallel(partitions, writer, result);
+            }
+            Files.move(partFile, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completed = true;
+        } finally {
+            for (Partition partition : partitions) {
+                partition.deleteSpill();
+            }
+            if (!completed) {
+                Files.deleteIfExists(partFile);
+            }
+        }
+        result.setPeakRecordsInMemory(gauge.getPeak());
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    // Enough partitions that every worker can hold one, both sides, within the budget
+    private Partition[] createPartitions(long fileBytes, RecordGauge gauge) {
+        long records = 2 * Math.max(1, fileBytes / ESTIMATED_LINE_BYTES);
+        long needed = records * RECORD_BYTES * workers / Math.max(1, memoryBudget) + 1;
+        int count = Integer.highestOneBit((int) Math.min(MAX_PARTITIONS, Math.max(needed, workers * 4L)) * 2 - 1);
+        count = Math.min(MAX_PARTITIONS, count);
+        int spillThreshold = (int) Math.max(64, Math.min(Integer.MAX_VALUE, memoryBudget / count / RECORD_BYTES));
+        Partition[] partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, spillThreshold, gauge);
+        }
+        return partitions;
+    }
+
+    private BulkInsertResult loadTheirs(List<Trade> batch, Partition[] partitions, int shift, Scope scope) {
+        BulkInsertResult loaded = new BulkInsertResult();
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        int count = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Trade trade = batch.get(i);
+            if (trade.getTradeType() == null) {
+                loaded.addFailure(i, trade, "Trade type must be BUY or SELL");
+                continue;
+            }
+            int day = trade.getTradeEpochDay();
+            String counterparty = normalize(trade.getCounterparty());
+            firstDay = Math.min(firstDay, day);
+            lastDay = Math.max(lastDay, day);
+            scope.counterparties.add(counterparty);
+            add(partitions, shift, day, (byte) (typeFlag(trade.getTradeType()) | THEIRS), counterparty,
+                    normalize(trade.getCommodity()), trade.getVolumeUnits(), trade.getPriceUnits(), 0);
+            count++;
+        }
+        scope.include(firstDay, lastDay);
+        loaded.addInserted(count);
+        return loaded;
+    }
+
+    private void add(Partition[] partitions, int shift, int day, byte flags, String counterparty, String commodity,
+                     long volume, long price, int tradeId) {
+        int hash = hash(day, flags & SELL, counterparty, commodity);
+        try {
+            partitions[hash >>> shift].add(day, flags, counterparty, commodity, volume, price, tradeId);
+        } catch (IOException e) {
+            // Called from TradeHandler and BatchLoader, which cannot throw IOException; unwrapped above
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Partitions take the top bits, so the bottom bits still spread keys within a partition's hash map
+    private static int hash(int day, int side, String counterparty, String commodity) {
+        int hash = ((day * 31 + side) * 31 + counterparty.hashCode()) * 31 + commodity.hashCode();
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 15);
+    }
+
+    private static byte typeFlag(String tradeType) {
+        return "SELL".equalsIgnoreCase(tradeType) ? SELL : 0;
+    }
+
+    // Trimmed, upper case, runs of spaces collapsed: " Shell  energy " is "SHELL ENERGY"
+    String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = names.get(name);
+        if (normalized == null) {
+            normalized = name.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+            names.putIfAbsent(name, normalized);
+        }
+        return normalized;
+    }
+
+    private void matchInParallel(Partition[] partitions, Writer writer, ReconciliationResult result)
+            throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, partitions.length), runnable -> {
+            Thread thread = new Thread(runnable, "trade-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>(partitions.length);
+            for (Partition partition : partitions) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        new PartitionMatcher(partition.load(result), writer, result).run();
+                    } finally {
+                        partition.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reconciling", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Reconciliation failed: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // The dates and counterparties their file covers
+    private static class Scope {
+        final Set<String> counterparties = ConcurrentHashMap.newKeySet();
+        volatile int firstDay = Integer.MAX_VALUE;
+        volatile int lastDay = Integer.MIN_VALUE;
+
+        synchronized void include(int first, int last) {
+            firstDay = Math.min(firstDay, first);
+            lastDay = Math.max(lastDay, last);
+        }
+    }
+
+    // Record slots allocated across all partitions, and the most there have been at once
+    private static class RecordGauge {
+        private final AtomicLong slots = new AtomicLong();
+        private final AtomicLong peak = new AtomicLong();
+
+        void add(long delta) {
+            long current = slots.addAndGet(delta);
+            peak.accumulateAndGet(current, Math::max);
+        }
+
+        long getPeak() {
+            return peak.get();
+        }
+    }
+
+    // Records of one hash partition, ours and theirs together, in parallel arrays
+    private final class Partition {
+        private final int index;
+        private final int spillThreshold;
+        private final RecordGauge gauge;
+        private int[] days = new int[16];
+        private byte[] flags = new byte[16];
+        private String[] counterparties = new String[16];
+        private String[] commodities = new String[16];
+        private long[] volumes = new long[16];
+        private long[] prices = new long[16];
+        private int[] tradeIds = new int[16];
+        private int size;
+
+        private Path spillFile;
+        private DataOutputStream spill;
+        private int spilledCount;
+
+        Partition(int index, int spillThreshold, RecordGauge gauge) {
+            this.index = index;
+            this.spillThreshold = spillThreshold;
+            this.gauge = gauge;
+            gauge.add(days.length);
+        }
+
+        synchronized void add(int day, byte flag, String counterparty, String commodity, long volume, long price,
+                              int tradeId) throws IOException {
+            if (size == spillThreshold) {
+                spill();
+            } else if (size == days.length) {
+                grow(Math.min(size * 2, spillThreshold));
+            }
+            days[size] = day;
+            flags[size] = flag;
+            counterparties[size] = counterparty;
+            commodities[size] = commodity;
+            volumes[size] = volume;
+            prices[size] = price;
+            tradeIds[size] = tradeId;
+            size++;
+        }
+
+        // Appends the buffered records to this partition's spill file and empties the buffer
+        private void spill() throws IOException {
+            if (spill == null) {
+                spillFile = Files.createTempFile(spillDirectory, "recon-" + index + "-", ".spill");
+                spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), 1 << 16));
+            }
+            for (int i = 0; i < size; i++) {
+                spill.writeInt(days[i]);
+                spill.writeByte(flags[i]);
+                spill.writeUTF(counterparties[i]);
+                spill.writeUTF(commodities[i]);
+                spill.writeLong(volumes[i]);
+                spill.writeLong(prices[i]);
+                spill.writeInt(tradeIds[i]);
+                counterparties[i] = null;
+                commodities[i] = null;
+            }
+            spilledCount += size;
+            size = 0;
+        }
+
+        // Reads back anything spilled, so the whole partition is in memory for matching
+        synchronized Partition load(ReconciliationResult result) throws IOException {
+            if (spill == null) {
+                return this;
+            }
+            spill.close();
+            spill = null;
+            result.addSpill(Files.size(spillFile));
+            int buffered = size;
+            grow(spilledCount + buffered);
+            // Buffered records go after the spilled ones
+            System.arraycopy(days, 0, days, spilledCount, buffered);
+            System.arraycopy(flags, 0, flags, spilledCount, buffered);
+            System.arraycopy(counterparties, 0, counterparties, spilledCount, buffered);
+            System.arraycopy(commodities, 0, commodities, spilledCount, buffered);
+            System.arraycopy(volumes, 0, volumes, spilledCount, buffered);
+            System.arraycopy(prices, 0, prices, spilledCount, buffered);
+            System.arraycopy(tradeIds, 0, tradeIds, spilledCount, buffered);
+            Map<String, String> strings = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile), 1 << 16))) {
+                for (int i = 0; i < spilledCount; i++) {
+                    days[i] = in.readInt();
+                    flags[i] = in.readByte();
+                    counterparties[i] = strings.computeIfAbsent(in.readUTF(), s -> s);
+                    commodities[i] = strings.computeIfAbsent(in.readUTF(), s -> s);
+                    volumes[i] = in.readLong();
+                    prices[i] = in.readLong();
+                    tradeIds[i] = in.readInt();
+                }
+            }
+            size = spilledCount + buffered;
+            spilledCount = 0;
+            deleteSpill();
+            return this;
+        }
+
+        synchronized void deleteSpill() {
+            try {
+                if (spill != null) {
+                    spill.close();
+                    spill = null;
+                }
+                if (spillFile != null) {
+                    Files.deleteIfExists(spillFile);
+                    spillFile = null;
+                }
+            } catch (IOException e) {
+                // Temporary file; nothing else to do
+            }
+        }
+
+        // Drops the arrays once the partition is matched, so only partitions in progress stay loaded
+        synchronized void release() {
+            gauge.add(-days.length);
+            days = new int[0];
+            flags = new byte[0];
+            counterparties = new String[0];
+            commodities = new String[0];
+            volumes = new long[0];
+            prices = new long[0];
+            tradeIds = new int[0];
+            size = 0;
+        }
+
+        private void grow(int capacity) {
+            if (capacity <= days.length) {
+                return;
+            }
+            gauge.add(capacity - days.length);
+            days = Arrays.copyOf(days, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            counterparties = Arrays.copyOf(counterparties, capacity);
+            commodities = Arrays.copyOf(commodities, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            tradeIds = Arrays.copyOf(tradeIds, capacity);
+        }
+    }
+
+    // Matches one loaded partition: group by key, then pair within each group
+    private final class PartitionMatcher {
+        private final Partition partition;
+        private final Writer writer;
+        private final ReconciliationResult result;
+        private final StringBuilder report = new StringBuilder(REPORT_CHUNK_CHARS + 256);
+        private long matched;
+        private long mismatched;
+        private long missingOurs;
+        private long missingTheirs;
+
+        PartitionMatcher(Partition partition, Writer writer, ReconciliationResult result) {
+            this.partition = partition;
+            this.writer = writer;
+            this.result = result;
+        }
+
+        void run() throws IOException {
+            Partition p = partition;
+            Map<Key, Group> groups = new HashMap<>(Math.max(16, p.size * 4 / 3));
+            for (int i = 0; i < p.size; i++) {
+                Key key = new Key(p.days[i], p.flags[i] & SELL, p.counterparties[i], p.commodities[i]);
+                Group group = groups.get(key);
+                if (group == null) {
+                    group = new Group();
+                    groups.put(key, group);
+                }
+                if ((p.flags[i] & THEIRS) != 0) {
+                    group.theirs.add(i);
+                } else {
+                    group.ours.add(i);
+                }
+            }
+            for (Group group : groups.values()) {
+                match(group);
+                if (report.length() >= REPORT_CHUNK_CHARS) {
+                    flushReport();
+                }
+            }
+            flushReport();
+            result.add(matched, mismatched, missingOurs, missingTheirs);
+        }
+
+        private void match(Group group) {
+            int ourCount = group.ours.size();
+            int theirCount = group.theirs.size();
+            if (ourCount == 1 && theirCount == 1) {
+                pair(group.ours.get(0), group.theirs.get(0));
+                return;
+            }
+            if (theirCount == 0 || ourCount == 0) {
+                for (int i = 0; i < ourCount; i++) {
+                    missingTheirs(group.ours.get(i));
+                }
+                for (int j = 0; j < theirCount; j++) {
+                    missingOurs(group.theirs.get(j));
+                }
+                return;
+            }
+            int[] ours = sortByAmount(group.ours.toArray());
+            int[] theirs = sortByAmount(group.theirs.toArray());
+            // Walk both sides in volume order, pairing everything within tolerance
+            boolean[] ourPaired = new boolean[ourCount];
+            boolean[] theirPaired = new boolean[theirCount];
+            int i = 0;
+            int j = 0;
+            while (i < ourCount && j < theirCount) {
+                if (agrees(ours[i], theirs[j])) {
+                    matched++;
+                    ourPaired[i++] = true;
+                    theirPaired[j++] = true;
+                } else if (compareAmounts(ours[i], theirs[j]) < 0) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            // The rest pair up as mismatches, nearest volumes together; the surplus is missing
+            int[] ourLeft = unpaired(ours, ourPaired);
+            int[] theirLeft = unpaired(theirs, theirPaired);
+            i = 0;
+            j = 0;
+            while (i < ourLeft.length && j < theirLeft.length) {
+                int ourSurplus = (ourLeft.length - i) - (theirLeft.length - j);
+                if (ourSurplus > 0 && i + 1 < ourLeft.length
+                        && distance(ourLeft[i + 1], theirLeft[j]) < distance(ourLeft[i], theirLeft[j])) {
+                    missingTheirs(ourLeft[i++]);
+                } else if (ourSurplus < 0 && j + 1 < theirLeft.length
+                        && distance(ourLeft[i], theirLeft[j + 1]) < distance(ourLeft[i], theirLeft[j])) {
+                    missingOurs(theirLeft[j++]);
+                } else {
+                    pair(ourLeft[i++], theirLeft[j++]);
+                }
+            }
+            for (; i < ourLeft.length; i++) {
+                missingTheirs(ourLeft[i]);
+            }
+            for (; j < theirLeft.length; j++) {
+                missingOurs(theirLeft[j]);
+            }
+        }
+
+        private int[] unpaired(int[] records, boolean[] paired) {
+            int count = 0;
+            for (int i = 0; i < records.length; i++) {
+                if (!paired[i]) {
+                    records[count++] = records[i];
+                }
+            }
+            return Arrays.copyOf(records, count);
+        }
+
+        private long distance(int our, int their) {
+            return Math.abs(partition.volumes[our] - partition.volumes[their]);
+        }
+
+        private void missingTheirs(int our) {
+            missingTheirs++;
+            writeBreak(Status.MISSING_THEIRS, our, -1);
+        }
+
+        private void missingOurs(int their) {
+            missingOurs++;
+            writeBreak(Status.MISSING_OURS, -1, their);
+        }
+
+        private void pair(int our, int their) {
+            if (agrees(our, their)) {
+                matched++;
+            } else {
+                mismatched++;
+                writeBreak(Status.MISMATCHED, our, their);
+            }
+        }
+
+        private boolean agrees(int our, int their) {
+            return Math.abs(partition.volumes[our] - partition.volumes[their]) <= volumeTolerance
+                    && Math.abs(partition.prices[our] - partition.prices[their]) <= priceTolerance;
+        }
+
+        private int compareAmounts(int a, int b) {
+            int byVolume = Long.compare(partition.volumes[a], partition.volumes[b]);
+            return byVolume != 0 ? byVolume : Long.compare(partition.prices[a], partition.prices[b]);
+        }
+
+        // Groups are small, so an insertion sort of record indexes
+        private int[] sortByAmount(int[] records) {
+            for (int i = 1; i < records.length; i++) {
+                int record = records[i];
+                int j = i - 1;
+                while (j >= 0 && compareAmounts(records[j], record) > 0) {
+                    records[j + 1] = records[j];
+                    j--;
+                }
+                records[j + 1] = record;
+            }
+            return records;
+        }
+
+        private void writeBreak(Status status, int our, int their) {
+            Partition p = partition;
+            int record = our >= 0 ? our : their;
+            report.append(status).append(',').append(TradeDates.format(p.days[record])).append(',')
+                    .append(CsvTradeWriter.quote(p.counterparties[record])).append(',')
+                    .append(CsvTradeWriter.quote(p.commodities[record])).append(',')
+                    .append((p.flags[record] & SELL) != 0 ? "SELL" : "BUY").append(',');
+            if (our >= 0) {
+                report.append(p.tradeIds[our]).append(',');
+                FixedPoint.append(report, p.volumes[our]).append(',');
+                FixedPoint.append(report, p.prices[our]);
+            } else {
+                report.append(",,");
+            }
+            report.append(',');
+            if (their >= 0) {
+                FixedPoint.append(report, p.volumes[their]).append(',');
+                FixedPoint.append(report, p.prices[their]);
+            } else {
+                report.append(',');
+            }
+            report.append('\n');
+        }
+
+        private void flushReport() throws IOException {
+            if (report.length() == 0) {
+                return;
+            }
+            synchronized (writer) {
+                writer.append(report);
+            }
+            report.setLength(0);
+        }
+    }
+
+    private static class Group {
+        final IntList ours = new IntList(2);
+        final IntList theirs = new IntList(2);
+    }
+
+    private static final class Key {
+        private final int day;
+        private final int side;
+        private final String counterparty;
+        private final String commodity;
+        private final int hash;
+
+        Key(int day, int side, String counterparty, String commodity) {
+            this.day = day;
+            this.side = side;
+            this.counterparty = counterparty;
+            this.commodity = commodity;
+            this.hash = TradeReconciler.hash(day, side, counterparty, commodity);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return day == key.day && side == key.side && counterparty.equals(key.counterparty)
+                    && commodity.equals(key.commodity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage behind {@link TradeService}. {@link TradeDAO} keeps trades in SQL Server;
+ * {@link JournalTradeStore} keeps them in a local memory-mapped journal.
+ */
+public interface TradeRepository {
+    int DEFAULT_BATCH_SIZE = Integer.getInteger("trading.batch.size", 1000);
+    int DEFAULT_PAGE_SIZE = Integer.getInteger("trading.page.size", 500);
+
+    boolean addTrade(Trade trade) throws SQLException;
+
+    BulkInsertResult addTrades(Iterable<Trade> trades, int chunkSize) throws SQLException;
+
+    default BulkInsertResult addTrades(Iterable<Trade> trades) throws SQLException {
+        return addTrades(trades, DEFAULT_BATCH_SIZE);
+    }
+
+    List<Trade> getAllTrades() throws SQLException;
+
+    int countTrades() throws SQLException;
+
+    /**
+     * Keyset pagination: returns up to {@code pageSize} trades with TradeID greater than
+     * {@code afterTradeId}, in TradeID order. Pass 0 for the first page and the last ID
+     * of the previous page after that.
+     */
+    List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException;
+
+    default int forEachTrade(TradeHandler handler) throws SQLException {
+        return forEachTrade(handler, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Streams every trade in TradeID order, one keyset page at a time. Only one page is held
+     * in memory, so a slow handler never pins a connection or the whole table.
+     * Returns the number of trades handed to the handler.
+     */
+    default int forEachTrade(TradeHandler handler, int pageSize) throws SQLException {
+        int visited = 0;
+        int afterTradeId = 0;
+        while (true) {
+            List<Trade> page = getTradesPage(afterTradeId, pageSize);
+            for (Trade trade : page) {
+                visited++;
+                if (!handler.handle(trade)) {
+                    return visited;
+                }
+            }
+            if (page.size() < pageSize) {
+                return visited;
+            }
+            afterTradeId = page.get(page.size() - 1).getTradeId();
+        }
+    }
+
+    /**
+     * Streams every trade in TradeID order for bulk readers such as exports, which consume
+     * rows as fast as they arrive. Implementations may hold one cursor open for the whole
+     * scan and may reuse a single Trade instance for every row, so the handler must not
+     * keep the trades it is given.
+     */
+    default int scanTrades(TradeHandler handler) throws SQLException {
+        return forEachTrade(handler);
+    }
+
+    boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException;
+
+    boolean deleteTrade(int tradeId) throws SQLException;
+
+    /**
+     * Compare-and-set update in one round trip: applies the new price and volume only if the
+     * stored trade is still at {@code expectedVersion}, and increments its version. Returns
+     * the states before and after, or null if the trade is gone or has a different version.
+     */
+    TradeUpdate updateTradeIfVersion(int tradeId, int expectedVersion, double newPrice, double newVolume)
+            throws SQLException;
+
+    /**
+     * Compare-and-set delete in one round trip. Returns the deleted trade, or null if the
+     * trade is gone or has a different version.
+     */
+    Trade deleteTradeIfVersion(int tradeId, int expectedVersion) throws SQLException;
+
+    // searchColumn is "Counterparty" or "Commodity"; matching is a substring match
+    List<Trade> searchTrades(String searchColumn, String searchValue) throws SQLException;
+
+    // Returns the trades matching every criterion of the query, in its sort order and up to its limit
+    List<Trade> findTrades(TradeQuery query) throws SQLException;
+
+    Trade getTradeById(int tradeId) throws SQLException;
+
+    // Returns the trades that exist among the given IDs, in TradeID order
+    List<Trade> getTradesByIds(int[] tradeIds) throws SQLException;
+}
@@ -0,0 +1,222 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory, case-insensitive substring index over trade counterparties and commodities.
+ *
+ * Both columns have few distinct values compared to the number of trades, so each
+ * distinct value is indexed once: trigrams map to the values containing them, and each
+ * value maps to a sorted posting list of trade IDs. A query intersects the trigram lists
+ * of the search term, confirms each candidate value with contains(), and unions the
+ * postings of the values that match.
+ */
+public class TradeSearchIndex {
+    public static final String COUNTERPARTY = "Counterparty";
+    public static final String COMMODITY = "Commodity";
+
+    private final FieldIndex counterparties = new FieldIndex();
+    private final FieldIndex commodities = new FieldIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    // Replaces the index contents with a full scan of the table
+    public int rebuild(TradeRepository tradeRepository) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            counterparties.clear();
+            commodities.clear();
+            int count = tradeRepository.forEachTrade(trade -> {
+                addUnlocked(trade);
+                return true;
+            });
+            loaded = true;
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void add(Trade trade) {
+        lock.writeLock().lock();
+        try {
+            addUnlocked(trade);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int tradeId) {
+        lock.writeLock().lock();
+        try {
+            counterparties.remove(tradeId);
+            commodities.remove(tradeId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the IDs of trades whose column contains {@code term}, ignoring case, in
+     * ascending order.
+     */
+    public int[] search(String column, String term) {
+        FieldIndex field = fieldFor(column);
+        lock.readLock().lock();
+        try {
+            return field.search(term.trim().toLowerCase(Locale.ROOT));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return counterparties.tradeToValue.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addUnlocked(Trade trade) {
+        counterparties.add(trade.getTradeId(), trade.getCounterparty());
+        commodities.add(trade.getTradeId(), trade.getCommodity());
+    }
+
+    private FieldIndex fieldFor(String column) {
+        if (COUNTERPARTY.equals(column)) {
+            return counterparties;
+        }
+        if (COMMODITY.equals(column)) {
+            return commodities;
+        }
+        throw new IllegalArgumentException("Unsupported search column: " + column);
+    }
+
+    private static class FieldIndex {
+        private final Map<String, Integer> valueIds = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<IntList> postings = new ArrayList<>();
+        private final Map<String, IntList> trigrams = new HashMap<>();
+        private final IntIntMap tradeToValue = new IntIntMap(1024, -1);
+
+        void add(int tradeId, String value) {
+            String normalized = value.toLowerCase(Locale.ROOT);
+            Integer valueId = valueIds.get(normalized);
+            if (valueId == null) {
+                valueId = values.size();
+                valueIds.put(normalized, valueId);
+                values.add(normalized);
+                postings.add(new IntList());
+                for (int i = 0; i + 3 <= normalized.length(); i++) {
+                    IntList ids = trigrams.computeIfAbsent(normalized.substring(i, i + 3), k -> new IntList());
+                    // Value IDs are handed out in increasing order, so these lists stay sorted
+                    ids.addSorted(valueId);
+                }
+            }
+
+            int previous = tradeToValue.get(tradeId);
+            if (previous == valueId) {
+                return;
+            }
+            if (previous >= 0) {
+                postings.get(previous).removeSorted(tradeId);
+            }
+            tradeToValue.put(tradeId, valueId);
+            postings.get(valueId).addSorted(tradeId);
+        }
+
+        void remove(int tradeId) {
+            int valueId = tradeToValue.remove(tradeId);
+            if (valueId >= 0) {
+                postings.get(valueId).removeSorted(tradeId);
+            }
+        }
+
+        int[] search(String term) {
+            IntList matchingValues = new IntList();
+            if (term.length() < 3) {
+                for (int v = 0; v < values.size(); v++) {
+                    if (values.get(v).contains(term)) {
+                        matchingValues.add(v);
+                    }
+                }
+            } else {
+                IntList candidates = null;
+                for (int i = 0; i + 3 <= term.length(); i++) {
+                    IntList ids = trigrams.get(term.substring(i, i + 3));
+                    if (ids == null) {
+                        return new int[0];
+                    }
+                    candidates = candidates == null ? ids : intersect(candidates, ids);
+                    if (candidates.isEmpty()) {
+                        return new int[0];
+                    }
+                }
+                for (int i = 0; i < candidates.size(); i++) {
+                    int v = candidates.get(i);
+                    // Trigrams can all be present without being contiguous
+                    if (values.get(v).contains(term)) {
+                        matchingValues.add(v);
+                    }
+                }
+            }
+
+            int total = 0;
+            for (int i = 0; i < matchingValues.size(); i++) {
+                total += postings.get(matchingValues.get(i)).size();
+            }
+            int[] tradeIds = new int[total];
+            int offset = 0;
+            for (int i = 0; i < matchingValues.size(); i++) {
+                IntList posting = postings.get(matchingValues.get(i));
+                for (int j = 0; j < posting.size(); j++) {
+                    tradeIds[offset++] = posting.get(j);
+                }
+            }
+            if (matchingValues.size() > 1) {
+                Arrays.sort(tradeIds);
+            }
+            return tradeIds;
+        }
+
+        void clear() {
+            valueIds.clear();
+            values.clear();
+            postings.clear();
+            trigrams.clear();
+            tradeToValue.clear();
+        }
+
+        private static IntList intersect(IntList a, IntList b) {
+            IntList result = new IntList(Math.min(a.size(), b.size()));
+            int i = 0;
+            int j = 0;
+            while (i < a.size() && j < b.size()) {
+                int x = a.get(i);
+                int y = b.get(j);
+                if (x == y) {
+                    result.add(x);
+                    i++;
+                    j++;
+                } else if (x < y) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
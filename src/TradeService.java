@@ -1,75 +1,557 @@
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class TradeService {
-    private final TradeDAO tradeDAO;
+    private static final LatencyRecorder CREATE = TradeMetrics.recorder("service.createTrade");
+    private static final LatencyRecorder CREATE_ASYNC = TradeMetrics.recorder("service.createTradeAsync");
+    private static final LatencyRecorder CREATE_BULK = TradeMetrics.recorder("service.createTrades");
+    private static final LatencyRecorder GET_ALL = TradeMetrics.recorder("service.getAllTrades");
+    private static final LatencyRecorder FOR_EACH = TradeMetrics.recorder("service.forEachTrade");
+    private static final LatencyRecorder SCAN = TradeMetrics.recorder("service.scanTrades");
+    private static final LatencyRecorder GET_PAGE = TradeMetrics.recorder("service.getTradesPage");
+    private static final LatencyRecorder COUNT = TradeMetrics.recorder("service.countTrades");
+    private static final LatencyRecorder UPDATE = TradeMetrics.recorder("service.updateTrade");
+    private static final LatencyRecorder DELETE = TradeMetrics.recorder("service.deleteTrade");
+    private static final LatencyRecorder SEARCH = TradeMetrics.recorder("service.searchTrades");
+    private static final LatencyRecorder FIND = TradeMetrics.recorder("service.findTrades");
+    private static final LatencyRecorder GET_BY_ID = TradeMetrics.recorder("service.getTradeById");
+    private static final LatencyRecorder CONFLICTS = TradeMetrics.recorder("service.versionConflict");
 
-    public TradeService(TradeDAO tradeDAO) {
-        this.tradeDAO = tradeDAO;
+    // Attempts before an unconditional update or delete gives up on a heavily contended trade
+    private static final int MAX_WRITE_ATTEMPTS = Integer.getInteger("trading.write.maxAttempts", 10);
+
+    private final TradeRepository tradeRepository;
+    private final TradeCache tradeCache;
+    private final TradeSearchIndex searchIndex;
+    private final PositionEngine positionEngine;
+    private final MarkToMarketEngine markToMarket = new MarkToMarketEngine();
+    private final LotMatchingEngine lotMatching = LotMatchingEngine.fromSystemProperties();
+    private final TradeEventBus eventBus = new TradeEventBus();
+    private volatile WriteBehindWriter writeBehind;
+
+    public TradeService(TradeRepository tradeRepository) {
+        this(tradeRepository, new TradeCache(), new TradeSearchIndex(), new PositionEngine());
+    }
+
+    public TradeService(TradeRepository tradeRepository, TradeCache tradeCache, TradeSearchIndex searchIndex,
+                        PositionEngine positionEngine) {
+        this.tradeRepository = tradeRepository;
+        this.tradeCache = tradeCache;
+        this.searchIndex = searchIndex;
+        this.positionEngine = positionEngine;
+    }
+
+    // Loads the in-memory search index and positions; until then searches fall back to SQL LIKE
+    public void initialize() throws SQLException {
+        long start = System.nanoTime();
+        int indexed = searchIndex.rebuild(tradeRepository);
+        System.out.printf("Search index loaded: %d trades in %d ms%n", indexed, (System.nanoTime() - start) / 1_000_000);
+        rebuildPositions();
+    }
+
+    public int rebuildPositions() throws SQLException {
+        long start = System.nanoTime();
+        int aggregated = positionEngine.rebuild(tradeRepository);
+        markToMarket.rebuild(tradeRepository);
+        lotMatching.rebuild(tradeRepository);
+        System.out.printf("Positions rebuilt: %d trades in %d ms%n", aggregated, (System.nanoTime() - start) / 1_000_000);
+        return aggregated;
     }
 
     public boolean createTrade(String tradeDate, String counterparty, String commodity,
                                double volume, double price, String tradeType) throws SQLException {
-        // Validate input
-        if (!isValidInput(tradeDate, counterparty, commodity, volume, price, tradeType)) {
-            return false;
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            // Validate input
+            if (!isValidInput(tradeDate, counterparty, commodity, volume, price, tradeType)) {
+                rows = 0;
+                return false;
+            }
+
+            Trade trade = new Trade(tradeDate, counterparty, commodity, volume, price, tradeType.toUpperCase());
+            if (!tradeRepository.addTrade(trade)) {
+                rows = 0;
+                return false;
+            }
+            afterTradeCreated(trade);
+            rows = 1;
+            return true;
+        } finally {
+            CREATE.record(start, rows);
+        }
+    }
+
+    /**
+     * Starts asynchronous capture: createTradeAsync hands trades to a bounded buffer that a
+     * writer thread flushes in group-committed batches.
+     */
+    public synchronized void startAsyncCapture(int capacity, int maxBatchSize, long lingerMs) {
+        if (writeBehind == null) {
+            writeBehind = new WriteBehindWriter(tradeRepository, capacity, maxBatchSize, lingerMs, this::afterTradeCreated);
+        }
+    }
+
+    /**
+     * Validates the trade and queues it for capture. The future completes with the assigned
+     * TradeID once its group is committed. Blocks while the capture buffer is full. Without
+     * async capture started, the trade is inserted synchronously.
+     */
+    public CompletableFuture<Integer> createTradeAsync(String tradeDate, String counterparty, String commodity,
+                                                       double volume, double price, String tradeType) {
+        long start = System.nanoTime();
+        try {
+            return submitTrade(tradeDate, counterparty, commodity, volume, price, tradeType);
+        } finally {
+            // Measures the hand-off, including any wait for buffer space, not the commit
+            CREATE_ASYNC.record(start, 1);
         }
+    }
 
+    private CompletableFuture<Integer> submitTrade(String tradeDate, String counterparty, String commodity,
+                                                   double volume, double price, String tradeType) {
+        String error = validationError(tradeDate, counterparty, commodity, volume, price, tradeType);
+        if (error != null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(error));
+        }
         Trade trade = new Trade(tradeDate, counterparty, commodity, volume, price, tradeType.toUpperCase());
-        return tradeDAO.addTrade(trade);
+
+        WriteBehindWriter writer = writeBehind;
+        try {
+            if (writer != null) {
+                return writer.submit(trade);
+            }
+            if (!tradeRepository.addTrade(trade)) {
+                return CompletableFuture.failedFuture(new SQLException("Trade was not inserted"));
+            }
+            afterTradeCreated(trade);
+            return CompletableFuture.completedFuture(trade.getTradeId());
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public WriteBehindWriter getWriteBehind() {
+        return writeBehind;
+    }
+
+    // Flushes any trades still waiting for asynchronous capture, then lets event subscribers catch up
+    public synchronized void shutdown() {
+        if (writeBehind != null) {
+            writeBehind.close();
+            writeBehind = null;
+        }
+        eventBus.close();
+    }
+
+    private void afterTradeCreated(Trade trade) {
+        positionEngine.onTradeCreated(trade);
+        markToMarket.onTradeCreated(trade);
+        lotMatching.onTradeCreated(trade);
+        if (trade.getTradeId() > 0) {
+            tradeCache.put(trade);
+            searchIndex.add(trade);
+        }
+        eventBus.publishCreated(trade);
     }
 
+    /**
+     * Validates and bulk-loads trades. Rows that fail validation or are rejected by the
+     * database are reported in the result; the remaining rows are still committed.
+     */
+    public BulkInsertResult createTrades(Iterable<Trade> trades) throws SQLException {
+        return createTrades(trades, TradeRepository.DEFAULT_BATCH_SIZE);
+    }
+
+    public BulkInsertResult createTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            BulkInsertResult result = loadTrades(trades, chunkSize);
+            rows = result.getInsertedCount();
+            return result;
+        } finally {
+            CREATE_BULK.record(start, rows);
+        }
+    }
+
+    private BulkInsertResult loadTrades(Iterable<Trade> trades, int chunkSize) throws SQLException {
+        List<Trade> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        List<BulkInsertResult.Failure> rejected = new ArrayList<>();
+
+        int index = 0;
+        for (Trade trade : trades) {
+            String error = validationError(trade.getTradeDate(), trade.getCounterparty(), trade.getCommodity(),
+                    trade.getVolume(), trade.getPrice(), trade.getTradeType());
+            if (error == null) {
+                trade.setTradeType(trade.getTradeType().toUpperCase());
+                valid.add(trade);
+                validIndexes.add(index);
+            } else {
+                rejected.add(new BulkInsertResult.Failure(index, trade, error));
+            }
+            index++;
+        }
+
+        BulkInsertResult loaded = tradeRepository.addTrades(valid, chunkSize);
+        Set<Trade> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BulkInsertResult.Failure failure : loaded.getFailures()) {
+            failed.add(failure.getTrade());
+        }
+        for (Trade trade : valid) {
+            if (!failed.contains(trade)) {
+                afterTradeCreated(trade);
+            }
+        }
+
+        // Re-key database failures to the caller's row numbers
+        BulkInsertResult result = new BulkInsertResult();
+        result.addInserted(loaded.getInsertedCount());
+        result.addChunks(loaded.getChunkCount());
+        for (BulkInsertResult.Failure failure : rejected) {
+            result.addFailure(failure.getIndex(), failure.getTrade(), failure.getReason());
+        }
+        for (BulkInsertResult.Failure failure : loaded.getFailures()) {
+            result.addFailure(validIndexes.get(failure.getIndex()), failure.getTrade(), failure.getReason());
+        }
+        return result;
+    }
+
+    // Materializes the whole table; prefer forEachTrade or getTradesPage for bulk work
     public List<Trade> getAllTrades() throws SQLException {
-        return tradeDAO.getAllTrades();
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = tradeRepository.getAllTrades();
+            rows = trades.size();
+            return trades;
+        } finally {
+            GET_ALL.record(start, rows);
+        }
+    }
+
+    public int forEachTrade(TradeHandler handler) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            rows = tradeRepository.forEachTrade(handler);
+            return rows;
+        } finally {
+            FOR_EACH.record(start, rows);
+        }
+    }
+
+    // Bulk scan for exports; the handler must not keep the trades (see TradeRepository.scanTrades)
+    public int scanTrades(TradeHandler handler) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            rows = tradeRepository.scanTrades(handler);
+            return rows;
+        } finally {
+            SCAN.record(start, rows);
+        }
+    }
+
+    public List<Trade> getTradesPage(int afterTradeId, int pageSize) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = tradeRepository.getTradesPage(afterTradeId, pageSize);
+            rows = trades.size();
+            return trades;
+        } finally {
+            GET_PAGE.record(start, rows);
+        }
+    }
+
+    public int countTrades() throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            int count = tradeRepository.countTrades();
+            rows = 1;
+            return count;
+        } finally {
+            COUNT.record(start, rows);
+        }
     }
 
+    /**
+     * Sets the price and volume on whatever the current version of the trade is. Each attempt
+     * is a single compare-and-set statement; if another writer got in first, the trade is
+     * re-read and the update retried. Returns false if the trade does not exist.
+     */
     public boolean updateTrade(int tradeId, double newPrice, double newVolume) throws SQLException {
-        if (newPrice <= 0 || newVolume <= 0) {
-            System.out.println("Price and volume must be positive values.");
+        String error = amountError(newVolume, newPrice);
+        if (error != null) {
+            System.out.println(error);
             return false;
         }
-        return tradeDAO.updateTrade(tradeId, newPrice, newVolume);
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade current = getTradeById(tradeId);
+            for (int attempt = 1; current != null; attempt++) {
+                TradeUpdate update = tradeRepository.updateTradeIfVersion(tradeId, current.getVersion(), newPrice, newVolume);
+                if (update != null) {
+                    afterTradeUpdated(update);
+                    rows = 1;
+                    return true;
+                }
+                current = reloadAfterConflict(tradeId);
+                if (current != null && attempt == MAX_WRITE_ATTEMPTS) {
+                    throw new TradeConflictException(current, current.getVersion());
+                }
+            }
+            rows = 0;
+            return false;
+        } finally {
+            UPDATE.record(start, rows);
+        }
     }
 
+    /**
+     * Updates the trade only if it is still at {@code expectedVersion}, in one round trip.
+     * Returns the updated trade, or null if it no longer exists. Throws
+     * TradeConflictException, carrying the current state, if someone else changed it first.
+     */
+    public Trade updateTrade(int tradeId, int expectedVersion, double newPrice, double newVolume) throws SQLException {
+        String error = amountError(newVolume, newPrice);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            TradeUpdate update = tradeRepository.updateTradeIfVersion(tradeId, expectedVersion, newPrice, newVolume);
+            if (update == null) {
+                Trade current = reloadAfterConflict(tradeId);
+                if (current == null) {
+                    rows = 0;
+                    return null;
+                }
+                throw new TradeConflictException(current, expectedVersion);
+            }
+            afterTradeUpdated(update);
+            rows = 1;
+            return update.getAfter();
+        } finally {
+            UPDATE.record(start, rows);
+        }
+    }
+
+    // Deletes the current version of the trade, retrying if it is changed concurrently
     public boolean deleteTrade(int tradeId) throws SQLException {
-        return tradeDAO.deleteTrade(tradeId);
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade current = getTradeById(tradeId);
+            for (int attempt = 1; current != null; attempt++) {
+                Trade deleted = tradeRepository.deleteTradeIfVersion(tradeId, current.getVersion());
+                if (deleted != null) {
+                    afterTradeDeleted(deleted);
+                    rows = 1;
+                    return true;
+                }
+                current = reloadAfterConflict(tradeId);
+                if (current != null && attempt == MAX_WRITE_ATTEMPTS) {
+                    throw new TradeConflictException(current, current.getVersion());
+                }
+            }
+            rows = 0;
+            return false;
+        } finally {
+            DELETE.record(start, rows);
+        }
+    }
+
+    /**
+     * Deletes the trade only if it is still at {@code expectedVersion}. Returns false if it
+     * no longer exists; throws TradeConflictException if it was changed since it was read.
+     */
+    public boolean deleteTrade(int tradeId, int expectedVersion) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade deleted = tradeRepository.deleteTradeIfVersion(tradeId, expectedVersion);
+            if (deleted == null) {
+                Trade current = reloadAfterConflict(tradeId);
+                if (current == null) {
+                    rows = 0;
+                    return false;
+                }
+                throw new TradeConflictException(current, expectedVersion);
+            }
+            afterTradeDeleted(deleted);
+            rows = 1;
+            return true;
+        } finally {
+            DELETE.record(start, rows);
+        }
+    }
+
+    // The cached copy may be what was stale, so the retry reads from the repository
+    private Trade reloadAfterConflict(int tradeId) throws SQLException {
+        long start = System.nanoTime();
+        tradeCache.invalidate(tradeId);
+        Trade current = tradeRepository.getTradeById(tradeId);
+        CONFLICTS.record(start, current == null ? 0 : 1);
+        return current;
+    }
+
+    // The before/after pair comes from the same atomic statement, so the position delta is exact
+    private void afterTradeUpdated(TradeUpdate update) {
+        tradeCache.invalidate(update.getAfter().getTradeId());
+        positionEngine.onTradeUpdated(update.getBefore(), update.getAfter());
+        markToMarket.onTradeUpdated(update.getBefore(), update.getAfter());
+        lotMatching.onTradeUpdated(update.getBefore(), update.getAfter());
+        eventBus.publishUpdated(update.getBefore(), update.getAfter());
+    }
+
+    private void afterTradeDeleted(Trade deleted) {
+        tradeCache.invalidate(deleted.getTradeId());
+        searchIndex.remove(deleted.getTradeId());
+        positionEngine.onTradeDeleted(deleted);
+        markToMarket.onTradeDeleted(deleted);
+        lotMatching.onTradeDeleted(deleted);
+        eventBus.publishDeleted(deleted);
     }
 
     public List<Trade> searchTrades(String searchType, String searchValue) throws SQLException {
-        String column = searchType.equals("1") ? "Counterparty" : "Commodity";
-        return tradeDAO.searchTrades(column, searchValue);
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            String column = searchType.equals("1") ? TradeSearchIndex.COUNTERPARTY : TradeSearchIndex.COMMODITY;
+            List<Trade> trades = searchIndex.isLoaded()
+                    ? tradeRepository.getTradesByIds(searchIndex.search(column, searchValue))
+                    : tradeRepository.searchTrades(column, searchValue);
+            rows = trades.size();
+            return trades;
+        } finally {
+            SEARCH.record(start, rows);
+        }
+    }
+
+    // Multi-criteria filter; runs in the repository so the database can use its indexes
+    public List<Trade> findTrades(TradeQuery query) throws SQLException {
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            List<Trade> trades = tradeRepository.findTrades(query);
+            rows = trades.size();
+            return trades;
+        } finally {
+            FIND.record(start, rows);
+        }
     }
 
+    // Served from the trade cache when possible; the caller gets its own copy to modify
     public Trade getTradeById(int tradeId) throws SQLException {
-        return tradeDAO.getTradeById(tradeId);
+        long start = System.nanoTime();
+        int rows = LatencyRecorder.FAILED;
+        try {
+            Trade trade = tradeCache.getOrLoad(tradeId, tradeRepository::getTradeById);
+            rows = trade == null ? 0 : 1;
+            return trade;
+        } finally {
+            GET_BY_ID.record(start, rows);
+        }
+    }
+
+    public TradeCache getTradeCache() {
+        return tradeCache;
+    }
+
+    public TradeSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // Valuation of the book against live prices; feed it ticks through a PriceFeed
+    public MarkToMarketEngine getMarkToMarket() {
+        return markToMarket;
+    }
+
+    // Realized P&L and open lots from matching BUYs against SELLs
+    public LotMatchingEngine getLotMatching() {
+        return lotMatching;
+    }
+
+    /**
+     * Change feed of every trade created, updated or deleted through this service. The cache,
+     * search index and positions above are updated synchronously before each event is
+     * published; other consumers subscribe here instead of polling getAllTrades().
+     */
+    public TradeEventBus getEventBus() {
+        return eventBus;
+    }
+
+    public Position getPosition(PositionEngine.Dimension dimension, String key) {
+        return positionEngine.getPosition(dimension, key);
+    }
+
+    public List<Position> getPositions(PositionEngine.Dimension dimension) {
+        return positionEngine.getPositions(dimension);
     }
 
     private boolean isValidInput(String tradeDate, String counterparty, String commodity,
                                  double volume, double price, String tradeType) {
-        if (tradeDate == null || tradeDate.trim().isEmpty()) {
-            System.out.println("Trade date cannot be empty.");
+        String error = validationError(tradeDate, counterparty, commodity, volume, price, tradeType);
+        if (error != null) {
+            System.out.println(error);
             return false;
         }
+        return true;
+    }
+
+    // Returns the first rule the input breaks, or null if it is a valid trade
+    static String validationError(String tradeDate, String counterparty, String commodity,
+                                  double volume, double price, String tradeType) {
+        if (tradeDate == null || tradeDate.trim().isEmpty()) {
+            return "Trade date cannot be empty.";
+        }
+        if (!InputValidator.isValidDate(tradeDate)) {
+            return "Trade date must be a valid YYYY-MM-DD date.";
+        }
         if (counterparty == null || counterparty.trim().isEmpty()) {
-            System.out.println("Counterparty cannot be empty.");
-            return false;
+            return "Counterparty cannot be empty.";
         }
         if (commodity == null || commodity.trim().isEmpty()) {
-            System.out.println("Commodity cannot be empty.");
-            return false;
+            return "Commodity cannot be empty.";
         }
-        if (volume <= 0) {
-            System.out.println("Volume must be positive.");
-            return false;
-        }
-        if (price <= 0) {
-            System.out.println("Price must be positive.");
-            return false;
+        String amountError = amountError(volume, price);
+        if (amountError != null) {
+            return amountError;
         }
         if (tradeType == null || (!tradeType.equalsIgnoreCase("BUY") && !tradeType.equalsIgnoreCase("SELL"))) {
-            System.out.println("Trade type must be BUY or SELL.");
-            return false;
+            return "Trade type must be BUY or SELL.";
         }
-        return true;
+        return null;
+    }
+
+    // Shared by creates and updates; null if volume and price can be stored
+    static String amountError(double volume, double price) {
+        // Checked in hundredths, as stored: 0.004 rounds to zero and is not positive
+        long volumeUnits = FixedPoint.toUnits(volume);
+        long priceUnits = FixedPoint.toUnits(price);
+        if (volumeUnits <= 0) {
+            return "Volume must be positive.";
+        }
+        if (priceUnits <= 0) {
+            return "Price must be positive.";
+        }
+        if (!FixedPoint.fitsDecimal(volumeUnits) || !FixedPoint.fitsDecimal(priceUnits)) {
+            return "Volume and price must be below 100,000,000.";
+        }
+        return null;
     }
 }
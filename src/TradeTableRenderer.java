@@ -0,0 +1,254 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Scanner;
+
+/**
+ * Writes trades as an aligned text table. Each row is built in one reused StringBuilder,
+ * with numbers formatted by hand, and goes to a 64 KB buffered writer. A long listing
+ * therefore costs one write per buffer, not a format-string parse, several Strings and a
+ * stdout flush per trade.
+ *
+ * On a console the table pauses after every page. At the prompt the reader can show the
+ * next page, show everything, stop, or send the rest of the listing to a file. When
+ * output is piped (no console) it runs straight through.
+ */
+public class TradeTableRenderer implements TradeHandler {
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String SEPARATOR = " | ";
+
+    private static final int ID_WIDTH = 8;
+    private static final int DATE_WIDTH = 10;
+    private static final int COUNTERPARTY_WIDTH = 24;
+    private static final int COMMODITY_WIDTH = 14;
+    private static final int TYPE_WIDTH = 4;
+    private static final int VOLUME_WIDTH = 14;
+    private static final int PRICE_WIDTH = 12;
+
+    private final Writer console;
+    private final int pageSize;
+    private final Scanner pager;
+    private final StringBuilder line = new StringBuilder(128);
+    private char[] chars = new char[128];
+
+    // The console, or a file once the reader has redirected the rest of the listing
+    private Writer out;
+    private Path file;
+    private int rowCount;
+    private int fileRowCount;
+    private int rowsOnPage;
+    private boolean paging;
+
+    // No paging: every row goes straight to the writer
+    public TradeTableRenderer(Writer out) {
+        this(out, 0, null);
+    }
+
+    // Pauses every pageSize rows and reads the reader's choice from pager; 0 turns paging off
+    public TradeTableRenderer(Writer out, int pageSize, Scanner pager) {
+        this.console = out;
+        this.out = out;
+        this.pageSize = pageSize;
+        this.pager = pager;
+        this.paging = pager != null && pageSize > 0;
+    }
+
+    /**
+     * A renderer on standard output. Pages are -Dtrading.table.pageSize rows (default 40,
+     * 0 for none). Paging is off when there is no console, e.g. when output is piped.
+     */
+    public static TradeTableRenderer forConsole(Scanner scanner) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, consoleCharset()), BUFFER_SIZE);
+        int pageSize = System.console() != null ? Integer.getInteger("trading.table.pageSize", 40) : 0;
+        return new TradeTableRenderer(out, pageSize, scanner);
+    }
+
+    // The encoding System.out itself uses
+    private static Charset consoleCharset() {
+        String name = System.getProperty("sun.stdout.encoding");
+        return name != null && Charset.isSupported(name) ? Charset.forName(name) : Charset.defaultCharset();
+    }
+
+    public void writeHeader() {
+        line.setLength(0);
+        appendRight("ID", ID_WIDTH).append(SEPARATOR);
+        appendLeft("Date", DATE_WIDTH).append(SEPARATOR);
+        appendLeft("Counterparty", COUNTERPARTY_WIDTH).append(SEPARATOR);
+        appendLeft("Commodity", COMMODITY_WIDTH).append(SEPARATOR);
+        appendLeft("Type", TYPE_WIDTH).append(SEPARATOR);
+        appendRight("Volume", VOLUME_WIDTH).append(SEPARATOR);
+        appendRight("Price", PRICE_WIDTH);
+        int width = line.length();
+        line.append(NEWLINE);
+        for (int i = 0; i < width; i++) {
+            line.append('-');
+        }
+        line.append(NEWLINE);
+        writeLine();
+    }
+
+    /**
+     * Writes one row, pausing at the end of a page. Returns false if the reader chose to
+     * stop, so it can be passed straight to forEachTrade.
+     */
+    @Override
+    public boolean handle(Trade trade) {
+        line.setLength(0);
+        appendNumber(trade.getTradeId(), false, ID_WIDTH).append(SEPARATOR);
+        appendLeft(trade.getTradeDate(), DATE_WIDTH).append(SEPARATOR);
+        appendLeft(trade.getCounterparty(), COUNTERPARTY_WIDTH).append(SEPARATOR);
+        appendLeft(trade.getCommodity(), COMMODITY_WIDTH).append(SEPARATOR);
+        appendLeft(trade.getTradeType(), TYPE_WIDTH).append(SEPARATOR);
+        appendNumber(trade.getVolumeUnits(), true, VOLUME_WIDTH).append(SEPARATOR);
+        appendNumber(trade.getPriceUnits(), true, PRICE_WIDTH).append(NEWLINE);
+        writeLine();
+        rowCount++;
+        if (file != null) {
+            fileRowCount++;
+            return true;
+        }
+        if (paging && ++rowsOnPage == pageSize) {
+            rowsOnPage = 0;
+            return nextPage();
+        }
+        return true;
+    }
+
+    public int render(Iterable<Trade> trades) {
+        for (Trade trade : trades) {
+            if (!handle(trade)) {
+                break;
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Flushes the table. If the listing was redirected, closes the file and reports it
+     * on the console.
+     */
+    public void finish() {
+        try {
+            out.flush();
+            if (file != null) {
+                out.close();
+                out = console;
+                console.write("Wrote " + fileRowCount + " trades to " + file.toAbsolutePath() + NEWLINE);
+                console.flush();
+                file = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // Returns false to stop the listing
+    private boolean nextPage() {
+        try {
+            out.write("-- Enter: next page | a: all | f <file>: save the rest | q: stop -- ");
+            out.flush();
+            String choice = pager.hasNextLine() ? pager.nextLine().trim() : "q";
+            if (choice.equalsIgnoreCase("q")) {
+                return false;
+            }
+            if (choice.equalsIgnoreCase("a")) {
+                paging = false;
+            } else if (choice.length() > 2 && (choice.startsWith("f ") || choice.startsWith("F "))) {
+                redirect(Paths.get(choice.substring(2).trim()));
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void redirect(Path target) throws IOException {
+        Writer writer;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(target), StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+        } catch (IOException e) {
+            console.write("Cannot write to " + target + ": " + e.getMessage() + NEWLINE);
+            return;
+        }
+        file = target;
+        out = writer;
+        writeHeader();
+    }
+
+    private void writeLine() {
+        int length = line.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        // Copied out rather than passed as a CharSequence, which Writer.append would turn into a String
+        line.getChars(0, length, chars, 0);
+        try {
+            out.write(chars, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Left-aligned, padded to width; longer text is cut and ends in "..."
+    private StringBuilder appendLeft(String text, int width) {
+        if (text == null) {
+            text = "";
+        }
+        if (text.length() > width) {
+            return line.append(text, 0, width - 3).append("...");
+        }
+        line.append(text);
+        return pad(width - text.length());
+    }
+
+    private StringBuilder appendRight(String text, int width) {
+        pad(width - text.length());
+        return line.append(text);
+    }
+
+    // Right-aligned integer, or fixed-point hundredths with two decimals
+    private StringBuilder appendNumber(long value, boolean hundredths, int width) {
+        long magnitude = Math.abs(value);
+        long whole = hundredths ? magnitude / FixedPoint.SCALE : magnitude;
+        int length = digitCount(whole) + (value < 0 ? 1 : 0) + (hundredths ? 3 : 0);
+        pad(width - length);
+        if (value < 0) {
+            line.append('-');
+        }
+        line.append(whole);
+        if (hundredths) {
+            long fraction = magnitude % FixedPoint.SCALE;
+            line.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        }
+        return line;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private StringBuilder pad(int count) {
+        for (int i = 0; i < count; i++) {
+            line.append(' ');
+        }
+        return line;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Checks the console trade table: column alignment, number formatting, truncation of long
+ * names, and the pager's next page, show all, stop and save-to-file choices.
+ */
+public class TradeTableRendererTest {
+    private static final String NEWLINE = System.lineSeparator();
+
+    public static void main(String[] args) {
+        System.out.println("Testing Trade Table Renderer...");
+        System.out.println("================================");
+
+        Path file = null;
+        try {
+            List<Trade> trades = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                trades.add(new Trade(i, "2024-01-" + (10 + i), "Counterparty " + i, "Crude Oil", 1000 * i, 75.5 + i,
+                        i % 2 == 0 ? "SELL" : "BUY"));
+            }
+
+            // 1. Layout
+            System.out.println("\n1. Testing layout...");
+            StringWriter text = new StringWriter();
+            TradeTableRenderer table = new TradeTableRenderer(text);
+            table.writeHeader();
+            table.handle(new Trade(123456, "2024-01-15", "A Very Long Counterparty Name Ltd", "Natural Gas",
+                    1234567.5, 0.05, "BUY"));
+            table.handle(trades.get(0));
+            table.finish();
+            String[] lines = text.toString().split(NEWLINE);
+            System.out.println(text);
+            check(lines.length == 4, "header, rule and one line per trade");
+            check(lines[2].equals("  123456 | 2024-01-15 | A Very Long Counterpa... | Natural Gas    | BUY  |"
+                    + "     1234567.50 |         0.05"), "columns aligned, long name cut, hundredths kept");
+            check(lines[0].length() == lines[1].length() && lines[1].length() == lines[2].length()
+                    && lines[2].length() == lines[3].length(), "every line is the same width");
+            check(lines[0].indexOf("Volume") + "Volume".length() == lines[2].indexOf("1234567.50") + "1234567.50".length(),
+                    "numbers right-aligned under their headers");
+
+            // 2. Paging
+            System.out.println("\n2. Testing paging...");
+            StringWriter paged = new StringWriter();
+            TradeTableRenderer pager = new TradeTableRenderer(paged, 3, new Scanner("\nq\n"));
+            int shown = pager.render(trades);
+            pager.finish();
+            check(shown == 6 && paged.toString().split("-- Enter", -1).length == 3, "stops when the reader enters q");
+
+            StringWriter all = new StringWriter();
+            TradeTableRenderer showAll = new TradeTableRenderer(all, 3, new Scanner("a\n"));
+            check(showAll.render(trades) == 10 && all.toString().split("-- Enter", -1).length == 2,
+                    "shows everything after a");
+
+            // 3. Save the rest to a file
+            System.out.println("\n3. Testing save to file...");
+            file = Files.createTempFile("trade-table", ".txt");
+            StringWriter screen = new StringWriter();
+            TradeTableRenderer saving = new TradeTableRenderer(screen, 4, new Scanner("f " + file + "\n"));
+            check(saving.render(trades) == 10, "listing continues into the file");
+            saving.finish();
+            List<String> saved = Files.readAllLines(file, StandardCharsets.UTF_8);
+            check(saved.size() == 2 + 6 && saved.get(2).startsWith("       5 | 2024-01-15"),
+                    "file has a header and the remaining six trades");
+            check(screen.toString().contains("Wrote 6 trades to "), "console reports the file");
+
+            System.out.println("\n All tests passed! The trade table renderer is working properly.");
+        } catch (Exception e) {
+            System.err.println(" Trade table renderer test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + description);
+        }
+        System.out.println(" " + description);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Temporary file; nothing else to do
+        }
+    }
+}
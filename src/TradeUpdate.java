@@ -0,0 +1,17 @@
+/**
+ * Result of a successful compare-and-set update: the trade as it was replaced and as it
+ * is now. The difference is exact even with concurrent writers, since nothing else can
+ * have changed the row in between.
+ */
+public class TradeUpdate {
+    private final Trade before;
+    private final Trade after;
+
+    public TradeUpdate(Trade before, Trade after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    public Trade getBefore() { return before; }
+    public Trade getAfter() { return after; }
+}
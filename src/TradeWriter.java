@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base for export writers: trades are encoded into one direct buffer that is written to
+ * the file channel whenever it fills, so memory use does not depend on the number of
+ * trades and nothing is copied through a heap array on the way to disk.
+ */
+public abstract class TradeWriter implements AutoCloseable {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    protected final ByteBuffer buffer;
+    private final FileChannel channel;
+    private long bytesWritten;
+    private long rowCount;
+
+    protected TradeWriter(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public final void write(Trade trade) throws IOException {
+        encode(trade);
+        rowCount++;
+    }
+
+    protected abstract void encode(Trade trade) throws IOException;
+
+    // Called once before the file is closed, to write anything still held back
+    protected void finish() throws IOException {
+    }
+
+    public long getRowCount() { return rowCount; }
+    public long getBytesWritten() { return bytesWritten + buffer.position(); }
+
+    // Makes room for at least {@code bytes} more bytes in the buffer
+    protected void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Record of " + bytes + " bytes does not fit the write buffer");
+            }
+        }
+    }
+
+    // Copies bytes of any length, flushing as often as needed
+    protected void put(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int length = Math.min(source.remaining(), buffer.remaining());
+            int limit = source.limit();
+            source.limit(source.position() + length);
+            buffer.put(source);
+            source.limit(limit);
+        }
+    }
+
+    protected void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            flushBuffer();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Mark-to-market snapshot for one commodity or counterparty. The mark is NaN when there
+ * is no price yet (or, for a counterparty, because it spans several commodities).
+ */
+public class Valuation {
+    private final String key;
+    private final double netVolume;
+    private final double mark;
+    private final double unrealizedPnl;
+    private final long tradeCount;
+
+    public Valuation(String key, double netVolume, double mark, double unrealizedPnl, long tradeCount) {
+        this.key = key;
+        this.netVolume = netVolume;
+        this.mark = mark;
+        this.unrealizedPnl = unrealizedPnl;
+        this.tradeCount = tradeCount;
+    }
+
+    public String getKey() { return key; }
+    public double getNetVolume() { return netVolume; }
+    public double getMark() { return mark; }
+    public double getUnrealizedPnl() { return unrealizedPnl; }
+    public long getTradeCount() { return tradeCount; }
+
+    @Override
+    public String toString() {
+        return String.format("%-25s | Net Volume:%14.2f | Mark:%10s | Unrealized P&L:%18.2f | Trades:%d",
+                key, netVolume, Double.isNaN(mark) ? "-" : String.format("%.2f", mark), unrealizedPnl, tradeCount);
+    }
+}
@@ -0,0 +1,198 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous trade capture with group commit.
+ *
+ * Callers hand trades to a bounded ring buffer and get a future for the assigned TradeID.
+ * Submitting blocks while the buffer is full, which pushes back on bursty producers. A single
+ * writer thread drains the buffer into JDBC batches and commits each group once, flushing
+ * when the group reaches {@code maxBatchSize} or {@code lingerMs} after its first trade.
+ */
+public class WriteBehindWriter implements AutoCloseable {
+    private final TradeRepository tradeRepository;
+    private final BlockingQueue<PendingTrade> buffer;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Consumer<Trade> onInserted;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Metrics
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder tradesWritten = new LongAdder();
+    private final LongAdder tradesFailed = new LongAdder();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong largestBatchSize = new AtomicLong();
+
+    public WriteBehindWriter(TradeRepository tradeRepository, int capacity, int maxBatchSize, long lingerMs,
+                             Consumer<Trade> onInserted) {
+        this.tradeRepository = tradeRepository;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.onInserted = onInserted;
+        this.writerThread = new Thread(this::drainLoop, "trade-write-behind");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Blocks while the buffer is full, but not past close(): a trade that cannot be handed
+     * to the writer before it stops gets a future that fails with IllegalStateException.
+     */
+    public CompletableFuture<Integer> submit(Trade trade) throws InterruptedException {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write-behind writer is closed"));
+        }
+        PendingTrade pending = new PendingTrade(trade);
+        while (!buffer.offer(pending, 100, TimeUnit.MILLISECONDS)) {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Write-behind writer is closed"));
+            }
+        }
+        // Closed while we were queueing: the writer may already have drained and stopped.
+        // If the trade is still queued, take it back; otherwise the writer has it.
+        if (!running && buffer.remove(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("Write-behind writer is closed"));
+        }
+        return pending.future;
+    }
+
+    private void drainLoop() {
+        List<PendingTrade> group = new ArrayList<>(maxBatchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingTrade first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (group.size() < maxBatchSize) {
+                    if (buffer.drainTo(group, maxBatchSize - group.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingTrade next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+
+                writeGroup(group);
+            } catch (InterruptedException e) {
+                // Treat an interrupt as a shutdown request but still flush what was collected
+                running = false;
+                if (!group.isEmpty()) {
+                    writeGroup(group);
+                }
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void writeGroup(List<PendingTrade> group) {
+        List<Trade> trades = new ArrayList<>(group.size());
+        for (PendingTrade pending : group) {
+            trades.add(pending.trade);
+        }
+
+        BulkInsertResult result;
+        try {
+            // One chunk: the whole group goes out as one batch and one commit
+            result = tradeRepository.addTrades(trades, group.size());
+        } catch (SQLException | RuntimeException e) {
+            tradesFailed.add(group.size());
+            for (PendingTrade pending : group) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        batchCount.increment();
+        lastBatchSize.set(group.size());
+        largestBatchSize.accumulateAndGet(group.size(), Math::max);
+
+        Map<Trade, String> failures = new IdentityHashMap<>();
+        for (BulkInsertResult.Failure failure : result.getFailures()) {
+            failures.put(failure.getTrade(), failure.getReason());
+        }
+        for (PendingTrade pending : group) {
+            String reason = failures.get(pending.trade);
+            if (reason != null) {
+                tradesFailed.increment();
+                pending.future.completeExceptionally(new SQLException(reason));
+                continue;
+            }
+            if (pending.trade.getTradeId() <= 0) {
+                tradesFailed.increment();
+                pending.future.completeExceptionally(new SQLException("Insert assigned no TradeID"));
+                continue;
+            }
+            tradesWritten.increment();
+            try {
+                onInserted.accept(pending.trade);
+            } finally {
+                pending.future.complete(pending.trade.getTradeId());
+            }
+        }
+    }
+
+    // Stops accepting trades, flushes everything already buffered and waits for the writer
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Metrics
+    public int getQueueDepth() { return buffer.size(); }
+    public int getRemainingCapacity() { return buffer.remainingCapacity(); }
+    public long getBatchCount() { return batchCount.sum(); }
+    public long getTradesWritten() { return tradesWritten.sum(); }
+    public long getTradesFailed() { return tradesFailed.sum(); }
+    public long getLastBatchSize() { return lastBatchSize.get(); }
+    public long getLargestBatchSize() { return largestBatchSize.get(); }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) tradesWritten.sum() / batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehind[queue=%d batches=%d written=%d failed=%d avgBatch=%.1f lastBatch=%d maxBatch=%d]",
+                getQueueDepth(), getBatchCount(), getTradesWritten(), getTradesFailed(), getAverageBatchSize(),
+                getLastBatchSize(), getLargestBatchSize());
+    }
+
+    private static class PendingTrade {
+        private final Trade trade;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        PendingTrade(Trade trade) {
+            this.trade = trade;
+        }
+    }
+}